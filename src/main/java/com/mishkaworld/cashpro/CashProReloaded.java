@@ -1,15 +1,34 @@
 package com.mishkaworld.cashpro;
 
 import com.mishkaworld.cashpro.api.CashProAPI;
-import com.mishkaworld.cashpro.commands.CurrencyCommand;
+import com.mishkaworld.cashpro.commands.CommandDispatcher;
+import com.mishkaworld.cashpro.commands.CurrencyCommandRegistry;
 import com.mishkaworld.cashpro.commands.ReloadCommand;
+import com.mishkaworld.cashpro.config.ConfigDiff;
 import com.mishkaworld.cashpro.config.ConfigManager;
+import com.mishkaworld.cashpro.database.DataTransfer;
+import com.mishkaworld.cashpro.database.DatabaseMaintenance;
 import com.mishkaworld.cashpro.database.DatabaseManager;
+import com.mishkaworld.cashpro.database.Ledger;
+import com.mishkaworld.cashpro.database.StorageBackend;
+import com.mishkaworld.cashpro.database.StorageExecutor;
+import com.mishkaworld.cashpro.economy.BulkJobScheduler;
+import com.mishkaworld.cashpro.economy.ChangeFeedPoller;
 import com.mishkaworld.cashpro.economy.CurrencyManager;
+import com.mishkaworld.cashpro.economy.LeaderboardManager;
+import com.mishkaworld.cashpro.economy.RateLimiter;
+import com.mishkaworld.cashpro.economy.TransactionRollups;
 import com.mishkaworld.cashpro.listeners.PlayerListener;
+import com.mishkaworld.cashpro.listeners.TabCompleteListener;
 import com.mishkaworld.cashpro.placeholders.CashProPlaceholderExpansion;
+import com.mishkaworld.cashpro.vault.VaultEconomy;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
@@ -24,8 +43,21 @@ public class CashProReloaded extends JavaPlugin {
     private static CashProReloaded instance;
     private ConfigManager configManager;
     private DatabaseManager databaseManager;
+    private StorageExecutor storageExecutor;
     private CurrencyManager currencyManager;
+    private LeaderboardManager leaderboardManager;
+    private ChangeFeedPoller changeFeedPoller;
+    private TransactionRollups transactionRollups;
+    private BulkJobScheduler bulkJobScheduler;
+    private DatabaseMaintenance databaseMaintenance;
+    private Ledger ledger;
+    private RateLimiter rateLimiter;
+    private DataTransfer dataTransfer;
+    private CommandDispatcher commandDispatcher;
+    private CurrencyCommandRegistry currencyCommands;
     private Logger logger;
+    private final CompletableFuture<Void> readyFuture = new CompletableFuture<>();
+    private final Map<String, Long> startupTimings = Collections.synchronizedMap(new LinkedHashMap<>());
     
     @Override
     public void onEnable() {
@@ -38,31 +70,52 @@ public class CashProReloaded extends JavaPlugin {
         logger.info("Загрузка плагина...");
         
         try {
-            // Инициализация конфигурации
-            configManager = new ConfigManager(this);
-            configManager.loadConfigs();
+            // Быстрая фаза в основном потоке: только конфигурация и регистрация,
+            // без обращений к БД
+            runPhase("регистрация", () -> {
+                // Инициализация конфигурации
+                configManager = new ConfigManager(this);
+                configManager.loadConfigs();
+                
+                // Инициализация исполнителя фоновых задач БД
+                storageExecutor = new StorageExecutor(this);
+                
+                databaseManager = new DatabaseManager(this);
+                ledger = new Ledger(this, databaseManager);
+                currencyManager = new CurrencyManager(this);
+                leaderboardManager = new LeaderboardManager(this);
+                changeFeedPoller = new ChangeFeedPoller(this);
+                transactionRollups = new TransactionRollups(this);
+                bulkJobScheduler = new BulkJobScheduler(this);
+                databaseMaintenance = new DatabaseMaintenance(this);
+                
+                // Ограничение частоты переводов и операций API
+                rateLimiter = new RateLimiter(this);
+                rateLimiter.initialize();
+                
+                // Выгрузка и загрузка данных (одна на плагин, переносы не идут параллельно)
+                dataTransfer = new DataTransfer(this);
+                
+                // Регистрация команд
+                registerCommands();
+                
+                // Регистрация слушателей
+                registerListeners();
+                
+                // Регистрация PlaceholderAPI
+                registerPlaceholders();
+                
+                // Регистрация провайдера экономики Vault
+                registerVault();
+                
+                // Инициализация API
+                CashProAPI.initialize(this);
+            });
             
-            // Инициализация базы данных
-            databaseManager = new DatabaseManager(this);
-            databaseManager.initialize();
-            
-            // Инициализация менеджера валют
-            currencyManager = new CurrencyManager(this);
-            currencyManager.initialize();
-            
-            // Регистрация команд
-            registerCommands();
-            
-            // Регистрация слушателей
-            registerListeners();
+            // Открытие БД и загрузка данных в фоне, сервер продолжает запуск
+            storageExecutor.execute(this::warmUp);
             
-            // Регистрация PlaceholderAPI
-            registerPlaceholders();
-            
-            // Инициализация API
-            CashProAPI.initialize(this);
-            
-            logger.info("Плагин успешно загружен!");
+            logger.info("Плагин зарегистрирован, загрузка данных в фоне...");
             
         } catch (Exception e) {
             logger.severe("Ошибка при загрузке плагина: " + e.getMessage());
@@ -76,6 +129,47 @@ public class CashProReloaded extends JavaPlugin {
         logger.info("Выгрузка плагина CashPro Reloaded...");
         
         try {
+            if (changeFeedPoller != null) {
+                changeFeedPoller.shutdown();
+            }
+            
+            if (leaderboardManager != null) {
+                leaderboardManager.shutdown();
+            }
+            
+            if (rateLimiter != null) {
+                rateLimiter.shutdown();
+            }
+            
+            // Незавершённое массовое задание продолжится после запуска
+            if (bulkJobScheduler != null) {
+                bulkJobScheduler.shutdown();
+            }
+            
+            if (databaseMaintenance != null) {
+                databaseMaintenance.shutdown();
+            }
+            
+            // Ожидание завершения начатых фоновых задач
+            if (storageExecutor != null) {
+                storageExecutor.shutdown();
+            }
+            
+            // Фиксация изменений, принятых журналом до остановки
+            if (ledger != null) {
+                ledger.shutdown();
+            }
+            
+            // Финальное сохранение балансов из памяти
+            if (currencyManager != null) {
+                currencyManager.shutdown();
+            }
+            
+            // Запись накопленной сводки транзакций
+            if (transactionRollups != null) {
+                transactionRollups.shutdown();
+            }
+            
             if (databaseManager != null) {
                 databaseManager.close();
             }
@@ -88,26 +182,184 @@ public class CashProReloaded extends JavaPlugin {
         }
     }
     
+    /**
+     * Фоновая загрузка: БД, балансы, индексы и рейтинги
+     * До её завершения команды экономики и API отклоняются, а вход
+     * игроков ожидает готовности
+     */
+    private void warmUp() {
+        long start = System.nanoTime();
+        
+        try {
+            // Инициализация базы данных
+            runPhase("база данных", databaseManager::initialize);
+            
+            // Единственный поток записи изменений балансов
+            runPhase("журнал операций", ledger::initialize);
+            
+            // Инициализация менеджера валют
+            runPhase("балансы и индексы", currencyManager::initialize);
+            
+            // Инициализация рейтингов
+            runPhase("рейтинги", leaderboardManager::initialize);
+            
+            // Сводная статистика транзакций
+            runPhase("сводка транзакций", transactionRollups::initialize);
+            
+            // Синхронизация балансов с другими серверами
+            runPhase("синхронизация", changeFeedPoller::initialize);
+            
+            // Расписание процентов, налогов и платы за содержание
+            runPhase("массовые задания", bulkJobScheduler::initialize);
+            
+            // Обслуживание файла БД в часы низкой нагрузки
+            runPhase("обслуживание БД", databaseMaintenance::initialize);
+            
+            // Игроки, уже находящиеся на сервере (например, после /reload)
+            runPhase("игроки в сети", currencyManager::prepareOnlinePlayers);
+            
+            readyFuture.complete(null);
+            logger.info("Плагин успешно загружен за " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " мс!");
+            
+        } catch (Exception e) {
+            logger.severe("Ошибка при загрузке данных плагина: " + e.getMessage());
+            e.printStackTrace();
+            readyFuture.completeExceptionally(e);
+            
+            if (isEnabled()) {
+                getServer().getScheduler().runTask(this, () -> getServer().getPluginManager().disablePlugin(this));
+            }
+        }
+    }
+    
+    /**
+     * Выполнить фазу запуска и записать её длительность
+     */
+    private void runPhase(String name, Runnable phase) {
+        long start = System.nanoTime();
+        phase.run();
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        
+        startupTimings.put(name, millis);
+        logger.info("Фаза запуска \"" + name + "\": " + millis + " мс");
+    }
+    
+    /**
+     * Проверить, завершена ли фоновая загрузка данных
+     */
+    public boolean isReady() {
+        return readyFuture.isDone() && !readyFuture.isCompletedExceptionally();
+    }
+    
+    /**
+     * Дождаться завершения фоновой загрузки данных
+     * 
+     * @param timeout максимальное время ожидания
+     * @param unit единица времени
+     * @return true если плагин готов к работе
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) {
+        try {
+            readyFuture.get(timeout, unit);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Получить событие завершения фоновой загрузки данных
+     */
+    public CompletableFuture<Void> getReadyFuture() {
+        return readyFuture;
+    }
+    
+    /**
+     * Получить длительность фаз запуска (в мс) в порядке выполнения
+     */
+    public Map<String, Long> getStartupTimings() {
+        synchronized (startupTimings) {
+            return new LinkedHashMap<>(startupTimings);
+        }
+    }
+    
     /**
      * Регистрация команд плагина
      */
     private void registerCommands() {
+        commandDispatcher = new CommandDispatcher(this);
+        
         // Команды для валют
-        for (String currency : configManager.getCurrencies()) {
-            CurrencyCommand currencyCommand = new CurrencyCommand(this, currency);
-            getCommand(currency).setExecutor(currencyCommand);
-            getCommand(currency).setTabCompleter(currencyCommand);
-        }
+        currencyCommands = new CurrencyCommandRegistry(this);
+        currencyCommands.registerAll();
         
         // Команда перезагрузки
         getCommand("cashpro").setExecutor(new ReloadCommand(this));
     }
     
+    /**
+     * Перезагрузить конфигурацию без перезапуска
+     * Применяет только разницу: команды новых валют регистрируются, команды
+     * удалённых снимаются, рейтинги перестраиваются только для затронутых
+     * валют. Кэши балансов и индексы не сбрасываются
+     * 
+     * @return разница между старой и новой конфигурацией
+     */
+    public ConfigDiff reload() {
+        ConfigDiff diff = configManager.reloadConfigs();
+        
+        // Корзины пересоздаются с новыми лимитами
+        rateLimiter.clear();
+        
+        for (String currency : diff.getRemovedCurrencies()) {
+            currencyCommands.unregister(currency);
+            leaderboardManager.remove(currency);
+        }
+        
+        for (String currency : diff.getAddedCurrencies()) {
+            currencyCommands.register(currency);
+        }
+        
+        if (diff.hasCurrencySetChanges()) {
+            currencyCommands.updatePlayers();
+        }
+        
+        // Начальные балансы и рейтинги новых валют готовятся в фоне
+        if (!diff.getAddedCurrencies().isEmpty() || !diff.getChangedCurrencies().isEmpty()) {
+            storageExecutor.execute(() -> {
+                if (!diff.getAddedCurrencies().isEmpty()) {
+                    currencyManager.prepareOnlinePlayers();
+                }
+                for (String currency : diff.getAddedCurrencies()) {
+                    leaderboardManager.rebuild(currency);
+                }
+                for (String currency : diff.getChangedCurrencies()) {
+                    leaderboardManager.rebuild(currency);
+                }
+            });
+        }
+        
+        if (diff.getRemovedCurrencies().contains(configManager.getVaultCurrency())) {
+            logger.warning("Валюта Vault удалена из конфига, Vault интеграция заработает после перезапуска");
+        }
+        
+        logger.info("Конфигурация перезагружена: валют добавлено " + diff.getAddedCurrencies().size()
+            + ", удалено " + diff.getRemovedCurrencies().size()
+            + ", изменено " + diff.getChangedCurrencies().size()
+            + ", сообщений изменено " + diff.getChangedMessages().size());
+        
+        return diff;
+    }
+    
     /**
      * Регистрация слушателей событий
      */
     private void registerListeners() {
         getServer().getPluginManager().registerEvents(new PlayerListener(this), this);
+        getServer().getPluginManager().registerEvents(new TabCompleteListener(this), this);
     }
     
     /**
@@ -122,6 +374,29 @@ public class CashProReloaded extends JavaPlugin {
         }
     }
     
+    /**
+     * Регистрация провайдера экономики Vault
+     */
+    private void registerVault() {
+        if (!configManager.isVaultEnabled()) {
+            return;
+        }
+        
+        if (getServer().getPluginManager().getPlugin("Vault") == null) {
+            logger.warning("Vault не найден, интеграция отключена");
+            return;
+        }
+        
+        String currency = configManager.getVaultCurrency();
+        if (!currencyManager.currencyExists(currency)) {
+            logger.warning("Валюта для Vault не найдена: " + currency);
+            return;
+        }
+        
+        VaultEconomy.register(this, getServer().getServicesManager());
+        logger.info("Vault интеграция активирована, валюта: " + currency);
+    }
+    
     /**
      * Получить экземпляр плагина
      */
@@ -143,10 +418,94 @@ public class CashProReloaded extends JavaPlugin {
         return databaseManager;
     }
     
+    /**
+     * Получить хранилище счетов, массовых заданий и сводок транзакций
+     */
+    public StorageBackend getStorage() {
+        return databaseManager;
+    }
+    
+    /**
+     * Получить исполнитель фоновых задач БД
+     */
+    public StorageExecutor getStorageExecutor() {
+        return storageExecutor;
+    }
+    
     /**
      * Получить менеджер валют
      */
     public CurrencyManager getCurrencyManager() {
         return currencyManager;
     }
+    
+    /**
+     * Получить менеджер рейтингов
+     */
+    public LeaderboardManager getLeaderboardManager() {
+        return leaderboardManager;
+    }
+    
+    /**
+     * Получить опрос ленты изменений балансов
+     */
+    public ChangeFeedPoller getChangeFeedPoller() {
+        return changeFeedPoller;
+    }
+    
+    /**
+     * Получить сводную статистику транзакций
+     */
+    public TransactionRollups getTransactionRollups() {
+        return transactionRollups;
+    }
+    
+    /**
+     * Получить расписание массовых заданий
+     */
+    public BulkJobScheduler getBulkJobScheduler() {
+        return bulkJobScheduler;
+    }
+    
+    /**
+     * Получить журнал операций
+     */
+    public Ledger getLedger() {
+        return ledger;
+    }
+    
+    /**
+     * Получить фоновое обслуживание БД
+     */
+    public DatabaseMaintenance getDatabaseMaintenance() {
+        return databaseMaintenance;
+    }
+    
+    /**
+     * Получить ограничение частоты операций
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+    
+    /**
+     * Получить выгрузку и загрузку данных
+     */
+    public DataTransfer getDataTransfer() {
+        return dataTransfer;
+    }
+    
+    /**
+     * Получить регистрацию команд валют
+     */
+    public CurrencyCommandRegistry getCurrencyCommands() {
+        return currencyCommands;
+    }
+    
+    /**
+     * Получить исполнитель подкоманд
+     */
+    public CommandDispatcher getCommandDispatcher() {
+        return commandDispatcher;
+    }
 } 
\ No newline at end of file
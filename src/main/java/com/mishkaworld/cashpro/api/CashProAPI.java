@@ -1,10 +1,21 @@
 package com.mishkaworld.cashpro.api;
 
 import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.database.RollupBucket;
+import com.mishkaworld.cashpro.economy.RankIndex;
+import com.mishkaworld.cashpro.economy.RateLimiter;
+import com.mishkaworld.cashpro.economy.RollupGranularity;
+import com.mishkaworld.cashpro.economy.Transaction;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.List;
 import java.util.UUID;
 
 /**
  * API для интеграции с другими плагинами
+ * Все методы можно вызывать из любого потока. Изменения балансов
+ * защищены блокировкой счёта, переводы блокируют оба счёта в
+ * фиксированном порядке и не могут взаимно заблокироваться
  * 
  * @author Misha Ermakov
  */
@@ -12,6 +23,20 @@ public class CashProAPI {
     
     private static CashProReloaded plugin;
     
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+    
+    // Название плагина, загрузившего класс, вычисляется один раз на класс
+    private static final ClassValue<String> CALLER_NAMES = new ClassValue<>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            try {
+                return JavaPlugin.getProvidingPlugin(type).getName();
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                return type.getName();
+            }
+        }
+    };
+    
     /**
      * Инициализация API
      */
@@ -19,84 +44,120 @@ public class CashProAPI {
         plugin = pluginInstance;
     }
     
+    /**
+     * Проверить, загружены ли данные плагина
+     * Пока идёт фоновая загрузка после запуска сервера, методы API,
+     * работающие с балансами и БД, выбрасывают IllegalStateException.
+     * Сведения о валютах из конфигурации доступны сразу
+     * 
+     * @return true если API готов к работе
+     */
+    public static boolean isReady() {
+        return plugin != null && plugin.isReady();
+    }
+    
+    /**
+     * Выполнить действие после завершения загрузки данных плагина
+     * Если плагин уже готов, действие выполняется сразу в текущем потоке,
+     * иначе - в фоновом потоке загрузки
+     * 
+     * @param action действие
+     */
+    public static void whenReady(Runnable action) {
+        if (plugin == null) {
+            throw new IllegalStateException("CashPro API не инициализирован");
+        }
+        plugin.getReadyFuture().thenRun(action);
+    }
+    
     /**
      * Получить баланс игрока
+     * Потокобезопасно. В режиме storage.mode: sql выполняет запрос к БД,
+     * поэтому в основном потоке лучше использовать режим memory
      * 
      * @param playerUuid UUID игрока
      * @param currency валюта
      * @return баланс игрока
      */
     public static long getBalance(UUID playerUuid, String currency) {
-        if (plugin == null) {
-            throw new IllegalStateException("CashPro API не инициализирован");
-        }
+        checkReady();
         return plugin.getCurrencyManager().getBalance(playerUuid, currency);
     }
     
     /**
      * Получить баланс игрока по имени
+     * Потокобезопасно. Имя ищется в локальном индексе без сетевых запросов,
+     * в режиме storage.mode: sql баланс читается из БД
      * 
      * @param playerName имя игрока
      * @param currency валюта
      * @return баланс игрока
      */
     public static long getBalance(String playerName, String currency) {
-        if (plugin == null) {
-            throw new IllegalStateException("CashPro API не инициализирован");
-        }
+        checkReady();
         return plugin.getCurrencyManager().getBalance(playerName, currency);
     }
     
     /**
      * Добавить к балансу игрока
+     * Потокобезопасно. Выполняется под блокировкой счёта
      * 
      * @param playerUuid UUID игрока
      * @param playerName имя игрока
      * @param currency валюта
      * @param amount сумма
-     * @return true если операция успешна
+     * @return true если операция успешна, false также если плагин превысил лимит rate-limits.api
      */
     public static boolean addBalance(UUID playerUuid, String playerName, String currency, long amount) {
-        if (plugin == null) {
-            throw new IllegalStateException("CashPro API не инициализирован");
+        checkReady();
+        if (!tryAcquire(currency)) {
+            return false;
         }
         return plugin.getCurrencyManager().addBalance(playerUuid, playerName, currency, amount);
     }
     
     /**
      * Вычесть из баланса игрока
+     * Потокобезопасно. Проверка средств и списание выполняются атомарно
+     * под блокировкой счёта
      * 
      * @param playerUuid UUID игрока
      * @param playerName имя игрока
      * @param currency валюта
      * @param amount сумма
-     * @return true если операция успешна
+     * @return true если операция успешна, false также если плагин превысил лимит rate-limits.api
      */
     public static boolean subtractBalance(UUID playerUuid, String playerName, String currency, long amount) {
-        if (plugin == null) {
-            throw new IllegalStateException("CashPro API не инициализирован");
+        checkReady();
+        if (!tryAcquire(currency)) {
+            return false;
         }
         return plugin.getCurrencyManager().subtractBalance(playerUuid, playerName, currency, amount);
     }
     
     /**
      * Установить баланс игрока
+     * Потокобезопасно. Параллельные изменения того же счёта дождутся
+     * завершения установки
      * 
      * @param playerUuid UUID игрока
      * @param playerName имя игрока
      * @param currency валюта
      * @param amount сумма
-     * @return true если операция успешна
+     * @return true если операция успешна, false также если плагин превысил лимит rate-limits.api
      */
     public static boolean setBalance(UUID playerUuid, String playerName, String currency, long amount) {
-        if (plugin == null) {
-            throw new IllegalStateException("CashPro API не инициализирован");
+        checkReady();
+        if (!tryAcquire(currency)) {
+            return false;
         }
         return plugin.getCurrencyManager().setBalance(playerUuid, playerName, currency, amount);
     }
     
     /**
      * Проверить, достаточно ли средств у игрока
+     * Потокобезопасно. Результат может устареть к моменту списания -
+     * для атомарной проверки используйте результат subtractBalance
      * 
      * @param playerUuid UUID игрока
      * @param currency валюта
@@ -104,76 +165,172 @@ public class CashProAPI {
      * @return true если у игрока достаточно средств
      */
     public static boolean hasEnoughFunds(UUID playerUuid, String currency, long amount) {
-        if (plugin == null) {
-            throw new IllegalStateException("CashPro API не инициализирован");
-        }
+        checkReady();
         return plugin.getCurrencyManager().hasEnoughFunds(playerUuid, currency, amount);
     }
     
+    /**
+     * Получить место игрока в рейтинге валюты
+     * Потокобезопасно, к БД не обращается. Выполняется за O(log n),
+     * игроки с одинаковым балансом делят одно место
+     * 
+     * @param playerUuid UUID игрока
+     * @param currency валюта
+     * @return место (1 - самый богатый) или 0 если у игрока нет счёта
+     */
+    public static int getRank(UUID playerUuid, String currency) {
+        checkReady();
+        return plugin.getCurrencyManager().getRank(playerUuid, currency);
+    }
+    
+    /**
+     * Получить UUID игрока на заданной позиции рейтинга валюты
+     * Потокобезопасно, к БД не обращается. Выполняется за O(log n)
+     * 
+     * @param currency валюта
+     * @param position позиция, начиная с 1
+     * @return UUID игрока или null если позиция вне рейтинга
+     */
+    public static UUID getPlayerAtRank(String currency, int position) {
+        checkReady();
+        RankIndex.RankedPlayer ranked = plugin.getCurrencyManager().getPlayerAtRank(currency, position);
+        return ranked != null ? ranked.getPlayerUuid() : null;
+    }
+    
+    /**
+     * Получить возраст снимка рейтинга валюты
+     * Потокобезопасно. Рейтинг перестраивается в фоне раз в
+     * leaderboard.rebuild-interval секунд
+     * 
+     * @param currency валюта
+     * @return возраст снимка в миллисекундах
+     */
+    public static long getLeaderboardAge(String currency) {
+        checkReady();
+        return plugin.getLeaderboardManager().getSnapshot(currency).getAgeMillis();
+    }
+    
+    /**
+     * Получить длительность последнего построения рейтинга валюты
+     * Потокобезопасно
+     * 
+     * @param currency валюта
+     * @return длительность построения в миллисекундах
+     */
+    public static double getLeaderboardBuildTime(String currency) {
+        checkReady();
+        return plugin.getLeaderboardManager().getSnapshot(currency).getBuildTimeMillis();
+    }
+    
+    /**
+     * Получить оборот валюты за последние интервалы времени
+     * Выполняет запрос к БД, поэтому вызывать его следует асинхронно.
+     * Интервалы без транзакций в результат не попадают
+     * 
+     * @param currency валюта
+     * @param granularity шаг (минута, час, день)
+     * @param type тип транзакций или null для всех типов вместе
+     * @param buckets количество интервалов, включая текущий
+     * @return сводки по возрастанию времени
+     */
+    public static List<RollupBucket> getTransactionVolume(String currency, RollupGranularity granularity,
+                                                          Transaction.TransactionType type, int buckets) {
+        checkReady();
+        return plugin.getTransactionRollups().getVolume(currency, granularity, type, buckets);
+    }
+    
     /**
      * Проверить, существует ли валюта
+     * Потокобезопасно, к БД не обращается
      * 
      * @param currency валюта
      * @return true если валюта существует
      */
     public static boolean currencyExists(String currency) {
-        if (plugin == null) {
-            throw new IllegalStateException("CashPro API не инициализирован");
-        }
+        checkInitialized();
         return plugin.getCurrencyManager().currencyExists(currency);
     }
     
     /**
      * Получить название валюты
+     * Потокобезопасно, к БД не обращается
      * 
      * @param currency валюта
      * @return название валюты
      */
     public static String getCurrencyName(String currency) {
-        if (plugin == null) {
-            throw new IllegalStateException("CashPro API не инициализирован");
-        }
+        checkInitialized();
         return plugin.getCurrencyManager().getCurrencyName(currency);
     }
     
     /**
      * Получить символ валюты
+     * Потокобезопасно, к БД не обращается
      * 
      * @param currency валюта
      * @return символ валюты
      */
     public static String getCurrencySymbol(String currency) {
-        if (plugin == null) {
-            throw new IllegalStateException("CashPro API не инициализирован");
-        }
+        checkInitialized();
         return plugin.getCurrencyManager().getCurrencySymbol(currency);
     }
     
     /**
      * Получить отформатированный баланс игрока
+     * Потокобезопасно. В режиме storage.mode: sql выполняет запрос к БД,
+     * поэтому в основном потоке лучше использовать режим memory
      * 
      * @param playerUuid UUID игрока
      * @param currency валюта
      * @return отформатированный баланс
      */
     public static String getFormattedBalance(UUID playerUuid, String currency) {
-        if (plugin == null) {
-            throw new IllegalStateException("CashPro API не инициализирован");
-        }
+        checkReady();
         return plugin.getCurrencyManager().getFormattedBalance(playerUuid, currency);
     }
     
     /**
      * Получить отформатированный баланс игрока по имени
+     * Потокобезопасно. Имя ищется в локальном индексе без сетевых запросов
      * 
      * @param playerName имя игрока
      * @param currency валюта
      * @return отформатированный баланс
      */
     public static String getFormattedBalance(String playerName, String currency) {
+        checkReady();
+        return plugin.getCurrencyManager().getFormattedBalance(playerName, currency);
+    }
+    
+    /**
+     * Взять маркер ограничения частоты для плагина, вызвавшего метод API
+     * Вызывающий плагин определяется по загрузчику класса первого кадра стека вне API
+     */
+    private static boolean tryAcquire(String currency) {
+        Class<?> caller = STACK_WALKER.walk(frames -> frames
+            .map(StackWalker.StackFrame::getDeclaringClass)
+            .filter(type -> type != CashProAPI.class)
+            .findFirst()
+            .orElse(CashProAPI.class));
+        return plugin.getRateLimiter().tryAcquire(RateLimiter.API, CALLER_NAMES.get(caller), currency);
+    }
+    
+    /**
+     * Проверить, что API инициализирован
+     */
+    private static void checkInitialized() {
         if (plugin == null) {
             throw new IllegalStateException("CashPro API не инициализирован");
         }
-        return plugin.getCurrencyManager().getFormattedBalance(playerName, currency);
+    }
+    
+    /**
+     * Проверить, что API инициализирован и данные загружены
+     */
+    private static void checkReady() {
+        checkInitialized();
+        if (!plugin.isReady()) {
+            throw new IllegalStateException("CashPro ещё загружается");
+        }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,139 @@
+package com.mishkaworld.cashpro.commands;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.utils.MessageUtils;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Асинхронное выполнение подкоманд вне основного потока сервера
+ * Ограничивает количество одновременно выполняемых команд от одного отправителя
+ * 
+ * @author Misha Ermakov
+ */
+public class CommandDispatcher {
+    
+    private final CashProReloaded plugin;
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+    
+    public CommandDispatcher(CashProReloaded plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Выполнить подкоманду в фоновом потоке
+     * Команды чтения выполняются параллельно (в пределах лимита),
+     * изменяющие команды одного отправителя - строго по одной
+     * 
+     * @param sender отправитель команды
+     * @param name название подкоманды
+     * @param subCommand подкоманда
+     * @param args аргументы команды
+     */
+    public void dispatch(CommandSender sender, String name, SubCommand subCommand, String[] args) {
+        // Данные ещё загружаются в фоне
+        if (!plugin.isReady()) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("errors.not_ready")));
+            return;
+        }
+        
+        String key = getSenderKey(sender);
+        boolean readOnly = subCommand.isReadOnly();
+        int limit = readOnly ? plugin.getConfigManager().getMaxCommandsInFlight() : 1;
+        
+        if (!acquire(key, readOnly, limit)) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("errors.too_many_requests")));
+            return;
+        }
+        
+        try {
+            plugin.getStorageExecutor().execute(() -> {
+                try {
+                    subCommand.execute(sender, args);
+                } catch (Exception e) {
+                    MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("errors.command_execution_error", "error", String.valueOf(e.getMessage()))));
+                    plugin.getLogger().severe("Ошибка при выполнении команды " + name + ": " + e.getMessage());
+                    e.printStackTrace();
+                } finally {
+                    release(key, readOnly);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Исполнитель уже остановлен (выключение плагина), задача не запустится и слот не освободит
+            release(key, readOnly);
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("errors.not_ready")));
+        }
+    }
+    
+    /**
+     * Занять слот выполняемой команды отправителя
+     * Счётчики меняются внутри compute, поэтому запись отправителя
+     * не может быть удалена между проверкой лимита и увеличением
+     * 
+     * @return false если лимит отправителя исчерпан
+     */
+    private boolean acquire(String key, boolean readOnly, int limit) {
+        boolean[] acquired = new boolean[1];
+        inFlight.compute(key, (k, counters) -> {
+            InFlight current = counters != null ? counters : new InFlight();
+            if (current.get(readOnly) >= limit) {
+                return counters;
+            }
+            current.add(readOnly, 1);
+            acquired[0] = true;
+            return current;
+        });
+        return acquired[0];
+    }
+    
+    /**
+     * Освободить слот выполняемой команды
+     * Запись отправителя без выполняемых команд удаляется, поэтому карта
+     * не растёт с каждым игроком, заходившим на сервер
+     */
+    private void release(String key, boolean readOnly) {
+        inFlight.computeIfPresent(key, (k, counters) -> {
+            counters.add(readOnly, -1);
+            return counters.isEmpty() ? null : counters;
+        });
+    }
+    
+    /**
+     * Получить ключ отправителя для подсчёта выполняемых команд
+     */
+    private String getSenderKey(CommandSender sender) {
+        if (sender instanceof Player) {
+            return ((Player) sender).getUniqueId().toString();
+        }
+        return sender.getName();
+    }
+    
+    /**
+     * Счётчики выполняемых команд одного отправителя
+     * Изменяются только внутри compute карты
+     */
+    private static class InFlight {
+        private int reads;
+        private int writes;
+        
+        int get(boolean readOnly) {
+            return readOnly ? reads : writes;
+        }
+        
+        void add(boolean readOnly, int delta) {
+            if (readOnly) {
+                reads += delta;
+            } else {
+                writes += delta;
+            }
+        }
+        
+        boolean isEmpty() {
+            return reads == 0 && writes == 0;
+        }
+    }
+}
@@ -2,6 +2,9 @@ package com.mishkaworld.cashpro.commands;
 
 import com.mishkaworld.cashpro.CashProReloaded;
 import com.mishkaworld.cashpro.commands.subcommands.*;
+import com.mishkaworld.cashpro.database.DataTransfer;
+import com.mishkaworld.cashpro.economy.RateLimiter;
+import com.mishkaworld.cashpro.economy.Transaction;
 import com.mishkaworld.cashpro.utils.MessageUtils;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -12,6 +15,7 @@ import org.bukkit.entity.Player;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -21,6 +25,9 @@ import java.util.Map;
  */
 public class CurrencyCommand implements CommandExecutor, TabCompleter {
     
+    private static final List<String> SEARCH_FILTERS = List.of(
+        "player:", "with:", "type:", "min:", "max:", "since:", "until:", "after:", "export:");
+    
     private final CashProReloaded plugin;
     private final String currency;
     private final Map<String, SubCommand> subCommands;
@@ -62,10 +69,9 @@ public class CurrencyCommand implements CommandExecutor, TabCompleter {
                 return true;
             }
             
-            Player player = (Player) sender;
             // Создаем новый массив с командой balance
             String[] balanceArgs = {"balance"};
-            subCommands.get("balance").execute(player, balanceArgs);
+            plugin.getCommandDispatcher().dispatch(sender, "balance", subCommands.get("balance"), balanceArgs);
             return true;
         }
         
@@ -84,15 +90,16 @@ public class CurrencyCommand implements CommandExecutor, TabCompleter {
             return true;
         }
         
-        // Выполняем подкоманду
-        try {
-            cmd.execute(sender, args);
-        } catch (Exception e) {
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("errors.command_execution_error", "error", e.getMessage())));
-            plugin.getLogger().severe("Ошибка при выполнении команды " + subCommand + ": " + e.getMessage());
-            e.printStackTrace();
+        // Частые переводы отклоняются до постановки в очередь и обращения к БД
+        if (subCommand.equals("pay") && sender instanceof Player
+                && !plugin.getRateLimiter().tryAcquire(RateLimiter.PAY, ((Player) sender).getUniqueId().toString(), currency)) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("errors.rate_limited")));
+            return true;
         }
         
+        // Выполняем подкоманду вне основного потока
+        plugin.getCommandDispatcher().dispatch(sender, subCommand, cmd, args);
+        
         return true;
     }
     
@@ -127,27 +134,13 @@ public class CurrencyCommand implements CommandExecutor, TabCompleter {
             // Второй аргумент - имя игрока для некоторых команд
             String subCommand = args[0].toLowerCase();
             
-            if (subCommand.equals("pay") || subCommand.equals("set") || 
-                subCommand.equals("give") || subCommand.equals("take") || subCommand.equals("trans")) {
-                
-                String partial = args[1].toLowerCase();
-                
-                // Для транзакций проверяем права администратора
-                if (subCommand.equals("trans") && !sender.hasPermission("cashpro." + currency + ".admin")) {
-                    // Если нет прав администратора, предлагаем только номера страниц
-                    completions.add("1");
-                    completions.add("2");
-                    completions.add("3");
-                    return completions;
-                }
-                
-                // Добавляем онлайн игроков
-                for (Player player : plugin.getServer().getOnlinePlayers()) {
-                    if (player.getName().toLowerCase().startsWith(partial)) {
-                        completions.add(player.getName());
-                    }
-                }
+            List<String> names = completePlayerName(sender, subCommand, args[1]);
+            if (names != null) {
+                completions.addAll(names);
             }
+        } else if (args[0].equalsIgnoreCase("trans") && args[1].equalsIgnoreCase("search")) {
+            // Аргументы поиска транзакций - фильтры
+            completions.addAll(completeSearchFilter(sender, args[args.length - 1]));
         } else if (args.length == 3) {
             // Третий аргумент - сумма для команд с деньгами или страница для транзакций
             String subCommand = args[0].toLowerCase();
@@ -183,6 +176,103 @@ public class CurrencyCommand implements CommandExecutor, TabCompleter {
         return completions;
     }
     
+    /**
+     * Подсказать имя игрока во втором аргументе подкоманды
+     * Потокобезопасно, вызывается и из асинхронного автодополнения.
+     * Для pay предлагаются игроки в сети, для административных команд -
+     * все известные игроки из индекса имён
+     * 
+     * @param sender отправитель
+     * @param subCommand подкоманда в нижнем регистре
+     * @param partial введённая часть имени
+     * @return подсказки или null если аргумент подкоманды - не имя игрока
+     */
+    public List<String> completePlayerName(CommandSender sender, String subCommand, String partial) {
+        if (!subCommand.equals("pay") && !subCommand.equals("set") && !subCommand.equals("give")
+                && !subCommand.equals("take") && !subCommand.equals("trans")) {
+            return null;
+        }
+        
+        if (!sender.hasPermission("cashpro." + currency)) {
+            return new ArrayList<>();
+        }
+        
+        boolean admin = sender.hasPermission("cashpro." + currency + ".admin") || sender.hasPermission("cashpro.admin");
+        int limit = plugin.getConfigManager().getTabCompleteLimit();
+        
+        // Для транзакций без прав администратора - только номера страниц
+        if (subCommand.equals("trans") && !admin) {
+            return new ArrayList<>(List.of("1", "2", "3"));
+        }
+        
+        if (subCommand.equals("pay")) {
+            List<String> names = new ArrayList<>();
+            for (Player player : plugin.getServer().getOnlinePlayers()) {
+                String name = player.getName();
+                if (name.regionMatches(true, 0, partial, 0, partial.length())) {
+                    names.add(name);
+                    if (names.size() >= limit) {
+                        break;
+                    }
+                }
+            }
+            return names;
+        }
+        
+        if (!admin || !plugin.isReady()) {
+            return new ArrayList<>();
+        }
+        List<String> names = new ArrayList<>();
+        if (subCommand.equals("trans") && "search".startsWith(partial.toLowerCase())) {
+            names.add("search");
+        }
+        names.addAll(plugin.getCurrencyManager().getNameIndex().findByPrefix(partial, limit));
+        return names;
+    }
+    
+    /**
+     * Подсказать фильтр поиска транзакций: название фильтра, имя игрока,
+     * тип транзакции или формат выгрузки
+     */
+    private List<String> completeSearchFilter(CommandSender sender, String partial) {
+        List<String> completions = new ArrayList<>();
+        if (!sender.hasPermission("cashpro." + currency + ".admin") && !sender.hasPermission("cashpro.admin")) {
+            return completions;
+        }
+        
+        int separator = partial.indexOf(':');
+        if (separator < 0) {
+            for (String filter : SEARCH_FILTERS) {
+                if (filter.startsWith(partial.toLowerCase(Locale.ROOT))) {
+                    completions.add(filter);
+                }
+            }
+            return completions;
+        }
+        
+        String key = partial.substring(0, separator + 1).toLowerCase(Locale.ROOT);
+        String value = partial.substring(separator + 1);
+        List<String> values = new ArrayList<>();
+        if ((key.equals("player:") || key.equals("with:")) && plugin.isReady()) {
+            values.addAll(plugin.getCurrencyManager().getNameIndex().findByPrefix(value, plugin.getConfigManager().getTabCompleteLimit()));
+        } else if (key.equals("type:")) {
+            for (Transaction.TransactionType type : Transaction.TransactionType.values()) {
+                values.add(type.name().toLowerCase(Locale.ROOT));
+            }
+        } else if (key.equals("export:")) {
+            for (DataTransfer.Format format : DataTransfer.Format.values()) {
+                values.add(format.getExtension());
+            }
+        }
+        
+        for (String candidate : values) {
+            if (candidate.regionMatches(true, 0, value, 0, value.length())) {
+                completions.add(key + candidate);
+            }
+        }
+        return completions;
+    }
+    
     /**
      * Проверить права для подкоманды
      */
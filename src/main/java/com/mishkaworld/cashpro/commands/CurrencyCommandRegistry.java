@@ -0,0 +1,170 @@
+package com.mishkaworld.cashpro.commands;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandMap;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.entity.Player;
+import org.bukkit.permissions.Permission;
+import org.bukkit.permissions.PermissionDefault;
+import org.bukkit.plugin.PluginManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Регистрация команд валют
+ * Команды валют из plugin.yml подключаются при запуске, команды валют,
+ * добавленных в currencies.yml позже, регистрируются в карте команд сервера
+ * без перезапуска и снимаются при удалении валюты
+ * 
+ * @author Misha Ermakov
+ */
+public class CurrencyCommandRegistry {
+    
+    private final CashProReloaded plugin;
+    private final Map<String, Command> commands = new HashMap<>();
+    // Читается из потока асинхронного автодополнения
+    private final Map<String, CurrencyCommand> executors = new ConcurrentHashMap<>();
+    
+    public CurrencyCommandRegistry(CashProReloaded plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Зарегистрировать команды всех валют
+     */
+    public void registerAll() {
+        for (String currency : plugin.getConfigManager().getCurrencies()) {
+            register(currency);
+        }
+    }
+    
+    /**
+     * Зарегистрировать команду валюты
+     */
+    public void register(String currency) {
+        if (commands.containsKey(currency)) {
+            return;
+        }
+        
+        CurrencyCommand currencyCommand = new CurrencyCommand(plugin, currency);
+        PluginCommand declared = plugin.getCommand(currency);
+        
+        Command command;
+        if (declared != null) {
+            // Команда объявлена в plugin.yml и уже есть в карте команд
+            declared.setExecutor(currencyCommand);
+            declared.setTabCompleter(currencyCommand);
+            command = declared;
+        } else {
+            command = new DynamicCurrencyCommand(currency, currencyCommand);
+            registerPermissions(currency);
+        }
+        
+        CommandMap commandMap = plugin.getServer().getCommandMap();
+        if (commandMap.getCommand(currency) != command) {
+            commandMap.register(getFallbackPrefix(), command);
+        }
+        
+        commands.put(currency, command);
+        executors.put(currency, currencyCommand);
+    }
+    
+    /**
+     * Снять команду валюты
+     */
+    public void unregister(String currency) {
+        Command command = commands.remove(currency);
+        if (command == null) {
+            return;
+        }
+        executors.remove(currency);
+        
+        CommandMap commandMap = plugin.getServer().getCommandMap();
+        command.unregister(commandMap);
+        
+        Map<String, Command> knownCommands = commandMap.getKnownCommands();
+        knownCommands.remove(currency, command);
+        knownCommands.remove(getFallbackPrefix() + ":" + currency, command);
+        
+        if (command instanceof DynamicCurrencyCommand) {
+            unregisterPermissions(currency);
+        }
+    }
+    
+    /**
+     * Получить обработчик команды валюты по её названию
+     * Потокобезопасно
+     * 
+     * @return обработчик или null если команды нет
+     */
+    public CurrencyCommand getExecutor(String currency) {
+        return executors.get(currency);
+    }
+    
+    /**
+     * Обновить список команд у игроков в сети (для автодополнения в клиенте)
+     */
+    public void updatePlayers() {
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            player.updateCommands();
+        }
+    }
+    
+    /**
+     * Зарегистрировать права для команды валюты, которой нет в plugin.yml
+     */
+    private void registerPermissions(String currency) {
+        PluginManager pluginManager = plugin.getServer().getPluginManager();
+        if (pluginManager.getPermission("cashpro." + currency) == null) {
+            pluginManager.addPermission(new Permission("cashpro." + currency,
+                "Доступ к командам валюты " + currency, PermissionDefault.TRUE));
+        }
+        if (pluginManager.getPermission("cashpro." + currency + ".admin") == null) {
+            pluginManager.addPermission(new Permission("cashpro." + currency + ".admin",
+                "Административные права для валюты " + currency, PermissionDefault.OP));
+        }
+    }
+    
+    /**
+     * Снять права команды валюты
+     */
+    private void unregisterPermissions(String currency) {
+        PluginManager pluginManager = plugin.getServer().getPluginManager();
+        pluginManager.removePermission("cashpro." + currency);
+        pluginManager.removePermission("cashpro." + currency + ".admin");
+    }
+    
+    private String getFallbackPrefix() {
+        return plugin.getName().toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Команда валюты, зарегистрированная во время работы сервера
+     */
+    private static class DynamicCurrencyCommand extends Command {
+        private final CurrencyCommand executor;
+        
+        DynamicCurrencyCommand(String currency, CurrencyCommand executor) {
+            super(currency, "Команды для работы с валютой " + currency,
+                "/" + currency + " [balance|pay|top|trans|set|give|take]", new ArrayList<>());
+            this.executor = executor;
+        }
+        
+        @Override
+        public boolean execute(CommandSender sender, String label, String[] args) {
+            return executor.onCommand(sender, this, label, args);
+        }
+        
+        @Override
+        public List<String> tabComplete(CommandSender sender, String alias, String[] args) {
+            return executor.onTabComplete(sender, this, alias, args);
+        }
+    }
+}
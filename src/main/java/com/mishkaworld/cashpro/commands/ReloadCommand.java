@@ -1,11 +1,23 @@
 package com.mishkaworld.cashpro.commands;
 
 import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.commands.admin.EconomyCommand;
+import com.mishkaworld.cashpro.commands.admin.ExportCommand;
+import com.mishkaworld.cashpro.commands.admin.ImportCommand;
+import com.mishkaworld.cashpro.commands.admin.MaintenanceCommand;
+import com.mishkaworld.cashpro.commands.admin.MigrateCommand;
+import com.mishkaworld.cashpro.commands.admin.StatsCommand;
+import com.mishkaworld.cashpro.commands.admin.VolumeCommand;
+import com.mishkaworld.cashpro.config.ConfigDiff;
 import com.mishkaworld.cashpro.utils.MessageUtils;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
 /**
  * Команда для перезагрузки плагина
  * 
@@ -14,9 +26,26 @@ import org.bukkit.command.CommandSender;
 public class ReloadCommand implements CommandExecutor {
     
     private final CashProReloaded plugin;
+    private final Map<String, SubCommand> subCommands;
     
     public ReloadCommand(CashProReloaded plugin) {
         this.plugin = plugin;
+        this.subCommands = new HashMap<>();
+        
+        registerSubCommands();
+    }
+    
+    /**
+     * Регистрация административных подкоманд
+     */
+    private void registerSubCommands() {
+        subCommands.put("stats", new StatsCommand(plugin));
+        subCommands.put("export", new ExportCommand(plugin));
+        subCommands.put("import", new ImportCommand(plugin));
+        subCommands.put("economy", new EconomyCommand(plugin));
+        subCommands.put("volume", new VolumeCommand(plugin));
+        subCommands.put("maintenance", new MaintenanceCommand(plugin));
+        subCommands.put("migrate", new MigrateCommand(plugin));
     }
     
     @Override
@@ -27,17 +56,35 @@ public class ReloadCommand implements CommandExecutor {
             return true;
         }
         
+        // Административные подкоманды
+        SubCommand cmd = args.length >= 1 ? subCommands.get(args[0].toLowerCase(Locale.ROOT)) : null;
+        if (cmd != null) {
+            cmd.execute(sender, args);
+            return true;
+        }
+        
         // Проверка аргументов
         if (args.length < 1 || !args[0].equalsIgnoreCase("reload")) {
             sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("usage.cashpro_reload")));
             return true;
         }
         
+        if (!plugin.isReady()) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("errors.not_ready")));
+            return true;
+        }
+        
         try {
-            // Перезагрузка конфигураций
-            plugin.getConfigManager().reloadConfigs();
+            // Перезагрузка конфигураций с применением только изменений
+            ConfigDiff diff = plugin.reload();
             
             sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("reload.success")));
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("reload.summary",
+                "added", String.valueOf(diff.getAddedCurrencies().size()),
+                "removed", String.valueOf(diff.getRemovedCurrencies().size()),
+                "changed", String.valueOf(diff.getChangedCurrencies().size()),
+                "messages", String.valueOf(diff.getChangedMessages().size())
+            )));
             plugin.getLogger().info("Плагин перезагружен администратором " + sender.getName());
             
         } catch (Exception e) {
@@ -48,4 +95,4 @@ public class ReloadCommand implements CommandExecutor {
         
         return true;
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
@@ -17,6 +17,14 @@ public interface SubCommand {
      */
     void execute(CommandSender sender, String[] args);
     
+    /**
+     * Проверить, только ли читает подкоманда данные
+     * Изменяющие подкоманды одного отправителя выполняются строго по одной
+     * 
+     * @return true если подкоманда не изменяет балансы
+     */
+    boolean isReadOnly();
+    
     /**
      * Получить описание подкоманды
      * 
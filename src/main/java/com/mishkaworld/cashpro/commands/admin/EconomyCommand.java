@@ -0,0 +1,82 @@
+package com.mishkaworld.cashpro.commands.admin;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.commands.SubCommand;
+import com.mishkaworld.cashpro.economy.EconomyAggregate;
+import com.mishkaworld.cashpro.utils.MessageUtils;
+import org.bukkit.command.CommandSender;
+
+import java.util.Locale;
+
+/**
+ * Подкоманда показателей экономики валюты
+ * 
+ * @author Misha Ermakov
+ */
+public class EconomyCommand implements SubCommand {
+    
+    private final CashProReloaded plugin;
+    
+    public EconomyCommand(CashProReloaded plugin) {
+        this.plugin = plugin;
+    }
+    
+    @Override
+    public void execute(CommandSender sender, String[] args) {
+        if (args.length < 2) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("usage.cashpro_economy")));
+            return;
+        }
+        
+        String currency = args[1].toLowerCase();
+        if (!plugin.getCurrencyManager().currencyExists(currency)) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("economy.unknown_currency", "currency", currency)));
+            return;
+        }
+        
+        if (!plugin.isReady()) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("errors.not_ready")));
+            return;
+        }
+        
+        EconomyAggregate.Snapshot economy = plugin.getCurrencyManager().getEconomySnapshot(currency);
+        String symbol = plugin.getCurrencyManager().getCurrencySymbol(currency);
+        
+        sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("economy.header",
+            "currency", plugin.getCurrencyManager().getCurrencyName(currency))));
+        sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("economy.supply",
+            "supply", MessageUtils.formatNumber(economy.getSupply()),
+            "symbol", symbol,
+            "accounts", String.valueOf(economy.getAccounts())
+        )));
+        sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("economy.average",
+            "average", MessageUtils.formatNumber(Math.round(economy.getAverage())),
+            "deviation", MessageUtils.formatNumber(Math.round(economy.getStandardDeviation())),
+            "symbol", symbol
+        )));
+        sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("economy.percentiles",
+            "median", MessageUtils.formatNumber(economy.getMedian()),
+            "p90", MessageUtils.formatNumber(economy.getPercentile(90)),
+            "p99", MessageUtils.formatNumber(economy.getPercentile(99)),
+            "symbol", symbol
+        )));
+        sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("economy.gini",
+            "gini", String.format(Locale.ROOT, "%.3f", economy.getGini())
+        )));
+    }
+    
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Показать показатели экономики валюты";
+    }
+    
+    @Override
+    public String getUsage() {
+        return "/cashpro economy <валюта>";
+    }
+}
@@ -0,0 +1,66 @@
+package com.mishkaworld.cashpro.commands.admin;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.database.DataTable;
+import com.mishkaworld.cashpro.database.DataTransfer;
+import com.mishkaworld.cashpro.utils.MessageUtils;
+import org.bukkit.command.CommandSender;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Подкоманда выгрузки таблицы в файл
+ * 
+ * @author Misha Ermakov
+ */
+public class ExportCommand extends TransferCommand {
+    
+    public ExportCommand(CashProReloaded plugin) {
+        super(plugin);
+    }
+    
+    @Override
+    protected void executeTransfer(CommandSender sender, String[] args) {
+        DataTable table = args.length >= 2 ? DataTable.fromName(args[1]) : null;
+        DataTransfer.Format format = args.length >= 3 ? DataTransfer.Format.fromName(args[2]) : null;
+        if (table == null || format == null) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("usage.cashpro_export")));
+            return;
+        }
+        
+        String fileName = args.length >= 4 ? args[3]
+            : table.getTableName() + "-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + "." + format.getExtension();
+        File file = resolveFile(fileName);
+        if (file == null) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("transfer.invalid_file", "file", fileName)));
+            return;
+        }
+        
+        runTransfer(sender, file, () -> {
+            long start = System.currentTimeMillis();
+            long rows = dataTransfer.exportTable(table, format, file, processed -> sendProgress(sender, processed));
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transfer.exported",
+                "rows", String.valueOf(rows),
+                "file", file.getName(),
+                "time", String.valueOf(System.currentTimeMillis() - start)
+            )));
+        });
+    }
+    
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Выгрузить таблицу в файл";
+    }
+    
+    @Override
+    public String getUsage() {
+        return "/cashpro export <таблица> <формат> [файл]";
+    }
+}
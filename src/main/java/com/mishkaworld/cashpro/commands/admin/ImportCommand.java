@@ -0,0 +1,61 @@
+package com.mishkaworld.cashpro.commands.admin;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.database.DataTable;
+import com.mishkaworld.cashpro.database.DataTransfer;
+import com.mishkaworld.cashpro.utils.MessageUtils;
+import org.bukkit.command.CommandSender;
+
+import java.io.File;
+
+/**
+ * Подкоманда загрузки таблицы из файла
+ * 
+ * @author Misha Ermakov
+ */
+public class ImportCommand extends TransferCommand {
+    
+    public ImportCommand(CashProReloaded plugin) {
+        super(plugin);
+    }
+    
+    @Override
+    protected void executeTransfer(CommandSender sender, String[] args) {
+        DataTable table = args.length >= 3 ? DataTable.fromName(args[1]) : null;
+        if (table == null) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("usage.cashpro_import")));
+            return;
+        }
+        
+        File file = resolveFile(args[2]);
+        if (file == null || !file.isFile() || DataTransfer.Format.fromFile(file) == null) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("transfer.invalid_file", "file", args[2])));
+            return;
+        }
+        
+        runTransfer(sender, file, () -> {
+            long start = System.currentTimeMillis();
+            DataTransfer.ImportResult result = dataTransfer.importTable(table, file, processed -> sendProgress(sender, processed));
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transfer.imported",
+                "rows", String.valueOf(result.getImported()),
+                "skipped", String.valueOf(result.getSkipped()),
+                "time", String.valueOf(System.currentTimeMillis() - start)
+            )));
+        });
+    }
+    
+    @Override
+    public boolean isReadOnly() {
+        return false;
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Загрузить таблицу из файла";
+    }
+    
+    @Override
+    public String getUsage() {
+        return "/cashpro import <таблица> <файл>";
+    }
+}
@@ -0,0 +1,72 @@
+package com.mishkaworld.cashpro.commands.admin;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.commands.SubCommand;
+import com.mishkaworld.cashpro.database.DatabaseMaintenance;
+import com.mishkaworld.cashpro.utils.MessageUtils;
+import org.bukkit.command.CommandSender;
+
+/**
+ * Подкоманда обслуживания файла БД
+ * 
+ * @author Misha Ermakov
+ */
+public class MaintenanceCommand implements SubCommand {
+    
+    private final CashProReloaded plugin;
+    
+    public MaintenanceCommand(CashProReloaded plugin) {
+        this.plugin = plugin;
+    }
+    
+    @Override
+    public void execute(CommandSender sender, String[] args) {
+        if (!plugin.isReady()) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("errors.not_ready")));
+            return;
+        }
+        
+        boolean fullVacuum = args.length >= 2 && args[1].equalsIgnoreCase("vacuum");
+        sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage(
+            fullVacuum ? "maintenance.vacuum_started" : "maintenance.started")));
+        
+        plugin.getStorageExecutor().execute(() -> {
+            try {
+                DatabaseMaintenance.Result result = plugin.getDatabaseMaintenance().run(fullVacuum);
+                if (result == null) {
+                    MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("maintenance.busy")));
+                    return;
+                }
+                
+                MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("maintenance.done",
+                    "time", String.valueOf(result.getMillis()),
+                    "before", DatabaseMaintenance.formatSize(result.getSizeBefore()),
+                    "after", DatabaseMaintenance.formatSize(result.getSizeAfter()),
+                    "wal_before", DatabaseMaintenance.formatSize(result.getWalSizeBefore()),
+                    "wal_after", DatabaseMaintenance.formatSize(result.getWalSizeAfter()),
+                    "integrity", result.getIntegrity() != null
+                        ? result.getIntegrity()
+                        : plugin.getConfigManager().getMessage("maintenance.not_checked")
+                )));
+            } catch (Exception e) {
+                MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("maintenance.failed", "error", String.valueOf(e.getMessage()))));
+                plugin.getLogger().severe("Ошибка при обслуживании БД: " + e.getMessage());
+            }
+        });
+    }
+    
+    @Override
+    public boolean isReadOnly() {
+        return false;
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Выполнить обслуживание БД";
+    }
+    
+    @Override
+    public String getUsage() {
+        return "/cashpro maintenance [vacuum]";
+    }
+}
@@ -0,0 +1,106 @@
+package com.mishkaworld.cashpro.commands.admin;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.commands.SubCommand;
+import com.mishkaworld.cashpro.database.DataTable;
+import com.mishkaworld.cashpro.database.DatabaseDialect;
+import com.mishkaworld.cashpro.database.DatabaseMigrator;
+import com.mishkaworld.cashpro.utils.MessageUtils;
+import org.bukkit.command.CommandSender;
+
+import java.util.Map;
+
+/**
+ * Подкоманда переноса данных между SQLite и MySQL
+ * 
+ * @author Misha Ermakov
+ */
+public class MigrateCommand implements SubCommand {
+    
+    private final CashProReloaded plugin;
+    private final DatabaseMigrator databaseMigrator;
+    
+    public MigrateCommand(CashProReloaded plugin) {
+        this.plugin = plugin;
+        this.databaseMigrator = new DatabaseMigrator(plugin);
+    }
+    
+    @Override
+    public void execute(CommandSender sender, String[] args) {
+        if (!plugin.isReady()) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("errors.not_ready")));
+            return;
+        }
+        
+        DatabaseDialect source = args.length >= 3 ? DatabaseDialect.fromName(args[1]) : null;
+        DatabaseDialect target = args.length >= 3 ? DatabaseDialect.fromName(args[2]) : null;
+        if (source == null || target == null || source == target) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("usage.cashpro_migrate")));
+            return;
+        }
+        boolean restart = args.length >= 4 && args[3].equalsIgnoreCase("restart");
+        
+        if (!databaseMigrator.tryStart()) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("transfer.busy")));
+            return;
+        }
+        
+        sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("transfer.migrate_started",
+            "source", source.name().toLowerCase(),
+            "target", target.name().toLowerCase()
+        )));
+        
+        // Перенос использует собственные соединения и потоки, исполнитель БД плагина не занимается
+        Thread thread = new Thread(() -> {
+            try {
+                long start = System.currentTimeMillis();
+                Map<DataTable, DatabaseMigrator.TableReport> reports = databaseMigrator.migrate(source, target, restart,
+                    processed -> sendProgress(sender, processed));
+                
+                boolean verified = true;
+                for (Map.Entry<DataTable, DatabaseMigrator.TableReport> entry : reports.entrySet()) {
+                    DatabaseMigrator.TableReport report = entry.getValue();
+                    verified &= report.isMatching();
+                    MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage(
+                        report.isMatching() ? "transfer.migrate_table" : "transfer.migrate_table_mismatch",
+                        "table", entry.getKey().getTableName(),
+                        "source_rows", String.valueOf(report.getSource().getRows()),
+                        "target_rows", String.valueOf(report.getTarget().getRows())
+                    )));
+                }
+                
+                MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage(
+                    verified ? "transfer.migrated" : "transfer.migrate_mismatch",
+                    "time", String.valueOf(System.currentTimeMillis() - start)
+                )));
+            } catch (Exception e) {
+                MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transfer.failed", "error", String.valueOf(e.getMessage()))));
+                plugin.getLogger().severe("Ошибка при переносе данных между БД: " + e.getMessage());
+                e.printStackTrace();
+            } finally {
+                databaseMigrator.finish();
+            }
+        }, "CashPro-Migration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    private void sendProgress(CommandSender sender, long rows) {
+        MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transfer.progress", "rows", String.valueOf(rows))));
+    }
+    
+    @Override
+    public boolean isReadOnly() {
+        return false;
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Перенести данные между БД";
+    }
+    
+    @Override
+    public String getUsage() {
+        return "/cashpro migrate <откуда> <куда> [restart]";
+    }
+}
@@ -0,0 +1,89 @@
+package com.mishkaworld.cashpro.commands.admin;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.commands.SubCommand;
+import com.mishkaworld.cashpro.database.ContentionStats;
+import com.mishkaworld.cashpro.database.Ledger;
+import com.mishkaworld.cashpro.database.ReadStats;
+import com.mishkaworld.cashpro.economy.RateLimiter;
+import com.mishkaworld.cashpro.utils.MessageUtils;
+import org.bukkit.command.CommandSender;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Подкоманда статистики журнала операций, конфликтов записи, чтения, ограничений и запуска
+ * 
+ * @author Misha Ermakov
+ */
+public class StatsCommand implements SubCommand {
+    
+    private final CashProReloaded plugin;
+    
+    public StatsCommand(CashProReloaded plugin) {
+        this.plugin = plugin;
+    }
+    
+    @Override
+    public void execute(CommandSender sender, String[] args) {
+        Ledger ledger = plugin.getLedger();
+        long commits = ledger.getCommits();
+        
+        sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("stats.ledger",
+            "mutations", String.valueOf(ledger.getMutations()),
+            "commits", String.valueOf(commits),
+            "per_commit", String.format(Locale.ROOT, "%.1f", commits > 0 ? (double) ledger.getMutations() / commits : 0),
+            "rejected", String.valueOf(ledger.getRejected()),
+            "failed", String.valueOf(ledger.getFailed()),
+            "queued", String.valueOf(ledger.getQueued())
+        )));
+        
+        ContentionStats contention = plugin.getDatabaseManager().getContentionStats();
+        sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("stats.contention",
+            "attempts", String.valueOf(contention.getAttempts()),
+            "conflicts", String.valueOf(contention.getConflicts()),
+            "rate", String.format(Locale.ROOT, "%.2f", contention.getConflictRate() * 100),
+            "exhausted", String.valueOf(contention.getExhausted()),
+            "max_retries", String.valueOf(contention.getMaxRetries()),
+            "backoff", String.valueOf(contention.getBackoffMillis())
+        )));
+        
+        ReadStats reads = plugin.getDatabaseManager().getReadStats();
+        sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("stats.reads",
+            "reads", String.valueOf(reads.getReads()),
+            "readers", String.valueOf(plugin.getDatabaseManager().getReaderCount()),
+            "wait", String.format(Locale.ROOT, "%.2f", reads.getAverageWaitMillis()),
+            "max_wait", String.format(Locale.ROOT, "%.2f", reads.getMaxWaitMillis()),
+            "query", String.format(Locale.ROOT, "%.2f", reads.getAverageQueryMillis())
+        )));
+        
+        sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("stats.rate_limits",
+            "pay", String.valueOf(plugin.getRateLimiter().getRejections(RateLimiter.PAY)),
+            "api", String.valueOf(plugin.getRateLimiter().getRejections(RateLimiter.API))
+        )));
+        
+        // Длительность фаз запуска
+        for (Map.Entry<String, Long> phase : plugin.getStartupTimings().entrySet()) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("stats.startup_phase",
+                "phase", phase.getKey(),
+                "time", String.valueOf(phase.getValue())
+            )));
+        }
+    }
+    
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Показать статистику плагина";
+    }
+    
+    @Override
+    public String getUsage() {
+        return "/cashpro stats";
+    }
+}
@@ -0,0 +1,95 @@
+package com.mishkaworld.cashpro.commands.admin;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.commands.SubCommand;
+import com.mishkaworld.cashpro.database.DataTransfer;
+import com.mishkaworld.cashpro.utils.MessageUtils;
+import org.bukkit.command.CommandSender;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Общая часть подкоманд экспорта и импорта: файлы в папке exports
+ * и выполнение переноса в фоне
+ * 
+ * @author Misha Ermakov
+ */
+abstract class TransferCommand implements SubCommand {
+    
+    protected final CashProReloaded plugin;
+    protected final DataTransfer dataTransfer;
+    
+    protected TransferCommand(CashProReloaded plugin) {
+        this.plugin = plugin;
+        this.dataTransfer = plugin.getDataTransfer();
+    }
+    
+    @Override
+    public void execute(CommandSender sender, String[] args) {
+        if (!plugin.isReady()) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("errors.not_ready")));
+            return;
+        }
+        executeTransfer(sender, args);
+    }
+    
+    /**
+     * Выполнить подкоманду после проверки готовности плагина
+     */
+    protected abstract void executeTransfer(CommandSender sender, String[] args);
+    
+    /**
+     * Выполнить перенос данных в фоне (одновременно не больше одного)
+     */
+    protected void runTransfer(CommandSender sender, File file, TransferTask task) {
+        if (!dataTransfer.tryStart()) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("transfer.busy")));
+            return;
+        }
+        
+        sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("transfer.started", "file", file.getName())));
+        
+        plugin.getStorageExecutor().execute(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transfer.failed", "error", String.valueOf(e.getMessage()))));
+                plugin.getLogger().severe("Ошибка при переносе данных (" + file.getName() + "): " + e.getMessage());
+                e.printStackTrace();
+            } finally {
+                dataTransfer.finish();
+            }
+        });
+    }
+    
+    protected void sendProgress(CommandSender sender, long rows) {
+        MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transfer.progress", "rows", String.valueOf(rows))));
+    }
+    
+    /**
+     * Получить файл в папке exports
+     * 
+     * @return файл или null если путь выходит за пределы папки
+     */
+    protected File resolveFile(String fileName) {
+        File directory = dataTransfer.getDirectory();
+        File file = new File(directory, fileName);
+        try {
+            if (!file.getCanonicalPath().startsWith(directory.getCanonicalPath() + File.separator)) {
+                return null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return file;
+    }
+    
+    /**
+     * Задача переноса данных
+     */
+    @FunctionalInterface
+    protected interface TransferTask {
+        void run() throws Exception;
+    }
+}
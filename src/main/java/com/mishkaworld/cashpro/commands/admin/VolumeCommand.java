@@ -0,0 +1,153 @@
+package com.mishkaworld.cashpro.commands.admin;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.commands.SubCommand;
+import com.mishkaworld.cashpro.database.RollupBucket;
+import com.mishkaworld.cashpro.economy.RollupGranularity;
+import com.mishkaworld.cashpro.economy.Transaction;
+import com.mishkaworld.cashpro.utils.MessageUtils;
+import org.bukkit.command.CommandSender;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Подкоманда сводной статистики транзакций
+ * 
+ * @author Misha Ermakov
+ */
+public class VolumeCommand implements SubCommand {
+    
+    private final CashProReloaded plugin;
+    
+    public VolumeCommand(CashProReloaded plugin) {
+        this.plugin = plugin;
+    }
+    
+    @Override
+    public void execute(CommandSender sender, String[] args) {
+        if (!plugin.isReady()) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("errors.not_ready")));
+        } else if (args.length >= 2 && args[1].equalsIgnoreCase("rebuild")) {
+            rebuildVolume(sender);
+        } else {
+            showVolume(sender, args);
+        }
+    }
+    
+    /**
+     * Показать оборот валюты: /cashpro volume <валюта> <minute|hour|day> [количество] [тип]
+     */
+    private void showVolume(CommandSender sender, String[] args) {
+        RollupGranularity granularity = args.length >= 3 ? RollupGranularity.fromName(args[2]) : null;
+        if (granularity == null) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("usage.cashpro_volume")));
+            return;
+        }
+        
+        String currency = args[1].toLowerCase();
+        if (!plugin.getCurrencyManager().currencyExists(currency)) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("economy.unknown_currency", "currency", currency)));
+            return;
+        }
+        
+        int count;
+        Transaction.TransactionType type = null;
+        try {
+            count = args.length >= 4 ? Math.min(1440, Math.max(1, Integer.parseInt(args[3]))) : 24;
+            if (args.length >= 5) {
+                type = Transaction.TransactionType.valueOf(args[4].toUpperCase(Locale.ROOT));
+            }
+        } catch (IllegalArgumentException e) {
+            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("usage.cashpro_volume")));
+            return;
+        }
+        
+        Transaction.TransactionType filter = type;
+        plugin.getStorageExecutor().execute(() -> {
+            List<RollupBucket> buckets = plugin.getTransactionRollups().getVolume(currency, granularity, filter, count);
+            if (buckets.isEmpty()) {
+                MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("volume.empty")));
+                return;
+            }
+            
+            String symbol = plugin.getCurrencyManager().getCurrencySymbol(currency);
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern(granularity == RollupGranularity.DAY ? "dd.MM.yyyy" : "dd.MM HH:mm");
+            
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("volume.header",
+                "currency", plugin.getCurrencyManager().getCurrencyName(currency),
+                "granularity", granularity.getKey(),
+                "type", filter != null ? filter.name() : plugin.getConfigManager().getMessage("volume.all_types")
+            )));
+            
+            long totalCount = 0;
+            long totalSum = 0;
+            for (RollupBucket bucket : buckets) {
+                totalCount += bucket.getCount();
+                totalSum += bucket.getSum();
+                LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochSecond(bucket.getBucketStart()), ZoneId.systemDefault());
+                MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("volume.line",
+                    "time", time.format(formatter),
+                    "count", String.valueOf(bucket.getCount()),
+                    "sum", MessageUtils.formatNumber(bucket.getSum()),
+                    "max", MessageUtils.formatNumber(bucket.getMax()),
+                    "symbol", symbol
+                )));
+            }
+            
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("volume.total",
+                "count", String.valueOf(totalCount),
+                "sum", MessageUtils.formatNumber(totalSum),
+                "symbol", symbol
+            )));
+        });
+    }
+    
+    /**
+     * Перестроить сводку транзакций по всей истории: /cashpro volume rebuild
+     */
+    private void rebuildVolume(CommandSender sender) {
+        sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("volume.rebuild_started")));
+        
+        plugin.getStorageExecutor().execute(() -> {
+            try {
+                long start = System.currentTimeMillis();
+                long[] nextProgress = {100_000};
+                boolean started = plugin.getTransactionRollups().rebuild(rows -> {
+                    if (rows >= nextProgress[0]) {
+                        MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("volume.rebuild_progress",
+                            "rows", String.valueOf(rows))));
+                        nextProgress[0] += 100_000;
+                    }
+                });
+                
+                MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage(
+                    started ? "volume.rebuilt" : "volume.rebuild_busy",
+                    "time", String.valueOf(System.currentTimeMillis() - start)
+                )));
+            } catch (Exception e) {
+                MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("volume.rebuild_failed", "error", String.valueOf(e.getMessage()))));
+                plugin.getLogger().severe("Ошибка при перестроении сводки транзакций: " + e.getMessage());
+            }
+        });
+    }
+    
+    @Override
+    public boolean isReadOnly() {
+        return false;
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Показать или перестроить сводку транзакций";
+    }
+    
+    @Override
+    public String getUsage() {
+        return "/cashpro volume <валюта> <minute|hour|day> [количество] [тип]";
+    }
+}
@@ -32,13 +32,13 @@ public class BalanceCommand implements SubCommand {
         } else if (sender instanceof Player) {
             targetPlayer = sender.getName();
         } else {
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("errors.specify_player")));
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("errors.specify_player")));
             return;
         }
         
         // Проверка существования игрока
         if (!ValidationUtils.playerExists(targetPlayer)) {
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("player_not_found", "player", targetPlayer)));
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("player_not_found", "player", targetPlayer)));
             return;
         }
         
@@ -48,13 +48,18 @@ public class BalanceCommand implements SubCommand {
         String currencyName = plugin.getCurrencyManager().getCurrencyName(currency);
         
         // Отображение баланса
-        sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("balance.balance_line", 
+        MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("balance.balance_line", 
             "currency", currencyName,
             "amount", MessageUtils.formatNumber(balance),
             "symbol", symbol
         )));
     }
     
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+    
     @Override
     public String getDescription() {
         return "Показать баланс игрока";
@@ -2,11 +2,12 @@ package com.mishkaworld.cashpro.commands.subcommands;
 
 import com.mishkaworld.cashpro.CashProReloaded;
 import com.mishkaworld.cashpro.commands.SubCommand;
+import com.mishkaworld.cashpro.economy.PlayerNameIndex;
 import com.mishkaworld.cashpro.utils.MessageUtils;
 import com.mishkaworld.cashpro.utils.ValidationUtils;
-import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
-import org.bukkit.entity.Player;
+
+import java.util.UUID;
 
 /**
  * Административная подкоманда для выдачи валюты
@@ -27,7 +28,7 @@ public class GiveCommand implements SubCommand {
     public void execute(CommandSender sender, String[] args) {
         // Проверка количества аргументов
         if (args.length < 3) {
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("usage.currency_give", "currency", currency)));
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("usage.currency_give", "currency", currency)));
             return;
         }
         
@@ -36,42 +37,49 @@ public class GiveCommand implements SubCommand {
         
         // Проверка существования целевого игрока
         if (!ValidationUtils.playerExists(targetPlayerName)) {
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("player_not_found", "player", targetPlayerName)));
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("player_not_found", "player", targetPlayerName)));
             return;
         }
         
         // Валидация суммы
         Long amount = ValidationUtils.parseAmount(amountStr);
         if (amount == null) {
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("invalid_amount")));
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("invalid_amount")));
             return;
         }
         
-        // Получение целевого игрока
-        Player targetPlayer = Bukkit.getPlayer(targetPlayerName);
-        if (targetPlayer == null) {
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("errors.player_not_online", "player", targetPlayerName)));
+        // Получение целевого игрока из индекса имён (игрок может быть оффлайн)
+        PlayerNameIndex nameIndex = plugin.getCurrencyManager().getNameIndex();
+        UUID targetUuid = nameIndex.getUuid(targetPlayerName);
+        if (targetUuid == null) {
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("player_not_found", "player", targetPlayerName)));
             return;
         }
+        String targetName = nameIndex.getName(targetUuid);
         
         // Выдача валюты
         boolean success = plugin.getCurrencyManager().addBalance(
-            targetPlayer.getUniqueId(), targetPlayer.getName(),
+            targetUuid, targetName,
             currency, amount
         );
         
         if (success) {
             String symbol = plugin.getCurrencyManager().getCurrencySymbol(currency);
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("admin.give_success",
-                "player", targetPlayer.getName(),
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("admin.give_success",
+                "player", targetName,
                 "amount", MessageUtils.formatNumber(amount),
                 "symbol", symbol
             )));
         } else {
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("admin.operation_failed")));
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("admin.operation_failed")));
         }
     }
     
+    @Override
+    public boolean isReadOnly() {
+        return false;
+    }
+    
     @Override
     public String getDescription() {
         return "Выдать валюту игроку";
@@ -2,12 +2,15 @@ package com.mishkaworld.cashpro.commands.subcommands;
 
 import com.mishkaworld.cashpro.CashProReloaded;
 import com.mishkaworld.cashpro.commands.SubCommand;
+import com.mishkaworld.cashpro.economy.PlayerNameIndex;
 import com.mishkaworld.cashpro.utils.MessageUtils;
 import com.mishkaworld.cashpro.utils.ValidationUtils;
 import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.util.UUID;
+
 /**
  * Подкоманда для переводов между игроками
  * 
@@ -27,7 +30,7 @@ public class PayCommand implements SubCommand {
     public void execute(CommandSender sender, String[] args) {
         // Проверка, что команда выполняется игроком
         if (!(sender instanceof Player)) {
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("errors.player_only_command")));
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("errors.player_only_command")));
             return;
         }
         
@@ -35,7 +38,7 @@ public class PayCommand implements SubCommand {
         
         // Проверка количества аргументов
         if (args.length < 3) {
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("usage.currency_pay", "currency", currency)));
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("usage.currency_pay", "currency", currency)));
             return;
         }
         
@@ -44,35 +47,37 @@ public class PayCommand implements SubCommand {
         
         // Проверка существования целевого игрока
         if (!ValidationUtils.playerExists(targetPlayerName)) {
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("player_not_found", "player", targetPlayerName)));
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("player_not_found", "player", targetPlayerName)));
             return;
         }
         
         // Проверка, что игрок не пытается перевести деньги самому себе
         if (player.getName().equalsIgnoreCase(targetPlayerName)) {
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("cannot_pay_yourself")));
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("cannot_pay_yourself")));
             return;
         }
         
         // Валидация суммы
         Long amount = ValidationUtils.parseAmount(amountStr);
         if (amount == null) {
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("invalid_amount")));
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("invalid_amount")));
             return;
         }
         
-        // Получение целевого игрока
-        Player targetPlayer = Bukkit.getPlayer(targetPlayerName);
-        if (targetPlayer == null) {
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("errors.player_not_online", "player", targetPlayerName)));
+        // Получение целевого игрока из индекса имён (игрок может быть оффлайн)
+        PlayerNameIndex nameIndex = plugin.getCurrencyManager().getNameIndex();
+        UUID targetUuid = nameIndex.getUuid(targetPlayerName);
+        if (targetUuid == null) {
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("player_not_found", "player", targetPlayerName)));
             return;
         }
+        String targetName = nameIndex.getName(targetUuid);
         
         // Проверка баланса
         long currentBalance = plugin.getCurrencyManager().getBalance(player.getUniqueId(), currency);
         if (currentBalance < amount) {
             String symbol = plugin.getCurrencyManager().getCurrencySymbol(currency);
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("insufficient_funds", 
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("insufficient_funds", 
                 "balance", MessageUtils.formatNumber(currentBalance),
                 "symbol", symbol
             )));
@@ -82,7 +87,7 @@ public class PayCommand implements SubCommand {
         // Выполнение перевода
         boolean success = plugin.getCurrencyManager().transferMoney(
             player.getUniqueId(), player.getName(),
-            targetPlayer.getUniqueId(), targetPlayer.getName(),
+            targetUuid, targetName,
             currency, amount
         );
         
@@ -90,23 +95,31 @@ public class PayCommand implements SubCommand {
             String symbol = plugin.getCurrencyManager().getCurrencySymbol(currency);
             
             // Сообщение отправителю
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("pay.success_sender",
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("pay.success_sender",
                 "amount", MessageUtils.formatNumber(amount),
                 "symbol", symbol,
-                "player", targetPlayer.getName()
+                "player", targetName
             )));
             
-            // Сообщение получателю
-            targetPlayer.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("pay.success_receiver",
-                "amount", MessageUtils.formatNumber(amount),
-                "symbol", symbol,
-                "sender", player.getName()
-            )));
+            // Сообщение получателю, если он в сети
+            Player targetPlayer = Bukkit.getPlayer(targetUuid);
+            if (targetPlayer != null) {
+                MessageUtils.send(targetPlayer, MessageUtils.format(plugin.getConfigManager().getMessage("pay.success_receiver",
+                    "amount", MessageUtils.formatNumber(amount),
+                    "symbol", symbol,
+                    "sender", player.getName()
+                )));
+            }
         } else {
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("pay.failed")));
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("pay.failed")));
         }
     }
     
+    @Override
+    public boolean isReadOnly() {
+        return false;
+    }
+    
     @Override
     public String getDescription() {
         return "Перевести деньги другому игроку";
@@ -2,14 +2,17 @@ package com.mishkaworld.cashpro.commands.subcommands;
 
 import com.mishkaworld.cashpro.CashProReloaded;
 import com.mishkaworld.cashpro.commands.SubCommand;
-import com.mishkaworld.cashpro.database.DatabaseManager;
+import com.mishkaworld.cashpro.economy.LeaderboardSnapshot;
+import com.mishkaworld.cashpro.economy.PlayerBalance;
 import com.mishkaworld.cashpro.utils.MessageUtils;
+import com.mishkaworld.cashpro.utils.ValidationUtils;
 import org.bukkit.command.CommandSender;
 
 import java.util.List;
 
 /**
  * Подкоманда для отображения топ игроков
+ * Страницы читаются из снимка рейтинга, без запросов к БД
  * 
  * @author Misha Ermakov
  */
@@ -25,11 +28,29 @@ public class TopCommand implements SubCommand {
     
     @Override
     public void execute(CommandSender sender, String[] args) {
-        // Получение топ игроков
-        List<DatabaseManager.PlayerBalance> topPlayers = plugin.getCurrencyManager().getTopPlayers(currency, 10);
+        int page = 1;
+        
+        // Определение страницы (если указана)
+        if (args.length > 1) {
+            if (!ValidationUtils.isValidPage(args[1])) {
+                MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("top.invalid_page")));
+                return;
+            }
+            page = ValidationUtils.parsePage(args[1]);
+        }
+        
+        // Получение страницы топ игроков из снимка рейтинга
+        int pageSize = plugin.getConfigManager().getLeaderboardPageSize();
+        LeaderboardSnapshot snapshot = plugin.getLeaderboardManager().getSnapshot(currency);
+        List<PlayerBalance> topPlayers = snapshot.getPage(page, pageSize);
+        
+        if (snapshot.size() == 0) {
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("top.no_data")));
+            return;
+        }
         
         if (topPlayers.isEmpty()) {
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("top.no_data")));
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("top.invalid_page")));
             return;
         }
         
@@ -37,16 +58,18 @@ public class TopCommand implements SubCommand {
         String symbol = plugin.getCurrencyManager().getCurrencySymbol(currency);
         
         // Отображение заголовка
-        sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("top.title",
-            "currency", currencyName
+        MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("top.title",
+            "currency", currencyName,
+            "page", String.valueOf(page),
+            "total_pages", String.valueOf(snapshot.getTotalPages(pageSize))
         )));
         
         // Отображение игроков
         for (int i = 0; i < topPlayers.size(); i++) {
-            DatabaseManager.PlayerBalance playerBalance = topPlayers.get(i);
-            int position = i + 1;
+            PlayerBalance playerBalance = topPlayers.get(i);
+            int position = (page - 1) * pageSize + i + 1;
             
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("top.player_line",
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("top.player_line",
                 "position", String.valueOf(position),
                 "player", playerBalance.getPlayerName(),
                 "amount", MessageUtils.formatNumber(playerBalance.getBalance()),
@@ -55,7 +78,12 @@ public class TopCommand implements SubCommand {
         }
         
         // Отображение подвала
-        sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("top.footer")));
+        MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("top.footer")));
+    }
+    
+    @Override
+    public boolean isReadOnly() {
+        return true;
     }
     
     @Override
@@ -65,6 +93,6 @@ public class TopCommand implements SubCommand {
     
     @Override
     public String getUsage() {
-        return "/" + currency + " top";
+        return "/" + currency + " top [страница]";
     }
 } 
\ No newline at end of file
@@ -2,13 +2,29 @@ package com.mishkaworld.cashpro.commands.subcommands;
 
 import com.mishkaworld.cashpro.CashProReloaded;
 import com.mishkaworld.cashpro.commands.SubCommand;
+import com.mishkaworld.cashpro.database.DataTransfer;
+import com.mishkaworld.cashpro.database.TransactionQuery;
+import com.mishkaworld.cashpro.economy.PlayerNameIndex;
 import com.mishkaworld.cashpro.economy.Transaction;
 import com.mishkaworld.cashpro.utils.MessageUtils;
 import com.mishkaworld.cashpro.utils.ValidationUtils;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.io.File;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
 
 /**
  * Подкоманда для просмотра транзакций
@@ -17,8 +33,20 @@ import java.util.List;
  */
 public class TransactionsCommand implements SubCommand {
     
+    private static final int SEARCH_PAGE_SIZE = 10;
+    private static final int HISTORY_PAGE_SIZE = 10;
+    // Сколько историй (просматривающий + игрок) помнят курсоры своих страниц
+    private static final int MAX_CURSOR_HISTORIES = 256;
+    
     private final CashProReloaded plugin;
     private final String currency;
+    // Курсоры конца прочитанных страниц: ключ - просматривающий и игрок, индекс - номер страницы - 1
+    private final Map<String, List<String>> pageCursors = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+            return size() > MAX_CURSOR_HISTORIES;
+        }
+    };
     
     public TransactionsCommand(CashProReloaded plugin, String currency) {
         this.plugin = plugin;
@@ -27,6 +55,11 @@ public class TransactionsCommand implements SubCommand {
     
     @Override
     public void execute(CommandSender sender, String[] args) {
+        if (args.length > 1 && args[1].equalsIgnoreCase("search")) {
+            search(sender, args);
+            return;
+        }
+        
         String targetPlayer = null;
         int page = 1;
         
@@ -38,7 +71,7 @@ public class TransactionsCommand implements SubCommand {
                     targetPlayer = sender.getName();
                     page = ValidationUtils.parsePage(args[1]);
                 } else {
-                    sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("errors.player_only_command")));
+                    MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("errors.player_only_command")));
                     return;
                 }
             } else {
@@ -47,20 +80,20 @@ public class TransactionsCommand implements SubCommand {
                 
                 // Проверка прав администратора
                 if (!sender.hasPermission("cashpro." + currency + ".admin")) {
-                    sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("no_permission")));
+                    MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("no_permission")));
                     return;
                 }
                 
                 // Проверка существования игрока
                 if (!ValidationUtils.playerExists(targetPlayer)) {
-                    sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("player_not_found", "player", targetPlayer)));
+                    MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("player_not_found", "player", targetPlayer)));
                     return;
                 }
                 
                 // Определение страницы (если указана)
                 if (args.length > 2) {
                     if (!ValidationUtils.isValidPage(args[2])) {
-                        sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("transactions.invalid_page")));
+                        MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transactions.invalid_page")));
                         return;
                     }
                     page = ValidationUtils.parsePage(args[2]);
@@ -71,39 +104,350 @@ public class TransactionsCommand implements SubCommand {
             if (sender instanceof Player) {
                 targetPlayer = sender.getName();
             } else {
-                sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("errors.player_only_command")));
+                MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("errors.player_only_command")));
                 return;
             }
         }
         
+        // История хранится по UUID, поэтому переживает смену ника
+        PlayerNameIndex nameIndex = plugin.getCurrencyManager().getNameIndex();
+        UUID targetUuid = sender instanceof Player && sender.getName().equalsIgnoreCase(targetPlayer)
+            ? ((Player) sender).getUniqueId()
+            : nameIndex.getUuid(targetPlayer);
+        if (targetUuid == null) {
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transactions.no_transactions")));
+            return;
+        }
+        
         // Получение общего количества транзакций и вычисление количества страниц
-        int totalTransactions = plugin.getCurrencyManager().getPlayerTransactionsCount(targetPlayer, currency);
-        int pageSize = 10; // Размер страницы
-        int totalPages = (int) Math.ceil((double) totalTransactions / pageSize);
+        int totalTransactions = plugin.getCurrencyManager().getPlayerTransactionsCount(targetUuid, currency);
+        int totalPages = (int) Math.ceil((double) totalTransactions / HISTORY_PAGE_SIZE);
+        if (totalPages == 0) {
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transactions.no_transactions")));
+            return;
+        }
+        
+        // Страница за концом истории не читается: иначе до неё пришлось бы пройти всю историю
+        if (page > totalPages) {
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transactions.invalid_page")));
+            return;
+        }
         
         // Получение транзакций
-        List<Transaction> transactions = plugin.getCurrencyManager().getPlayerTransactions(targetPlayer, currency, page);
+        List<Transaction> transactions;
+        try {
+            transactions = readHistoryPage(sender.getName() + ":" + targetUuid, targetUuid, page);
+        } catch (Exception e) {
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("errors.database_error")));
+            plugin.getLogger().severe("Ошибка при получении транзакций: " + e.getMessage());
+            return;
+        }
         
         if (transactions.isEmpty()) {
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("transactions.no_transactions")));
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transactions.no_transactions")));
             return;
         }
         
         // Отображение заголовка
-        sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("transactions.title",
+        MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transactions.title",
             "page", String.valueOf(page),
             "total_pages", String.valueOf(totalPages)
         )));
         
-        // Отображение транзакций
+        // Отображение транзакций с актуальными именами участников
         for (Transaction transaction : transactions) {
-            sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("transactions.transaction_line",
-                "transaction", transaction.getFormattedString()
+            String fromName = resolveName(nameIndex, transaction.getFromUuid(), transaction.getFromPlayer());
+            String toName = resolveName(nameIndex, transaction.getToUuid(), transaction.getToPlayer());
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transactions.transaction_line",
+                "transaction", transaction.getFormattedString(fromName, toName)
             )));
         }
         
         // Отображение подвала
-        sender.sendMessage(MessageUtils.format(plugin.getConfigManager().getMessage("transactions.footer")));
+        MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transactions.footer")));
+    }
+    
+    /**
+     * Прочитать страницу истории игрока
+     * Страница читается по курсору конца предыдущей страницы. Курсоры
+     * запоминаются для каждого просматривающего, поэтому листание по одной
+     * странице - один запрос ограниченного размера. При переходе вперёд
+     * через несколько страниц пропущенные страницы читаются по очереди
+     * от последнего известного курсора
+     */
+    private List<Transaction> readHistoryPage(String key, UUID targetUuid, int page) throws SQLException {
+        List<String> cursors;
+        synchronized (pageCursors) {
+            cursors = new ArrayList<>(pageCursors.getOrDefault(key, List.of()));
+        }
+        
+        // Первая страница всегда читается заново, чтобы показать новые транзакции
+        if (page == 1) {
+            cursors.clear();
+        }
+        
+        int known = Math.min(cursors.size(), page - 1);
+        String cursor = known > 0 ? cursors.get(known - 1) : null;
+        TransactionQuery.Page result = null;
+        
+        for (int current = known + 1; current <= page; current++) {
+            result = plugin.getCurrencyManager().getPlayerTransactions(targetUuid, currency, cursor, HISTORY_PAGE_SIZE);
+            cursor = result.getNextCursor();
+            
+            if (cursors.size() >= current) {
+                cursors.subList(current - 1, cursors.size()).clear();
+            }
+            if (cursor == null) {
+                break;
+            }
+            cursors.add(cursor);
+        }
+        
+        synchronized (pageCursors) {
+            pageCursors.put(key, cursors);
+        }
+        
+        // Страница за концом истории пуста
+        if (result == null || (cursor == null && cursors.size() < page - 1)) {
+            return List.of();
+        }
+        return result.getTransactions();
+    }
+    
+    /**
+     * Поиск транзакций по фильтрам: /<валюта> trans search [player:<игрок>] [with:<игрок>]
+     * [type:<тип>] [min:<сумма>] [max:<сумма>] [since:<время>] [until:<время>]
+     * [after:<курсор>] [export:<csv|jsonl>]
+     */
+    private void search(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("cashpro." + currency + ".admin") && !sender.hasPermission("cashpro.admin")) {
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("no_permission")));
+            return;
+        }
+        
+        PlayerNameIndex nameIndex = plugin.getCurrencyManager().getNameIndex();
+        TransactionQuery query = new TransactionQuery(currency);
+        DataTransfer.Format exportFormat = null;
+        
+        for (int i = 2; i < args.length; i++) {
+            String arg = args[i];
+            int separator = arg.indexOf(':');
+            if (separator <= 0) {
+                sendSearchUsage(sender);
+                return;
+            }
+            String key = arg.substring(0, separator).toLowerCase(Locale.ROOT);
+            String value = arg.substring(separator + 1);
+            
+            if (key.equals("player") || key.equals("with")) {
+                UUID playerUuid = nameIndex.getUuid(value);
+                if (playerUuid == null) {
+                    MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("player_not_found", "player", value)));
+                    return;
+                }
+                if (key.equals("player")) {
+                    query.setParticipant(playerUuid);
+                } else {
+                    query.setCounterparty(playerUuid);
+                }
+            } else if (key.equals("type")) {
+                Transaction.TransactionType type = parseType(value);
+                if (type == null) {
+                    sendInvalidFilter(sender, arg);
+                    return;
+                }
+                query.setType(type);
+            } else if (key.equals("min") || key.equals("max")) {
+                Long amount = parseAmount(value);
+                if (amount == null) {
+                    sendInvalidFilter(sender, arg);
+                    return;
+                }
+                if (key.equals("min")) {
+                    query.setMinAmount(amount);
+                } else {
+                    query.setMaxAmount(amount);
+                }
+            } else if (key.equals("since") || key.equals("until")) {
+                LocalDateTime time = parseTime(value);
+                if (time == null) {
+                    sendInvalidFilter(sender, arg);
+                    return;
+                }
+                if (key.equals("since")) {
+                    query.setSince(time);
+                } else {
+                    query.setUntil(time);
+                }
+            } else if (key.equals("after")) {
+                if (!query.setCursor(value)) {
+                    sendInvalidFilter(sender, arg);
+                    return;
+                }
+            } else if (key.equals("export")) {
+                exportFormat = DataTransfer.Format.fromName(value);
+                if (exportFormat == null) {
+                    sendInvalidFilter(sender, arg);
+                    return;
+                }
+            } else {
+                sendSearchUsage(sender);
+                return;
+            }
+        }
+        
+        if (exportFormat != null) {
+            export(sender, query, exportFormat);
+            return;
+        }
+        
+        TransactionQuery.Page page;
+        try {
+            page = plugin.getCurrencyManager().searchTransactions(query, SEARCH_PAGE_SIZE);
+        } catch (Exception e) {
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("errors.database_error")));
+            plugin.getLogger().severe("Ошибка при поиске транзакций: " + e.getMessage());
+            return;
+        }
+        
+        if (page.getTransactions().isEmpty()) {
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transactions.no_transactions")));
+            return;
+        }
+        
+        MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transactions.search_title",
+            "currency", currency,
+            "count", String.valueOf(page.getTransactions().size())
+        )));
+        
+        for (Transaction transaction : page.getTransactions()) {
+            String fromName = resolveName(nameIndex, transaction.getFromUuid(), transaction.getFromPlayer());
+            String toName = resolveName(nameIndex, transaction.getToUuid(), transaction.getToPlayer());
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transactions.transaction_line",
+                "transaction", transaction.getFormattedString(fromName, toName)
+            )));
+        }
+        
+        // Следующая страница - та же команда с курсором последней строки
+        if (page.getNextCursor() != null) {
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transactions.search_next",
+                "cursor", "after:" + page.getNextCursor()
+            )));
+        }
+        
+        MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transactions.footer")));
+    }
+    
+    /**
+     * Выгрузить все результаты поиска в папку exports в фоне
+     */
+    private void export(CommandSender sender, TransactionQuery query, DataTransfer.Format format) {
+        DataTransfer dataTransfer = plugin.getDataTransfer();
+        if (!dataTransfer.tryStart()) {
+            MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transfer.busy")));
+            return;
+        }
+        
+        File file = new File(dataTransfer.getDirectory(), "search-" + currency + "-"
+            + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + "." + format.getExtension());
+        MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transfer.started", "file", file.getName())));
+        
+        // Отдельная задача освобождает слот команды отправителя на время выгрузки
+        plugin.getStorageExecutor().execute(() -> {
+            try {
+                long start = System.currentTimeMillis();
+                long rows = dataTransfer.exportSearch(query, format, file, processed ->
+                    MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transfer.progress", "rows", String.valueOf(processed)))));
+                MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transfer.exported",
+                    "rows", String.valueOf(rows),
+                    "file", file.getName(),
+                    "time", String.valueOf(System.currentTimeMillis() - start)
+                )));
+            } catch (Exception e) {
+                MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transfer.failed", "error", String.valueOf(e.getMessage()))));
+                plugin.getLogger().severe("Ошибка при выгрузке поиска транзакций (" + file.getName() + "): " + e.getMessage());
+            } finally {
+                dataTransfer.finish();
+            }
+        });
+    }
+    
+    private void sendSearchUsage(CommandSender sender) {
+        MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("usage.currency_trans_search", "currency", currency)));
+    }
+    
+    private void sendInvalidFilter(CommandSender sender, String filter) {
+        MessageUtils.send(sender, MessageUtils.format(plugin.getConfigManager().getMessage("transactions.search_invalid_filter", "filter", filter)));
+    }
+    
+    private Transaction.TransactionType parseType(String value) {
+        try {
+            return Transaction.TransactionType.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    private Long parseAmount(String value) {
+        try {
+            long amount = Long.parseLong(value);
+            return amount >= 0 ? amount : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Разобрать время фильтра: давность (30m, 12h, 7d), дата (2024-05-01)
+     * или дата со временем (2024-05-01T18:30)
+     * 
+     * @return время или null если формат неверный
+     */
+    private LocalDateTime parseTime(String value) {
+        if (value.length() >= 2) {
+            char unit = Character.toLowerCase(value.charAt(value.length() - 1));
+            if (unit == 'm' || unit == 'h' || unit == 'd') {
+                Long count = parseAmount(value.substring(0, value.length() - 1));
+                if (count == null) {
+                    return null;
+                }
+                try {
+                    Duration ago;
+                    if (unit == 'm') {
+                        ago = Duration.ofMinutes(count);
+                    } else if (unit == 'h') {
+                        ago = Duration.ofHours(count);
+                    } else {
+                        ago = Duration.ofDays(count);
+                    }
+                    return LocalDateTime.now().minus(ago);
+                } catch (ArithmeticException | DateTimeException e) {
+                    return null;
+                }
+            }
+        }
+        
+        try {
+            if (value.indexOf('T') >= 0) {
+                return LocalDateTime.parse(value);
+            }
+            return LocalDate.parse(value).atStartOfDay();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Получить текущее имя участника транзакции, либо имя на момент транзакции
+     */
+    private String resolveName(PlayerNameIndex nameIndex, UUID playerUuid, String storedName) {
+        String currentName = nameIndex.getName(playerUuid);
+        return currentName != null ? currentName : storedName;
+    }
+    
+    @Override
+    public boolean isReadOnly() {
+        return true;
     }
     
     @Override
@@ -113,6 +457,6 @@ public class TransactionsCommand implements SubCommand {
     
     @Override
     public String getUsage() {
-        return "/" + currency + " trans [игрок] [страница]";
+        return "/" + currency + " trans [игрок] [страница] | search [фильтры]";
     }
 } 
\ No newline at end of file
@@ -0,0 +1,60 @@
+package com.mishkaworld.cashpro.config;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Разница между старой и новой конфигурацией после перезагрузки
+ * 
+ * @author Misha Ermakov
+ */
+public class ConfigDiff {
+    
+    private final Set<String> addedCurrencies;
+    private final Set<String> removedCurrencies;
+    private final Set<String> changedCurrencies;
+    private final Set<String> changedMessages;
+    
+    public ConfigDiff(Set<String> addedCurrencies, Set<String> removedCurrencies,
+                      Set<String> changedCurrencies, Set<String> changedMessages) {
+        this.addedCurrencies = Collections.unmodifiableSet(addedCurrencies);
+        this.removedCurrencies = Collections.unmodifiableSet(removedCurrencies);
+        this.changedCurrencies = Collections.unmodifiableSet(changedCurrencies);
+        this.changedMessages = Collections.unmodifiableSet(changedMessages);
+    }
+    
+    /**
+     * Получить валюты, появившиеся в currencies.yml
+     */
+    public Set<String> getAddedCurrencies() {
+        return addedCurrencies;
+    }
+    
+    /**
+     * Получить валюты, удалённые из currencies.yml
+     */
+    public Set<String> getRemovedCurrencies() {
+        return removedCurrencies;
+    }
+    
+    /**
+     * Получить валюты, у которых изменились настройки
+     */
+    public Set<String> getChangedCurrencies() {
+        return changedCurrencies;
+    }
+    
+    /**
+     * Получить ключи изменённых, добавленных или удалённых сообщений
+     */
+    public Set<String> getChangedMessages() {
+        return changedMessages;
+    }
+    
+    /**
+     * Проверить, изменился ли набор валют
+     */
+    public boolean hasCurrencySetChanges() {
+        return !addedCurrencies.isEmpty() || !removedCurrencies.isEmpty();
+    }
+}
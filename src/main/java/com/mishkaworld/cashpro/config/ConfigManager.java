@@ -1,13 +1,20 @@
 package com.mishkaworld.cashpro.config;
 
 import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.economy.BulkJob;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -18,11 +25,13 @@ import java.util.Set;
 public class ConfigManager {
     
     private final CashProReloaded plugin;
-    private FileConfiguration config;
-    private FileConfiguration currenciesConfig;
-    private FileConfiguration messagesConfig;
+    private volatile FileConfiguration config;
+    private volatile FileConfiguration currenciesConfig;
+    private volatile FileConfiguration messagesConfig;
     
-    private final Map<String, CurrencyConfig> currencies = new HashMap<>();
+    // Карта валют заменяется целиком, поэтому команды в фоновых потоках
+    // не видят её частично заполненной во время перезагрузки
+    private volatile Map<String, CurrencyConfig> currencies = Collections.emptyMap();
     
     public ConfigManager(CashProReloaded plugin) {
         this.plugin = plugin;
@@ -75,11 +84,12 @@ public class ConfigManager {
      * Загрузить валюты из конфига
      */
     private void loadCurrencies() {
-        currencies.clear();
+        Map<String, CurrencyConfig> loaded = new LinkedHashMap<>();
         
         ConfigurationSection currenciesSection = currenciesConfig.getConfigurationSection("currencies");
         if (currenciesSection == null) {
             plugin.getLogger().warning("Секция currencies не найдена в currencies.yml");
+            currencies = Collections.emptyMap();
             return;
         }
         
@@ -93,10 +103,11 @@ public class ConfigManager {
                     currencySection.getString("command", currencyKey),
                     currencySection.getLong("start_value", 1000)
                 );
-                currencies.put(currencyKey, currencyConfig);
+                loaded.put(currencyKey, currencyConfig);
             }
         }
         
+        currencies = Collections.unmodifiableMap(loaded);
         plugin.getLogger().info("Загружено валют: " + currencies.size());
     }
     
@@ -142,6 +153,462 @@ public class ConfigManager {
         return config.getString("database.file", "cashpro.db");
     }
     
+    /**
+     * Проверить, включён ли режим журнала WAL для SQLite
+     */
+    public boolean isWalEnabled() {
+        return config.getBoolean("database.wal", true);
+    }
+    
+    /**
+     * Получить количество соединений только для чтения (в режиме WAL)
+     */
+    public int getReadConnections() {
+        return Math.max(0, config.getInt("database.read-connections", 4));
+    }
+    
+    /**
+     * Получить адрес сервера MySQL
+     */
+    public String getMySqlHost() {
+        return config.getString("database.mysql.host", "localhost");
+    }
+    
+    /**
+     * Получить порт сервера MySQL
+     */
+    public int getMySqlPort() {
+        return config.getInt("database.mysql.port", 3306);
+    }
+    
+    /**
+     * Получить название базы данных MySQL
+     */
+    public String getMySqlDatabase() {
+        return config.getString("database.mysql.database", "cashpro");
+    }
+    
+    /**
+     * Получить имя пользователя MySQL
+     */
+    public String getMySqlUsername() {
+        return config.getString("database.mysql.username", "root");
+    }
+    
+    /**
+     * Получить пароль MySQL
+     */
+    public String getMySqlPassword() {
+        return config.getString("database.mysql.password", "");
+    }
+    
+    /**
+     * Проверить, используется ли SSL для MySQL
+     */
+    public boolean isMySqlUseSsl() {
+        return config.getBoolean("database.mysql.useSSL", false);
+    }
+    
+    /**
+     * Получить количество параллельных потоков переноса данных между БД
+     */
+    public int getMigrationThreads() {
+        return Math.max(1, config.getInt("migration.threads", 4));
+    }
+    
+    /**
+     * Получить количество строк в одной порции переноса данных между БД
+     */
+    public int getMigrationBatchSize() {
+        return Math.max(1, config.getInt("migration.batch-size", 1000));
+    }
+    
+    /**
+     * Получить интервал записи сводки транзакций в БД (в секундах)
+     */
+    public long getRollupFlushInterval() {
+        return Math.max(1, config.getLong("rollups.flush-interval", 10));
+    }
+    
+    /**
+     * Получить срок хранения сводки транзакций шага (в днях, 0 - бессрочно)
+     * 
+     * @param granularity шаг сводки (minute, hour, day)
+     */
+    public int getRollupRetentionDays(String granularity) {
+        int defaultDays = 0;
+        if (granularity.equals("minute")) {
+            defaultDays = 2;
+        } else if (granularity.equals("hour")) {
+            defaultDays = 90;
+        }
+        return Math.max(0, config.getInt("rollups.retention." + granularity, defaultDays));
+    }
+    
+    /**
+     * Проверить, включены ли массовые задания
+     */
+    public boolean isBulkJobsEnabled() {
+        return config.getBoolean("jobs.enabled", true);
+    }
+    
+    /**
+     * Получить интервал проверки расписания массовых заданий (в секундах)
+     */
+    public long getBulkJobCheckInterval() {
+        return Math.max(1, config.getLong("jobs.check-interval", 60));
+    }
+    
+    /**
+     * Получить начальный размер порции массового задания (диапазон id счетов)
+     */
+    public int getBulkJobChunkSize() {
+        return Math.max(1, config.getInt("jobs.chunk-size", 100));
+    }
+    
+    /**
+     * Получить время, на которое порция может занимать БД и блокировки счетов (в мс)
+     */
+    public long getBulkJobChunkBudget() {
+        return Math.max(1, config.getLong("jobs.chunk-time-budget", 50));
+    }
+    
+    /**
+     * Получить включённые массовые задания
+     * Задания с неизвестным видом, валютой или интервалом пропускаются
+     */
+    public List<BulkJob> getBulkJobs() {
+        List<BulkJob> jobs = new ArrayList<>();
+        
+        ConfigurationSection section = config.getConfigurationSection("jobs.list");
+        if (section == null) {
+            return jobs;
+        }
+        
+        for (String name : section.getKeys(false)) {
+            ConfigurationSection jobSection = section.getConfigurationSection(name);
+            if (jobSection == null || !jobSection.getBoolean("enabled", true)) {
+                continue;
+            }
+            
+            BulkJob.Type type = BulkJob.Type.fromName(jobSection.getString("type", ""));
+            String currency = jobSection.getString("currency", getMainCurrency());
+            long interval = parseInterval(jobSection.getString("interval", "24h"));
+            if (type == null || !currencies.containsKey(currency) || interval <= 0) {
+                plugin.getLogger().warning("Массовое задание " + name + " пропущено: проверьте type, currency и interval");
+                continue;
+            }
+            
+            jobs.add(new BulkJob(name, type, currency, interval,
+                Math.min(1, Math.max(0, jobSection.getDouble("rate", 0))),
+                Math.max(0, jobSection.getLong("threshold", 0)),
+                Math.max(0, jobSection.getLong("amount", 0))
+            ));
+        }
+        
+        return jobs;
+    }
+    
+    /**
+     * Проверить, включено ли фоновое обслуживание БД
+     */
+    public boolean isMaintenanceEnabled() {
+        return config.getBoolean("maintenance.enabled", true);
+    }
+    
+    /**
+     * Получить минимальный интервал между запусками обслуживания БД (в мс)
+     */
+    public long getMaintenanceInterval() {
+        long interval = parseInterval(config.getString("maintenance.interval", "1d"));
+        return interval > 0 ? interval : 86_400_000L;
+    }
+    
+    /**
+     * Получить часы, в которые обслуживание запускается независимо от нагрузки
+     */
+    public List<Integer> getMaintenanceHours() {
+        return config.getIntegerList("maintenance.hours");
+    }
+    
+    /**
+     * Получить количество операций хранилища в минуту, при котором сервер считается свободным
+     */
+    public long getMaintenanceIdleThreshold() {
+        return Math.max(0, config.getLong("maintenance.idle-threshold", 30));
+    }
+    
+    /**
+     * Получить количество свободных минут подряд, после которых запускается обслуживание
+     */
+    public int getMaintenanceIdleMinutes() {
+        return Math.max(1, config.getInt("maintenance.idle-minutes", 10));
+    }
+    
+    /**
+     * Получить ограничение времени одного запуска обслуживания (в мс)
+     */
+    public long getMaintenanceMaxDuration() {
+        return Math.max(1, config.getLong("maintenance.max-duration", 30)) * 1000;
+    }
+    
+    /**
+     * Получить количество страниц, возвращаемых за один шаг incremental_vacuum
+     */
+    public int getMaintenanceVacuumPages() {
+        return Math.max(1, config.getInt("maintenance.vacuum-pages", 1000));
+    }
+    
+    /**
+     * Получить интервал между проверками целостности (в мс)
+     */
+    public long getMaintenanceQuickCheckInterval() {
+        long interval = parseInterval(config.getString("maintenance.quick-check-interval", "7d"));
+        return interval > 0 ? interval : 7 * 86_400_000L;
+    }
+    
+    /**
+     * Получить ограничение строк индекса, читаемых при обновлении статистики
+     */
+    public int getMaintenanceAnalysisLimit() {
+        return Math.max(0, config.getInt("maintenance.analysis-limit", 1000));
+    }
+    
+    /**
+     * Разобрать интервал вида 30m, 12h, 7d
+     * 
+     * @return интервал в мс или 0 если формат неверный
+     */
+    private static long parseInterval(String value) {
+        if (value == null || value.length() < 2) {
+            return 0;
+        }
+        
+        long count;
+        try {
+            count = Long.parseLong(value.substring(0, value.length() - 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+        
+        char unit = Character.toLowerCase(value.charAt(value.length() - 1));
+        if (unit == 'm') {
+            return count * 60_000L;
+        } else if (unit == 'h') {
+            return count * 3_600_000L;
+        } else if (unit == 'd') {
+            return count * 86_400_000L;
+        }
+        return 0;
+    }
+    
+    /**
+     * Получить режим хранения балансов
+     */
+    public String getStorageMode() {
+        return config.getString("storage.mode", "sql");
+    }
+    
+    /**
+     * Проверить, хранятся ли все балансы в памяти
+     */
+    public boolean isMemoryStorage() {
+        return "memory".equalsIgnoreCase(getStorageMode());
+    }
+    
+    /**
+     * Получить интервал сохранения балансов в БД (в секундах)
+     */
+    public long getCheckpointInterval() {
+        return Math.max(1, config.getLong("storage.checkpoint-interval", 30));
+    }
+    
+    /**
+     * Проверить, разрешены ли виртуальные потоки для задач БД (Java 21+)
+     */
+    public boolean isVirtualThreadsEnabled() {
+        return config.getBoolean("storage.executor.virtual-threads", false);
+    }
+    
+    /**
+     * Получить размер пула потоков БД (если виртуальные потоки недоступны)
+     */
+    public int getStorageThreads() {
+        return Math.max(1, config.getInt("storage.executor.threads", 4));
+    }
+    
+    /**
+     * Получить максимум задач, одновременно работающих с БД
+     */
+    public int getStorageMaxConcurrent() {
+        return Math.max(1, config.getInt("storage.executor.max-concurrent", 4));
+    }
+    
+    /**
+     * Получить максимум изменений балансов, фиксируемых журналом одной транзакцией
+     */
+    public int getLedgerBatchSize() {
+        return Math.max(1, config.getInt("storage.ledger.batch-size", 256));
+    }
+    
+    /**
+     * Получить время ожидания результата изменения от журнала (в секундах)
+     */
+    public int getLedgerTimeout() {
+        return Math.max(1, config.getInt("storage.ledger.timeout", 10));
+    }
+    
+    /**
+     * Записывать ли пакеты журнала оптимистично (сравнение версии строки и повтор)
+     * Если выключено, пакет сразу занимает запись в файле БД (BEGIN IMMEDIATE)
+     */
+    public boolean isOptimisticEnabled() {
+        return config.getBoolean("storage.optimistic.enabled", true);
+    }
+    
+    /**
+     * Получить максимум повторов записи пакета при конфликте версий
+     */
+    public int getOptimisticMaxRetries() {
+        return Math.max(0, config.getInt("storage.optimistic.max-retries", 8));
+    }
+    
+    /**
+     * Получить начальную задержку между повторами записи (в мс)
+     */
+    public long getOptimisticBackoffBase() {
+        return Math.max(1, config.getLong("storage.optimistic.backoff-base", 2));
+    }
+    
+    /**
+     * Получить максимальную задержку между повторами записи (в мс)
+     */
+    public long getOptimisticBackoffMax() {
+        return Math.max(getOptimisticBackoffBase(), config.getLong("storage.optimistic.backoff-max", 100));
+    }
+    
+    /**
+     * Получить время ожидания входа игрока во время загрузки плагина (в секундах)
+     */
+    public int getStartupLoginWait() {
+        return Math.max(0, config.getInt("startup.login-wait", 30));
+    }
+    
+    /**
+     * Получить максимум одновременно выполняемых команд чтения от одного отправителя
+     */
+    public int getMaxCommandsInFlight() {
+        return Math.max(1, config.getInt("commands.max-in-flight", 2));
+    }
+    
+    /**
+     * Получить максимум имён игроков в подсказках автодополнения
+     */
+    public int getTabCompleteLimit() {
+        return Math.max(1, config.getInt("commands.tab-complete-limit", 50));
+    }
+    
+    /**
+     * Проверить, включена ли синхронизация балансов между серверами
+     */
+    public boolean isSyncEnabled() {
+        return config.getBoolean("sync.enabled", false);
+    }
+    
+    /**
+     * Получить интервал опроса ленты изменений (в тиках)
+     */
+    public long getSyncPollInterval() {
+        return Math.max(1, config.getLong("sync.poll-interval", 20));
+    }
+    
+    /**
+     * Получить максимум изменений, читаемых за один запрос
+     */
+    public int getSyncBatchSize() {
+        return Math.max(1, config.getInt("sync.batch-size", 500));
+    }
+    
+    /**
+     * Проверить, включено ли ограничение частоты операций
+     */
+    public boolean isRateLimitEnabled() {
+        return config.getBoolean("rate-limits.enabled", true);
+    }
+    
+    /**
+     * Получить размер корзины ограничения (0 - без ограничения)
+     * Значение для валюты переопределяет значение default
+     * 
+     * @param scope вид операции (pay, api)
+     * @param currency валюта
+     */
+    public int getRateLimitBurst(String scope, String currency) {
+        String path = "rate-limits." + scope + ".";
+        return Math.max(0, config.getInt(path + currency + ".burst", config.getInt(path + "default.burst", 0)));
+    }
+    
+    /**
+     * Получить скорость пополнения корзины ограничения (маркеров в секунду)
+     * 
+     * @param scope вид операции (pay, api)
+     * @param currency валюта
+     */
+    public double getRateLimitRefill(String scope, String currency) {
+        String path = "rate-limits." + scope + ".";
+        return Math.max(0.001, config.getDouble(path + currency + ".refill-per-second", config.getDouble(path + "default.refill-per-second", 1)));
+    }
+    
+    /**
+     * Получить интервал перестроения рейтингов (в секундах)
+     */
+    public long getLeaderboardRebuildInterval() {
+        return Math.max(1, config.getLong("leaderboard.rebuild-interval", 60));
+    }
+    
+    /**
+     * Получить количество игроков, хранимых в снимке рейтинга
+     */
+    public int getLeaderboardSize() {
+        return Math.max(1, config.getInt("leaderboard.size", 100));
+    }
+    
+    /**
+     * Получить количество игроков на странице команды top
+     */
+    public int getLeaderboardPageSize() {
+        return Math.max(1, config.getInt("leaderboard.page-size", 10));
+    }
+    
+    /**
+     * Получить максимальную позицию для плейсхолдера top
+     */
+    public int getLeaderboardPlaceholderPositions() {
+        return Math.min(getLeaderboardSize(), Math.max(1, config.getInt("leaderboard.placeholder-positions", 10)));
+    }
+    
+    /**
+     * Получить список игроков, исключённых из рейтинга валюты
+     */
+    public List<String> getLeaderboardExclusions(String currency) {
+        return config.getStringList("leaderboard.exclude." + currency);
+    }
+    
+    /**
+     * Проверить, включён ли провайдер экономики Vault
+     */
+    public boolean isVaultEnabled() {
+        return config.getBoolean("vault.enabled", true);
+    }
+    
+    /**
+     * Получить валюту провайдера Vault (по умолчанию основная валюта)
+     */
+    public String getVaultCurrency() {
+        String currency = config.getString("vault.currency", "");
+        return currency == null || currency.isEmpty() ? getMainCurrency() : currency;
+    }
+    
     /**
      * Получить сообщение из конфига
      */
@@ -166,9 +633,66 @@ public class ConfigManager {
     
     /**
      * Перезагрузить конфигурации
+     * 
+     * @return разница между старой и новой конфигурацией валют и сообщений
      */
-    public void reloadConfigs() {
+    public ConfigDiff reloadConfigs() {
+        Map<String, CurrencyConfig> oldCurrencies = currencies;
+        Map<String, Object> oldMessages = getMessageValues(messagesConfig);
+        
         loadConfigs();
+        
+        Map<String, CurrencyConfig> newCurrencies = currencies;
+        Set<String> added = new HashSet<>(newCurrencies.keySet());
+        added.removeAll(oldCurrencies.keySet());
+        
+        Set<String> removed = new HashSet<>(oldCurrencies.keySet());
+        removed.removeAll(newCurrencies.keySet());
+        
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, CurrencyConfig> entry : newCurrencies.entrySet()) {
+            CurrencyConfig previous = oldCurrencies.get(entry.getKey());
+            if (previous != null && !previous.equals(entry.getValue())) {
+                changed.add(entry.getKey());
+            }
+        }
+        
+        Map<String, Object> newMessages = getMessageValues(messagesConfig);
+        Set<String> changedMessages = new HashSet<>();
+        for (String key : newMessages.keySet()) {
+            if (!Objects.equals(newMessages.get(key), oldMessages.get(key))) {
+                changedMessages.add(key);
+            }
+        }
+        for (String key : oldMessages.keySet()) {
+            if (!newMessages.containsKey(key)) {
+                changedMessages.add(key);
+            }
+        }
+        
+        return new ConfigDiff(added, removed, changed, changedMessages);
+    }
+    
+    /**
+     * Получить все сообщения конфига в виде плоской карты ключ - значение
+     */
+    private static Map<String, Object> getMessageValues(FileConfiguration messages) {
+        if (messages == null) {
+            return Collections.emptyMap();
+        }
+        
+        ConfigurationSection section = messages.getConfigurationSection("messages");
+        if (section == null) {
+            return Collections.emptyMap();
+        }
+        
+        Map<String, Object> values = new HashMap<>();
+        for (Map.Entry<String, Object> entry : section.getValues(true).entrySet()) {
+            if (!(entry.getValue() instanceof ConfigurationSection)) {
+                values.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return values;
     }
     
     /**
@@ -219,5 +743,26 @@ public class ConfigManager {
         public long getStartValue() {
             return startValue;
         }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CurrencyConfig)) {
+                return false;
+            }
+            CurrencyConfig that = (CurrencyConfig) o;
+            return startValue == that.startValue
+                && key.equals(that.key)
+                && Objects.equals(name, that.name)
+                && Objects.equals(symbol, that.symbol)
+                && Objects.equals(command, that.command);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(key, name, symbol, command, startValue);
+        }
     }
 } 
\ No newline at end of file
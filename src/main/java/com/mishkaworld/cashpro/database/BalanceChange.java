@@ -0,0 +1,25 @@
+package com.mishkaworld.cashpro.database;
+
+/**
+ * Изменение баланса из ленты изменений
+ * 
+ * @author Misha Ermakov
+ */
+public class BalanceChange {
+    
+    private final long changeSeq;
+    private final BalanceRecord record;
+    
+    public BalanceChange(long changeSeq, BalanceRecord record) {
+        this.changeSeq = changeSeq;
+        this.record = record;
+    }
+    
+    public long getChangeSeq() {
+        return changeSeq;
+    }
+    
+    public BalanceRecord getRecord() {
+        return record;
+    }
+}
@@ -0,0 +1,54 @@
+package com.mishkaworld.cashpro.database;
+
+import java.util.UUID;
+
+/**
+ * Счёт игрока в валюте: строка таблицы балансов
+ * 
+ * @author Misha Ermakov
+ */
+public class BalanceRecord {
+    
+    private final UUID playerUuid;
+    private final String playerName;
+    private final String currency;
+    private final long balance;
+    private final long changeSeq;
+    
+    public BalanceRecord(UUID playerUuid, String playerName, String currency, long balance) {
+        this(playerUuid, playerName, currency, balance, 0);
+    }
+    
+    public BalanceRecord(UUID playerUuid, String playerName, String currency, long balance, long changeSeq) {
+        this.playerUuid = playerUuid;
+        this.playerName = playerName;
+        this.currency = currency;
+        this.balance = balance;
+        this.changeSeq = changeSeq;
+    }
+    
+    public UUID getPlayerUuid() {
+        return playerUuid;
+    }
+    
+    public String getPlayerName() {
+        return playerName;
+    }
+    
+    public String getCurrency() {
+        return currency;
+    }
+    
+    public long getBalance() {
+        return balance;
+    }
+    
+    /**
+     * Получить номер изменения, с которым баланс записан в БД
+     * 
+     * @return номер изменения или 0 если он неизвестен
+     */
+    public long getChangeSeq() {
+        return changeSeq;
+    }
+}
@@ -0,0 +1,40 @@
+package com.mishkaworld.cashpro.database;
+
+import java.util.List;
+
+/**
+ * Результат порции массового задания или импорта
+ * Для импорта количество счетов - число записанных строк, сумма не считается
+ * 
+ * @author Misha Ermakov
+ */
+public class BulkChunk {
+    
+    private final List<BalanceRecord> records;
+    private final long accounts;
+    private final long amount;
+    
+    public BulkChunk(List<BalanceRecord> records, long accounts, long amount) {
+        this.records = records;
+        this.accounts = accounts;
+        this.amount = amount;
+    }
+    
+    /**
+     * Получить изменённые счета с новыми балансами и номерами изменений
+     */
+    public List<BalanceRecord> getRecords() {
+        return records;
+    }
+    
+    public long getAccounts() {
+        return accounts;
+    }
+    
+    /**
+     * Получить сумму изменений (положительная - начислено)
+     */
+    public long getAmount() {
+        return amount;
+    }
+}
@@ -0,0 +1,55 @@
+package com.mishkaworld.cashpro.database;
+
+/**
+ * Состояние массового задания: период и продвижение по id счетов
+ * 
+ * @author Misha Ermakov
+ */
+public class BulkJobState {
+    
+    private final long period;
+    private final long maxId;
+    private final long lastId;
+    private final long accounts;
+    private final long amount;
+    private final boolean finished;
+    
+    public BulkJobState(long period, long maxId, long lastId, long accounts, long amount, boolean finished) {
+        this.period = period;
+        this.maxId = maxId;
+        this.lastId = lastId;
+        this.accounts = accounts;
+        this.amount = amount;
+        this.finished = finished;
+    }
+    
+    public long getPeriod() {
+        return period;
+    }
+    
+    /**
+     * Получить последний id счёта, существовавшего при запуске периода
+     */
+    public long getMaxId() {
+        return maxId;
+    }
+    
+    /**
+     * Получить id, до которого включительно задание уже применено
+     */
+    public long getLastId() {
+        return lastId;
+    }
+    
+    public long getAccounts() {
+        return accounts;
+    }
+    
+    public long getAmount() {
+        return amount;
+    }
+    
+    public boolean isFinished() {
+        return finished;
+    }
+}
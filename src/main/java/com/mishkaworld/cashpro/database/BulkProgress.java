@@ -0,0 +1,37 @@
+package com.mishkaworld.cashpro.database;
+
+/**
+ * Продвижение массового задания за одну порцию
+ * 
+ * @author Misha Ermakov
+ */
+public class BulkProgress {
+    
+    private final String job;
+    private final long lastId;
+    private final long accounts;
+    private final long amount;
+    
+    public BulkProgress(String job, long lastId, long accounts, long amount) {
+        this.job = job;
+        this.lastId = lastId;
+        this.accounts = accounts;
+        this.amount = amount;
+    }
+    
+    public String getJob() {
+        return job;
+    }
+    
+    public long getLastId() {
+        return lastId;
+    }
+    
+    public long getAccounts() {
+        return accounts;
+    }
+    
+    public long getAmount() {
+        return amount;
+    }
+}
@@ -0,0 +1,80 @@
+package com.mishkaworld.cashpro.database;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Статистика конфликтов оптимистичной записи пакетов журнала
+ * Конфликт возникает, когда строку баланса между чтением и записью
+ * изменил другой сервер, работающий с той же БД
+ * 
+ * @author Misha Ermakov
+ */
+public class ContentionStats {
+    
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+    private final LongAdder backoffMillis = new LongAdder();
+    private final LongAccumulator maxRetries = new LongAccumulator(Math::max, 0);
+    
+    void recordAttempt() {
+        attempts.increment();
+    }
+    
+    void recordConflict(long sleptMillis) {
+        conflicts.increment();
+        backoffMillis.add(sleptMillis);
+    }
+    
+    void recordRetries(int retries) {
+        maxRetries.accumulate(retries);
+    }
+    
+    void recordExhausted() {
+        exhausted.increment();
+    }
+    
+    /**
+     * Получить количество попыток записи пакета
+     */
+    public long getAttempts() {
+        return attempts.sum();
+    }
+    
+    /**
+     * Получить количество конфликтов (неудачных сравнений версии)
+     */
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+    
+    /**
+     * Получить количество пакетов, не записанных после всех повторов
+     */
+    public long getExhausted() {
+        return exhausted.sum();
+    }
+    
+    /**
+     * Получить суммарное время ожидания между повторами (в мс)
+     */
+    public long getBackoffMillis() {
+        return backoffMillis.sum();
+    }
+    
+    /**
+     * Получить наибольшее число повторов одного пакета
+     */
+    public long getMaxRetries() {
+        return maxRetries.get();
+    }
+    
+    /**
+     * Получить долю конфликтов среди попыток записи (0..1)
+     */
+    public double getConflictRate() {
+        long total = getAttempts();
+        return total > 0 ? (double) getConflicts() / total : 0;
+    }
+}
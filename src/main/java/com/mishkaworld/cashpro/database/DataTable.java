@@ -0,0 +1,92 @@
+package com.mishkaworld.cashpro.database;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Таблицы, доступные для экспорта и импорта
+ * Служебные столбцы (id балансов, change_seq, version) не переносятся,
+ * при импорте они заполняются заново
+ * 
+ * @author Misha Ermakov
+ */
+public enum DataTable {
+    
+    BALANCES("balances",
+        List.of("player_uuid", "player_name", "currency", "balance", "last_updated"),
+        Set.of("player_uuid", "player_name", "currency", "balance"),
+        Set.of("balance"),
+        "last_updated"),
+    
+    TRANSACTIONS("transactions",
+        List.of("id", "from_player", "to_player", "from_uuid", "to_uuid", "currency", "amount", "transaction_type", "timestamp"),
+        Set.of("id", "to_player", "currency", "amount", "transaction_type"),
+        Set.of("amount"),
+        "timestamp");
+    
+    private final String tableName;
+    private final List<String> columns;
+    private final Set<String> requiredColumns;
+    private final Set<String> numericColumns;
+    private final String timestampColumn;
+    
+    DataTable(String tableName, List<String> columns, Set<String> requiredColumns, Set<String> numericColumns,
+              String timestampColumn) {
+        this.tableName = tableName;
+        this.columns = columns;
+        this.requiredColumns = requiredColumns;
+        this.numericColumns = numericColumns;
+        this.timestampColumn = timestampColumn;
+    }
+    
+    /**
+     * Найти таблицу по названию
+     * 
+     * @return таблица или null если такой нет
+     */
+    public static DataTable fromName(String name) {
+        for (DataTable table : values()) {
+            if (table.tableName.equals(name.toLowerCase(Locale.ROOT))) {
+                return table;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Получить название таблицы в БД
+     */
+    public String getTableName() {
+        return tableName;
+    }
+    
+    /**
+     * Получить переносимые столбцы в порядке записи в файл
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+    
+    /**
+     * Проверить, обязателен ли столбец при импорте
+     */
+    public boolean isRequired(String column) {
+        return requiredColumns.contains(column);
+    }
+    
+    /**
+     * Проверить, содержит ли столбец целое число
+     */
+    public boolean isNumeric(String column) {
+        return numericColumns.contains(column);
+    }
+    
+    /**
+     * Проверить, содержит ли столбец время записи (при импорте без значения
+     * заполняется временем импорта в миллисекундах)
+     */
+    public boolean isTimestamp(String column) {
+        return timestampColumn.equals(column);
+    }
+}
@@ -0,0 +1,524 @@
+package com.mishkaworld.cashpro.database;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.economy.Transaction;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+
+/**
+ * Потоковый экспорт и импорт балансов и транзакций в CSV и JSON Lines
+ * Экспорт читает таблицу порциями по rowid, импорт пишет порциями
+ * в отдельных транзакциях, поэтому в памяти одновременно находится
+ * не больше одной порции строк независимо от размера таблицы
+ * 
+ * @author Misha Ermakov
+ */
+public class DataTransfer {
+    
+    private static final int EXPORT_CHUNK_SIZE = 5000;
+    private static final int IMPORT_CHUNK_SIZE = 1000;
+    private static final long PROGRESS_INTERVAL = 100_000;
+    
+    private final CashProReloaded plugin;
+    private final AtomicBoolean running = new AtomicBoolean();
+    
+    public DataTransfer(CashProReloaded plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Получить папку для файлов экспорта и импорта
+     */
+    public File getDirectory() {
+        return new File(plugin.getDataFolder(), "exports");
+    }
+    
+    /**
+     * Занять право на перенос данных (одновременно выполняется только один перенос)
+     * 
+     * @return true если другой перенос сейчас не выполняется
+     */
+    public boolean tryStart() {
+        return running.compareAndSet(false, true);
+    }
+    
+    /**
+     * Освободить право на перенос данных
+     */
+    public void finish() {
+        running.set(false);
+    }
+    
+    /**
+     * Выгрузить таблицу в файл
+     * 
+     * @param table таблица
+     * @param format формат файла
+     * @param file файл
+     * @param progress получает количество выгруженных строк по ходу работы
+     * @return количество выгруженных строк
+     */
+    public long exportTable(DataTable table, Format format, File file, LongConsumer progress) throws IOException, SQLException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Не удалось создать папку " + parent);
+        }
+        
+        long exported = 0;
+        long nextProgress = PROGRESS_INTERVAL;
+        
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            if (format == Format.CSV) {
+                writeCsvLine(writer, table.getColumns().toArray(new String[0]));
+            }
+            
+            long lastRowId = 0;
+            while (true) {
+                RowChunk chunk = plugin.getStorage().readRows(table, lastRowId, EXPORT_CHUNK_SIZE);
+                if (chunk.getRows().isEmpty()) {
+                    break;
+                }
+                
+                for (String[] row : chunk.getRows()) {
+                    if (format == Format.CSV) {
+                        writeCsvLine(writer, row);
+                    } else {
+                        writeJsonLine(writer, table, row);
+                    }
+                }
+                
+                exported += chunk.getRows().size();
+                lastRowId = chunk.getLastRowId();
+                
+                if (exported >= nextProgress) {
+                    progress.accept(exported);
+                    nextProgress += PROGRESS_INTERVAL;
+                }
+            }
+        }
+        
+        return exported;
+    }
+    
+    /**
+     * Выгрузить результаты поиска транзакций в файл
+     * Поиск читается страницами по курсору, столбцы совпадают с экспортом
+     * таблицы transactions, поэтому файл можно загрузить обратно импортом
+     * 
+     * @param query фильтр поиска (курсор сдвигается по ходу выгрузки)
+     * @param format формат файла
+     * @param file файл
+     * @param progress получает количество выгруженных строк по ходу работы
+     * @return количество выгруженных строк
+     */
+    public long exportSearch(TransactionQuery query, Format format, File file, LongConsumer progress) throws IOException, SQLException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Не удалось создать папку " + parent);
+        }
+        
+        DataTable table = DataTable.TRANSACTIONS;
+        long exported = 0;
+        long nextProgress = PROGRESS_INTERVAL;
+        
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            if (format == Format.CSV) {
+                writeCsvLine(writer, table.getColumns().toArray(new String[0]));
+            }
+            
+            while (true) {
+                TransactionQuery.Page page = plugin.getStorage().searchTransactions(query, EXPORT_CHUNK_SIZE);
+                
+                for (Transaction transaction : page.getTransactions()) {
+                    String[] row = {
+                        transaction.getId(),
+                        transaction.getFromPlayer(),
+                        transaction.getToPlayer(),
+                        transaction.getFromUuid() != null ? transaction.getFromUuid().toString() : null,
+                        transaction.getToUuid() != null ? transaction.getToUuid().toString() : null,
+                        transaction.getCurrency(),
+                        String.valueOf(transaction.getAmount()),
+                        transaction.getType().name(),
+                        String.valueOf(Timestamp.valueOf(transaction.getTimestamp()).getTime())
+                    };
+                    if (format == Format.CSV) {
+                        writeCsvLine(writer, row);
+                    } else {
+                        writeJsonLine(writer, table, row);
+                    }
+                }
+                
+                exported += page.getTransactions().size();
+                if (exported >= nextProgress) {
+                    progress.accept(exported);
+                    nextProgress += PROGRESS_INTERVAL;
+                }
+                
+                if (page.getNextCursor() == null) {
+                    break;
+                }
+                query.setCursor(page.getNextCursor());
+            }
+        }
+        
+        return exported;
+    }
+    
+    /**
+     * Загрузить таблицу из файла
+     * Строки с ошибками пропускаются и учитываются в результате
+     * 
+     * @param table таблица
+     * @param file файл (формат определяется по расширению)
+     * @param progress получает количество загруженных строк по ходу работы
+     * @return результат импорта
+     */
+    public ImportResult importTable(DataTable table, File file, LongConsumer progress) throws IOException, SQLException {
+        Format format = Format.fromFile(file);
+        if (format == null) {
+            throw new IOException("Неизвестный формат файла: " + file.getName());
+        }
+        
+        long imported = 0;
+        long skipped = 0;
+        long nextProgress = PROGRESS_INTERVAL;
+        
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            int[] csvMapping = null;
+            if (format == Format.CSV) {
+                String header = reader.readLine();
+                if (header == null) {
+                    return new ImportResult(0, 0);
+                }
+                List<String> columns = parseCsvLine(stripBom(header));
+                if (columns == null) {
+                    throw new IOException("Повреждён заголовок CSV");
+                }
+                csvMapping = mapCsvHeader(table, columns);
+            }
+            
+            List<String[]> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                
+                String[] row = format == Format.CSV
+                    ? readCsvRow(line, csvMapping, table)
+                    : readJsonRow(line, table);
+                
+                if (row == null || !isValid(table, row)) {
+                    skipped++;
+                    continue;
+                }
+                
+                chunk.add(row);
+                if (chunk.size() >= IMPORT_CHUNK_SIZE) {
+                    imported += flushImport(table, chunk);
+                    if (imported >= nextProgress) {
+                        progress.accept(imported);
+                        nextProgress += PROGRESS_INTERVAL;
+                    }
+                }
+            }
+            
+            imported += flushImport(table, chunk);
+        }
+        
+        // Импорт транзакций идёт мимо записи транзакций, поэтому сводка строится заново
+        if (table == DataTable.TRANSACTIONS && imported > 0) {
+            plugin.getTransactionRollups().rebuild(rows -> { });
+        }
+        
+        return new ImportResult(imported, skipped);
+    }
+    
+    /**
+     * Записать порцию импортируемых строк в БД и обновить данные в памяти
+     */
+    private int flushImport(DataTable table, List<String[]> chunk) throws SQLException {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        
+        // Порция записывается журналом операций вместе с остальными изменениями
+        LedgerMutation.Result result = plugin.getLedger().apply(LedgerMutation.importRows(table, chunk));
+        if (!result.isApplied()) {
+            throw new SQLException("Журнал операций не записал порцию импорта таблицы " + table.getTableName());
+        }
+        
+        // Балансы читаются из памяти (кэш, индекс мест), поэтому применяем их сразу с номерами изменений импорта
+        if (table == DataTable.BALANCES) {
+            plugin.getCurrencyManager().applyImportedBalances(result.getChunk().getRecords());
+        }
+        
+        int count = chunk.size();
+        chunk.clear();
+        return count;
+    }
+    
+    /**
+     * Проверить обязательные и числовые значения строки
+     */
+    private static boolean isValid(DataTable table, String[] row) {
+        List<String> columns = table.getColumns();
+        
+        for (int i = 0; i < columns.size(); i++) {
+            String column = columns.get(i);
+            String value = row[i];
+            
+            if (value == null) {
+                if (table.isRequired(column)) {
+                    return false;
+                }
+                continue;
+            }
+            
+            try {
+                if (table.isNumeric(column)) {
+                    Long.parseLong(value);
+                } else if (column.endsWith("uuid")) {
+                    UUID.fromString(value);
+                }
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Получить для каждого столбца таблицы его позицию в CSV (-1 если столбца нет)
+     */
+    private static int[] mapCsvHeader(DataTable table, List<String> header) throws IOException {
+        List<String> columns = table.getColumns();
+        int[] mapping = new int[columns.size()];
+        
+        for (int i = 0; i < columns.size(); i++) {
+            mapping[i] = header.indexOf(columns.get(i));
+            if (mapping[i] < 0 && table.isRequired(columns.get(i))) {
+                throw new IOException("В заголовке CSV нет столбца " + columns.get(i));
+            }
+        }
+        
+        return mapping;
+    }
+    
+    private static String[] readCsvRow(String line, int[] mapping, DataTable table) {
+        List<String> values = parseCsvLine(line);
+        if (values == null) {
+            return null;
+        }
+        
+        String[] row = new String[table.getColumns().size()];
+        for (int i = 0; i < mapping.length; i++) {
+            if (mapping[i] >= 0 && mapping[i] < values.size()) {
+                row[i] = values.get(mapping[i]);
+            }
+        }
+        return row;
+    }
+    
+    private static String[] readJsonRow(String line, DataTable table) {
+        JsonObject object;
+        try {
+            JsonElement element = JsonParser.parseString(line);
+            if (!element.isJsonObject()) {
+                return null;
+            }
+            object = element.getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            return null;
+        }
+        
+        List<String> columns = table.getColumns();
+        String[] row = new String[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            JsonElement value = object.get(columns.get(i));
+            row[i] = value != null && !value.isJsonNull() ? value.getAsString() : null;
+        }
+        return row;
+    }
+    
+    private static void writeJsonLine(BufferedWriter writer, DataTable table, String[] row) throws IOException {
+        JsonObject object = new JsonObject();
+        List<String> columns = table.getColumns();
+        
+        for (int i = 0; i < columns.size(); i++) {
+            String column = columns.get(i);
+            String value = row[i];
+            Long number = value != null && table.isNumeric(column) ? parseLong(value) : null;
+            if (number != null) {
+                object.addProperty(column, number);
+            } else {
+                object.addProperty(column, value);
+            }
+        }
+        
+        writer.write(object.toString());
+        writer.newLine();
+    }
+    
+    /**
+     * Записать строку CSV (RFC 4180), пустое поле без кавычек означает NULL
+     */
+    private static void writeCsvLine(BufferedWriter writer, String[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            
+            String value = values[i];
+            if (value == null) {
+                continue;
+            }
+            
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+        writer.newLine();
+    }
+    
+    /**
+     * Разобрать строку CSV
+     * Значения в кавычках не могут содержать перевод строки, так как
+     * CashPro не записывает такие значения при экспорте
+     * 
+     * @return значения (null для пустых полей без кавычек) или null если строка повреждена
+     */
+    private static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        value.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+                wasQuoted = true;
+            } else if (c == ',') {
+                values.add(value.length() > 0 || wasQuoted ? value.toString() : null);
+                value.setLength(0);
+                wasQuoted = false;
+            } else {
+                value.append(c);
+            }
+        }
+        
+        if (quoted) {
+            return null;
+        }
+        
+        values.add(value.length() > 0 || wasQuoted ? value.toString() : null);
+        return values;
+    }
+    
+    private static Long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    private static String stripBom(String line) {
+        return line.startsWith("\uFEFF") ? line.substring(1) : line;
+    }
+    
+    /**
+     * Формат файла экспорта
+     */
+    public enum Format {
+        CSV("csv"),
+        JSONL("jsonl");
+        
+        private final String extension;
+        
+        Format(String extension) {
+            this.extension = extension;
+        }
+        
+        /**
+         * Найти формат по названию
+         * 
+         * @return формат или null если такого нет
+         */
+        public static Format fromName(String name) {
+            for (Format format : values()) {
+                if (format.extension.equals(name.toLowerCase(Locale.ROOT))) {
+                    return format;
+                }
+            }
+            return null;
+        }
+        
+        /**
+         * Определить формат по расширению файла
+         * 
+         * @return формат или null если расширение неизвестно
+         */
+        public static Format fromFile(File file) {
+            String name = file.getName();
+            int dot = name.lastIndexOf('.');
+            return dot >= 0 ? fromName(name.substring(dot + 1)) : null;
+        }
+        
+        public String getExtension() {
+            return extension;
+        }
+    }
+    
+    /**
+     * Результат импорта
+     */
+    public static class ImportResult {
+        private final long imported;
+        private final long skipped;
+        
+        public ImportResult(long imported, long skipped) {
+            this.imported = imported;
+            this.skipped = skipped;
+        }
+        
+        public long getImported() {
+            return imported;
+        }
+        
+        public long getSkipped() {
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.mishkaworld.cashpro.database;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.config.ConfigManager;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+
+/**
+ * Поддерживаемые типы БД для переноса данных
+ * Содержит различия SQL между SQLite и MySQL: схему таблиц,
+ * ключ для разбиения на диапазоны и запросы записи без дубликатов
+ * 
+ * @author Misha Ermakov
+ */
+public enum DatabaseDialect {
+    
+    SQLITE,
+    MYSQL;
+    
+    /**
+     * Найти тип БД по названию
+     * 
+     * @return тип БД или null если такого нет
+     */
+    public static DatabaseDialect fromName(String name) {
+        for (DatabaseDialect dialect : values()) {
+            if (dialect.name().equals(name.toUpperCase(Locale.ROOT))) {
+                return dialect;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Открыть соединение с БД по настройкам из config.yml
+     */
+    public Connection openConnection(CashProReloaded plugin) throws SQLException {
+        ConfigManager config = plugin.getConfigManager();
+        
+        if (this == SQLITE) {
+            File dbFile = new File(plugin.getDataFolder(), config.getDatabaseFile());
+            Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("PRAGMA busy_timeout = 5000");
+            }
+            return connection;
+        }
+        
+        String url = "jdbc:mysql://" + config.getMySqlHost() + ":" + config.getMySqlPort() + "/" + config.getMySqlDatabase()
+            + "?useSSL=" + config.isMySqlUseSsl() + "&rewriteBatchedStatements=true&characterEncoding=utf8";
+        return DriverManager.getConnection(url, config.getMySqlUsername(), config.getMySqlPassword());
+    }
+    
+    /**
+     * Создать таблицы, если их нет
+     */
+    public void createTables(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            if (this == SQLITE) {
+                stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS balances (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        player_uuid TEXT NOT NULL,
+                        player_name TEXT NOT NULL,
+                        currency TEXT NOT NULL,
+                        balance BIGINT NOT NULL DEFAULT 0,
+                        last_updated TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        change_seq INTEGER NOT NULL DEFAULT 0,
+                        version INTEGER NOT NULL DEFAULT 0,
+                        UNIQUE(player_uuid, currency)
+                    )
+                    """);
+                stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS transactions (
+                        id TEXT PRIMARY KEY,
+                        from_player TEXT,
+                        to_player TEXT NOT NULL,
+                        from_uuid TEXT,
+                        to_uuid TEXT,
+                        currency TEXT NOT NULL,
+                        amount BIGINT NOT NULL,
+                        transaction_type TEXT NOT NULL,
+                        timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                    )
+                    """);
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_from ON transactions (from_uuid, currency, timestamp)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_to ON transactions (to_uuid, currency, timestamp)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_currency_time ON transactions (currency, timestamp)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_type_time ON transactions (currency, transaction_type, timestamp)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_balances_change_seq ON balances (change_seq)");
+            } else {
+                stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS balances (
+                        id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+                        player_uuid VARCHAR(36) NOT NULL,
+                        player_name VARCHAR(64) NOT NULL,
+                        currency VARCHAR(64) NOT NULL,
+                        balance BIGINT NOT NULL DEFAULT 0,
+                        last_updated DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+                        change_seq BIGINT NOT NULL DEFAULT 0,
+                        version BIGINT NOT NULL DEFAULT 0,
+                        UNIQUE KEY uk_balances_player (player_uuid, currency),
+                        KEY idx_balances_change_seq (change_seq)
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
+                    """);
+                // row_id задаёт порядок строк для разбиения на диапазоны,
+                // так как id транзакции - строка
+                stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS transactions (
+                        row_id BIGINT NOT NULL AUTO_INCREMENT,
+                        id VARCHAR(64) NOT NULL PRIMARY KEY,
+                        from_player VARCHAR(64),
+                        to_player VARCHAR(64) NOT NULL,
+                        from_uuid VARCHAR(36),
+                        to_uuid VARCHAR(36),
+                        currency VARCHAR(64) NOT NULL,
+                        amount BIGINT NOT NULL,
+                        transaction_type VARCHAR(16) NOT NULL,
+                        timestamp DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+                        UNIQUE KEY uk_transactions_row (row_id),
+                        KEY idx_transactions_from (from_uuid, currency, timestamp),
+                        KEY idx_transactions_to (to_uuid, currency, timestamp),
+                        KEY idx_transactions_currency_time (currency, timestamp),
+                        KEY idx_transactions_type_time (currency, transaction_type, timestamp)
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
+                    """);
+            }
+        }
+    }
+    
+    /**
+     * Получить столбец с возрастающим числовым ключом строки
+     */
+    public String getRowKey(DataTable table) {
+        if (this == SQLITE) {
+            return "rowid";
+        }
+        return table == DataTable.BALANCES ? "id" : "row_id";
+    }
+    
+    /**
+     * Получить запрос записи балансов с перезаписью существующих строк
+     * Версия и номер изменения переносятся из исходной БД
+     */
+    public String getBalanceUpsertSql() {
+        if (this == SQLITE) {
+            return """
+                INSERT INTO balances (player_uuid, player_name, currency, balance, last_updated, change_seq, version)
+                VALUES (?, ?, ?, ?, ?, ?, ?)
+                ON CONFLICT(player_uuid, currency) DO UPDATE SET
+                    player_name = excluded.player_name,
+                    balance = excluded.balance,
+                    last_updated = excluded.last_updated,
+                    change_seq = excluded.change_seq,
+                    version = excluded.version
+                """;
+        }
+        return """
+            INSERT INTO balances (player_uuid, player_name, currency, balance, last_updated, change_seq, version)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            ON DUPLICATE KEY UPDATE
+                player_name = VALUES(player_name),
+                balance = VALUES(balance),
+                last_updated = VALUES(last_updated),
+                change_seq = VALUES(change_seq),
+                version = VALUES(version)
+            """;
+    }
+    
+    /**
+     * Получить запрос записи транзакций с пропуском уже перенесённых
+     */
+    public String getTransactionInsertSql() {
+        String insert = this == SQLITE ? "INSERT OR IGNORE" : "INSERT IGNORE";
+        return insert + """
+             INTO transactions (id, from_player, to_player, from_uuid, to_uuid, currency, amount, transaction_type, timestamp)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+    }
+}
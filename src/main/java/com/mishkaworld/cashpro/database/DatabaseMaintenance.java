@@ -0,0 +1,323 @@
+package com.mishkaworld.cashpro.database;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.config.ConfigManager;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Фоновое обслуживание файла БД
+ * Раз в минуту оценивается нагрузка по количеству выполненных задач
+ * хранилища. Обслуживание запускается не чаще maintenance.interval и только
+ * в заданные часы или после нескольких минут подряд с низкой нагрузкой.
+ * Запуск возвращает свободные страницы (incremental_vacuum), обновляет
+ * статистику планировщика, переносит журнал WAL в файл БД и время от времени
+ * выполняет быструю проверку целостности. Шаги выполняются отдельными
+ * обращениями к БД, между ними проходят остальные запросы, а весь запуск
+ * ограничен maintenance.max-duration. Время последних запусков хранится
+ * в maintenance.properties
+ * 
+ * @author Misha Ermakov
+ */
+public class DatabaseMaintenance {
+    
+    private static final String STATE_FILE = "maintenance.properties";
+    private static final long SAMPLE_PERIOD_TICKS = 20 * 60;
+    
+    private final CashProReloaded plugin;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Properties state = new Properties();
+    private BukkitTask sampleTask;
+    private long lastCompletedTasks;
+    private int idleMinutes;
+    
+    public DatabaseMaintenance(CashProReloaded plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Загрузить время последних запусков и запустить оценку нагрузки
+     */
+    public void initialize() {
+        loadState();
+        
+        if (!plugin.getConfigManager().isMaintenanceEnabled() || !(plugin.getStorage() instanceof DatabaseManager)) {
+            return;
+        }
+        
+        lastCompletedTasks = plugin.getStorageExecutor().getCompletedTasks();
+        sampleTask = plugin.getServer().getScheduler()
+            .runTaskTimerAsynchronously(plugin, this::sample, SAMPLE_PERIOD_TICKS, SAMPLE_PERIOD_TICKS);
+    }
+    
+    /**
+     * Остановить расписание обслуживания
+     */
+    public void shutdown() {
+        if (sampleTask != null) {
+            sampleTask.cancel();
+            sampleTask = null;
+        }
+    }
+    
+    /**
+     * Оценить нагрузку за прошедшую минуту и запустить обслуживание, если пора
+     */
+    private synchronized void sample() {
+        ConfigManager config = plugin.getConfigManager();
+        
+        long completed = plugin.getStorageExecutor().getCompletedTasks();
+        long perMinute = completed - lastCompletedTasks;
+        lastCompletedTasks = completed;
+        idleMinutes = perMinute <= config.getMaintenanceIdleThreshold() ? idleMinutes + 1 : 0;
+        
+        if (!plugin.isReady() || running.get()) {
+            return;
+        }
+        
+        long now = System.currentTimeMillis();
+        if (now - getTime("last-run") < config.getMaintenanceInterval()) {
+            return;
+        }
+        
+        boolean scheduledHour = config.getMaintenanceHours().contains(LocalTime.now().getHour());
+        if (scheduledHour || idleMinutes >= config.getMaintenanceIdleMinutes()) {
+            plugin.getStorageExecutor().execute(() -> {
+                try {
+                    run(false);
+                } catch (SQLException e) {
+                    plugin.getLogger().severe("Ошибка при обслуживании БД: " + e.getMessage());
+                }
+            });
+        }
+    }
+    
+    /**
+     * Выполнить обслуживание БД
+     * Полный VACUUM блокирует БД на всё время перестроения файла, поэтому
+     * выполняется только по команде и не ограничен по времени
+     * 
+     * @param fullVacuum выполнить полный VACUUM вместо incremental_vacuum
+     * @return результат или null если обслуживание уже выполняется
+     */
+    public Result run(boolean fullVacuum) throws SQLException {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        
+        try {
+            return runSteps(fullVacuum);
+        } finally {
+            running.set(false);
+        }
+    }
+    
+    private Result runSteps(boolean fullVacuum) throws SQLException {
+        // Файл, журнал WAL и свободные страницы есть только у хранилища SQLite
+        if (!(plugin.getStorage() instanceof DatabaseManager databaseManager)) {
+            throw new SQLException("Обслуживание доступно только для хранилища SQLite");
+        }
+        
+        ConfigManager config = plugin.getConfigManager();
+        File databaseFile = databaseManager.getDatabasePath();
+        File walFile = new File(databaseFile.getPath() + "-wal");
+        
+        long start = System.currentTimeMillis();
+        long deadline = start + config.getMaintenanceMaxDuration();
+        Result result = new Result(databaseFile.length(), walFile.length());
+        
+        DatabaseManager.StorageStats stats = databaseManager.getStorageStats();
+        result.freePagesBefore = stats.getFreePages();
+        
+        if (fullVacuum) {
+            databaseManager.vacuum();
+        } else if (stats.isIncrementalVacuum()) {
+            // Порциями, чтобы между ними выполнялись остальные запросы
+            long freePages = stats.getFreePages();
+            while (freePages > 0 && System.currentTimeMillis() < deadline) {
+                freePages = databaseManager.incrementalVacuum(config.getMaintenanceVacuumPages());
+            }
+        }
+        
+        if (fullVacuum || System.currentTimeMillis() < deadline) {
+            databaseManager.optimize(config.getMaintenanceAnalysisLimit());
+        }
+        
+        // После очистки и анализа: их изменения тоже попадают в журнал
+        if (stats.isWal()) {
+            databaseManager.checkpointWal();
+        }
+        
+        long now = System.currentTimeMillis();
+        if (now - getTime("last-quick-check") >= config.getMaintenanceQuickCheckInterval()) {
+            result.integrity = quickCheck(databaseManager, Math.max(deadline, now + 1000) - now);
+        }
+        
+        result.freePagesAfter = databaseManager.getStorageStats().getFreePages();
+        result.sizeAfter = databaseFile.length();
+        result.walSizeAfter = walFile.length();
+        result.millis = System.currentTimeMillis() - start;
+        
+        setTime("last-run", start);
+        saveState();
+        
+        plugin.getLogger().info("Обслуживание БД выполнено за " + result.millis + " мс: файл "
+            + formatSize(result.sizeBefore) + " -> " + formatSize(result.sizeAfter) + ", WAL "
+            + formatSize(result.walSizeBefore) + " -> " + formatSize(result.walSizeAfter) + ", свободных страниц "
+            + result.freePagesBefore + " -> " + result.freePagesAfter + ", проверка целостности: "
+            + (result.integrity != null ? result.integrity : "не выполнялась"));
+        if (!stats.isIncrementalVacuum() && !fullVacuum) {
+            plugin.getLogger().info("Свободные страницы не возвращаются: выполните /cashpro maintenance vacuum, "
+                + "чтобы включить auto_vacuum = INCREMENTAL для существующей БД");
+        }
+        return result;
+    }
+    
+    /**
+     * Быстрая проверка целостности
+     * 
+     * @return "ok", "прервана" или первая найденная ошибка
+     */
+    private String quickCheck(DatabaseManager databaseManager, long timeoutMillis) {
+        List<String> rows;
+        try {
+            rows = databaseManager.quickCheck(timeoutMillis);
+        } catch (SQLException e) {
+            // Проверка отменена по времени, повторится при следующем запуске
+            return "прервана";
+        }
+        
+        setTime("last-quick-check", System.currentTimeMillis());
+        if (rows.size() == 1 && "ok".equalsIgnoreCase(rows.get(0))) {
+            return "ok";
+        }
+        
+        plugin.getLogger().severe("Проверка целостности БД нашла ошибки (" + rows.size() + "):");
+        for (String row : rows) {
+            plugin.getLogger().severe(row);
+        }
+        return rows.isEmpty() ? "нет ответа" : rows.get(0);
+    }
+    
+    /**
+     * Проверить, выполняется ли обслуживание
+     */
+    public boolean isRunning() {
+        return running.get();
+    }
+    
+    /**
+     * Получить время последнего запуска (0 если запусков не было)
+     */
+    public synchronized long getLastRun() {
+        return getTime("last-run");
+    }
+    
+    private synchronized long getTime(String key) {
+        try {
+            return Long.parseLong(state.getProperty(key, "0"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+    
+    private synchronized void setTime(String key, long time) {
+        state.setProperty(key, String.valueOf(time));
+    }
+    
+    private synchronized void loadState() {
+        File file = new File(plugin.getDataFolder(), STATE_FILE);
+        if (!file.exists()) {
+            return;
+        }
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            state.load(in);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Не удалось прочитать " + STATE_FILE + ": " + e.getMessage());
+        }
+    }
+    
+    private synchronized void saveState() {
+        File file = new File(plugin.getDataFolder(), STATE_FILE);
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            state.store(out, "CashPro database maintenance");
+        } catch (IOException e) {
+            plugin.getLogger().warning("Не удалось сохранить " + STATE_FILE + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Форматировать размер файла
+     */
+    public static String formatSize(long bytes) {
+        if (bytes < 1024 * 1024) {
+            return (bytes / 1024) + " КБ";
+        }
+        return String.format(Locale.ROOT, "%.1f МБ", bytes / (1024.0 * 1024.0));
+    }
+    
+    /**
+     * Результат обслуживания
+     */
+    public static class Result {
+        private final long sizeBefore;
+        private final long walSizeBefore;
+        private long sizeAfter;
+        private long walSizeAfter;
+        private long freePagesBefore;
+        private long freePagesAfter;
+        private String integrity;
+        private long millis;
+        
+        Result(long sizeBefore, long walSizeBefore) {
+            this.sizeBefore = sizeBefore;
+            this.walSizeBefore = walSizeBefore;
+        }
+        
+        public long getSizeBefore() {
+            return sizeBefore;
+        }
+        
+        public long getSizeAfter() {
+            return sizeAfter;
+        }
+        
+        public long getWalSizeBefore() {
+            return walSizeBefore;
+        }
+        
+        public long getWalSizeAfter() {
+            return walSizeAfter;
+        }
+        
+        public long getFreePagesBefore() {
+            return freePagesBefore;
+        }
+        
+        public long getFreePagesAfter() {
+            return freePagesAfter;
+        }
+        
+        /**
+         * Получить результат проверки целостности (null если проверка не выполнялась)
+         */
+        public String getIntegrity() {
+            return integrity;
+        }
+        
+        public long getMillis() {
+            return millis;
+        }
+    }
+}
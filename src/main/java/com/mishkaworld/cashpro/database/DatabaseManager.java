@@ -1,24 +1,51 @@
 package com.mishkaworld.cashpro.database;
 
 import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.economy.BulkJob;
+import com.mishkaworld.cashpro.economy.PlayerBalance;
 import com.mishkaworld.cashpro.economy.Transaction;
+import org.bukkit.scheduler.BukkitTask;
 
 import java.io.File;
 import java.sql.*;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
 
 /**
  * Менеджер базы данных
+ * Реализует {@link StorageBackend} поверх SQLite, остальные методы
+ * (миграции, сводки, обслуживание, состояние массовых заданий) доступны
+ * только для этого хранилища
  * 
  * @author Misha Ermakov
  */
-public class DatabaseManager {
+public class DatabaseManager implements StorageBackend {
     
     private final CashProReloaded plugin;
     private Connection connection;
+    private ReaderPool readerPool;
+    private final ReadStats readStats = new ReadStats();
+    private final ContentionStats contentionStats = new ContentionStats();
     private final String databaseFile;
+    private volatile Consumer<Transaction> transactionListener;
+    
+    // Номер последнего изменения в текущем пакете журнала (под монитором)
+    private long batchChangeSeq;
+    
+    // 100 строк по 9 параметров укладываются в лимит параметров SQLite (999)
+    private static final int IMPORT_ROWS_PER_STATEMENT = 100;
     
     public DatabaseManager(CashProReloaded plugin) {
         this.plugin = plugin;
@@ -48,6 +75,92 @@ public class DatabaseManager {
         
         connection = DriverManager.getConnection(url);
         connection.setAutoCommit(true);
+        
+        // Файл БД может использоваться несколькими серверами одновременно,
+        // поэтому при занятой блокировке ждём, а не завершаемся с ошибкой
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = 5000");
+            // Освобождённые страницы возвращаются порциями при обслуживании БД.
+            // Для новой БД действует сразу, для существующей - после полного VACUUM
+            stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+            
+            if (plugin.getConfigManager().isWalEnabled()) {
+                String mode = queryString(stmt, "PRAGMA journal_mode = WAL");
+                if (!"wal".equalsIgnoreCase(mode)) {
+                    // Например, файл БД на сетевом диске
+                    plugin.getLogger().warning("Режим WAL недоступен (journal_mode = " + mode + "), чтение идёт через общее соединение");
+                    return;
+                }
+            }
+        }
+        
+        int readers = plugin.getConfigManager().getReadConnections();
+        if (plugin.getConfigManager().isWalEnabled() && readers > 0) {
+            readerPool = new ReaderPool(url, readers);
+        }
+    }
+    
+    /**
+     * Выполнить запрос чтения через пул читателей
+     * Без пула (WAL выключен) запрос выполняется через общее соединение
+     * и ждёт завершения записи
+     */
+    private <T> T read(ReadQuery<T> query) throws SQLException {
+        long start = System.nanoTime();
+        
+        if (readerPool == null) {
+            synchronized (this) {
+                long acquired = System.nanoTime();
+                try {
+                    return query.run(connection);
+                } finally {
+                    readStats.record(acquired - start, System.nanoTime() - acquired);
+                }
+            }
+        }
+        
+        Connection reader = readerPool.acquire();
+        long acquired = System.nanoTime();
+        try {
+            return query.run(reader);
+        } finally {
+            readerPool.release(reader);
+            readStats.record(acquired - start, System.nanoTime() - acquired);
+        }
+    }
+    
+    /**
+     * Выполнить запись одной транзакцией, занимающей запись в файле БД сразу
+     * (BEGIN IMMEDIATE): чтения внутри транзакции видят состояние, которое
+     * другой сервер с общей БД не изменит до фиксации. Вызывается под
+     * блокировкой соединения
+     */
+    private <T> T writeImmediate(WriteTransaction<T> transaction) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("BEGIN IMMEDIATE");
+            try {
+                T result = transaction.run();
+                stmt.execute("COMMIT");
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                stmt.execute("ROLLBACK");
+                throw e;
+            }
+        }
+    }
+    
+    /**
+     * Получить статистику задержек запросов чтения
+     */
+    public ReadStats getReadStats() {
+        return readStats;
+    }
+    
+    /**
+     * Получить количество соединений для чтения (0 если пул не используется)
+     */
+    public int getReaderCount() {
+        return readerPool != null ? readerPool.getSize() : 0;
     }
     
     /**
@@ -63,6 +176,8 @@ public class DatabaseManager {
                 currency TEXT NOT NULL,
                 balance BIGINT NOT NULL DEFAULT 0,
                 last_updated TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                change_seq INTEGER NOT NULL DEFAULT 0,
+                version INTEGER NOT NULL DEFAULT 0,
                 UNIQUE(player_uuid, currency)
             )
             """;
@@ -73,6 +188,8 @@ public class DatabaseManager {
                 id TEXT PRIMARY KEY,
                 from_player TEXT,
                 to_player TEXT NOT NULL,
+                from_uuid TEXT,
+                to_uuid TEXT,
                 currency TEXT NOT NULL,
                 amount BIGINT NOT NULL,
                 transaction_type TEXT NOT NULL,
@@ -80,16 +197,127 @@ public class DatabaseManager {
             )
             """;
         
+        // Сводная статистика транзакций по интервалам времени
+        String createRollupsTable = """
+            CREATE TABLE IF NOT EXISTS transaction_rollups (
+                granularity TEXT NOT NULL,
+                bucket_start INTEGER NOT NULL,
+                currency TEXT NOT NULL,
+                transaction_type TEXT NOT NULL,
+                tx_count INTEGER NOT NULL DEFAULT 0,
+                amount_sum BIGINT NOT NULL DEFAULT 0,
+                amount_max BIGINT NOT NULL DEFAULT 0,
+                PRIMARY KEY (granularity, currency, bucket_start, transaction_type)
+            )
+            """;
+        
+        // Состояние массовых заданий: текущий период и продвижение по id счетов
+        String createBulkJobsTable = """
+            CREATE TABLE IF NOT EXISTS bulk_jobs (
+                job TEXT PRIMARY KEY,
+                period INTEGER NOT NULL,
+                max_id INTEGER NOT NULL,
+                last_id INTEGER NOT NULL DEFAULT 0,
+                accounts INTEGER NOT NULL DEFAULT 0,
+                amount BIGINT NOT NULL DEFAULT 0,
+                finished INTEGER NOT NULL DEFAULT 0
+            )
+            """;
+        
         try (Statement stmt = connection.createStatement()) {
             stmt.execute(createBalancesTable);
             stmt.execute(createTransactionsTable);
+            stmt.execute(createRollupsTable);
+            stmt.execute(createBulkJobsTable);
+        }
+        
+        migrateTransactionsTable();
+        migrateBalancesTable();
+        
+        // Отдельный индекс для каждой стороны транзакции, чтобы история
+        // читалась двумя упорядоченными проходами по индексу без OR
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_from ON transactions (from_uuid, currency, timestamp)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_to ON transactions (to_uuid, currency, timestamp)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_balances_change_seq ON balances (change_seq)");
+            
+            // Индексы поиска транзакций без участника: по валюте и по валюте с типом
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_currency_time ON transactions (currency, timestamp)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_type_time ON transactions (currency, transaction_type, timestamp)");
+        }
+    }
+    
+    /**
+     * Добавить номер изменения и версию строки в таблицу балансов старого формата
+     */
+    private void migrateBalancesTable() throws SQLException {
+        Set<String> columns = new HashSet<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(balances)")) {
+            while (rs.next()) {
+                columns.add(rs.getString("name").toLowerCase());
+            }
+        }
+        
+        try (Statement stmt = connection.createStatement()) {
+            if (!columns.contains("change_seq")) {
+                plugin.getLogger().info("Миграция таблицы балансов: добавление номера изменения...");
+                stmt.execute("ALTER TABLE balances ADD COLUMN change_seq INTEGER NOT NULL DEFAULT 0");
+            }
+            if (!columns.contains("version")) {
+                plugin.getLogger().info("Миграция таблицы балансов: добавление версии строки...");
+                stmt.execute("ALTER TABLE balances ADD COLUMN version INTEGER NOT NULL DEFAULT 0");
+            }
+        }
+    }
+    
+    /**
+     * Добавить UUID участников в таблицу транзакций старого формата
+     * и заполнить их по именам из таблицы балансов
+     * Имя сравнивается без учёта регистра. Если имени соответствует несколько
+     * игроков (смена ника, имена, отличающиеся регистром), UUID не заполняется:
+     * такая строка показывается по сохранённому имени, но не приписывается
+     * случайному счёту
+     */
+    private void migrateTransactionsTable() throws SQLException {
+        boolean hasUuidColumns = false;
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(transactions)")) {
+            while (rs.next()) {
+                if ("to_uuid".equalsIgnoreCase(rs.getString("name"))) {
+                    hasUuidColumns = true;
+                }
+            }
+        }
+        
+        if (hasUuidColumns) {
+            return;
+        }
+        
+        plugin.getLogger().info("Миграция таблицы транзакций: добавление UUID участников...");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("ALTER TABLE transactions ADD COLUMN from_uuid TEXT");
+            stmt.execute("ALTER TABLE transactions ADD COLUMN to_uuid TEXT");
+            stmt.executeUpdate("""
+                UPDATE transactions SET from_uuid = (
+                    SELECT CASE WHEN COUNT(DISTINCT player_uuid) = 1 THEN MIN(player_uuid) END
+                    FROM balances WHERE balances.player_name = transactions.from_player COLLATE NOCASE
+                ) WHERE from_player <> 'ADMIN'
+                """);
+            stmt.executeUpdate("""
+                UPDATE transactions SET to_uuid = (
+                    SELECT CASE WHEN COUNT(DISTINCT player_uuid) = 1 THEN MIN(player_uuid) END
+                    FROM balances WHERE balances.player_name = transactions.to_player COLLATE NOCASE
+                )
+                """);
         }
     }
     
     /**
      * Получить баланс игрока
      */
-    public long getBalance(UUID playerUuid, String currency) {
+    @Override
+    public synchronized long getBalance(UUID playerUuid, String currency) {
         String sql = "SELECT balance FROM balances WHERE player_uuid = ? AND currency = ?";
         
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
@@ -109,90 +337,335 @@ public class DatabaseManager {
     }
     
     /**
-     * Установить баланс игрока
+     * Применить пакет изменений журнала одной транзакцией
+     * В оптимистичном режиме (storage.optimistic.enabled) пакет читает балансы
+     * с версиями строк и записывает их условием WHERE version = ?, не занимая
+     * запись в файле БД заранее. Если строку между чтением и записью изменил
+     * другой сервер, пакет отменяется и повторяется целиком с экспоненциальной
+     * задержкой. Без оптимистичного режима, а также для пакетов с порцией
+     * массового задания или импорта пакет сразу занимает запись
+     * (BEGIN IMMEDIATE) и конфликтов не бывает. Каждая запись увеличивает
+     * версию строки и получает новый номер изменения для синхронизации серверов
+     * 
+     * @return результаты в порядке изменений
+     * @throws SQLException если пакет не записан после всех повторов
      */
-    public boolean setBalance(UUID playerUuid, String playerName, String currency, long amount) {
-        String sql = """
-            INSERT OR REPLACE INTO balances (player_uuid, player_name, currency, balance, last_updated)
-            VALUES (?, ?, ?, ?, CURRENT_TIMESTAMP)
-            """;
+    @Override
+    public List<LedgerMutation.Result> applyMutations(List<LedgerMutation> mutations) throws SQLException {
+        if (!plugin.getConfigManager().isOptimisticEnabled() || mutations.stream().anyMatch(LedgerMutation::isBulk)) {
+            List<LedgerMutation.Result> results = applyBatch(mutations, true);
+            if (results == null) {
+                // При занятой записи строки меняет только этот пакет, сравнение версий не должно расходиться
+                throw new SQLException("Пакет журнала не записан: версия строки изменилась при занятой записи");
+            }
+            return results;
+        }
+        
+        int maxRetries = plugin.getConfigManager().getOptimisticMaxRetries();
+        for (int attempt = 0; ; attempt++) {
+            contentionStats.recordAttempt();
+            
+            List<LedgerMutation.Result> results = applyBatch(mutations, false);
+            if (results != null) {
+                contentionStats.recordRetries(attempt);
+                return results;
+            }
+            
+            if (attempt >= maxRetries) {
+                contentionStats.recordConflict(0);
+                contentionStats.recordExhausted();
+                throw new SQLException("Пакет журнала не записан после " + (attempt + 1)
+                    + " попыток: балансы постоянно изменяют другие серверы");
+            }
+            
+            // Задержка выдерживается вне монитора, соединение в это время свободно
+            long delay = getBackoffDelay(attempt);
+            contentionStats.recordConflict(delay);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Повтор записи пакета журнала прерван", e);
+            }
+        }
+    }
+    
+    /**
+     * Выполнить одну попытку записи пакета
+     * 
+     * @param immediate занять запись в файле БД в начале транзакции
+     * @return результаты или null при конфликте версий (транзакция отменена)
+     */
+    private synchronized List<LedgerMutation.Result> applyBatch(List<LedgerMutation> mutations, boolean immediate) throws SQLException {
+        List<LedgerMutation.Result> results = new ArrayList<>(mutations.size());
+        List<Transaction> saved = new ArrayList<>();
+        
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(immediate ? "BEGIN IMMEDIATE" : "BEGIN");
+            try {
+                batchChangeSeq = readMaxChangeSeq();
+                for (LedgerMutation mutation : mutations) {
+                    LedgerMutation.Result result = applyMutation(mutation);
+                    if (result == null) {
+                        stmt.execute("ROLLBACK");
+                        return null;
+                    }
+                    if (result.isApplied() && mutation.getTransaction() != null && insertTransaction(mutation.getTransaction())) {
+                        saved.add(mutation.getTransaction());
+                    }
+                    results.add(result);
+                }
+                stmt.execute("COMMIT");
+            } catch (SQLException e) {
+                stmt.execute("ROLLBACK");
+                // Другой сервер записал БД после начала транзакции: это тоже конфликт
+                if (!immediate && isBusy(e)) {
+                    return null;
+                }
+                throw e;
+            } catch (RuntimeException e) {
+                stmt.execute("ROLLBACK");
+                throw e;
+            }
+        }
+        
+        notifyListener(saved);
+        return results;
+    }
+    
+    /**
+     * Передать слушателю транзакции, уже зафиксированные в БД
+     * Слушатель вызывается под той же блокировкой, что и вставка, поэтому
+     * перестроение сводок видит транзакцию либо в таблице, либо в слушателе.
+     * Ошибка слушателя только записывается в лог: пакет уже зафиксирован,
+     * и повтор записал бы изменения второй раз
+     */
+    private void notifyListener(List<Transaction> saved) {
+        Consumer<Transaction> listener = transactionListener;
+        if (listener == null) {
+            return;
+        }
+        
+        for (Transaction transaction : saved) {
+            try {
+                listener.accept(transaction);
+            } catch (RuntimeException e) {
+                plugin.getLogger().log(Level.SEVERE, "Ошибка слушателя транзакций для " + transaction.getId(), e);
+            }
+        }
+    }
+    
+    /**
+     * Применить одно изменение внутри транзакции пакета
+     * 
+     * @return результат или null если строку изменил другой сервер
+     */
+    private LedgerMutation.Result applyMutation(LedgerMutation mutation) throws SQLException {
+        if (mutation.getType() == LedgerMutation.Type.RECORD) {
+            return LedgerMutation.Result.applied(0, 0);
+        }
+        if (mutation.getType() == LedgerMutation.Type.BULK_JOB) {
+            return LedgerMutation.Result.applied(applyBulkChunk(mutation.getBulkJob(), mutation.getAfterId(), mutation.getUpToId()));
+        }
+        if (mutation.getType() == LedgerMutation.Type.IMPORT) {
+            return LedgerMutation.Result.applied(importChunk(mutation.getTable(), mutation.getRows()));
+        }
+        
+        UUID playerUuid = mutation.getPlayerUuid();
+        String currency = mutation.getCurrency();
+        long amount = mutation.getAmount();
+        VersionedBalance current = readVersionedBalance(playerUuid, currency);
+        long balance = current != null ? current.balance : 0;
+        
+        if (mutation.getType() == LedgerMutation.Type.SET) {
+            return written(amount, compareAndSetBalance(playerUuid, mutation.getPlayerName(), currency, current, amount));
+        }
+        if (mutation.getType() == LedgerMutation.Type.DEPOSIT) {
+            return written(balance + amount,
+                compareAndSetBalance(playerUuid, mutation.getPlayerName(), currency, current, balance + amount));
+        }
+        
+        if (balance < amount) {
+            return LedgerMutation.Result.insufficientFunds();
+        }
+        long changeSeq = compareAndSetBalance(playerUuid, mutation.getPlayerName(), currency, current, balance - amount);
+        if (mutation.getType() == LedgerMutation.Type.WITHDRAW || changeSeq < 0) {
+            return written(balance - amount, changeSeq);
+        }
+        
+        VersionedBalance target = readVersionedBalance(mutation.getTargetUuid(), currency);
+        long targetBalance = (target != null ? target.balance : 0) + amount;
+        long targetChangeSeq = compareAndSetBalance(mutation.getTargetUuid(), mutation.getTargetName(), currency, target, targetBalance);
+        if (targetChangeSeq < 0) {
+            return null;
+        }
+        return LedgerMutation.Result.applied(balance - amount, changeSeq, targetBalance, targetChangeSeq);
+    }
+    
+    /**
+     * Получить результат записи одного баланса
+     * 
+     * @return результат или null если запись не прошла сравнение версии
+     */
+    private static LedgerMutation.Result written(long balance, long changeSeq) {
+        return changeSeq >= 0 ? LedgerMutation.Result.applied(balance, changeSeq) : null;
+    }
+    
+    /**
+     * Прочитать баланс и версию строки
+     * 
+     * @return баланс с версией или null если строки нет
+     */
+    private VersionedBalance readVersionedBalance(UUID playerUuid, String currency) throws SQLException {
+        String sql = "SELECT balance, version FROM balances WHERE player_uuid = ? AND currency = ?";
         
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setString(1, playerUuid.toString());
-            stmt.setString(2, playerName);
-            stmt.setString(3, currency);
-            stmt.setLong(4, amount);
+            stmt.setString(2, currency);
             
-            return stmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            plugin.getLogger().severe("Ошибка при установке баланса: " + e.getMessage());
-            return false;
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return new VersionedBalance(rs.getLong("balance"), rs.getLong("version"));
+                }
+            }
         }
+        
+        return null;
     }
     
     /**
-     * Добавить к балансу игрока
+     * Прочитать номер последнего изменения балансов на соединении записи
      */
-    public boolean addBalance(UUID playerUuid, String playerName, String currency, long amount) {
-        long currentBalance = getBalance(playerUuid, currency);
-        return setBalance(playerUuid, playerName, currency, currentBalance + amount);
+    private long readMaxChangeSeq() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(change_seq), 0) FROM balances")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
     }
     
     /**
-     * Вычесть из баланса игрока
+     * Записать баланс, если строка не изменилась с чтения
+     * Существующая строка обновляется условием WHERE version = ?, отсутствующая
+     * создаётся, если её тем временем не создал другой сервер. Номера изменений
+     * пакета выдаются по порядку от номера, прочитанного в начале транзакции
+     * 
+     * @param current прочитанный баланс с версией или null если строки не было
+     * @return номер изменения записанного баланса или -1 при конфликте версий
      */
-    public boolean subtractBalance(UUID playerUuid, String playerName, String currency, long amount) {
-        long currentBalance = getBalance(playerUuid, currency);
-        if (currentBalance < amount) {
-            return false;
+    private long compareAndSetBalance(UUID playerUuid, String playerName, String currency,
+                                      VersionedBalance current, long amount) throws SQLException {
+        String sql = current != null
+            ? """
+                UPDATE balances
+                SET balance = ?, player_name = ?, last_updated = CURRENT_TIMESTAMP, version = version + 1, change_seq = ?
+                WHERE player_uuid = ? AND currency = ? AND version = ?
+                """
+            : """
+                INSERT OR IGNORE INTO balances (balance, player_name, last_updated, change_seq, player_uuid, currency, version)
+                VALUES (?, ?, CURRENT_TIMESTAMP, ?, ?, ?, 0)
+                """;
+        
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setLong(1, amount);
+            stmt.setString(2, playerName);
+            stmt.setLong(3, batchChangeSeq + 1);
+            stmt.setString(4, playerUuid.toString());
+            stmt.setString(5, currency);
+            if (current != null) {
+                stmt.setLong(6, current.version);
+            }
+            
+            if (stmt.executeUpdate() != 1) {
+                return -1;
+            }
         }
-        return setBalance(playerUuid, playerName, currency, currentBalance - amount);
+        return ++batchChangeSeq;
+    }
+    
+    /**
+     * Получить задержку перед повтором: экспоненциальный рост со случайным разбросом,
+     * чтобы конфликтующие серверы не повторяли запись одновременно
+     */
+    private long getBackoffDelay(int attempt) {
+        long base = plugin.getConfigManager().getOptimisticBackoffBase();
+        long max = plugin.getConfigManager().getOptimisticBackoffMax();
+        long delay = Math.min(max, base << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(delay / 2, delay + 1);
+    }
+    
+    /**
+     * Проверить, что запись отклонена из-за того, что БД занята другим соединением
+     * (SQLITE_BUSY и его расширенные коды, в том числе устаревший снимок WAL)
+     */
+    private static boolean isBusy(SQLException e) {
+        return (e.getErrorCode() & 0xFF) == 5;
+    }
+    
+    /**
+     * Получить статистику конфликтов оптимистичной записи пакетов
+     */
+    public ContentionStats getContentionStats() {
+        return contentionStats;
     }
     
     /**
-     * Сохранить транзакцию
+     * Вставить строку транзакции
      */
-    public boolean saveTransaction(Transaction transaction) {
+    private boolean insertTransaction(Transaction transaction) throws SQLException {
         String sql = """
-            INSERT INTO transactions (id, from_player, to_player, currency, amount, transaction_type, timestamp)
-            VALUES (?, ?, ?, ?, ?, ?, ?)
+            INSERT INTO transactions (id, from_player, to_player, from_uuid, to_uuid, currency, amount, transaction_type, timestamp)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
             """;
         
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setString(1, transaction.getId());
             stmt.setString(2, transaction.getFromPlayer());
             stmt.setString(3, transaction.getToPlayer());
-            stmt.setString(4, transaction.getCurrency());
-            stmt.setLong(5, transaction.getAmount());
-            stmt.setString(6, transaction.getType().name());
-            stmt.setTimestamp(7, Timestamp.valueOf(transaction.getTimestamp()));
+            stmt.setString(4, transaction.getFromUuid() != null ? transaction.getFromUuid().toString() : null);
+            stmt.setString(5, transaction.getToUuid() != null ? transaction.getToUuid().toString() : null);
+            stmt.setString(6, transaction.getCurrency());
+            stmt.setLong(7, transaction.getAmount());
+            stmt.setString(8, transaction.getType().name());
+            stmt.setTimestamp(9, Timestamp.valueOf(transaction.getTimestamp()));
             
             return stmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            plugin.getLogger().severe("Ошибка при сохранении транзакции: " + e.getMessage());
-            return false;
         }
     }
     
+    /**
+     * Установить слушателя успешно сохранённых транзакций
+     * Слушатель вызывается внутри блокировки БД после фиксации и должен
+     * работать быстро, его ошибки записываются в лог
+     */
+    @Override
+    public void setTransactionListener(Consumer<Transaction> listener) {
+        this.transactionListener = listener;
+    }
+    
     /**
      * Получить общее количество транзакций игрока
      */
-    public int getPlayerTransactionsCount(String playerName, String currency) {
+    @Override
+    public int getPlayerTransactionsCount(UUID playerUuid, String currency) {
+        // Каждая сторона считается только по своему индексу
         String sql = """
-            SELECT COUNT(*) FROM transactions 
-            WHERE (from_player = ? OR to_player = ?) AND currency = ?
+            SELECT (SELECT COUNT(*) FROM transactions WHERE from_uuid = ? AND currency = ?)
+                 + (SELECT COUNT(*) FROM transactions WHERE to_uuid = ? AND currency = ?)
             """;
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, playerName);
-            stmt.setString(2, playerName);
-            stmt.setString(3, currency);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt(1);
+        try {
+            return read(reader -> {
+                try (PreparedStatement stmt = reader.prepareStatement(sql)) {
+                    stmt.setString(1, playerUuid.toString());
+                    stmt.setString(2, currency);
+                    stmt.setString(3, playerUuid.toString());
+                    stmt.setString(4, currency);
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        return rs.next() ? rs.getInt(1) : 0;
+                    }
                 }
-            }
+            });
         } catch (SQLException e) {
             plugin.getLogger().severe("Ошибка при подсчете транзакций: " + e.getMessage());
         }
@@ -201,52 +674,61 @@ public class DatabaseManager {
     }
     
     /**
-     * Получить транзакции игрока
+     * Найти страницу транзакций по фильтру
+     * Читается на одну строку больше страницы, чтобы узнать, есть ли следующая
+     * 
+     * @param query фильтр с курсором предыдущей страницы
+     * @param pageSize количество транзакций на странице
+     * @return страница и курсор следующей страницы
      */
-    public List<Transaction> getPlayerTransactions(String playerName, String currency, int page, int pageSize) {
-        List<Transaction> transactions = new ArrayList<>();
-        
-        String sql = """
-            SELECT * FROM transactions 
-            WHERE (from_player = ? OR to_player = ?) AND currency = ?
-            ORDER BY timestamp DESC
-            LIMIT ? OFFSET ?
-            """;
+    @Override
+    public TransactionQuery.Page searchTransactions(TransactionQuery query, int pageSize) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = query.buildSql(pageSize + 1, params);
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, playerName);
-            stmt.setString(2, playerName);
-            stmt.setString(3, currency);
-            stmt.setInt(4, pageSize);
-            stmt.setInt(5, (page - 1) * pageSize);
+        return read(reader -> {
+            List<Transaction> transactions = new ArrayList<>(pageSize);
+            String nextCursor = null;
             
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    Transaction transaction = new Transaction(
-                        rs.getString("id"),
-                        rs.getString("from_player"),
-                        rs.getString("to_player"),
-                        rs.getString("currency"),
-                        rs.getLong("amount"),
-                        Transaction.TransactionType.valueOf(rs.getString("transaction_type")),
-                        rs.getTimestamp("timestamp").toLocalDateTime()
-                    );
-                    transactions.add(transaction);
+            try (PreparedStatement stmt = reader.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                TransactionQuery.bind(stmt, params);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    long lastTimestamp = 0;
+                    long lastRowId = 0;
+                    while (rs.next()) {
+                        if (transactions.size() == pageSize) {
+                            nextCursor = TransactionQuery.formatCursor(lastTimestamp, lastRowId);
+                            break;
+                        }
+                        
+                        Timestamp timestamp = rs.getTimestamp("timestamp");
+                        lastTimestamp = timestamp != null ? timestamp.getTime() : 0;
+                        lastRowId = rs.getLong("row_id");
+                        transactions.add(new Transaction(
+                            rs.getString("id"),
+                            rs.getString("from_player"),
+                            rs.getString("to_player"),
+                            parseUuid(rs.getString("from_uuid")),
+                            parseUuid(rs.getString("to_uuid")),
+                            rs.getString("currency"),
+                            rs.getLong("amount"),
+                            Transaction.TransactionType.valueOf(rs.getString("transaction_type")),
+                            timestamp != null ? timestamp.toLocalDateTime() : LocalDateTime.now()
+                        ));
+                    }
                 }
             }
-        } catch (SQLException e) {
-            plugin.getLogger().severe("Ошибка при получении транзакций: " + e.getMessage());
-        }
-        
-        return transactions;
+            
+            return new TransactionQuery.Page(transactions, nextCursor);
+        });
     }
     
     /**
      * Получить топ игроков по валюте
      */
+    @Override
     public List<PlayerBalance> getTopPlayers(String currency, int limit) {
-        List<PlayerBalance> topPlayers = new ArrayList<>();
-        
         String sql = """
             SELECT player_name, balance 
             FROM balances 
@@ -255,76 +737,1026 @@ public class DatabaseManager {
             LIMIT ?
             """;
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, currency);
-            stmt.setInt(2, limit);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    PlayerBalance balance = new PlayerBalance(
-                        rs.getString("player_name"),
-                        rs.getLong("balance")
-                    );
-                    topPlayers.add(balance);
+        try {
+            return read(reader -> {
+                List<PlayerBalance> topPlayers = new ArrayList<>();
+                
+                try (PreparedStatement stmt = reader.prepareStatement(sql)) {
+                    stmt.setString(1, currency);
+                    stmt.setInt(2, limit);
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            PlayerBalance balance = new PlayerBalance(
+                                rs.getString("player_name"),
+                                rs.getLong("balance")
+                            );
+                            topPlayers.add(balance);
+                        }
+                    }
                 }
-            }
+                
+                return topPlayers;
+            });
         } catch (SQLException e) {
             plugin.getLogger().severe("Ошибка при получении топ игроков: " + e.getMessage());
         }
         
-        return topPlayers;
+        return new ArrayList<>();
     }
     
     /**
-     * Проверить, существует ли игрок в базе
+     * Загрузить все балансы всех игроков
      */
-    public boolean playerExists(UUID playerUuid, String currency) {
-        String sql = "SELECT 1 FROM balances WHERE player_uuid = ? AND currency = ?";
+    @Override
+    public synchronized List<BalanceRecord> loadAllBalances() {
+        List<BalanceRecord> records = new ArrayList<>();
+        
+        String sql = "SELECT player_uuid, player_name, currency, balance FROM balances";
+        
+        try (PreparedStatement stmt = connection.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                records.add(new BalanceRecord(
+                    UUID.fromString(rs.getString("player_uuid")),
+                    rs.getString("player_name"),
+                    rs.getString("currency"),
+                    rs.getLong("balance")
+                ));
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Ошибка при загрузке балансов: " + e.getMessage());
+            throw new RuntimeException("Не удалось загрузить балансы", e);
+        }
+        
+        return records;
+    }
+    
+    /**
+     * Получить счета игрока в нескольких валютах
+     * Все счета игрока читаются одним запросом по первичному ключу
+     * (player_uuid, currency), лишние валюты отбрасываются
+     */
+    @Override
+    public synchronized Map<String, BalanceRecord> getBalanceRecords(UUID playerUuid, Collection<String> currencies) {
+        Map<String, BalanceRecord> records = new HashMap<>();
+        String sql = "SELECT currency, player_name, balance, change_seq FROM balances WHERE player_uuid = ?";
         
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setString(1, playerUuid.toString());
-            stmt.setString(2, currency);
             
             try (ResultSet rs = stmt.executeQuery()) {
-                return rs.next();
+                while (rs.next()) {
+                    String currency = rs.getString("currency");
+                    if (currencies.contains(currency)) {
+                        records.put(currency, new BalanceRecord(playerUuid, rs.getString("player_name"),
+                            currency, rs.getLong("balance"), rs.getLong("change_seq")));
+                    }
+                }
             }
         } catch (SQLException e) {
-            plugin.getLogger().severe("Ошибка при проверке существования игрока: " + e.getMessage());
-            return false;
+            plugin.getLogger().severe("Ошибка при получении баланса: " + e.getMessage());
         }
+        
+        return records;
     }
     
     /**
-     * Закрыть соединение с базой данных
+     * Получить номер последнего изменения балансов
      */
-    public void close() {
-        if (connection != null) {
-            try {
-                connection.close();
-            } catch (SQLException e) {
-                plugin.getLogger().severe("Ошибка при закрытии соединения с БД: " + e.getMessage());
+    @Override
+    public synchronized long getMaxChangeSeq() {
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT COALESCE(MAX(change_seq), 0) FROM balances");
+             ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+                return rs.getLong(1);
             }
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Ошибка при получении номера изменения: " + e.getMessage());
         }
+        
+        return 0;
     }
     
     /**
-     * Класс для представления баланса игрока
+     * Получить балансы, изменённые после заданного номера изменения
+     * Каждая запись содержит текущее значение баланса, поэтому
+     * несколько изменений одного счёта приходят одной записью
      */
-    public static class PlayerBalance {
-        private final String playerName;
-        private final long balance;
-        
-        public PlayerBalance(String playerName, long balance) {
-            this.playerName = playerName;
-            this.balance = balance;
-        }
+    @Override
+    public List<BalanceChange> getChangesSince(long changeSeq, int limit) {
+        String sql = """
+            SELECT player_uuid, player_name, currency, balance, change_seq FROM balances
+            WHERE change_seq > ?
+            ORDER BY change_seq
+            LIMIT ?
+            """;
         
-        public String getPlayerName() {
-            return playerName;
+        try {
+            return read(reader -> {
+                List<BalanceChange> changes = new ArrayList<>();
+                try (PreparedStatement stmt = reader.prepareStatement(sql)) {
+                    stmt.setLong(1, changeSeq);
+                    stmt.setInt(2, limit);
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            long seq = rs.getLong("change_seq");
+                            changes.add(new BalanceChange(seq, new BalanceRecord(
+                                UUID.fromString(rs.getString("player_uuid")),
+                                rs.getString("player_name"),
+                                rs.getString("currency"),
+                                rs.getLong("balance"),
+                                seq
+                            )));
+                        }
+                    }
+                }
+                return changes;
+            });
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Ошибка при чтении изменений балансов: " + e.getMessage());
+            return new ArrayList<>();
         }
+    }
+    
+    /**
+     * Сохранить пакет балансов одной транзакцией
+     */
+    public synchronized boolean saveBalances(Collection<BalanceRecord> records) {
+        return saveBalances(records, null);
+    }
+    
+    /**
+     * Сохранить пакет балансов и продвижение массового задания одной транзакцией
+     * 
+     * @param progress продвижение задания или null
+     */
+    @Override
+    public synchronized boolean saveBalances(Collection<BalanceRecord> records, BulkProgress progress) {
+        String sql = """
+            INSERT INTO balances (player_uuid, player_name, currency, balance, last_updated, change_seq, version)
+            VALUES (?, ?, ?, ?, CURRENT_TIMESTAMP, (SELECT COALESCE(MAX(change_seq), 0) + 1 FROM balances), 0)
+            ON CONFLICT(player_uuid, currency) DO UPDATE SET
+                balance = excluded.balance,
+                player_name = excluded.player_name,
+                last_updated = excluded.last_updated,
+                change_seq = excluded.change_seq,
+                version = balances.version + 1
+            """;
         
-        public long getBalance() {
-            return balance;
+        try {
+            return writeImmediate(() -> {
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    for (BalanceRecord record : records) {
+                        stmt.setString(1, record.getPlayerUuid().toString());
+                        stmt.setString(2, record.getPlayerName());
+                        stmt.setString(3, record.getCurrency());
+                        stmt.setLong(4, record.getBalance());
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+                if (progress != null) {
+                    saveBulkProgress(progress);
+                }
+                return true;
+            });
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Ошибка при пакетном сохранении балансов: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Загрузить последние известные имена всех игроков
+     */
+    @Override
+    public synchronized Map<UUID, String> loadPlayerNames() {
+        Map<UUID, String> players = new LinkedHashMap<>();
+        
+        // Более поздние записи перезаписывают ранние, поэтому остаётся последнее имя
+        String sql = "SELECT player_uuid, player_name FROM balances ORDER BY last_updated, id";
+        
+        try (PreparedStatement stmt = connection.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                players.put(UUID.fromString(rs.getString("player_uuid")), rs.getString("player_name"));
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Ошибка при загрузке имён игроков: " + e.getMessage());
+        }
+        
+        return players;
+    }
+    
+    /**
+     * Обновить имя игрока во всех его балансах
+     */
+    @Override
+    public synchronized boolean updatePlayerName(UUID playerUuid, String playerName) {
+        String sql = "UPDATE balances SET player_name = ? WHERE player_uuid = ? AND player_name <> ?";
+        
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, playerName);
+            stmt.setString(2, playerUuid.toString());
+            stmt.setString(3, playerName);
+            
+            return stmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Ошибка при обновлении имени игрока: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Проверить, существует ли игрок в базе
+     */
+    @Override
+    public synchronized boolean playerExists(UUID playerUuid, String currency) {
+        String sql = "SELECT 1 FROM balances WHERE player_uuid = ? AND currency = ?";
+        
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, playerUuid.toString());
+            stmt.setString(2, currency);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Ошибка при проверке существования игрока: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Прочитать следующую порцию строк таблицы для экспорта
+     * Строки читаются по возрастанию rowid однонаправленным курсором, каждая
+     * порция - отдельный короткий запрос, поэтому экспорт большой таблицы
+     * не держит блокировку БД и не мешает записи балансов
+     * 
+     * @param table таблица
+     * @param afterRowId rowid последней прочитанной строки (0 для начала)
+     * @param limit максимум строк в порции
+     * @return порция строк, пустая если таблица прочитана полностью
+     */
+    @Override
+    public RowChunk readRows(DataTable table, long afterRowId, int limit) throws SQLException {
+        String sql = "SELECT rowid, " + String.join(", ", table.getColumns()) + " FROM " + table.getTableName()
+            + " WHERE rowid > ? ORDER BY rowid LIMIT ?";
+        
+        return read(reader -> {
+            List<String[]> rows = new ArrayList<>(limit);
+            long lastRowId = afterRowId;
+            
+            try (PreparedStatement stmt = reader.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setLong(1, afterRowId);
+                stmt.setInt(2, limit);
+                stmt.setFetchSize(limit);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    int columnCount = table.getColumns().size();
+                    while (rs.next()) {
+                        lastRowId = rs.getLong(1);
+                        String[] row = new String[columnCount];
+                        for (int i = 0; i < columnCount; i++) {
+                            row[i] = rs.getString(i + 2);
+                        }
+                        rows.add(row);
+                    }
+                }
+            }
+            
+            return new RowChunk(rows, lastRowId);
+        });
+    }
+    
+    /**
+     * Импортировать порцию строк одним пакетом журнала
+     * Вызывается журналом операций, чтобы импорт не писал мимо него
+     * 
+     * @param table таблица
+     * @param rows строки в порядке столбцов {@link DataTable#getColumns()}
+     * @return записанные балансы с номерами изменений, количество счетов - число записанных строк
+     */
+    public BulkChunk importRows(DataTable table, List<String[]> rows) throws SQLException {
+        return applyMutations(List.of(LedgerMutation.importRows(table, rows))).get(0).getChunk();
+    }
+    
+    /**
+     * Импортировать порцию строк внутри транзакции пакета
+     * Строки вставляются многострочными INSERT. Существующие балансы
+     * перезаписываются (с новой версией и номером изменения пакета),
+     * транзакции с уже существующим id пропускаются
+     */
+    private BulkChunk importChunk(DataTable table, List<String[]> rows) throws SQLException {
+        List<BalanceRecord> records = new ArrayList<>();
+        List<String> columns = table.getColumns();
+        // Время без значения записывается в миллисекундах, как его пишет драйвер, а не текстом CURRENT_TIMESTAMP
+        long now = System.currentTimeMillis();
+        int imported = 0;
+        
+        PreparedStatement fullStatement = null;
+        try {
+            for (int start = 0; start < rows.size(); start += IMPORT_ROWS_PER_STATEMENT) {
+                int count = Math.min(IMPORT_ROWS_PER_STATEMENT, rows.size() - start);
+                
+                PreparedStatement stmt;
+                if (count == IMPORT_ROWS_PER_STATEMENT) {
+                    if (fullStatement == null) {
+                        fullStatement = connection.prepareStatement(buildImportSql(table, count));
+                    }
+                    stmt = fullStatement;
+                } else {
+                    stmt = connection.prepareStatement(buildImportSql(table, count));
+                }
+                
+                try {
+                    int index = 1;
+                    for (int i = start; i < start + count; i++) {
+                        String[] row = rows.get(i);
+                        for (int column = 0; column < row.length; column++) {
+                            if (row[column] == null && table.isTimestamp(columns.get(column))) {
+                                stmt.setLong(index++, now);
+                            } else {
+                                stmt.setString(index++, row[column]);
+                            }
+                        }
+                        if (table == DataTable.BALANCES) {
+                            stmt.setLong(index++, ++batchChangeSeq);
+                            records.add(new BalanceRecord(UUID.fromString(row[0]), row[1], row[2],
+                                Long.parseLong(row[3]), batchChangeSeq));
+                        }
+                    }
+                    imported += stmt.executeUpdate();
+                } finally {
+                    if (stmt != fullStatement) {
+                        stmt.close();
+                    }
+                }
+            }
+        } finally {
+            if (fullStatement != null) {
+                fullStatement.close();
+            }
+        }
+        
+        return new BulkChunk(records, imported, 0);
+    }
+    
+    /**
+     * Построить многострочный INSERT для импорта
+     */
+    private static String buildImportSql(DataTable table, int rowCount) {
+        StringBuilder sql = new StringBuilder();
+        String rowValues;
+        
+        if (table == DataTable.BALANCES) {
+            sql.append("INSERT INTO balances (player_uuid, player_name, currency, balance, last_updated, change_seq, version) VALUES ");
+            rowValues = "(?, ?, ?, ?, ?, ?, 0)";
+        } else {
+            sql.append("INSERT OR IGNORE INTO transactions (id, from_player, to_player, from_uuid, to_uuid, currency, amount, transaction_type, timestamp) VALUES ");
+            rowValues = "(?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        }
+        
+        for (int i = 0; i < rowCount; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(rowValues);
+        }
+        
+        if (table == DataTable.BALANCES) {
+            sql.append("""
+                 ON CONFLICT(player_uuid, currency) DO UPDATE SET
+                    balance = excluded.balance,
+                    player_name = excluded.player_name,
+                    last_updated = excluded.last_updated,
+                    change_seq = excluded.change_seq,
+                    version = balances.version + 1""");
+        }
+        
+        return sql.toString();
+    }
+    
+    /**
+     * Проверить, есть ли в БД сводная статистика транзакций
+     */
+    @Override
+    public synchronized boolean hasRollups() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM transaction_rollups LIMIT 1")) {
+            return rs.next();
+        }
+    }
+    
+    /**
+     * Прибавить пакет сводок к сохранённым одной транзакцией
+     * Количество и сумма складываются, максимум выбирается из двух значений
+     */
+    @Override
+    public synchronized void mergeRollups(Collection<RollupBucket> buckets) throws SQLException {
+        if (buckets.isEmpty()) {
+            return;
+        }
+        
+        String sql = """
+            INSERT INTO transaction_rollups (granularity, bucket_start, currency, transaction_type, tx_count, amount_sum, amount_max)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT(granularity, currency, bucket_start, transaction_type) DO UPDATE SET
+                tx_count = tx_count + excluded.tx_count,
+                amount_sum = amount_sum + excluded.amount_sum,
+                amount_max = MAX(amount_max, excluded.amount_max)
+            """;
+        
+        connection.setAutoCommit(false);
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            for (RollupBucket bucket : buckets) {
+                stmt.setString(1, bucket.getGranularity());
+                stmt.setLong(2, bucket.getBucketStart());
+                stmt.setString(3, bucket.getCurrency());
+                stmt.setString(4, bucket.getTransactionType());
+                stmt.setLong(5, bucket.getCount());
+                stmt.setLong(6, bucket.getSum());
+                stmt.setLong(7, bucket.getMax());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+    
+    /**
+     * Очистить сводную статистику перед перестроением
+     * Действие onReset выполняется под той же блокировкой, поэтому каждая
+     * транзакция попадает либо в перестроение, либо в новые сводки
+     * 
+     * @param onReset действие, сбрасывающее несохранённые сводки в памяти
+     * @return rowid последней транзакции на момент очистки
+     */
+    @Override
+    public synchronized long resetRollups(Runnable onReset) throws SQLException {
+        long maxRowId;
+        try (Statement stmt = connection.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(rowid), 0) FROM transactions")) {
+                maxRowId = rs.next() ? rs.getLong(1) : 0;
+            }
+            stmt.executeUpdate("DELETE FROM transaction_rollups");
+        }
+        onReset.run();
+        return maxRowId;
+    }
+    
+    /**
+     * Прочитать следующую порцию транзакций для построения сводок
+     * 
+     * @param afterRowId rowid последней прочитанной транзакции (0 для начала)
+     * @param upToRowId rowid, до которого включительно читаются транзакции
+     * @param limit максимум транзакций в порции
+     */
+    @Override
+    public synchronized TransactionChunk readTransactions(long afterRowId, long upToRowId, int limit) throws SQLException {
+        String sql = """
+            SELECT rowid, * FROM transactions
+            WHERE rowid > ? AND rowid <= ?
+            ORDER BY rowid
+            LIMIT ?
+            """;
+        
+        List<Transaction> transactions = new ArrayList<>(limit);
+        long lastRowId = afterRowId;
+        
+        try (PreparedStatement stmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setLong(1, afterRowId);
+            stmt.setLong(2, upToRowId);
+            stmt.setInt(3, limit);
+            stmt.setFetchSize(limit);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    lastRowId = rs.getLong(1);
+                    Timestamp timestamp = rs.getTimestamp("timestamp");
+                    transactions.add(new Transaction(
+                        rs.getString("id"),
+                        rs.getString("from_player"),
+                        rs.getString("to_player"),
+                        parseUuid(rs.getString("from_uuid")),
+                        parseUuid(rs.getString("to_uuid")),
+                        rs.getString("currency"),
+                        rs.getLong("amount"),
+                        Transaction.TransactionType.valueOf(rs.getString("transaction_type")),
+                        timestamp != null ? timestamp.toLocalDateTime() : LocalDateTime.now()
+                    ));
+                }
+            }
+        }
+        
+        return new TransactionChunk(transactions, lastRowId);
+    }
+    
+    /**
+     * Удалить сводки шага, начавшиеся раньше заданного момента
+     * 
+     * @return количество удалённых строк
+     */
+    @Override
+    public synchronized int deleteRollupsBefore(String granularity, long bucketStart) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "DELETE FROM transaction_rollups WHERE granularity = ? AND bucket_start < ?")) {
+            stmt.setString(1, granularity);
+            stmt.setLong(2, bucketStart);
+            return stmt.executeUpdate();
+        }
+    }
+    
+    /**
+     * Получить сводки валюты за период по возрастанию времени
+     * Интервалы без транзакций в результат не попадают
+     * 
+     * @param granularity шаг сводок
+     * @param currency валюта
+     * @param transactionType тип транзакций или null для всех типов вместе
+     * @param fromBucket начало первого интервала (включительно, секунды Unix)
+     * @param toBucket начало последнего интервала (включительно, секунды Unix)
+     */
+    @Override
+    public List<RollupBucket> getRollups(String granularity, String currency, String transactionType,
+                                         long fromBucket, long toBucket) {
+        String sql = "SELECT bucket_start, SUM(tx_count), SUM(amount_sum), MAX(amount_max) FROM transaction_rollups"
+            + " WHERE granularity = ? AND currency = ? AND bucket_start >= ? AND bucket_start <= ?"
+            + (transactionType != null ? " AND transaction_type = ?" : "")
+            + " GROUP BY bucket_start ORDER BY bucket_start";
+        
+        try {
+            return read(reader -> {
+                List<RollupBucket> buckets = new ArrayList<>();
+                
+                try (PreparedStatement stmt = reader.prepareStatement(sql)) {
+                    stmt.setString(1, granularity);
+                    stmt.setString(2, currency);
+                    stmt.setLong(3, fromBucket);
+                    stmt.setLong(4, toBucket);
+                    if (transactionType != null) {
+                        stmt.setString(5, transactionType);
+                    }
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            buckets.add(new RollupBucket(granularity, rs.getLong(1), currency, transactionType,
+                                rs.getLong(2), rs.getLong(3), rs.getLong(4)));
+                        }
+                    }
+                }
+                
+                return buckets;
+            });
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Ошибка при получении сводки транзакций: " + e.getMessage());
+        }
+        
+        return new ArrayList<>();
+    }
+    
+    /**
+     * Получить состояние массового задания
+     * 
+     * @return состояние или null если задание ещё не запускалось
+     */
+    @Override
+    public synchronized BulkJobState getBulkJobState(String job) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT period, max_id, last_id, accounts, amount, finished FROM bulk_jobs WHERE job = ?")) {
+            stmt.setString(1, job);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return new BulkJobState(rs.getLong("period"), rs.getLong("max_id"), rs.getLong("last_id"),
+                        rs.getLong("accounts"), rs.getLong("amount"), rs.getInt("finished") != 0);
+                }
+            }
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Занять новый период массового задания
+     * Условное обновление выполняется атомарно, поэтому при общей БД
+     * период достаётся только одному серверу. Обрабатываются счета,
+     * существующие на момент запуска
+     * 
+     * @param period номер периода
+     * @return состояние нового запуска или null если период уже занят
+     */
+    @Override
+    public synchronized BulkJobState claimBulkJob(String job, long period) throws SQLException {
+        String sql = """
+            INSERT INTO bulk_jobs (job, period, max_id, last_id, accounts, amount, finished)
+            VALUES (?, ?, ?, 0, 0, 0, 0)
+            ON CONFLICT(job) DO UPDATE SET
+                period = excluded.period,
+                max_id = excluded.max_id,
+                last_id = 0,
+                accounts = 0,
+                amount = 0,
+                finished = 0
+            WHERE bulk_jobs.finished = 1 AND bulk_jobs.period < excluded.period
+            """;
+        
+        return writeImmediate(() -> {
+            long maxId;
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM balances")) {
+                maxId = rs.next() ? rs.getLong(1) : 0;
+            }
+            
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setString(1, job);
+                stmt.setLong(2, period);
+                stmt.setLong(3, maxId);
+                
+                if (stmt.executeUpdate() == 0) {
+                    return null;
+                }
+            }
+            
+            return new BulkJobState(period, maxId, 0, 0, 0, false);
+        });
+    }
+    
+    /**
+     * Применить массовое задание к счетам с id в диапазоне (afterId, upToId]
+     * одним пакетом журнала в вызывающем потоке (менеджер валют отправляет
+     * порции через журнал операций)
+     * 
+     * @return изменённые счета с новыми балансами
+     */
+    @Override
+    public BulkChunk applyBulkJob(BulkJob job, long afterId, long upToId) throws SQLException {
+        return applyMutations(List.of(LedgerMutation.bulkJob(job, afterId, upToId))).get(0).getChunk();
+    }
+    
+    /**
+     * Применить порцию массового задания внутри транзакции пакета: подсчёт,
+     * обновление одним запросом, чтение новых значений и запись продвижения
+     * задания. Каждая строка получает свой номер изменения после номеров
+     * пакета, поэтому лента изменений разбирает порцию постранично
+     */
+    private BulkChunk applyBulkChunk(BulkJob job, long afterId, long upToId) throws SQLException {
+        List<Object> deltaParams = new ArrayList<>();
+        String delta = job.getDeltaSql(deltaParams);
+        
+        // Счета без изменения не обновляются, чтобы не сдвигать их версию и номер изменения
+        List<Object> whereParams = new ArrayList<>(List.of(afterId, upToId, job.getCurrency()));
+        String where = "id > ? AND id <= ? AND currency = ? AND " + job.getConditionSql(whereParams)
+            + " AND " + job.getDeltaSql(whereParams) + " <> 0";
+        
+        List<BalanceRecord> records = new ArrayList<>();
+        long accounts;
+        long amount;
+        
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT COUNT(*), COALESCE(SUM(" + delta + "), 0) FROM balances WHERE " + where)) {
+            bindAll(stmt, bindAll(stmt, 1, deltaParams), whereParams);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                accounts = rs.getLong(1);
+                amount = rs.getLong(2);
+            }
+        }
+        
+        if (accounts > 0) {
+            long baseSeq = batchChangeSeq;
+            
+            String update = "UPDATE balances SET balance = balance + " + delta
+                + ", last_updated = CURRENT_TIMESTAMP, version = version + 1, change_seq = ? + (id - ?)"
+                + " WHERE " + where;
+            try (PreparedStatement stmt = connection.prepareStatement(update)) {
+                int index = bindAll(stmt, 1, deltaParams);
+                stmt.setLong(index++, baseSeq);
+                stmt.setLong(index++, afterId);
+                bindAll(stmt, index, whereParams);
+                stmt.executeUpdate();
+            }
+            
+            // Обновлённые строки - единственные с номером изменения больше номеров пакета
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "SELECT player_uuid, player_name, balance, change_seq FROM balances WHERE id > ? AND id <= ? AND currency = ? AND change_seq > ? ORDER BY change_seq")) {
+                stmt.setLong(1, afterId);
+                stmt.setLong(2, upToId);
+                stmt.setString(3, job.getCurrency());
+                stmt.setLong(4, baseSeq);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        BalanceRecord record = new BalanceRecord(
+                            UUID.fromString(rs.getString("player_uuid")),
+                            rs.getString("player_name"),
+                            job.getCurrency(),
+                            rs.getLong("balance"),
+                            rs.getLong("change_seq")
+                        );
+                        records.add(record);
+                        batchChangeSeq = Math.max(batchChangeSeq, record.getChangeSeq());
+                    }
+                }
+            }
+        }
+        
+        saveBulkProgress(new BulkProgress(job.getName(), upToId, accounts, amount));
+        return new BulkChunk(records, accounts, amount);
+    }
+    
+    /**
+     * Прочитать счета валюты с id в диапазоне (afterId, upToId]
+     */
+    @Override
+    public synchronized List<BalanceRecord> readBalancesRange(String currency, long afterId, long upToId) throws SQLException {
+        List<BalanceRecord> records = new ArrayList<>();
+        
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT player_uuid, player_name, balance FROM balances WHERE id > ? AND id <= ? AND currency = ?")) {
+            stmt.setLong(1, afterId);
+            stmt.setLong(2, upToId);
+            stmt.setString(3, currency);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    records.add(new BalanceRecord(
+                        UUID.fromString(rs.getString("player_uuid")),
+                        rs.getString("player_name"),
+                        currency,
+                        rs.getLong("balance")
+                    ));
+                }
+            }
+        }
+        
+        return records;
+    }
+    
+    /**
+     * Завершить период массового задания и записать его сводную транзакцию
+     * одной транзакцией БД
+     * 
+     * @param transaction сводная транзакция или null если её не нужно записывать
+     */
+    @Override
+    public synchronized void finishBulkJob(String job, Transaction transaction) throws SQLException {
+        writeImmediate(() -> {
+            try (PreparedStatement stmt = connection.prepareStatement("UPDATE bulk_jobs SET finished = 1 WHERE job = ?")) {
+                stmt.setString(1, job);
+                stmt.executeUpdate();
+            }
+            if (transaction != null) {
+                insertTransaction(transaction);
+            }
+            return null;
+        });
+        
+        if (transaction != null) {
+            notifyListener(List.of(transaction));
+        }
+    }
+    
+    /**
+     * Прибавить порцию к продвижению массового задания (внутри открытой транзакции)
+     */
+    private void saveBulkProgress(BulkProgress progress) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "UPDATE bulk_jobs SET last_id = ?, accounts = accounts + ?, amount = amount + ? WHERE job = ?")) {
+            stmt.setLong(1, progress.getLastId());
+            stmt.setLong(2, progress.getAccounts());
+            stmt.setLong(3, progress.getAmount());
+            stmt.setString(4, progress.getJob());
+            stmt.executeUpdate();
+        }
+    }
+    
+    /**
+     * Заполнить параметры запроса, начиная с позиции index
+     * 
+     * @return позиция следующего параметра
+     */
+    private static int bindAll(PreparedStatement stmt, int index, List<Object> params) throws SQLException {
+        for (Object param : params) {
+            stmt.setObject(index++, param);
+        }
+        return index;
+    }
+    
+    /**
+     * Получить файл БД
+     */
+    public File getDatabasePath() {
+        return new File(plugin.getDataFolder(), databaseFile);
+    }
+    
+    /**
+     * Получить сведения о страницах и режимах файла БД
+     */
+    public synchronized StorageStats getStorageStats() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            return new StorageStats(
+                queryLong(stmt, "PRAGMA page_count"),
+                queryLong(stmt, "PRAGMA freelist_count"),
+                queryLong(stmt, "PRAGMA page_size"),
+                queryLong(stmt, "PRAGMA auto_vacuum") == 2,
+                queryString(stmt, "PRAGMA journal_mode")
+            );
+        }
+    }
+    
+    /**
+     * Перенести журнал WAL в файл БД и обрезать его
+     * Если журнал занят читателями, переносится сколько возможно
+     */
+    public synchronized void checkpointWal() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+        }
+    }
+    
+    /**
+     * Вернуть системе до pages свободных страниц (нужен auto_vacuum = INCREMENTAL)
+     * 
+     * @return количество оставшихся свободных страниц
+     */
+    public synchronized long incrementalVacuum(int pages) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA incremental_vacuum(" + pages + ")");
+            return queryLong(stmt, "PRAGMA freelist_count");
         }
     }
+    
+    /**
+     * Обновить статистику планировщика запросов
+     * Если статистики ещё нет, выполняется ANALYZE, иначе PRAGMA optimize
+     * анализирует только таблицы, где статистика устарела. analysis_limit
+     * ограничивает количество строк индекса, читаемых при анализе
+     */
+    public synchronized void optimize(int analysisLimit) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA analysis_limit = " + analysisLimit);
+            boolean analyzed = queryLong(stmt, "SELECT COUNT(*) FROM sqlite_master WHERE name = 'sqlite_stat1'") > 0;
+            stmt.execute(analyzed ? "PRAGMA optimize" : "ANALYZE");
+        }
+    }
+    
+    /**
+     * Быстрая проверка целостности файла БД
+     * Проверка прерывается, если не укладывается в отведённое время
+     * 
+     * @param timeoutMillis максимальное время проверки
+     * @return строки ответа (одна строка "ok", если ошибок нет)
+     */
+    public synchronized List<String> quickCheck(long timeoutMillis) throws SQLException {
+        List<String> result = new ArrayList<>();
+        
+        try (Statement stmt = connection.createStatement()) {
+            BukkitTask cancelTask = plugin.getServer().getScheduler().runTaskLaterAsynchronously(plugin, () -> {
+                try {
+                    stmt.cancel();
+                } catch (SQLException ignored) {
+                    // Проверка уже завершилась
+                }
+            }, Math.max(1, timeoutMillis / 50));
+            
+            try (ResultSet rs = stmt.executeQuery("PRAGMA quick_check")) {
+                while (rs.next()) {
+                    result.add(rs.getString(1));
+                }
+            } finally {
+                cancelTask.cancel();
+            }
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Полностью перестроить файл БД
+     * Блокирует БД на всё время работы, зато переводит существующую БД
+     * в режим auto_vacuum = INCREMENTAL
+     */
+    public synchronized void vacuum() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("VACUUM");
+        }
+    }
+    
+    private static long queryLong(Statement stmt, String sql) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+    
+    private static String queryString(Statement stmt, String sql) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getString(1) : "";
+        }
+    }
+    
+    /**
+     * Преобразовать строку в UUID (null для пустых значений)
+     */
+    private static UUID parseUuid(String value) {
+        return value != null ? UUID.fromString(value) : null;
+    }
+    
+    /**
+     * Закрыть соединение с базой данных
+     */
+    public synchronized void close() {
+        if (readerPool != null) {
+            readerPool.close();
+            readerPool = null;
+        }
+        
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                plugin.getLogger().severe("Ошибка при закрытии соединения с БД: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Баланс вместе с версией строки
+     */
+    private static class VersionedBalance {
+        private final long balance;
+        private final long version;
+        
+        VersionedBalance(long balance, long version) {
+            this.balance = balance;
+            this.version = version;
+        }
+    }
+    
+    /**
+     * Сведения о страницах и режимах файла БД
+     */
+    public static class StorageStats {
+        private final long pageCount;
+        private final long freePages;
+        private final long pageSize;
+        private final boolean incrementalVacuum;
+        private final String journalMode;
+        
+        public StorageStats(long pageCount, long freePages, long pageSize, boolean incrementalVacuum, String journalMode) {
+            this.pageCount = pageCount;
+            this.freePages = freePages;
+            this.pageSize = pageSize;
+            this.incrementalVacuum = incrementalVacuum;
+            this.journalMode = journalMode;
+        }
+        
+        public long getPageCount() {
+            return pageCount;
+        }
+        
+        public long getFreePages() {
+            return freePages;
+        }
+        
+        public long getPageSize() {
+            return pageSize;
+        }
+        
+        /**
+         * Проверить, включён ли режим auto_vacuum = INCREMENTAL
+         */
+        public boolean isIncrementalVacuum() {
+            return incrementalVacuum;
+        }
+        
+        /**
+         * Проверить, работает ли БД в режиме журнала WAL
+         */
+        public boolean isWal() {
+            return "wal".equalsIgnoreCase(journalMode);
+        }
+    }
+    
+    /**
+     * Запрос чтения на переданном соединении
+     */
+    @FunctionalInterface
+    private interface ReadQuery<T> {
+        T run(Connection connection) throws SQLException;
+    }
+    
+    /**
+     * Запись, выполняемая внутри транзакции общего соединения
+     */
+    @FunctionalInterface
+    private interface WriteTransaction<T> {
+        T run() throws SQLException;
+    }
 } 
\ No newline at end of file
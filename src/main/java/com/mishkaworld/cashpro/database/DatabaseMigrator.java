@@ -0,0 +1,748 @@
+package com.mishkaworld.cashpro.database;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Перенос балансов и транзакций между SQLite и MySQL без остановки сервера
+ * Каждая таблица делится на диапазоны по числовому ключу строки, диапазоны
+ * копируются параллельно порциями, после каждой порции прогресс сохраняется
+ * в migration.properties, поэтому прерванный перенос продолжается с места
+ * остановки. Изменения, сделанные во время копирования, догоняются
+ * по номеру изменения балансов и ключу новых транзакций, имена игроков
+ * (они меняются без номера изменения) переносятся отдельным проходом,
+ * в конце количество строк и контрольные суммы сравниваются
+ * 
+ * @author Misha Ermakov
+ */
+public class DatabaseMigrator {
+    
+    private static final String CHECKPOINT_FILE = "migration.properties";
+    private static final int MAX_CATCH_UP_PASSES = 5;
+    private static final long PROGRESS_INTERVAL = 100_000;
+    private static final long CHECKPOINT_INTERVAL_MILLIS = 1000;
+    
+    private final CashProReloaded plugin;
+    private final AtomicBoolean running = new AtomicBoolean();
+    
+    public DatabaseMigrator(CashProReloaded plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Занять право на перенос данных (одновременно выполняется только один перенос)
+     * 
+     * @return true если другой перенос сейчас не выполняется
+     */
+    public boolean tryStart() {
+        return running.compareAndSet(false, true);
+    }
+    
+    /**
+     * Освободить право на перенос данных
+     */
+    public void finish() {
+        running.set(false);
+    }
+    
+    /**
+     * Перенести данные из одной БД в другую
+     * 
+     * @param source исходная БД
+     * @param target целевая БД
+     * @param restart начать заново, игнорируя сохранённый прогресс
+     * @param progress получает общее количество скопированных строк по ходу работы
+     * @return результат проверки перенесённых таблиц
+     */
+    public Map<DataTable, TableReport> migrate(DatabaseDialect source, DatabaseDialect target, boolean restart,
+                                               LongConsumer progress) throws SQLException, IOException, InterruptedException {
+        if (source == target) {
+            throw new IllegalArgumentException("Исходная и целевая БД совпадают");
+        }
+        
+        return migrate(new Endpoint(source, () -> source.openConnection(plugin)),
+            new Endpoint(target, () -> target.openConnection(plugin)), restart, progress);
+    }
+    
+    /**
+     * Перенести данные между БД, соединения с которыми открывают переданные точки подключения
+     */
+    Map<DataTable, TableReport> migrate(Endpoint source, Endpoint target, boolean restart,
+                                        LongConsumer progress) throws SQLException, IOException, InterruptedException {
+        Checkpoint checkpoint = new Checkpoint(new File(plugin.getDataFolder(), CHECKPOINT_FILE));
+        if (restart || !checkpoint.load(source, target)) {
+            checkpoint.reset(source, target);
+        }
+        
+        try (Connection sourceConnection = source.openConnection();
+             Connection targetConnection = target.openConnection()) {
+            target.getDialect().createTables(targetConnection);
+            
+            if (!checkpoint.isPlanned()) {
+                plan(checkpoint, source.getDialect(), sourceConnection);
+            }
+        }
+        
+        Copier copier = new Copier(source, target, progress);
+        
+        plugin.getLogger().info("Перенос данных " + source + " -> " + target + ": копирование");
+        copyPartitions(checkpoint, copier);
+        
+        plugin.getLogger().info("Перенос данных " + source + " -> " + target + ": перенос изменений, сделанных во время копирования");
+        catchUp(checkpoint, copier);
+        
+        plugin.getLogger().info("Перенос данных " + source + " -> " + target + ": проверка");
+        Map<DataTable, TableReport> reports = new EnumMap<>(DataTable.class);
+        try (Connection sourceConnection = source.openConnection();
+             Connection targetConnection = target.openConnection()) {
+            for (DataTable table : DataTable.values()) {
+                TableSummary sourceSummary = summarize(sourceConnection, source.getDialect(), table);
+                TableSummary targetSummary = summarize(targetConnection, target.getDialect(), table);
+                reports.put(table, new TableReport(sourceSummary, targetSummary));
+            }
+        }
+        
+        boolean verified = reports.values().stream().allMatch(TableReport::isMatching);
+        if (verified) {
+            checkpoint.delete();
+        }
+        
+        plugin.getLogger().info("Перенос данных " + source + " -> " + target + " завершён, скопировано строк: "
+            + copier.copied.get() + (verified ? "" : ", есть расхождения"));
+        return reports;
+    }
+    
+    /**
+     * Разбить таблицы на диапазоны ключей и запомнить точку отсчёта изменений
+     */
+    private void plan(Checkpoint checkpoint, DatabaseDialect source, Connection connection) throws SQLException, IOException {
+        int partitions = plugin.getConfigManager().getMigrationThreads();
+        
+        // Номер изменения читается до копирования: всё, что изменится позже,
+        // будет перенесено на этапе догоняющего прохода
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(change_seq), 0) FROM balances")) {
+            checkpoint.setChangeSeq(rs.next() ? rs.getLong(1) : 0);
+        }
+        
+        for (DataTable table : DataTable.values()) {
+            String key = source.getRowKey(table);
+            long minKey = 0;
+            long maxKey = 0;
+            
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COALESCE(MIN(" + key + "), 0), COALESCE(MAX(" + key + "), 0) FROM " + table.getTableName())) {
+                if (rs.next()) {
+                    minKey = rs.getLong(1);
+                    maxKey = rs.getLong(2);
+                }
+            }
+            
+            long from = Math.max(0, minKey - 1);
+            long span = Math.max(1, (maxKey - from + partitions - 1) / partitions);
+            for (int i = 0; i < partitions; i++) {
+                long to = i == partitions - 1 ? maxKey : Math.min(maxKey, from + span);
+                checkpoint.addPartition(table, from, to);
+                from = to;
+            }
+            checkpoint.setHighKey(table, maxKey);
+        }
+        
+        checkpoint.markPlanned();
+        checkpoint.save();
+    }
+    
+    /**
+     * Скопировать все незавершённые диапазоны параллельно
+     */
+    private void copyPartitions(Checkpoint checkpoint, Copier copier) throws SQLException, IOException, InterruptedException {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(plugin.getConfigManager().getMigrationThreads(), task -> {
+            Thread thread = new Thread(task, "CashPro-Migration-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        boolean copied = false;
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (DataTable table : DataTable.values()) {
+                for (int i = 0; i < checkpoint.getPartitionCount(table); i++) {
+                    int partition = i;
+                    if (checkpoint.getLast(table, partition) < checkpoint.getTo(table, partition)) {
+                        futures.add(executor.submit(() -> {
+                            copier.copyRange(table, checkpoint.getLast(table, partition), checkpoint.getTo(table, partition),
+                                lastKey -> checkpoint.updateLast(table, partition, lastKey));
+                            return null;
+                        }));
+                    }
+                }
+            }
+            
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof SQLException) {
+                        throw (SQLException) cause;
+                    }
+                    throw new SQLException("Ошибка при копировании диапазона", cause);
+                }
+            }
+            copied = true;
+        } finally {
+            // После сбоя остальные диапазоны останавливаются после текущей порции,
+            // прогресс сохраняется, когда в файл прогресса больше никто не пишет
+            if (!copied) {
+                copier.stop();
+            }
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            checkpoint.save();
+        }
+    }
+    
+    /**
+     * Перенести изменения, сделанные во время копирования
+     * Проходы повторяются, пока находятся новые изменения
+     */
+    private void catchUp(Checkpoint checkpoint, Copier copier) throws SQLException, IOException {
+        for (int pass = 0; pass < MAX_CATCH_UP_PASSES; pass++) {
+            // Новые и изменённые балансы
+            long changeSeq = checkpoint.getChangeSeq();
+            long newChangeSeq = copier.copyBalanceChanges(changeSeq);
+            checkpoint.setChangeSeq(newChangeSeq);
+            
+            // Новые транзакции (таблица только дополняется)
+            long highKey = checkpoint.getHighKey(DataTable.TRANSACTIONS);
+            long newHighKey = copier.copyRange(DataTable.TRANSACTIONS, highKey, Long.MAX_VALUE, lastKey -> { });
+            checkpoint.setHighKey(DataTable.TRANSACTIONS, newHighKey);
+            
+            checkpoint.save();
+            if (newChangeSeq == changeSeq && newHighKey == highKey) {
+                break;
+            }
+        }
+        
+        copier.copyPlayerNames();
+    }
+    
+    /**
+     * Посчитать строки и контрольную сумму таблицы
+     * Сумма не зависит от порядка строк, поэтому сравнима между разными БД
+     */
+    private TableSummary summarize(Connection connection, DatabaseDialect dialect, DataTable table) throws SQLException {
+        String key = dialect.getRowKey(table);
+        String sql = "SELECT " + key + ", " + String.join(", ", table.getColumns()) + " FROM " + table.getTableName()
+            + " WHERE " + key + " > ? ORDER BY " + key + " LIMIT ?";
+        int batchSize = plugin.getConfigManager().getMigrationBatchSize();
+        
+        long rows = 0;
+        long checksum = 0;
+        long lastKey = Long.MIN_VALUE;
+        
+        try (PreparedStatement stmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            while (true) {
+                stmt.setLong(1, lastKey);
+                stmt.setInt(2, batchSize);
+                
+                int read = 0;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        lastKey = rs.getLong(1);
+                        checksum += rowHash(table, rs);
+                        read++;
+                    }
+                }
+                
+                rows += read;
+                if (read < batchSize) {
+                    return new TableSummary(rows, checksum);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Посчитать хеш строки (FNV-1a) по значимым столбцам
+     * Время изменения не учитывается, так как SQLite и MySQL хранят его по-разному
+     */
+    private static long rowHash(DataTable table, ResultSet rs) throws SQLException {
+        long hash = 0xcbf29ce484222325L;
+        List<String> columns = table.getColumns();
+        
+        for (int i = 0; i < columns.size(); i++) {
+            String column = columns.get(i);
+            if (column.equals("last_updated") || column.equals("timestamp")) {
+                continue;
+            }
+            
+            String value = table.isNumeric(column) ? String.valueOf(rs.getLong(i + 2)) : rs.getString(i + 2);
+            byte[] bytes = (value != null ? value : "\u0000").getBytes(StandardCharsets.UTF_8);
+            for (byte b : bytes) {
+                hash ^= b & 0xff;
+                hash *= 0x100000001b3L;
+            }
+            hash ^= 0x1f;
+            hash *= 0x100000001b3L;
+        }
+        
+        return hash;
+    }
+    
+    /**
+     * Прочитать время из столбца: SQLite хранит его числом миллисекунд
+     * или строкой, MySQL - значением DATETIME
+     */
+    private static Timestamp readTimestamp(ResultSet rs, int index) throws SQLException {
+        String value = rs.getString(index);
+        if (value == null || value.isBlank()) {
+            return new Timestamp(System.currentTimeMillis());
+        }
+        
+        if (value.chars().allMatch(Character::isDigit)) {
+            return new Timestamp(Long.parseLong(value));
+        }
+        
+        try {
+            return Timestamp.valueOf(value.replace('T', ' '));
+        } catch (IllegalArgumentException e) {
+            return new Timestamp(System.currentTimeMillis());
+        }
+    }
+    
+    /**
+     * Копирование строк между двумя БД
+     */
+    private class Copier {
+        private final Endpoint source;
+        private final Endpoint target;
+        private final LongConsumer progress;
+        private final int batchSize;
+        private final AtomicLong copied = new AtomicLong();
+        private final AtomicLong nextProgress = new AtomicLong(PROGRESS_INTERVAL);
+        private final AtomicBoolean stopped = new AtomicBoolean();
+        
+        Copier(Endpoint source, Endpoint target, LongConsumer progress) {
+            this.source = source;
+            this.target = target;
+            this.progress = progress;
+            this.batchSize = plugin.getConfigManager().getMigrationBatchSize();
+        }
+        
+        /**
+         * Остановить копирование диапазонов после текущей порции
+         */
+        void stop() {
+            stopped.set(true);
+        }
+        
+        /**
+         * Скопировать строки с ключом в диапазоне (fromKey, toKey]
+         * 
+         * @param onBatch получает ключ последней записанной строки после каждой порции
+         * @return ключ последней скопированной строки
+         */
+        long copyRange(DataTable table, long fromKey, long toKey, LongConsumer onBatch) throws SQLException {
+            String key = source.getDialect().getRowKey(table);
+            String sql = "SELECT " + key + ", " + String.join(", ", getCopiedColumns(table)) + " FROM " + table.getTableName()
+                + " WHERE " + key + " > ? AND " + key + " <= ? ORDER BY " + key + " LIMIT ?";
+            
+            long lastKey = fromKey;
+            try (Connection sourceConnection = source.openConnection();
+                 Connection targetConnection = target.openConnection();
+                 PreparedStatement select = sourceConnection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                 PreparedStatement insert = targetConnection.prepareStatement(getInsertSql(table))) {
+                targetConnection.setAutoCommit(false);
+                
+                while (true) {
+                    select.setLong(1, lastKey);
+                    select.setLong(2, toKey);
+                    select.setInt(3, batchSize);
+                    
+                    int read = 0;
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            lastKey = rs.getLong(1);
+                            bindRow(table, rs, insert);
+                            insert.addBatch();
+                            read++;
+                        }
+                    }
+                    
+                    if (read == 0) {
+                        return lastKey;
+                    }
+                    
+                    writeBatch(targetConnection, insert);
+                    onBatch.accept(lastKey);
+                    reportProgress(read);
+                    
+                    if (read < batchSize || stopped.get()) {
+                        return lastKey;
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Скопировать балансы, изменённые после указанного номера изменения
+         * 
+         * @return наибольший скопированный номер изменения
+         */
+        long copyBalanceChanges(long afterChangeSeq) throws SQLException {
+            String key = source.getDialect().getRowKey(DataTable.BALANCES);
+            String sql = "SELECT " + key + ", " + String.join(", ", getCopiedColumns(DataTable.BALANCES)) + " FROM balances"
+                + " WHERE change_seq > ? OR (change_seq = ? AND " + key + " > ?)"
+                + " ORDER BY change_seq, " + key + " LIMIT ?";
+            
+            long lastChangeSeq = afterChangeSeq;
+            long lastKey = Long.MAX_VALUE;
+            try (Connection sourceConnection = source.openConnection();
+                 Connection targetConnection = target.openConnection();
+                 PreparedStatement select = sourceConnection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                 PreparedStatement insert = targetConnection.prepareStatement(getInsertSql(DataTable.BALANCES))) {
+                targetConnection.setAutoCommit(false);
+                
+                while (true) {
+                    select.setLong(1, lastChangeSeq);
+                    select.setLong(2, lastChangeSeq);
+                    select.setLong(3, lastKey);
+                    select.setInt(4, batchSize);
+                    
+                    int read = 0;
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            lastKey = rs.getLong(1);
+                            lastChangeSeq = rs.getLong("change_seq");
+                            bindRow(DataTable.BALANCES, rs, insert);
+                            insert.addBatch();
+                            read++;
+                        }
+                    }
+                    
+                    if (read == 0) {
+                        return lastChangeSeq;
+                    }
+                    
+                    writeBatch(targetConnection, insert);
+                    reportProgress(read);
+                    
+                    if (read < batchSize) {
+                        return lastChangeSeq;
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Перенести имена игроков во все балансы
+         * Имя обновляется при входе без номера изменения, поэтому догоняющий
+         * проход его не видит и имена сверяются по всей таблице балансов
+         */
+        void copyPlayerNames() throws SQLException {
+            String key = source.getDialect().getRowKey(DataTable.BALANCES);
+            String sql = "SELECT " + key + ", player_uuid, currency, player_name FROM balances WHERE " + key + " > ? ORDER BY " + key + " LIMIT ?";
+            String update = "UPDATE balances SET player_name = ? WHERE player_uuid = ? AND currency = ? AND player_name <> ?";
+            
+            long lastKey = Long.MIN_VALUE;
+            try (Connection sourceConnection = source.openConnection();
+                 Connection targetConnection = target.openConnection();
+                 PreparedStatement select = sourceConnection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                 PreparedStatement rename = targetConnection.prepareStatement(update)) {
+                targetConnection.setAutoCommit(false);
+                
+                while (true) {
+                    select.setLong(1, lastKey);
+                    select.setInt(2, batchSize);
+                    
+                    int read = 0;
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            lastKey = rs.getLong(1);
+                            rename.setString(1, rs.getString("player_name"));
+                            rename.setString(2, rs.getString("player_uuid"));
+                            rename.setString(3, rs.getString("currency"));
+                            rename.setString(4, rs.getString("player_name"));
+                            rename.addBatch();
+                            read++;
+                        }
+                    }
+                    
+                    if (read > 0) {
+                        writeBatch(targetConnection, rename);
+                    }
+                    if (read < batchSize) {
+                        return;
+                    }
+                }
+            }
+        }
+        
+        private void writeBatch(Connection connection, PreparedStatement insert) throws SQLException {
+            try {
+                insert.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+        
+        private void reportProgress(int rows) {
+            long total = copied.addAndGet(rows);
+            long next = nextProgress.get();
+            if (total >= next && nextProgress.compareAndSet(next, next + PROGRESS_INTERVAL)) {
+                progress.accept(total);
+            }
+        }
+        
+        private List<String> getCopiedColumns(DataTable table) {
+            List<String> columns = new ArrayList<>(table.getColumns());
+            if (table == DataTable.BALANCES) {
+                columns.add("change_seq");
+                columns.add("version");
+            }
+            return columns;
+        }
+        
+        private String getInsertSql(DataTable table) {
+            return table == DataTable.BALANCES ? target.getDialect().getBalanceUpsertSql() : target.getDialect().getTransactionInsertSql();
+        }
+        
+        /**
+         * Перенести значения строки из результата запроса в запрос записи
+         * Первый столбец результата - ключ строки, он не переносится
+         */
+        private void bindRow(DataTable table, ResultSet rs, PreparedStatement insert) throws SQLException {
+            List<String> columns = getCopiedColumns(table);
+            for (int i = 0; i < columns.size(); i++) {
+                String column = columns.get(i);
+                int index = i + 2;
+                
+                if (table.isNumeric(column) || column.equals("change_seq") || column.equals("version")) {
+                    insert.setLong(i + 1, rs.getLong(index));
+                } else if (column.equals("last_updated") || column.equals("timestamp")) {
+                    insert.setTimestamp(i + 1, readTimestamp(rs, index));
+                } else {
+                    insert.setString(i + 1, rs.getString(index));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Сохранённый прогресс переноса
+     */
+    private static class Checkpoint {
+        private final File file;
+        private final Properties properties = new Properties();
+        private long lastSave;
+        
+        Checkpoint(File file) {
+            this.file = file;
+        }
+        
+        /**
+         * Загрузить прогресс, если он относится к тому же направлению переноса
+         */
+        boolean load(Endpoint source, Endpoint target) throws IOException {
+            if (!file.exists()) {
+                return false;
+            }
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                properties.load(in);
+            }
+            return source.getDialect().name().equals(properties.getProperty("source"))
+                && target.getDialect().name().equals(properties.getProperty("target"));
+        }
+        
+        synchronized void reset(Endpoint source, Endpoint target) {
+            properties.clear();
+            properties.setProperty("source", source.getDialect().name());
+            properties.setProperty("target", target.getDialect().name());
+        }
+        
+        synchronized boolean isPlanned() {
+            return Boolean.parseBoolean(properties.getProperty("planned"));
+        }
+        
+        synchronized void markPlanned() {
+            properties.setProperty("planned", "true");
+        }
+        
+        synchronized long getChangeSeq() {
+            return getLong("change-seq");
+        }
+        
+        synchronized void setChangeSeq(long changeSeq) {
+            properties.setProperty("change-seq", String.valueOf(changeSeq));
+        }
+        
+        synchronized long getHighKey(DataTable table) {
+            return getLong(table.getTableName() + ".high-key");
+        }
+        
+        synchronized void setHighKey(DataTable table, long key) {
+            properties.setProperty(table.getTableName() + ".high-key", String.valueOf(key));
+        }
+        
+        synchronized void addPartition(DataTable table, long from, long to) {
+            int index = getPartitionCount(table);
+            String prefix = table.getTableName() + "." + index;
+            properties.setProperty(prefix + ".to", String.valueOf(to));
+            properties.setProperty(prefix + ".last", String.valueOf(from));
+            properties.setProperty(table.getTableName() + ".partitions", String.valueOf(index + 1));
+        }
+        
+        synchronized int getPartitionCount(DataTable table) {
+            return (int) getLong(table.getTableName() + ".partitions");
+        }
+        
+        synchronized long getTo(DataTable table, int partition) {
+            return getLong(table.getTableName() + "." + partition + ".to");
+        }
+        
+        synchronized long getLast(DataTable table, int partition) {
+            return getLong(table.getTableName() + "." + partition + ".last");
+        }
+        
+        /**
+         * Запомнить последнюю скопированную строку диапазона
+         * Файл перезаписывается не чаще раза в секунду: после сбоя
+         * несколько порций скопируются повторно, что безопасно,
+         * так как запись не создаёт дубликатов
+         */
+        synchronized void updateLast(DataTable table, int partition, long lastKey) {
+            properties.setProperty(table.getTableName() + "." + partition + ".last", String.valueOf(lastKey));
+            if (System.currentTimeMillis() - lastSave >= CHECKPOINT_INTERVAL_MILLIS) {
+                try {
+                    save();
+                } catch (IOException e) {
+                    throw new IllegalStateException("Не удалось сохранить прогресс переноса", e);
+                }
+            }
+        }
+        
+        synchronized void save() throws IOException {
+            try (OutputStream out = Files.newOutputStream(file.toPath())) {
+                properties.store(out, "CashPro migration checkpoint");
+            }
+            lastSave = System.currentTimeMillis();
+        }
+        
+        synchronized void delete() throws IOException {
+            Files.deleteIfExists(file.toPath());
+        }
+        
+        private long getLong(String key) {
+            String value = properties.getProperty(key);
+            return value != null ? Long.parseLong(value) : 0;
+        }
+    }
+    
+    /**
+     * БД, участвующая в переносе: тип и способ открыть соединение
+     */
+    static class Endpoint {
+        private final DatabaseDialect dialect;
+        private final ConnectionFactory connections;
+        
+        Endpoint(DatabaseDialect dialect, ConnectionFactory connections) {
+            this.dialect = dialect;
+            this.connections = connections;
+        }
+        
+        DatabaseDialect getDialect() {
+            return dialect;
+        }
+        
+        Connection openConnection() throws SQLException {
+            return connections.open();
+        }
+    }
+    
+    /**
+     * Открытие соединения с БД
+     */
+    @FunctionalInterface
+    interface ConnectionFactory {
+        Connection open() throws SQLException;
+    }
+    
+    /**
+     * Количество строк и контрольная сумма таблицы
+     */
+    public static class TableSummary {
+        private final long rows;
+        private final long checksum;
+        
+        public TableSummary(long rows, long checksum) {
+            this.rows = rows;
+            this.checksum = checksum;
+        }
+        
+        public long getRows() {
+            return rows;
+        }
+        
+        public long getChecksum() {
+            return checksum;
+        }
+    }
+    
+    /**
+     * Результат проверки перенесённой таблицы
+     */
+    public static class TableReport {
+        private final TableSummary source;
+        private final TableSummary target;
+        
+        public TableReport(TableSummary source, TableSummary target) {
+            this.source = source;
+            this.target = target;
+        }
+        
+        public TableSummary getSource() {
+            return source;
+        }
+        
+        public TableSummary getTarget() {
+            return target;
+        }
+        
+        /**
+         * Проверить, совпадают ли количество строк и контрольная сумма
+         */
+        public boolean isMatching() {
+            return source.rows == target.rows && source.checksum == target.checksum;
+        }
+    }
+}
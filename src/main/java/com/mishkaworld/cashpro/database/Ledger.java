@@ -0,0 +1,256 @@
+package com.mishkaworld.cashpro.database;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Журнал операций: единственный поток записи изменений балансов
+ * Команды, API и вход игроков отправляют изменения в очередь, поток
+ * забирает из неё всё накопившееся (до storage.ledger.batch-size) и применяет
+ * пакет одной транзакцией БД (оптимистично со сравнением версий строк или
+ * BEGIN IMMEDIATE, см. storage.optimistic). Пока фиксируется один пакет,
+ * в очереди собирается следующий, поэтому под нагрузкой на одну синхронизацию
+ * файла БД приходится много операций. Изменения применяются строго по очереди,
+ * каждый вызывающий получает свой результат, включая отказ из-за нехватки средств
+ * 
+ * @author Misha Ermakov
+ */
+public class Ledger {
+    
+    // Метка остановки в очереди, после неё операций нет
+    private static final LedgerMutation STOP = LedgerMutation.record(null);
+    
+    private final CashProReloaded plugin;
+    private final StorageBackend storage;
+    private final BlockingQueue<LedgerMutation> queue = new LinkedBlockingQueue<>();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder mutations = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private Thread thread;
+    private boolean stopped;
+    
+    public Ledger(CashProReloaded plugin, StorageBackend storage) {
+        this.plugin = plugin;
+        this.storage = storage;
+    }
+    
+    /**
+     * Запустить поток журнала
+     */
+    public synchronized void initialize() {
+        thread = new Thread(this::run, "CashPro-Ledger");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Остановить журнал: операции, принятые до остановки, фиксируются
+     */
+    public void shutdown() {
+        Thread current;
+        synchronized (this) {
+            if (thread == null || stopped) {
+                return;
+            }
+            stopped = true;
+            queue.add(STOP);
+            current = thread;
+        }
+        
+        try {
+            current.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Отправить изменение и дождаться результата не дольше storage.ledger.timeout
+     * Если журнал за это время не начал записывать изменение, оно отменяется
+     * и возвращается отказ. Изменение, которое уже записывается, ждёт фиксации
+     * ещё не дольше storage.ledger.timeout, чтобы вызывающий не получил отказ
+     * для применённого изменения и не завис на остановившейся записи
+     */
+    public LedgerMutation.Result apply(LedgerMutation mutation) {
+        int timeout = plugin.getConfigManager().getLedgerTimeout();
+        try {
+            return submit(mutation).getFuture().get(timeout, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            if (cancel(mutation)) {
+                plugin.getLogger().warning("Журнал операций не записал изменение баланса за " + timeout
+                    + " с, в очереди: " + queue.size());
+                return LedgerMutation.Result.failed();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (cancel(mutation)) {
+                return LedgerMutation.Result.failed();
+            }
+        } catch (ExecutionException e) {
+            return LedgerMutation.Result.failed();
+        }
+        
+        try {
+            return mutation.getFuture().get(timeout, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            plugin.getLogger().warning("Журнал операций не зафиксировал изменение баланса за " + (timeout * 2)
+                + " с, результат неизвестен");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+        }
+        return LedgerMutation.Result.failed();
+    }
+    
+    /**
+     * Отменить изменение, которое журнал ещё не забрал из очереди
+     * 
+     * @return false если журнал уже записывает изменение
+     */
+    private boolean cancel(LedgerMutation mutation) {
+        if (!mutation.take()) {
+            return false;
+        }
+        failed.increment();
+        mutation.getFuture().complete(LedgerMutation.Result.failed());
+        return true;
+    }
+    
+    /**
+     * Отправить изменение в очередь журнала
+     * До запуска журнала изменение применяется в вызывающем потоке, после
+     * остановки отклоняется: метка остановки уже в очереди, и изменение
+     * после неё никто не запишет
+     */
+    public LedgerMutation submit(LedgerMutation mutation) {
+        synchronized (this) {
+            if (stopped) {
+                plugin.getLogger().warning("Журнал операций остановлен, изменение баланса отклонено");
+                cancel(mutation);
+                return mutation;
+            }
+            if (thread != null) {
+                queue.add(mutation);
+                return mutation;
+            }
+        }
+        
+        mutation.take();
+        process(List.of(mutation));
+        return mutation;
+    }
+    
+    private void run() {
+        int batchSize = plugin.getConfigManager().getLedgerBatchSize();
+        List<LedgerMutation> batch = new ArrayList<>(batchSize);
+        
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                // Поток завершается только по метке остановки
+                continue;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            
+            boolean stop = batch.remove(STOP);
+            // Изменения, отменённые по истечении времени ожидания, пропускаются
+            batch.removeIf(mutation -> !mutation.take());
+            if (!batch.isEmpty()) {
+                process(batch);
+            }
+            batch.clear();
+            
+            if (stop) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Применить пакет и отдать результаты вызывающим
+     * Если пакет не зафиксирован, операции повторяются по одной, чтобы
+     * ошибка одной операции не отменяла остальные
+     */
+    private void process(List<LedgerMutation> batch) {
+        List<LedgerMutation.Result> results;
+        try {
+            results = storage.applyMutations(batch);
+        } catch (SQLException | RuntimeException e) {
+            if (batch.size() > 1) {
+                for (LedgerMutation mutation : batch) {
+                    process(List.of(mutation));
+                }
+                return;
+            }
+            
+            plugin.getLogger().severe("Ошибка при записи изменения баланса: " + e.getMessage());
+            failed.increment();
+            batch.get(0).getFuture().complete(LedgerMutation.Result.failed());
+            return;
+        }
+        
+        if (results == null || results.size() != batch.size()) {
+            plugin.getLogger().severe("Хранилище вернуло неполные результаты пакета журнала");
+            failed.add(batch.size());
+            batch.forEach(mutation -> mutation.getFuture().complete(LedgerMutation.Result.failed()));
+            return;
+        }
+        
+        commits.increment();
+        mutations.add(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            LedgerMutation.Result result = results.get(i);
+            if (result.getStatus() == LedgerMutation.Status.INSUFFICIENT_FUNDS) {
+                rejected.increment();
+            }
+            batch.get(i).getFuture().complete(result);
+        }
+    }
+    
+    /**
+     * Получить количество зафиксированных пакетов
+     */
+    public long getCommits() {
+        return commits.sum();
+    }
+    
+    /**
+     * Получить количество операций в зафиксированных пакетах
+     */
+    public long getMutations() {
+        return mutations.sum();
+    }
+    
+    /**
+     * Получить количество отказов из-за нехватки средств
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+    
+    /**
+     * Получить количество операций, не записанных из-за ошибки БД,
+     * истечения времени ожидания или остановки журнала
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+    
+    /**
+     * Получить количество операций, ожидающих в очереди
+     */
+    public int getQueued() {
+        return queue.size();
+    }
+}
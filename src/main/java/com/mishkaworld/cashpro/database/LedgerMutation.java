@@ -0,0 +1,311 @@
+package com.mishkaworld.cashpro.database;
+
+import com.mishkaworld.cashpro.economy.BulkJob;
+import com.mishkaworld.cashpro.economy.Transaction;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Изменение баланса, отправленное в журнал операций
+ * Вместе с изменением записывается его транзакция (если передана), поэтому
+ * баланс и строка истории фиксируются одной транзакцией БД. Результат
+ * приходит в {@link #getFuture()} после фиксации пакета. Порции массовых
+ * заданий и импорта тоже проходят через журнал, чтобы все записи балансов
+ * получали номера изменений из одного места
+ * 
+ * @author Misha Ermakov
+ */
+public class LedgerMutation {
+    
+    private final Type type;
+    private final UUID playerUuid;
+    private final String playerName;
+    private final String currency;
+    private final long amount;
+    private final UUID targetUuid;
+    private final String targetName;
+    private final Transaction transaction;
+    private final BulkJob bulkJob;
+    private final long afterId;
+    private final long upToId;
+    private final DataTable table;
+    private final List<String[]> rows;
+    private final CompletableFuture<Result> future = new CompletableFuture<>();
+    private final AtomicBoolean taken = new AtomicBoolean();
+    
+    private LedgerMutation(Type type, UUID playerUuid, String playerName, String currency, long amount,
+                           UUID targetUuid, String targetName, Transaction transaction) {
+        this(type, playerUuid, playerName, currency, amount, targetUuid, targetName, transaction, null, 0, 0, null, null);
+    }
+    
+    private LedgerMutation(Type type, UUID playerUuid, String playerName, String currency, long amount,
+                           UUID targetUuid, String targetName, Transaction transaction,
+                           BulkJob bulkJob, long afterId, long upToId, DataTable table, List<String[]> rows) {
+        this.type = type;
+        this.playerUuid = playerUuid;
+        this.playerName = playerName;
+        this.currency = currency;
+        this.amount = amount;
+        this.targetUuid = targetUuid;
+        this.targetName = targetName;
+        this.transaction = transaction;
+        this.bulkJob = bulkJob;
+        this.afterId = afterId;
+        this.upToId = upToId;
+        this.table = table;
+        this.rows = rows;
+    }
+    
+    /**
+     * Установить баланс
+     */
+    public static LedgerMutation set(UUID playerUuid, String playerName, String currency, long amount, Transaction transaction) {
+        return new LedgerMutation(Type.SET, playerUuid, playerName, currency, amount, null, null, transaction);
+    }
+    
+    /**
+     * Зачислить сумму
+     */
+    public static LedgerMutation deposit(UUID playerUuid, String playerName, String currency, long amount, Transaction transaction) {
+        return new LedgerMutation(Type.DEPOSIT, playerUuid, playerName, currency, amount, null, null, transaction);
+    }
+    
+    /**
+     * Списать сумму, если её хватает на счёте
+     */
+    public static LedgerMutation withdraw(UUID playerUuid, String playerName, String currency, long amount, Transaction transaction) {
+        return new LedgerMutation(Type.WITHDRAW, playerUuid, playerName, currency, amount, null, null, transaction);
+    }
+    
+    /**
+     * Перевести сумму со счёта на счёт, если её хватает у отправителя
+     */
+    public static LedgerMutation transfer(UUID fromUuid, String fromName, UUID toUuid, String toName, String currency,
+                                          long amount, Transaction transaction) {
+        return new LedgerMutation(Type.TRANSFER, fromUuid, fromName, currency, amount, toUuid, toName, transaction);
+    }
+    
+    /**
+     * Только записать транзакцию (балансы в режиме memory меняются в памяти)
+     */
+    public static LedgerMutation record(Transaction transaction) {
+        return new LedgerMutation(Type.RECORD, null, null, null, 0, null, null, transaction);
+    }
+    
+    /**
+     * Применить массовое задание к счетам с id в диапазоне (afterId, upToId]
+     * и сохранить продвижение задания
+     */
+    public static LedgerMutation bulkJob(BulkJob job, long afterId, long upToId) {
+        return new LedgerMutation(Type.BULK_JOB, null, null, job.getCurrency(), 0, null, null, null,
+            job, afterId, upToId, null, null);
+    }
+    
+    /**
+     * Импортировать порцию строк таблицы (только хранилище SQLite)
+     * 
+     * @param rows строки в порядке столбцов {@link DataTable#getColumns()}
+     */
+    public static LedgerMutation importRows(DataTable table, List<String[]> rows) {
+        return new LedgerMutation(Type.IMPORT, null, null, null, 0, null, null, null,
+            null, 0, 0, table, List.copyOf(rows));
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    public UUID getPlayerUuid() {
+        return playerUuid;
+    }
+    
+    public String getPlayerName() {
+        return playerName;
+    }
+    
+    public String getCurrency() {
+        return currency;
+    }
+    
+    public long getAmount() {
+        return amount;
+    }
+    
+    /**
+     * Получить получателя перевода
+     */
+    public UUID getTargetUuid() {
+        return targetUuid;
+    }
+    
+    public String getTargetName() {
+        return targetName;
+    }
+    
+    /**
+     * Получить транзакцию для истории (null если не записывается)
+     */
+    public Transaction getTransaction() {
+        return transaction;
+    }
+    
+    public BulkJob getBulkJob() {
+        return bulkJob;
+    }
+    
+    public long getAfterId() {
+        return afterId;
+    }
+    
+    public long getUpToId() {
+        return upToId;
+    }
+    
+    public DataTable getTable() {
+        return table;
+    }
+    
+    public List<String[]> getRows() {
+        return rows;
+    }
+    
+    /**
+     * Проверить, что изменение - порция массового задания или импорта
+     * Такие порции занимают запись в файле БД сразу: повтор большой
+     * порции после конфликта дороже ожидания
+     */
+    public boolean isBulk() {
+        return type == Type.BULK_JOB || type == Type.IMPORT;
+    }
+    
+    /**
+     * Получить результат, завершаемый журналом после фиксации
+     */
+    public CompletableFuture<Result> getFuture() {
+        return future;
+    }
+    
+    /**
+     * Забрать изменение: журнал забирает его перед применением, вызывающий -
+     * для отмены после истечения времени ожидания. Изменение забирается один
+     * раз, поэтому отменённое изменение никогда не будет применено
+     * 
+     * @return false если изменение уже забрано
+     */
+    boolean take() {
+        return taken.compareAndSet(false, true);
+    }
+    
+    /**
+     * Вид изменения
+     */
+    public enum Type {
+        SET,
+        DEPOSIT,
+        WITHDRAW,
+        TRANSFER,
+        RECORD,
+        BULK_JOB,
+        IMPORT
+    }
+    
+    /**
+     * Результат изменения
+     */
+    public static class Result {
+        private static final Result INSUFFICIENT_FUNDS = new Result(Status.INSUFFICIENT_FUNDS, 0, 0, 0, 0, null);
+        private static final Result FAILED = new Result(Status.FAILED, 0, 0, 0, 0, null);
+        
+        private final Status status;
+        private final long balance;
+        private final long changeSeq;
+        private final long targetBalance;
+        private final long targetChangeSeq;
+        private final BulkChunk chunk;
+        
+        private Result(Status status, long balance, long changeSeq, long targetBalance, long targetChangeSeq, BulkChunk chunk) {
+            this.status = status;
+            this.balance = balance;
+            this.changeSeq = changeSeq;
+            this.targetBalance = targetBalance;
+            this.targetChangeSeq = targetChangeSeq;
+            this.chunk = chunk;
+        }
+        
+        static Result applied(long balance, long changeSeq) {
+            return new Result(Status.APPLIED, balance, changeSeq, 0, 0, null);
+        }
+        
+        static Result applied(long balance, long changeSeq, long targetBalance, long targetChangeSeq) {
+            return new Result(Status.APPLIED, balance, changeSeq, targetBalance, targetChangeSeq, null);
+        }
+        
+        static Result applied(BulkChunk chunk) {
+            return new Result(Status.APPLIED, 0, 0, 0, 0, chunk);
+        }
+        
+        static Result insufficientFunds() {
+            return INSUFFICIENT_FUNDS;
+        }
+        
+        static Result failed() {
+            return FAILED;
+        }
+        
+        public Status getStatus() {
+            return status;
+        }
+        
+        public boolean isApplied() {
+            return status == Status.APPLIED;
+        }
+        
+        /**
+         * Получить новый баланс счёта (отправителя для перевода)
+         */
+        public long getBalance() {
+            return balance;
+        }
+        
+        /**
+         * Получить номер изменения, с которым записан новый баланс счёта
+         */
+        public long getChangeSeq() {
+            return changeSeq;
+        }
+        
+        /**
+         * Получить новый баланс получателя перевода
+         */
+        public long getTargetBalance() {
+            return targetBalance;
+        }
+        
+        /**
+         * Получить номер изменения, с которым записан баланс получателя
+         */
+        public long getTargetChangeSeq() {
+            return targetChangeSeq;
+        }
+        
+        /**
+         * Получить записанные счета порции массового задания или импорта
+         * (null для остальных изменений)
+         */
+        public BulkChunk getChunk() {
+            return chunk;
+        }
+    }
+    
+    /**
+     * Итог изменения
+     */
+    public enum Status {
+        APPLIED,
+        INSUFFICIENT_FUNDS,
+        FAILED
+    }
+}
@@ -0,0 +1,511 @@
+package com.mishkaworld.cashpro.database;
+
+import com.mishkaworld.cashpro.economy.BulkJob;
+import com.mishkaworld.cashpro.economy.PlayerBalance;
+import com.mishkaworld.cashpro.economy.Transaction;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Хранилище в памяти без БД
+ * Ведёт себя как {@link DatabaseManager} по контракту {@link StorageBackend}:
+ * счета получают возрастающие id и номера изменений, пакеты применяются
+ * по порядку под одной блокировкой, история читается в порядке
+ * (время, номер) по убыванию, продвижение массового задания и сводки
+ * транзакций накапливаются. Используется для проверок и замеров,
+ * чтобы сравнивать хранилища без затрат на файл БД
+ * 
+ * @author Misha Ermakov
+ */
+public class MemoryStorageBackend implements StorageBackend {
+    
+    private static final Logger LOGGER = Logger.getLogger(MemoryStorageBackend.class.getName());
+    
+    private final Map<UUID, Map<String, Account>> accounts = new HashMap<>();
+    private final NavigableMap<Long, Account> accountsById = new TreeMap<>();
+    private final List<Transaction> transactions = new ArrayList<>();
+    private final Map<String, BulkJobState> bulkJobs = new HashMap<>();
+    private final Map<RollupKey, RollupBucket> rollups = new HashMap<>();
+    private volatile Consumer<Transaction> transactionListener;
+    private long nextId = 1;
+    private long changeSeq;
+    
+    @Override
+    public synchronized long getBalance(UUID playerUuid, String currency) {
+        Account account = find(playerUuid, currency);
+        return account != null ? account.balance : 0;
+    }
+    
+    @Override
+    public synchronized Map<String, BalanceRecord> getBalanceRecords(UUID playerUuid, Collection<String> currencies) {
+        Map<String, BalanceRecord> records = new HashMap<>();
+        for (String currency : currencies) {
+            Account account = find(playerUuid, currency);
+            if (account != null) {
+                records.put(currency, account.toRecord());
+            }
+        }
+        return records;
+    }
+    
+    @Override
+    public synchronized boolean playerExists(UUID playerUuid, String currency) {
+        return find(playerUuid, currency) != null;
+    }
+    
+    @Override
+    public synchronized List<BalanceRecord> loadAllBalances() {
+        List<BalanceRecord> records = new ArrayList<>(accountsById.size());
+        for (Account account : accountsById.values()) {
+            records.add(account.toRecord());
+        }
+        return records;
+    }
+    
+    @Override
+    public synchronized Map<UUID, String> loadPlayerNames() {
+        Map<UUID, String> players = new LinkedHashMap<>();
+        for (Account account : accountsById.values()) {
+            players.put(account.playerUuid, account.playerName);
+        }
+        return players;
+    }
+    
+    @Override
+    public synchronized boolean updatePlayerName(UUID playerUuid, String playerName) {
+        boolean changed = false;
+        for (Account account : accounts.getOrDefault(playerUuid, Map.of()).values()) {
+            if (!playerName.equals(account.playerName)) {
+                account.playerName = playerName;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+    
+    @Override
+    public synchronized long getMaxChangeSeq() {
+        return changeSeq;
+    }
+    
+    @Override
+    public synchronized List<BalanceChange> getChangesSince(long changeSeq, int limit) {
+        List<Account> changed = new ArrayList<>();
+        for (Account account : accountsById.values()) {
+            if (account.changeSeq > changeSeq) {
+                changed.add(account);
+            }
+        }
+        changed.sort(Comparator.comparingLong(account -> account.changeSeq));
+        
+        List<BalanceChange> changes = new ArrayList<>(Math.min(limit, changed.size()));
+        for (Account account : changed.subList(0, Math.min(limit, changed.size()))) {
+            changes.add(new BalanceChange(account.changeSeq, account.toRecord()));
+        }
+        return changes;
+    }
+    
+    @Override
+    public synchronized List<LedgerMutation.Result> applyMutations(List<LedgerMutation> mutations) {
+        // Пакет отклоняется целиком до применения, как откат транзакции в БД
+        if (mutations.stream().anyMatch(mutation -> mutation.getType() == LedgerMutation.Type.IMPORT)) {
+            throw new UnsupportedOperationException("Импорт таблиц поддерживает только хранилище SQLite");
+        }
+        
+        List<LedgerMutation.Result> results = new ArrayList<>(mutations.size());
+        List<Transaction> saved = new ArrayList<>();
+        
+        for (LedgerMutation mutation : mutations) {
+            LedgerMutation.Result result = applyMutation(mutation);
+            if (result.isApplied() && mutation.getTransaction() != null) {
+                transactions.add(mutation.getTransaction());
+                saved.add(mutation.getTransaction());
+            }
+            results.add(result);
+        }
+        
+        notifyListener(saved);
+        return results;
+    }
+    
+    /**
+     * Передать слушателю применённые транзакции, как после фиксации в БД
+     */
+    private void notifyListener(List<Transaction> saved) {
+        Consumer<Transaction> listener = transactionListener;
+        if (listener == null) {
+            return;
+        }
+        
+        for (Transaction transaction : saved) {
+            try {
+                listener.accept(transaction);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Ошибка слушателя транзакций для " + transaction.getId(), e);
+            }
+        }
+    }
+    
+    private LedgerMutation.Result applyMutation(LedgerMutation mutation) {
+        if (mutation.getType() == LedgerMutation.Type.RECORD) {
+            return LedgerMutation.Result.applied(0, 0);
+        }
+        if (mutation.getType() == LedgerMutation.Type.BULK_JOB) {
+            return LedgerMutation.Result.applied(applyBulkJob(mutation.getBulkJob(), mutation.getAfterId(), mutation.getUpToId()));
+        }
+        
+        UUID playerUuid = mutation.getPlayerUuid();
+        String currency = mutation.getCurrency();
+        long amount = mutation.getAmount();
+        Account account = find(playerUuid, currency);
+        long current = account != null ? account.balance : 0;
+        
+        if (mutation.getType() == LedgerMutation.Type.SET) {
+            return LedgerMutation.Result.applied(amount, write(playerUuid, mutation.getPlayerName(), currency, amount));
+        }
+        if (mutation.getType() == LedgerMutation.Type.DEPOSIT) {
+            return LedgerMutation.Result.applied(current + amount,
+                write(playerUuid, mutation.getPlayerName(), currency, current + amount));
+        }
+        
+        if (current < amount) {
+            return LedgerMutation.Result.insufficientFunds();
+        }
+        long seq = write(playerUuid, mutation.getPlayerName(), currency, current - amount);
+        if (mutation.getType() == LedgerMutation.Type.WITHDRAW) {
+            return LedgerMutation.Result.applied(current - amount, seq);
+        }
+        
+        long target = getBalance(mutation.getTargetUuid(), currency) + amount;
+        long targetSeq = write(mutation.getTargetUuid(), mutation.getTargetName(), currency, target);
+        return LedgerMutation.Result.applied(current - amount, seq, target, targetSeq);
+    }
+    
+    @Override
+    public synchronized boolean saveBalances(Collection<BalanceRecord> records, BulkProgress progress) {
+        for (BalanceRecord record : records) {
+            write(record.getPlayerUuid(), record.getPlayerName(), record.getCurrency(), record.getBalance());
+        }
+        if (progress != null) {
+            addBulkProgress(progress);
+        }
+        return true;
+    }
+    
+    @Override
+    public synchronized List<BalanceRecord> readBalancesRange(String currency, long afterId, long upToId) {
+        List<BalanceRecord> records = new ArrayList<>();
+        for (Account account : accountsById.subMap(afterId, false, upToId, true).values()) {
+            if (account.currency.equals(currency)) {
+                records.add(account.toRecord());
+            }
+        }
+        return records;
+    }
+    
+    @Override
+    public synchronized BulkChunk applyBulkJob(BulkJob job, long afterId, long upToId) {
+        List<BalanceRecord> records = new ArrayList<>();
+        long amount = 0;
+        
+        for (Account account : accountsById.subMap(afterId, false, upToId, true).values()) {
+            if (!account.currency.equals(job.getCurrency())) {
+                continue;
+            }
+            
+            // Счета без изменения не обновляются, как и в БД
+            long delta = job.computeDelta(account.balance);
+            if (delta == 0) {
+                continue;
+            }
+            
+            account.balance += delta;
+            account.changeSeq = ++changeSeq;
+            account.lastUpdated = System.currentTimeMillis();
+            amount += delta;
+            records.add(account.toRecord());
+        }
+        
+        addBulkProgress(new BulkProgress(job.getName(), upToId, records.size(), amount));
+        return new BulkChunk(records, records.size(), amount);
+    }
+    
+    /**
+     * Прибавить порцию к продвижению массового задания, как UPDATE в БД:
+     * без занятого периода продвижение не сохраняется
+     */
+    private void addBulkProgress(BulkProgress progress) {
+        bulkJobs.computeIfPresent(progress.getJob(), (job, state) -> new BulkJobState(state.getPeriod(), state.getMaxId(),
+            progress.getLastId(), state.getAccounts() + progress.getAccounts(), state.getAmount() + progress.getAmount(),
+            state.isFinished()));
+    }
+    
+    @Override
+    public synchronized BulkJobState getBulkJobState(String job) {
+        return bulkJobs.get(job);
+    }
+    
+    @Override
+    public synchronized BulkJobState claimBulkJob(String job, long period) {
+        BulkJobState current = bulkJobs.get(job);
+        if (current != null && (!current.isFinished() || current.getPeriod() >= period)) {
+            return null;
+        }
+        
+        BulkJobState state = new BulkJobState(period, accountsById.isEmpty() ? 0 : accountsById.lastKey(), 0, 0, 0, false);
+        bulkJobs.put(job, state);
+        return state;
+    }
+    
+    @Override
+    public synchronized void finishBulkJob(String job, Transaction transaction) {
+        bulkJobs.computeIfPresent(job, (name, state) -> new BulkJobState(state.getPeriod(), state.getMaxId(),
+            state.getLastId(), state.getAccounts(), state.getAmount(), true));
+        if (transaction != null) {
+            transactions.add(transaction);
+        }
+    }
+    
+    @Override
+    public synchronized int getPlayerTransactionsCount(UUID playerUuid, String currency) {
+        int count = 0;
+        for (Transaction transaction : transactions) {
+            if (isParticipant(transaction, playerUuid, currency)) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    @Override
+    public synchronized TransactionQuery.Page searchTransactions(TransactionQuery query, int pageSize) {
+        // Номер транзакции - её позиция в истории, как rowid в таблице
+        List<Integer> matched = new ArrayList<>();
+        for (int i = 0; i < transactions.size(); i++) {
+            if (query.matches(transactions.get(i), i + 1)) {
+                matched.add(i);
+            }
+        }
+        
+        Comparator<Integer> byTime = Comparator.comparing(i -> transactions.get(i).getTimestamp());
+        matched.sort(byTime.thenComparing(Comparator.naturalOrder()).reversed());
+        
+        List<Transaction> page = new ArrayList<>(pageSize);
+        for (int i = 0; i < Math.min(pageSize, matched.size()); i++) {
+            page.add(transactions.get(matched.get(i)));
+        }
+        
+        String nextCursor = null;
+        if (matched.size() > pageSize) {
+            int last = matched.get(pageSize - 1);
+            nextCursor = TransactionQuery.formatCursor(Timestamp.valueOf(transactions.get(last).getTimestamp()).getTime(), last + 1);
+        }
+        return new TransactionQuery.Page(page, nextCursor);
+    }
+    
+    @Override
+    public void setTransactionListener(Consumer<Transaction> listener) {
+        this.transactionListener = listener;
+    }
+    
+    @Override
+    public synchronized TransactionChunk readTransactions(long afterRowId, long upToRowId, int limit) {
+        int from = (int) Math.min(afterRowId, transactions.size());
+        int to = (int) Math.min(Math.min(upToRowId, transactions.size()), from + (long) limit);
+        return new TransactionChunk(new ArrayList<>(transactions.subList(from, Math.max(from, to))), Math.max(from, to));
+    }
+    
+    @Override
+    public synchronized RowChunk readRows(DataTable table, long afterRowId, int limit) {
+        List<String[]> rows = new ArrayList<>(limit);
+        long lastRowId = afterRowId;
+        
+        if (table == DataTable.BALANCES) {
+            for (Account account : accountsById.tailMap(afterRowId, false).values()) {
+                if (rows.size() >= limit) {
+                    break;
+                }
+                rows.add(new String[]{account.playerUuid.toString(), account.playerName, account.currency,
+                    String.valueOf(account.balance), String.valueOf(account.lastUpdated)});
+                lastRowId = account.id;
+            }
+        } else {
+            TransactionChunk chunk = readTransactions(afterRowId, Long.MAX_VALUE, limit);
+            for (Transaction transaction : chunk.getTransactions()) {
+                rows.add(new String[]{transaction.getId(), transaction.getFromPlayer(), transaction.getToPlayer(),
+                    transaction.getFromUuid() != null ? transaction.getFromUuid().toString() : null,
+                    transaction.getToUuid() != null ? transaction.getToUuid().toString() : null,
+                    transaction.getCurrency(), String.valueOf(transaction.getAmount()), transaction.getType().name(),
+                    String.valueOf(Timestamp.valueOf(transaction.getTimestamp()).getTime())});
+            }
+            lastRowId = chunk.getLastRowId();
+        }
+        
+        return new RowChunk(rows, lastRowId);
+    }
+    
+    @Override
+    public synchronized List<PlayerBalance> getTopPlayers(String currency, int limit) {
+        List<Account> ranked = new ArrayList<>();
+        for (Account account : accountsById.values()) {
+            if (account.currency.equals(currency)) {
+                ranked.add(account);
+            }
+        }
+        ranked.sort(Comparator.comparingLong((Account account) -> account.balance).reversed());
+        
+        List<PlayerBalance> top = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (Account account : ranked.subList(0, Math.min(limit, ranked.size()))) {
+            top.add(new PlayerBalance(account.playerName, account.balance));
+        }
+        return top;
+    }
+    
+    @Override
+    public synchronized void mergeRollups(Collection<RollupBucket> buckets) {
+        for (RollupBucket bucket : buckets) {
+            rollups.merge(new RollupKey(bucket), bucket, MemoryStorageBackend::mergeBucket);
+        }
+    }
+    
+    @Override
+    public synchronized boolean hasRollups() {
+        return !rollups.isEmpty();
+    }
+    
+    @Override
+    public synchronized long resetRollups(Runnable onReset) {
+        rollups.clear();
+        onReset.run();
+        return transactions.size();
+    }
+    
+    @Override
+    public synchronized int deleteRollupsBefore(String granularity, long bucketStart) {
+        int before = rollups.size();
+        rollups.values().removeIf(bucket -> bucket.getGranularity().equals(granularity) && bucket.getBucketStart() < bucketStart);
+        return before - rollups.size();
+    }
+    
+    @Override
+    public synchronized List<RollupBucket> getRollups(String granularity, String currency, String transactionType,
+                                                      long fromBucket, long toBucket) {
+        // Без фильтра по типу сводки всех типов за интервал складываются, как GROUP BY bucket_start
+        NavigableMap<Long, RollupBucket> selected = new TreeMap<>();
+        for (RollupBucket bucket : rollups.values()) {
+            if (bucket.getGranularity().equals(granularity) && bucket.getCurrency().equals(currency)
+                    && bucket.getBucketStart() >= fromBucket && bucket.getBucketStart() <= toBucket
+                    && (transactionType == null || transactionType.equals(bucket.getTransactionType()))) {
+                selected.merge(bucket.getBucketStart(), new RollupBucket(granularity, bucket.getBucketStart(), currency,
+                    transactionType, bucket.getCount(), bucket.getSum(), bucket.getMax()), MemoryStorageBackend::mergeBucket);
+            }
+        }
+        return new ArrayList<>(selected.values());
+    }
+    
+    private static RollupBucket mergeBucket(RollupBucket stored, RollupBucket added) {
+        return new RollupBucket(stored.getGranularity(), stored.getBucketStart(), stored.getCurrency(),
+            stored.getTransactionType(), stored.getCount() + added.getCount(), stored.getSum() + added.getSum(),
+            Math.max(stored.getMax(), added.getMax()));
+    }
+    
+    private Account find(UUID playerUuid, String currency) {
+        Map<String, Account> playerAccounts = accounts.get(playerUuid);
+        return playerAccounts != null ? playerAccounts.get(currency) : null;
+    }
+    
+    /**
+     * Записать баланс, создав счёт если его нет
+     * 
+     * @return номер изменения записанного баланса
+     */
+    private long write(UUID playerUuid, String playerName, String currency, long balance) {
+        Account account = find(playerUuid, currency);
+        if (account == null) {
+            account = new Account(nextId++, playerUuid, currency);
+            accounts.computeIfAbsent(playerUuid, key -> new HashMap<>()).put(currency, account);
+            accountsById.put(account.id, account);
+        }
+        account.playerName = playerName;
+        account.balance = balance;
+        account.changeSeq = ++changeSeq;
+        account.lastUpdated = System.currentTimeMillis();
+        return account.changeSeq;
+    }
+    
+    private static boolean isParticipant(Transaction transaction, UUID playerUuid, String currency) {
+        return currency.equals(transaction.getCurrency())
+            && (playerUuid.equals(transaction.getFromUuid()) || playerUuid.equals(transaction.getToUuid()));
+    }
+    
+    /**
+     * Ключ сводки: шаг, начало интервала, валюта и тип транзакций
+     */
+    private static final class RollupKey {
+        private final String granularity;
+        private final long bucketStart;
+        private final String currency;
+        private final String transactionType;
+        
+        RollupKey(RollupBucket bucket) {
+            this.granularity = bucket.getGranularity();
+            this.bucketStart = bucket.getBucketStart();
+            this.currency = bucket.getCurrency();
+            this.transactionType = bucket.getTransactionType();
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RollupKey other)) {
+                return false;
+            }
+            return granularity.equals(other.granularity) && bucketStart == other.bucketStart
+                && currency.equals(other.currency) && Objects.equals(transactionType, other.transactionType);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(granularity, bucketStart, currency, transactionType);
+        }
+    }
+    
+    /**
+     * Счёт игрока в валюте
+     */
+    private static final class Account {
+        private final long id;
+        private final UUID playerUuid;
+        private final String currency;
+        private String playerName;
+        private long balance;
+        private long changeSeq;
+        private long lastUpdated;
+        
+        Account(long id, UUID playerUuid, String currency) {
+            this.id = id;
+            this.playerUuid = playerUuid;
+            this.currency = currency;
+        }
+        
+        BalanceRecord toRecord() {
+            return new BalanceRecord(playerUuid, playerName, currency, balance, changeSeq);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.mishkaworld.cashpro.database;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Статистика задержек запросов чтения (топ, история транзакций, поиск, сводки)
+ * Ожидание - время до получения соединения: с пулом читателей это ожидание
+ * свободного читателя, без пула - ожидание единственного соединения, занятого
+ * записью. Сравнение ожидания при включённом и выключенном database.wal
+ * показывает выигрыш от разделения чтения и записи под нагрузкой
+ * 
+ * @author Misha Ermakov
+ */
+public class ReadStats {
+    
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder queryNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+    
+    void record(long waited, long queried) {
+        reads.increment();
+        waitNanos.add(waited);
+        queryNanos.add(queried);
+        maxWaitNanos.accumulate(waited);
+    }
+    
+    /**
+     * Получить количество запросов чтения
+     */
+    public long getReads() {
+        return reads.sum();
+    }
+    
+    /**
+     * Получить среднее ожидание соединения (в мс)
+     */
+    public double getAverageWaitMillis() {
+        long total = getReads();
+        return total > 0 ? waitNanos.sum() / (double) total / TimeUnit.MILLISECONDS.toNanos(1) : 0;
+    }
+    
+    /**
+     * Получить наибольшее ожидание соединения (в мс)
+     */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+    
+    /**
+     * Получить среднее время выполнения запроса (в мс)
+     */
+    public double getAverageQueryMillis() {
+        long total = getReads();
+        return total > 0 ? queryNanos.sum() / (double) total / TimeUnit.MILLISECONDS.toNanos(1) : 0;
+    }
+}
@@ -0,0 +1,138 @@
+package com.mishkaworld.cashpro.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Пул соединений SQLite только для чтения
+ * В режиме журнала WAL читатели не ждут записи и друг друга: каждый запрос
+ * видит последнее зафиксированное состояние БД, а запись идёт через одно
+ * соединение DatabaseManager. Соединения открыты с PRAGMA query_only,
+ * поэтому случайная запись через пул завершится ошибкой
+ * 
+ * @author Misha Ermakov
+ */
+public class ReaderPool {
+    
+    private final String url;
+    private final List<Connection> connections = new ArrayList<>();
+    private final BlockingQueue<Connection> idle;
+    
+    ReaderPool(String url, int size) throws SQLException {
+        this.url = url;
+        this.idle = new ArrayBlockingQueue<>(size);
+        
+        try {
+            for (int i = 0; i < size; i++) {
+                idle.add(open());
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Открыть соединение только для чтения
+     */
+    private Connection open() throws SQLException {
+        Connection connection = DriverManager.getConnection(url);
+        synchronized (connections) {
+            connections.add(connection);
+        }
+        
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = 5000");
+            stmt.execute("PRAGMA query_only = ON");
+        }
+        return connection;
+    }
+    
+    /**
+     * Занять соединение, ожидая освобождения, если все заняты
+     */
+    Connection acquire() throws SQLException {
+        try {
+            return idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Ожидание соединения для чтения прервано", e);
+        }
+    }
+    
+    /**
+     * Вернуть соединение в пул
+     * Транзакция, оставленная запросом открытой, откатывается: иначе соединение
+     * держало бы старый снимок БД (следующие запросы не видели бы новых записей)
+     * и не давало бы контрольной точке WAL укоротить журнал. Соединение, которое
+     * не удалось вернуть в режим автофиксации, заменяется новым
+     */
+    void release(Connection connection) {
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            connection = replace(connection);
+        }
+        idle.offer(connection);
+    }
+    
+    /**
+     * Закрыть неисправное соединение и открыть вместо него новое
+     * 
+     * @return новое соединение или прежнее, если открыть новое не удалось
+     */
+    private Connection replace(Connection broken) {
+        Connection connection;
+        try {
+            connection = open();
+        } catch (SQLException e) {
+            // Следующий запрос на прежнем соединении завершится ошибкой, но пул не уменьшится
+            return broken;
+        }
+        
+        synchronized (connections) {
+            connections.remove(broken);
+        }
+        try {
+            broken.close();
+        } catch (SQLException ignored) {
+            // Соединение только для чтения, незафиксированных данных нет
+        }
+        return connection;
+    }
+    
+    /**
+     * Получить количество соединений
+     */
+    public int getSize() {
+        synchronized (connections) {
+            return connections.size();
+        }
+    }
+    
+    /**
+     * Закрыть все соединения
+     */
+    void close() {
+        synchronized (connections) {
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (SQLException ignored) {
+                    // Соединение только для чтения, незафиксированных данных нет
+                }
+            }
+            connections.clear();
+        }
+        idle.clear();
+    }
+}
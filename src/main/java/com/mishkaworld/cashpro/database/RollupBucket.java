@@ -0,0 +1,62 @@
+package com.mishkaworld.cashpro.database;
+
+/**
+ * Сводка транзакций валюты за один интервал времени
+ * 
+ * @author Misha Ermakov
+ */
+public class RollupBucket {
+    
+    private final String granularity;
+    private final long bucketStart;
+    private final String currency;
+    private final String transactionType;
+    private final long count;
+    private final long sum;
+    private final long max;
+    
+    public RollupBucket(String granularity, long bucketStart, String currency, String transactionType,
+                        long count, long sum, long max) {
+        this.granularity = granularity;
+        this.bucketStart = bucketStart;
+        this.currency = currency;
+        this.transactionType = transactionType;
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+    }
+    
+    public String getGranularity() {
+        return granularity;
+    }
+    
+    /**
+     * Получить начало интервала в секундах Unix
+     */
+    public long getBucketStart() {
+        return bucketStart;
+    }
+    
+    public String getCurrency() {
+        return currency;
+    }
+    
+    /**
+     * Получить тип транзакций (null если сводка по всем типам)
+     */
+    public String getTransactionType() {
+        return transactionType;
+    }
+    
+    public long getCount() {
+        return count;
+    }
+    
+    public long getSum() {
+        return sum;
+    }
+    
+    public long getMax() {
+        return max;
+    }
+}
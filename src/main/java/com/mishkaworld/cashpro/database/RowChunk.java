@@ -0,0 +1,28 @@
+package com.mishkaworld.cashpro.database;
+
+import java.util.List;
+
+/**
+ * Порция строк таблицы, прочитанная для экспорта
+ * Значения идут в порядке столбцов {@link DataTable#getColumns()}
+ * 
+ * @author Misha Ermakov
+ */
+public class RowChunk {
+    
+    private final List<String[]> rows;
+    private final long lastRowId;
+    
+    public RowChunk(List<String[]> rows, long lastRowId) {
+        this.rows = rows;
+        this.lastRowId = lastRowId;
+    }
+    
+    public List<String[]> getRows() {
+        return rows;
+    }
+    
+    public long getLastRowId() {
+        return lastRowId;
+    }
+}
@@ -0,0 +1,190 @@
+package com.mishkaworld.cashpro.database;
+
+import com.mishkaworld.cashpro.economy.BulkJob;
+import com.mishkaworld.cashpro.economy.PlayerBalance;
+import com.mishkaworld.cashpro.economy.Transaction;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище счетов и истории транзакций
+ * Менеджер валют, журнал операций, лента изменений, сводки транзакций
+ * и экспорт работают только через этот контракт, поэтому хранилища можно
+ * подменять и сравнивать на одной нагрузке. Обслуживание файла БД
+ * относится только к SQLite и в контракт не входит.
+ * Реализации: {@link DatabaseManager} (SQLite) и {@link MemoryStorageBackend}
+ * (в памяти, для проверок и замеров). Все методы потокобезопасны
+ * 
+ * @author Misha Ermakov
+ */
+public interface StorageBackend {
+    
+    /**
+     * Получить баланс счёта (0 если счёта нет)
+     */
+    long getBalance(UUID playerUuid, String currency);
+    
+    /**
+     * Получить счета игрока в нескольких валютах одним обращением
+     * 
+     * @return счета по валютам, валют без счёта в результате нет
+     */
+    Map<String, BalanceRecord> getBalanceRecords(UUID playerUuid, Collection<String> currencies);
+    
+    /**
+     * Проверить, существует ли счёт
+     */
+    boolean playerExists(UUID playerUuid, String currency);
+    
+    /**
+     * Загрузить все счета всех игроков
+     */
+    List<BalanceRecord> loadAllBalances();
+    
+    /**
+     * Загрузить последние известные имена всех игроков
+     */
+    Map<UUID, String> loadPlayerNames();
+    
+    /**
+     * Обновить имя игрока во всех его счетах
+     * 
+     * @return true если имя изменилось
+     */
+    boolean updatePlayerName(UUID playerUuid, String playerName);
+    
+    /**
+     * Получить наибольший номер изменения счетов
+     */
+    long getMaxChangeSeq();
+    
+    /**
+     * Получить счета, изменённые после заданного номера изменения, по возрастанию номера
+     * Несколько изменений одного счёта приходят одной записью с текущим балансом
+     */
+    List<BalanceChange> getChangesSince(long changeSeq, int limit);
+    
+    /**
+     * Применить пакет изменений журнала атомарно и по порядку
+     * 
+     * @return результаты в порядке изменений
+     */
+    List<LedgerMutation.Result> applyMutations(List<LedgerMutation> mutations) throws SQLException;
+    
+    /**
+     * Сохранить пакет балансов и продвижение массового задания атомарно
+     * 
+     * @param progress продвижение задания или null
+     * @return true если пакет сохранён
+     */
+    boolean saveBalances(Collection<BalanceRecord> records, BulkProgress progress);
+    
+    /**
+     * Прочитать счета валюты с id в диапазоне (afterId, upToId]
+     */
+    List<BalanceRecord> readBalancesRange(String currency, long afterId, long upToId) throws SQLException;
+    
+    /**
+     * Применить массовое задание к счетам с id в диапазоне (afterId, upToId]
+     * и сохранить продвижение задания атомарно
+     */
+    BulkChunk applyBulkJob(BulkJob job, long afterId, long upToId) throws SQLException;
+    
+    /**
+     * Получить состояние массового задания
+     * 
+     * @return состояние или null если задание ещё не запускалось
+     */
+    BulkJobState getBulkJobState(String job) throws SQLException;
+    
+    /**
+     * Занять новый период массового задания атомарно: период достаётся
+     * только если предыдущий завершён и был раньше. Обрабатываются счета,
+     * существующие на момент запуска
+     * 
+     * @return состояние нового запуска или null если период уже занят
+     */
+    BulkJobState claimBulkJob(String job, long period) throws SQLException;
+    
+    /**
+     * Завершить период массового задания и записать его сводную транзакцию атомарно
+     * 
+     * @param transaction сводная транзакция или null если её не нужно записывать
+     */
+    void finishBulkJob(String job, Transaction transaction) throws SQLException;
+    
+    /**
+     * Получить количество транзакций игрока
+     */
+    int getPlayerTransactionsCount(UUID playerUuid, String currency);
+    
+    /**
+     * Найти страницу транзакций по фильтру с продолжением по курсору
+     */
+    TransactionQuery.Page searchTransactions(TransactionQuery query, int pageSize) throws SQLException;
+    
+    /**
+     * Установить слушателя сохранённых транзакций
+     * Слушатель вызывается после фиксации пакета под блокировкой хранилища,
+     * его ошибки записываются в лог и не отменяют пакет
+     */
+    void setTransactionListener(Consumer<Transaction> listener);
+    
+    /**
+     * Прочитать порцию транзакций по возрастанию порядкового номера (rowid)
+     * с номерами в диапазоне (afterRowId, upToRowId]
+     */
+    TransactionChunk readTransactions(long afterRowId, long upToRowId, int limit) throws SQLException;
+    
+    /**
+     * Прочитать порцию строк таблицы для экспорта по возрастанию rowid
+     * 
+     * @return порция строк, пустая если таблица прочитана полностью
+     */
+    RowChunk readRows(DataTable table, long afterRowId, int limit) throws SQLException;
+    
+    /**
+     * Получить первые limit счетов валюты по убыванию баланса
+     */
+    List<PlayerBalance> getTopPlayers(String currency, int limit);
+    
+    /**
+     * Прибавить сводки транзакций к сохранённым: количество и сумма
+     * складываются, наибольшая сумма выбирается из двух
+     */
+    void mergeRollups(Collection<RollupBucket> buckets) throws SQLException;
+    
+    /**
+     * Проверить, есть ли сохранённые сводки транзакций
+     */
+    boolean hasRollups() throws SQLException;
+    
+    /**
+     * Удалить все сводки перед перестроением
+     * 
+     * @param onReset выполняется под той же блокировкой, что и запись транзакций
+     * @return номер последней транзакции на момент очистки
+     */
+    long resetRollups(Runnable onReset) throws SQLException;
+    
+    /**
+     * Удалить сводки шага, начавшиеся раньше bucketStart
+     * 
+     * @return количество удалённых сводок
+     */
+    int deleteRollupsBefore(String granularity, long bucketStart) throws SQLException;
+    
+    /**
+     * Получить сводки транзакций валюты за интервалы [fromBucket, toBucket]
+     * по возрастанию времени. Интервалы без транзакций в результат не попадают
+     * 
+     * @param transactionType тип транзакций или null для всех типов вместе
+     */
+    List<RollupBucket> getRollups(String granularity, String currency, String transactionType,
+                                  long fromBucket, long toBucket);
+}
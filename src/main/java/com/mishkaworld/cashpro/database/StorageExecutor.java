@@ -0,0 +1,160 @@
+package com.mishkaworld.cashpro.database;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Исполнитель задач работы с базой данных
+ * По умолчанию - ограниченный пул обычных потоков. Виртуальные потоки
+ * (по потоку на задачу, Java 21+) включаются настройкой
+ * storage.executor.virtual-threads: запись в БД идёт через synchronized-методы
+ * {@link DatabaseManager}, а на Java 21-23 ожидание монитора и вызов JDBC
+ * внутри него не освобождают поток-носитель. Виртуальные потоки дают выигрыш
+ * только при большом числе задач, ждущих соединения для чтения, и на Java 24+
+ * 
+ * @author Misha Ermakov
+ */
+public class StorageExecutor {
+    
+    private final CashProReloaded plugin;
+    private final ExecutorService executor;
+    private final Semaphore connectionGate;
+    private final boolean virtualThreads;
+    private final LongAdder completedTasks = new LongAdder();
+    
+    public StorageExecutor(CashProReloaded plugin) {
+        this.plugin = plugin;
+        
+        ExecutorService virtualExecutor = plugin.getConfigManager().isVirtualThreadsEnabled()
+            ? createVirtualThreadExecutor()
+            : null;
+        
+        if (virtualExecutor != null) {
+            this.executor = virtualExecutor;
+            this.virtualThreads = true;
+        } else {
+            this.executor = Executors.newFixedThreadPool(plugin.getConfigManager().getStorageThreads(), new StorageThreadFactory());
+            this.virtualThreads = false;
+        }
+        
+        // Ограничивает число задач, одновременно работающих с БД,
+        // чтобы тысячи виртуальных потоков не выстраивались в очередь к SQLite
+        this.connectionGate = new Semaphore(plugin.getConfigManager().getStorageMaxConcurrent(), true);
+        
+        plugin.getLogger().info("Исполнитель БД: " + (virtualThreads
+            ? "виртуальные потоки"
+            : "пул из " + plugin.getConfigManager().getStorageThreads() + " потоков"));
+    }
+    
+    /**
+     * Выполнить задачу в фоновом потоке
+     */
+    public void execute(Runnable task) {
+        executor.execute(() -> runGated(task));
+    }
+    
+    /**
+     * Выполнить задачу в фоновом потоке и получить результат
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> runGated(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }));
+        return future;
+    }
+    
+    /**
+     * Получить количество выполненных задач с момента запуска
+     * По приросту за минуту оценивается нагрузка на БД
+     */
+    public long getCompletedTasks() {
+        return completedTasks.sum();
+    }
+    
+    /**
+     * Проверить, используются ли виртуальные потоки
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+    
+    /**
+     * Остановить исполнитель, дождавшись завершения начатых задач
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Не все задачи БД завершились за 10 секунд");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Выполнить задачу, заняв разрешение на работу с БД
+     */
+    private void runGated(Runnable task) {
+        try {
+            connectionGate.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        
+        try {
+            task.run();
+        } catch (Throwable e) {
+            plugin.getLogger().log(Level.SEVERE, "Ошибка в задаче БД", e);
+        } finally {
+            connectionGate.release();
+            completedTasks.increment();
+        }
+    }
+    
+    /**
+     * Создать исполнитель на виртуальных потоках, если он доступен (Java 21+)
+     * Вызывается через рефлексию, так как плагин собирается под Java 17
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Фабрика именованных фоновых потоков
+     */
+    private static class StorageThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+        
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "CashPro-Storage-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
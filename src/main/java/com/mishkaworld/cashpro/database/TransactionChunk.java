@@ -0,0 +1,29 @@
+package com.mishkaworld.cashpro.database;
+
+import com.mishkaworld.cashpro.economy.Transaction;
+
+import java.util.List;
+
+/**
+ * Порция транзакций, прочитанная для построения сводок
+ * 
+ * @author Misha Ermakov
+ */
+public class TransactionChunk {
+    
+    private final List<Transaction> transactions;
+    private final long lastRowId;
+    
+    public TransactionChunk(List<Transaction> transactions, long lastRowId) {
+        this.transactions = transactions;
+        this.lastRowId = lastRowId;
+    }
+    
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+    
+    public long getLastRowId() {
+        return lastRowId;
+    }
+}
@@ -0,0 +1,289 @@
+package com.mishkaworld.cashpro.database;
+
+import com.mishkaworld.cashpro.economy.Transaction;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Фильтр поиска транзакций валюты с постраничным чтением по ключу
+ * Запрос всегда строится по одному из составных индексов, начинающихся
+ * с условий равенства, и читается в порядке (timestamp, rowid) по убыванию:
+ * - участник (и собеседник) - две ветки по idx_transactions_from и
+ *   idx_transactions_to, объединённые UNION ALL
+ * - только тип - idx_transactions_type_time (currency, transaction_type, timestamp)
+ * - без участника и типа - idx_transactions_currency_time (currency, timestamp)
+ * Диапазон сумм проверяется на строках, прочитанных по индексу. Следующая
+ * страница продолжается с курсора (timestamp, rowid) последней строки,
+ * поэтому её стоимость не растёт с номером страницы
+ * 
+ * @author Misha Ermakov
+ */
+public class TransactionQuery {
+    
+    private static final String COLUMNS =
+        "rowid AS row_id, id, from_player, to_player, from_uuid, to_uuid, currency, amount, transaction_type, timestamp";
+    
+    private final String currency;
+    private UUID participant;
+    private UUID counterparty;
+    private Transaction.TransactionType type;
+    private Long minAmount;
+    private Long maxAmount;
+    private LocalDateTime since;
+    private LocalDateTime until;
+    private Long afterTimestamp;
+    private Long afterRowId;
+    
+    public TransactionQuery(String currency) {
+        this.currency = currency;
+    }
+    
+    /**
+     * Установить участника транзакции (отправитель или получатель)
+     */
+    public void setParticipant(UUID participant) {
+        this.participant = participant;
+    }
+    
+    /**
+     * Установить второго участника перевода
+     */
+    public void setCounterparty(UUID counterparty) {
+        this.counterparty = counterparty;
+    }
+    
+    public void setType(Transaction.TransactionType type) {
+        this.type = type;
+    }
+    
+    /**
+     * Установить минимальную сумму (включительно)
+     */
+    public void setMinAmount(Long minAmount) {
+        this.minAmount = minAmount;
+    }
+    
+    /**
+     * Установить максимальную сумму (включительно)
+     */
+    public void setMaxAmount(Long maxAmount) {
+        this.maxAmount = maxAmount;
+    }
+    
+    /**
+     * Установить начало периода (включительно)
+     */
+    public void setSince(LocalDateTime since) {
+        this.since = since;
+    }
+    
+    /**
+     * Установить конец периода (не включительно)
+     */
+    public void setUntil(LocalDateTime until) {
+        this.until = until;
+    }
+    
+    /**
+     * Продолжить поиск после строки с курсором из {@link #formatCursor(long, long)}
+     * 
+     * @return false если курсор повреждён
+     */
+    public boolean setCursor(String cursor) {
+        int separator = cursor.indexOf('-');
+        if (separator <= 0) {
+            return false;
+        }
+        try {
+            afterTimestamp = Long.parseLong(cursor.substring(0, separator));
+            afterRowId = Long.parseLong(cursor.substring(separator + 1));
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Получить курсор строки для продолжения поиска
+     */
+    public static String formatCursor(long timestamp, long rowId) {
+        return timestamp + "-" + rowId;
+    }
+    
+    public String getCurrency() {
+        return currency;
+    }
+    
+    /**
+     * Построить запрос страницы и заполнить список его параметров
+     * 
+     * @param limit максимум строк
+     * @param params сюда добавляются параметры в порядке знаков ?
+     */
+    String buildSql(int limit, List<Object> params) {
+        // Собеседник без участника - тот же поиск по участнику
+        UUID first = participant != null ? participant : counterparty;
+        UUID second = participant != null ? counterparty : null;
+        
+        if (first == null) {
+            String index = type != null ? "idx_transactions_type_time" : "idx_transactions_currency_time";
+            StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS)
+                .append(" FROM transactions INDEXED BY ").append(index)
+                .append(" WHERE currency = ?");
+            params.add(currency);
+            if (type != null) {
+                sql.append(" AND transaction_type = ?");
+                params.add(type.name());
+            }
+            appendFilters(sql, params);
+            sql.append(" ORDER BY timestamp DESC, rowid DESC LIMIT ?");
+            params.add((long) limit);
+            return sql.toString();
+        }
+        
+        // Каждая ветка сама ограничена limit строками, итог сливается по времени
+        String outgoing = buildBranch("idx_transactions_from", "from_uuid", first, "to_uuid", second, limit, params);
+        String incoming = buildBranch("idx_transactions_to", "to_uuid", first, "from_uuid", second, limit, params);
+        params.add((long) limit);
+        return "SELECT * FROM (" + outgoing + ") UNION ALL SELECT * FROM (" + incoming + ")"
+            + " ORDER BY timestamp DESC, row_id DESC LIMIT ?";
+    }
+    
+    private String buildBranch(String index, String column, UUID playerUuid, String otherColumn, UUID otherUuid,
+                               int limit, List<Object> params) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS)
+            .append(" FROM transactions INDEXED BY ").append(index)
+            .append(" WHERE ").append(column).append(" = ? AND currency = ?");
+        params.add(playerUuid.toString());
+        params.add(currency);
+        
+        if (otherUuid != null) {
+            sql.append(" AND ").append(otherColumn).append(" = ?");
+            params.add(otherUuid.toString());
+        }
+        if (type != null) {
+            sql.append(" AND transaction_type = ?");
+            params.add(type.name());
+        }
+        appendFilters(sql, params);
+        sql.append(" ORDER BY timestamp DESC, rowid DESC LIMIT ?");
+        params.add((long) limit);
+        return sql.toString();
+    }
+    
+    /**
+     * Добавить условия по сумме, периоду и курсору
+     * Условие timestamp <= курсора задаёт диапазон индекса, сравнение rowid
+     * отсекает уже показанные строки с тем же временем
+     */
+    private void appendFilters(StringBuilder sql, List<Object> params) {
+        if (minAmount != null) {
+            sql.append(" AND amount >= ?");
+            params.add(minAmount);
+        }
+        if (maxAmount != null) {
+            sql.append(" AND amount <= ?");
+            params.add(maxAmount);
+        }
+        if (since != null) {
+            sql.append(" AND timestamp >= ?");
+            params.add(Timestamp.valueOf(since).getTime());
+        }
+        if (until != null) {
+            sql.append(" AND timestamp < ?");
+            params.add(Timestamp.valueOf(until).getTime());
+        }
+        if (afterTimestamp != null) {
+            sql.append(" AND timestamp <= ? AND (timestamp < ? OR rowid < ?)");
+            params.add(afterTimestamp);
+            params.add(afterTimestamp);
+            params.add(afterRowId);
+        }
+    }
+    
+    /**
+     * Проверить транзакцию по фильтру без SQL (для хранилищ в памяти)
+     * Повторяет условия {@link #buildSql(int, List)}, включая курсор
+     * 
+     * @param rowId порядковый номер транзакции в хранилище
+     */
+    boolean matches(Transaction transaction, long rowId) {
+        if (!currency.equals(transaction.getCurrency())) {
+            return false;
+        }
+        
+        UUID first = participant != null ? participant : counterparty;
+        UUID second = participant != null ? counterparty : null;
+        if (first != null) {
+            boolean outgoing = first.equals(transaction.getFromUuid())
+                && (second == null || second.equals(transaction.getToUuid()));
+            boolean incoming = first.equals(transaction.getToUuid())
+                && (second == null || second.equals(transaction.getFromUuid()));
+            if (!outgoing && !incoming) {
+                return false;
+            }
+        }
+        
+        if (type != null && type != transaction.getType()) {
+            return false;
+        }
+        if (minAmount != null && transaction.getAmount() < minAmount) {
+            return false;
+        }
+        if (maxAmount != null && transaction.getAmount() > maxAmount) {
+            return false;
+        }
+        
+        long timestamp = Timestamp.valueOf(transaction.getTimestamp()).getTime();
+        if (since != null && timestamp < Timestamp.valueOf(since).getTime()) {
+            return false;
+        }
+        if (until != null && timestamp >= Timestamp.valueOf(until).getTime()) {
+            return false;
+        }
+        return afterTimestamp == null || timestamp < afterTimestamp || (timestamp == afterTimestamp && rowId < afterRowId);
+    }
+    
+    /**
+     * Заполнить параметры подготовленного запроса
+     */
+    static void bind(PreparedStatement stmt, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            Object value = params.get(i);
+            if (value instanceof Long) {
+                stmt.setLong(i + 1, (Long) value);
+            } else {
+                stmt.setString(i + 1, (String) value);
+            }
+        }
+    }
+    
+    /**
+     * Страница результатов поиска
+     */
+    public static class Page {
+        private final List<Transaction> transactions;
+        private final String nextCursor;
+        
+        public Page(List<Transaction> transactions, String nextCursor) {
+            this.transactions = transactions;
+            this.nextCursor = nextCursor;
+        }
+        
+        public List<Transaction> getTransactions() {
+            return transactions;
+        }
+        
+        /**
+         * Получить курсор следующей страницы (null если страница последняя)
+         */
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.mishkaworld.cashpro.economy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Полосатые блокировки счетов игроков
+ * Счёт (игрок + валюта) всегда попадает в одну и ту же полосу,
+ * поэтому изменения одного счёта выполняются строго последовательно,
+ * а изменения разных счетов - как правило, параллельно
+ * 
+ * @author Misha Ermakov
+ */
+public class AccountLocks {
+    
+    private static final int STRIPES = 64;
+    
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    
+    public AccountLocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+    
+    /**
+     * Выполнить действие под блокировкой одного счёта
+     */
+    public <T> T withLock(UUID playerUuid, String currency, LockedAction<T> action) {
+        ReentrantLock lock = locks[stripe(playerUuid, currency)];
+        lock.lock();
+        try {
+            return action.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Выполнить действие под блокировкой двух счетов
+     * Полосы всегда захватываются по возрастанию номера, поэтому
+     * встречные переводы A -> B и B -> A не могут заблокировать друг друга
+     */
+    public <T> T withLocks(UUID firstUuid, UUID secondUuid, String currency, LockedAction<T> action) {
+        int firstStripe = stripe(firstUuid, currency);
+        int secondStripe = stripe(secondUuid, currency);
+        
+        ReentrantLock outer = locks[Math.min(firstStripe, secondStripe)];
+        ReentrantLock inner = locks[Math.max(firstStripe, secondStripe)];
+        
+        outer.lock();
+        try {
+            // Оба счёта могут попасть в одну полосу, тогда достаточно одной блокировки
+            if (inner != outer) {
+                inner.lock();
+            }
+            try {
+                return action.run();
+            } finally {
+                if (inner != outer) {
+                    inner.unlock();
+                }
+            }
+        } finally {
+            outer.unlock();
+        }
+    }
+    
+    /**
+     * Выполнить действие под блокировкой счетов игрока в нескольких валютах
+     * Полосы захватываются по возрастанию номера и без повторов, как и в {@link #withLocks}
+     */
+    public <T> T withPlayerLocks(UUID playerUuid, Collection<String> currencies, LockedAction<T> action) {
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (String currency : currencies) {
+            stripes.add(stripe(playerUuid, currency));
+        }
+        return withStripes(stripes, action);
+    }
+    
+    /**
+     * Выполнить действие под блокировкой счетов нескольких игроков в одной валюте
+     * Захватываются только полосы этих счетов, по возрастанию номера и без повторов
+     */
+    public <T> T withAccountLocks(Collection<UUID> playerUuids, String currency, LockedAction<T> action) {
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (UUID playerUuid : playerUuids) {
+            stripes.add(stripe(playerUuid, currency));
+        }
+        return withStripes(stripes, action);
+    }
+    
+    private <T> T withStripes(TreeSet<Integer> stripes, LockedAction<T> action) {
+        List<ReentrantLock> locked = new ArrayList<>(stripes.size());
+        try {
+            for (int stripe : stripes) {
+                locks[stripe].lock();
+                locked.add(locks[stripe]);
+            }
+            return action.run();
+        } finally {
+            for (int i = locked.size() - 1; i >= 0; i--) {
+                locked.get(i).unlock();
+            }
+        }
+    }
+    
+    /**
+     * Выполнить действие под блокировкой всех счетов
+     * Нужна для массовых изменений, затрагивающих счета всех полос сразу.
+     * Полосы захватываются по возрастанию номера, как и в {@link #withLocks}
+     */
+    public <T> T withAllLocks(LockedAction<T> action) {
+        int locked = 0;
+        try {
+            for (ReentrantLock lock : locks) {
+                lock.lock();
+                locked++;
+            }
+            return action.run();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                locks[i].unlock();
+            }
+        }
+    }
+    
+    /**
+     * Получить номер полосы для счёта
+     */
+    private static int stripe(UUID playerUuid, String currency) {
+        int hash = playerUuid.hashCode() * 31 + currency.hashCode();
+        hash ^= (hash >>> 16);
+        return hash & (STRIPES - 1);
+    }
+    
+    /**
+     * Действие, выполняемое под блокировкой
+     */
+    @FunctionalInterface
+    public interface LockedAction<T> {
+        T run();
+    }
+}
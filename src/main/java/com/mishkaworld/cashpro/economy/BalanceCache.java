@@ -0,0 +1,254 @@
+package com.mishkaworld.cashpro.economy;
+
+import com.mishkaworld.cashpro.database.BalanceRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Хранилище балансов игроков в памяти
+ * В режиме memory содержит балансы всех игроков, изменённые балансы
+ * помечаются и периодически сохраняются в БД. В режиме sql служит
+ * сквозным кэшем балансов игроков в сети
+ * 
+ * @author Misha Ermakov
+ */
+public class BalanceCache {
+    
+    private final Map<String, Map<UUID, CachedBalance>> balances = new ConcurrentHashMap<>();
+    private final Map<String, Set<UUID>> dirty = new ConcurrentHashMap<>();
+    private final boolean trackChanges;
+    
+    /**
+     * @param trackChanges помечать ли изменённые балансы для сохранения в БД
+     */
+    public BalanceCache(boolean trackChanges) {
+        this.trackChanges = trackChanges;
+    }
+    
+    /**
+     * Загрузить балансы из БД
+     */
+    public void load(List<BalanceRecord> records) {
+        for (BalanceRecord record : records) {
+            getCurrencyBalances(record.getCurrency())
+                .put(record.getPlayerUuid(), new CachedBalance(record.getPlayerName(), record.getBalance(), record.getChangeSeq()));
+        }
+    }
+    
+    /**
+     * Проверить, есть ли баланс игрока в памяти
+     */
+    public boolean contains(UUID playerUuid, String currency) {
+        return findCurrencyBalances(currency).containsKey(playerUuid);
+    }
+    
+    /**
+     * Получить баланс игрока
+     */
+    public long getBalance(UUID playerUuid, String currency) {
+        CachedBalance cached = findCurrencyBalances(currency).get(playerUuid);
+        return cached != null ? cached.balance : 0;
+    }
+    
+    /**
+     * Установить баланс игрока
+     */
+    public void setBalance(UUID playerUuid, String playerName, String currency, long amount) {
+        getCurrencyBalances(currency).compute(playerUuid, (uuid, cached) ->
+            new CachedBalance(playerName, amount, cached != null ? cached.changeSeq : 0));
+        markDirty(playerUuid, currency);
+    }
+    
+    /**
+     * Обновить баланс игрока в сети значением, записанным в БД
+     * Значения сравниваются по номеру изменения, поэтому устаревшее значение
+     * из ленты изменений не затирает более позднее, уже записанное в кэш
+     * 
+     * @return false если баланса нет в кэше или значение не новее записанного
+     */
+    public boolean applyChange(BalanceRecord record) {
+        boolean[] applied = {false};
+        getCurrencyBalances(record.getCurrency()).computeIfPresent(record.getPlayerUuid(), (uuid, cached) -> {
+            if (record.getChangeSeq() <= cached.changeSeq) {
+                return cached;
+            }
+            applied[0] = true;
+            return new CachedBalance(record.getPlayerName(), record.getBalance(), record.getChangeSeq());
+        });
+        return applied[0];
+    }
+    
+    /**
+     * Добавить к балансу игрока
+     */
+    public void addBalance(UUID playerUuid, String playerName, String currency, long amount) {
+        getCurrencyBalances(currency).compute(playerUuid, (uuid, cached) ->
+            cached != null
+                ? new CachedBalance(playerName, cached.balance + amount, cached.changeSeq)
+                : new CachedBalance(playerName, amount, 0));
+        markDirty(playerUuid, currency);
+    }
+    
+    /**
+     * Вычесть из баланса игрока
+     * 
+     * @return false если средств недостаточно
+     */
+    public boolean subtractBalance(UUID playerUuid, String playerName, String currency, long amount) {
+        boolean[] success = {false};
+        getCurrencyBalances(currency).computeIfPresent(playerUuid, (uuid, cached) -> {
+            if (cached.balance < amount) {
+                return cached;
+            }
+            success[0] = true;
+            return new CachedBalance(playerName, cached.balance - amount, cached.changeSeq);
+        });
+        
+        if (success[0]) {
+            markDirty(playerUuid, currency);
+        }
+        return success[0];
+    }
+    
+    /**
+     * Удалить балансы игрока из памяти
+     */
+    public void evict(UUID playerUuid) {
+        for (Map<UUID, CachedBalance> currencyBalances : balances.values()) {
+            currencyBalances.remove(playerUuid);
+        }
+    }
+    
+    /**
+     * Обновить имя игрока во всех валютах
+     */
+    public void renamePlayer(UUID playerUuid, String playerName) {
+        for (Map<UUID, CachedBalance> currencyBalances : balances.values()) {
+            currencyBalances.computeIfPresent(playerUuid, (uuid, cached) ->
+                new CachedBalance(playerName, cached.balance, cached.changeSeq));
+        }
+    }
+    
+    /**
+     * Получить топ игроков по валюте без сортировки всей таблицы
+     */
+    public List<PlayerBalance> getTopPlayers(String currency, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        
+        Comparator<CachedBalance> byBalance = Comparator.comparingLong(cached -> cached.balance);
+        PriorityQueue<CachedBalance> top = new PriorityQueue<>(limit + 1, byBalance);
+        for (CachedBalance cached : findCurrencyBalances(currency).values()) {
+            top.offer(cached);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        
+        List<CachedBalance> sorted = new ArrayList<>(top);
+        sorted.sort(byBalance.reversed());
+        
+        List<PlayerBalance> result = new ArrayList<>(sorted.size());
+        for (CachedBalance cached : sorted) {
+            result.add(new PlayerBalance(cached.playerName, cached.balance));
+        }
+        return result;
+    }
+    
+    /**
+     * Забрать все изменённые балансы для сохранения в БД
+     * Запись снимается с пометки до чтения значения, поэтому изменение,
+     * сделанное во время сохранения, попадёт в следующую контрольную точку
+     */
+    public List<BalanceRecord> drainDirty() {
+        List<BalanceRecord> records = new ArrayList<>();
+        
+        for (Map.Entry<String, Set<UUID>> entry : dirty.entrySet()) {
+            String currency = entry.getKey();
+            Map<UUID, CachedBalance> currencyBalances = findCurrencyBalances(currency);
+            
+            for (UUID playerUuid : entry.getValue()) {
+                if (!entry.getValue().remove(playerUuid)) {
+                    continue;
+                }
+                CachedBalance cached = currencyBalances.get(playerUuid);
+                if (cached != null) {
+                    records.add(new BalanceRecord(playerUuid, cached.playerName, currency, cached.balance));
+                }
+            }
+        }
+        
+        return records;
+    }
+    
+    /**
+     * Вернуть пометку изменённых балансов (например, после ошибки сохранения)
+     */
+    public void markDirty(List<BalanceRecord> records) {
+        for (BalanceRecord record : records) {
+            markDirty(record.getPlayerUuid(), record.getCurrency());
+        }
+    }
+    
+    /**
+     * Получить количество несохранённых балансов
+     */
+    public int getDirtyCount() {
+        int count = 0;
+        for (Set<UUID> players : dirty.values()) {
+            count += players.size();
+        }
+        return count;
+    }
+    
+    /**
+     * Получить количество балансов в памяти
+     */
+    public int size() {
+        int count = 0;
+        for (Map<UUID, CachedBalance> currencyBalances : balances.values()) {
+            count += currencyBalances.size();
+        }
+        return count;
+    }
+    
+    private void markDirty(UUID playerUuid, String currency) {
+        if (!trackChanges) {
+            return;
+        }
+        dirty.computeIfAbsent(currency, key -> ConcurrentHashMap.newKeySet()).add(playerUuid);
+    }
+    
+    private Map<UUID, CachedBalance> getCurrencyBalances(String currency) {
+        return balances.computeIfAbsent(currency, key -> new ConcurrentHashMap<>());
+    }
+    
+    private Map<UUID, CachedBalance> findCurrencyBalances(String currency) {
+        Map<UUID, CachedBalance> currencyBalances = balances.get(currency);
+        return currencyBalances != null ? currencyBalances : Collections.emptyMap();
+    }
+    
+    /**
+     * Баланс игрока в памяти
+     */
+    private static class CachedBalance {
+        private final String playerName;
+        private final long balance;
+        private final long changeSeq;
+        
+        private CachedBalance(String playerName, long balance, long changeSeq) {
+            this.playerName = playerName;
+            this.balance = balance;
+            this.changeSeq = changeSeq;
+        }
+    }
+}
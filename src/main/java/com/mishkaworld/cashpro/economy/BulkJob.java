@@ -0,0 +1,142 @@
+package com.mishkaworld.cashpro.economy;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Периодическое массовое начисление или списание по всем счетам валюты
+ * Изменение счёта задаётся одной формулой от баланса, которая существует
+ * в двух видах: выражение SQL для обновления строк в БД одним запросом
+ * и {@link #computeDelta(long)} для балансов в памяти. Оба вида должны
+ * давать одинаковый результат
+ * 
+ * @author Misha Ermakov
+ */
+public class BulkJob {
+    
+    private final String name;
+    private final Type type;
+    private final String currency;
+    private final long intervalMillis;
+    private final double rate;
+    private final long threshold;
+    private final long amount;
+    
+    public BulkJob(String name, Type type, String currency, long intervalMillis, double rate, long threshold, long amount) {
+        this.name = name;
+        this.type = type;
+        this.currency = currency;
+        this.intervalMillis = intervalMillis;
+        this.rate = rate;
+        this.threshold = threshold;
+        this.amount = amount;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    public String getCurrency() {
+        return currency;
+    }
+    
+    /**
+     * Получить номер периода задания для момента времени
+     * Периоды отсчитываются по местному времени сервера, поэтому дневное
+     * задание начинается в полночь и не повторяется при переводе часов
+     */
+    public long getPeriod(LocalDateTime time) {
+        long localMillis = time.toEpochSecond(ZoneOffset.UTC) * 1000;
+        return Math.floorDiv(localMillis, intervalMillis);
+    }
+    
+    /**
+     * Вычислить изменение баланса (положительное - начисление)
+     */
+    public long computeDelta(long balance) {
+        if (type == Type.INTEREST) {
+            return balance > 0 ? (long) (balance * rate) : 0;
+        }
+        if (type == Type.TAX) {
+            return balance > threshold ? -(long) ((balance - threshold) * rate) : 0;
+        }
+        return balance > 0 ? -Math.min(amount, balance) : 0;
+    }
+    
+    /**
+     * Получить выражение SQL изменения баланса от столбца balance
+     * Повторяет {@link #computeDelta(long)}: CAST AS INTEGER отбрасывает
+     * дробную часть так же, как приведение к long
+     * 
+     * @param params сюда добавляются параметры выражения в порядке знаков ?
+     */
+    public String getDeltaSql(List<Object> params) {
+        if (type == Type.INTEREST) {
+            params.add(rate);
+            return "CAST(balance * ? AS INTEGER)";
+        }
+        if (type == Type.TAX) {
+            params.add(threshold);
+            params.add(rate);
+            return "-CAST((balance - ?) * ? AS INTEGER)";
+        }
+        params.add(amount);
+        return "-MIN(?, balance)";
+    }
+    
+    /**
+     * Получить условие SQL на счета, к которым применяется задание
+     * 
+     * @param params сюда добавляются параметры условия в порядке знаков ?
+     */
+    public String getConditionSql(List<Object> params) {
+        if (type == Type.TAX) {
+            params.add(threshold);
+            return "balance > ?";
+        }
+        return "balance > 0";
+    }
+    
+    /**
+     * Получить тип сводной транзакции задания
+     */
+    public Transaction.TransactionType getTransactionType() {
+        return type == Type.INTEREST ? Transaction.TransactionType.GIVE : Transaction.TransactionType.TAKE;
+    }
+    
+    /**
+     * Вид массового задания
+     */
+    public enum Type {
+        // Процент от баланса
+        INTEREST,
+        // Процент от части баланса выше порога
+        TAX,
+        // Фиксированная плата, но не больше баланса
+        UPKEEP;
+        
+        /**
+         * Получить вид по названию из конфига
+         * 
+         * @return вид или null если название неизвестно
+         */
+        public static Type fromName(String name) {
+            for (Type type : values()) {
+                if (type.name().equalsIgnoreCase(name)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+        
+        public String getKey() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.mishkaworld.cashpro.economy;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.database.BulkChunk;
+import com.mishkaworld.cashpro.database.BulkJobState;
+import com.mishkaworld.cashpro.database.StorageBackend;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Расписание массовых заданий: проценты, налог на богатство, плата за содержание
+ * Задание обходит счета валюты порциями по диапазонам id, каждая порция -
+ * одно обновление в БД (или в памяти) и одна запись продвижения. Первая
+ * порция небольшая (jobs.chunk-size), дальше размер подстраивается так,
+ * чтобы порция занимала БД и блокировки счетов не дольше
+ * jobs.chunk-time-budget, между порциями выполняются остальные
+ * задачи. После перезапуска незавершённый период продолжается с последней
+ * сохранённой порции. Вместо транзакции на каждый счёт записывается одна
+ * сводная транзакция за период
+ * 
+ * @author Misha Ermakov
+ */
+public class BulkJobScheduler {
+    
+    private static final int MIN_CHUNK_SIZE = 10;
+    private static final int MAX_CHUNK_SIZE = 100_000;
+    
+    private final CashProReloaded plugin;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean stopped;
+    private BukkitTask checkTask;
+    
+    public BulkJobScheduler(CashProReloaded plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Запустить периодическую проверку расписания
+     */
+    public void initialize() {
+        if (!plugin.getConfigManager().isBulkJobsEnabled()) {
+            return;
+        }
+        
+        long interval = plugin.getConfigManager().getBulkJobCheckInterval() * 20;
+        checkTask = plugin.getServer().getScheduler()
+            .runTaskTimerAsynchronously(plugin, () -> plugin.getStorageExecutor().execute(this::check), interval, interval);
+    }
+    
+    /**
+     * Остановить задания: текущая порция доводится до конца, следующие не запускаются
+     */
+    public void shutdown() {
+        stopped = true;
+        if (checkTask != null) {
+            checkTask.cancel();
+            checkTask = null;
+        }
+    }
+    
+    /**
+     * Проверить расписание и запустить первое задание, которое нужно выполнить
+     * Одновременно выполняется не больше одного задания
+     */
+    public void check() {
+        if (stopped || !plugin.isReady() || !running.compareAndSet(false, true)) {
+            return;
+        }
+        
+        // Флаг снимает та ветка, которая не передала задание в runChunk
+        boolean started = false;
+        try {
+            StorageBackend storage = plugin.getStorage();
+            long now = System.currentTimeMillis();
+            
+            for (BulkJob job : plugin.getConfigManager().getBulkJobs()) {
+                BulkJobState state = storage.getBulkJobState(job.getName());
+                
+                if (state == null || state.isFinished()) {
+                    long period = job.getPeriod(LocalDateTime.now());
+                    if (state != null && state.getPeriod() >= period) {
+                        continue;
+                    }
+                    
+                    // Все счета должны быть в БД до того, как зафиксирован последний id периода
+                    plugin.getCurrencyManager().checkpoint();
+                    state = storage.claimBulkJob(job.getName(), period);
+                    if (state == null) {
+                        continue;
+                    }
+                    plugin.getLogger().info("Массовое задание " + job.getName() + " запущено");
+                } else {
+                    plugin.getLogger().info("Массовое задание " + job.getName() + " продолжено с id " + state.getLastId());
+                }
+                
+                started = true;
+                runChunk(new Run(job, state, now));
+                return;
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Ошибка при проверке массовых заданий: " + e.getMessage());
+        } finally {
+            if (!started) {
+                running.set(false);
+            }
+        }
+    }
+    
+    /**
+     * Выполнить следующую порцию задания и запланировать следующую
+     * Флаг выполнения остаётся занятым только если следующая порция
+     * запланирована, при любом другом исходе (включая непроверяемые
+     * исключения) он снимается
+     */
+    private void runChunk(Run run) {
+        boolean scheduled = false;
+        try {
+            if (stopped) {
+                return;
+            }
+            
+            long upToId = Math.min(run.maxId, run.lastId + run.chunkSize);
+            long start = System.nanoTime();
+            
+            if (upToId > run.lastId) {
+                BulkChunk chunk = plugin.getCurrencyManager().applyBulkJob(run.job, run.lastId, upToId);
+                run.accounts += chunk.getAccounts();
+                run.amount += chunk.getAmount();
+                run.lastId = upToId;
+            }
+            
+            if (run.lastId >= run.maxId) {
+                finish(run);
+                return;
+            }
+            
+            adjustChunkSize(run, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            
+            // Следующая порция - через тик отдельной задачей, чтобы между порциями выполнялись остальные запросы
+            plugin.getServer().getScheduler().runTaskLaterAsynchronously(plugin,
+                () -> plugin.getStorageExecutor().execute(() -> runChunk(run)), 1L);
+            scheduled = true;
+        } catch (SQLException e) {
+            // Продвижение порции не сохранено, задание продолжится при следующей проверке
+            plugin.getLogger().severe("Ошибка при выполнении массового задания " + run.job.getName() + ": " + e.getMessage());
+        } finally {
+            if (!scheduled) {
+                running.set(false);
+            }
+        }
+    }
+    
+    /**
+     * Уменьшить порцию, если она не уложилась в бюджет времени, и увеличить
+     * вдвое, если заняла меньше его половины. Под нагрузкой порция уменьшается
+     * пропорционально превышению бюджета (не меньше чем вдвое), поэтому
+     * следующая порция укладывается в бюджет сразу, а не через несколько шагов
+     */
+    private void adjustChunkSize(Run run, long millis) {
+        long budget = plugin.getConfigManager().getBulkJobChunkBudget();
+        if (millis > budget) {
+            long scaled = Math.min(run.chunkSize / 2, run.chunkSize * budget / millis);
+            run.chunkSize = (int) Math.max(MIN_CHUNK_SIZE, scaled);
+        } else if (millis < budget / 2) {
+            run.chunkSize = Math.min(MAX_CHUNK_SIZE, run.chunkSize * 2);
+        }
+    }
+    
+    /**
+     * Завершить период и записать сводную транзакцию задания
+     */
+    private void finish(Run run) throws SQLException {
+        Transaction transaction = null;
+        if (run.amount != 0 && plugin.getConfigManager().isTransactionLoggingEnabled()) {
+            transaction = new Transaction("SYSTEM", run.job.getName(), null, null, run.job.getCurrency(),
+                Math.abs(run.amount), run.job.getTransactionType());
+        }
+        
+        plugin.getStorage().finishBulkJob(run.job.getName(), transaction);
+        plugin.getLogger().info("Массовое задание " + run.job.getName() + " выполнено: счетов " + run.accounts
+            + ", сумма " + run.amount + " за " + (System.currentTimeMillis() - run.startedAt) + " мс");
+    }
+    
+    /**
+     * Выполняемый период задания
+     */
+    private final class Run {
+        private final BulkJob job;
+        private final long maxId;
+        private final long startedAt;
+        private long lastId;
+        private long accounts;
+        private long amount;
+        private int chunkSize;
+        
+        Run(BulkJob job, BulkJobState state, long startedAt) {
+            this.job = job;
+            this.maxId = state.getMaxId();
+            this.startedAt = startedAt;
+            this.lastId = state.getLastId();
+            this.accounts = state.getAccounts();
+            this.amount = state.getAmount();
+            // Задание начинает с малой порции и увеличивает её, пока порции укладываются в бюджет
+            this.chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, plugin.getConfigManager().getBulkJobChunkSize()));
+        }
+    }
+}
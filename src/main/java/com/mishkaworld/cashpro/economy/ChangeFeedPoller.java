@@ -0,0 +1,107 @@
+package com.mishkaworld.cashpro.economy;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.database.BalanceChange;
+import com.mishkaworld.cashpro.database.BalanceRecord;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Опрос ленты изменений балансов для работы нескольких серверов с одной БД
+ * Каждое изменение баланса получает возрастающий номер change_seq, опрос
+ * читает строки с номером больше последнего прочитанного и применяет их
+ * к кэшу и индексу мест пакетами
+ * 
+ * @author Misha Ermakov
+ */
+public class ChangeFeedPoller {
+    
+    private static final int MAX_BATCHES_PER_POLL = 20;
+    
+    private final CashProReloaded plugin;
+    private final AtomicBoolean polling = new AtomicBoolean();
+    private volatile long lastChangeSeq;
+    private BukkitTask pollTask;
+    
+    public ChangeFeedPoller(CashProReloaded plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Запустить опрос ленты изменений, если синхронизация включена
+     */
+    public void initialize() {
+        if (!plugin.getConfigManager().isSyncEnabled()) {
+            return;
+        }
+        
+        if (plugin.getConfigManager().isMemoryStorage()) {
+            plugin.getLogger().warning("Синхронизация между серверами недоступна в режиме storage.mode: memory");
+            return;
+        }
+        
+        // Всё, что было до запуска, уже загружено в индекс мест
+        lastChangeSeq = plugin.getCurrencyManager().getLoadedChangeSeq();
+        
+        long interval = plugin.getConfigManager().getSyncPollInterval();
+        pollTask = plugin.getServer().getScheduler()
+            .runTaskTimerAsynchronously(plugin, () -> plugin.getStorageExecutor().execute(this::poll), interval, interval);
+        
+        plugin.getLogger().info("Синхронизация балансов между серверами включена");
+    }
+    
+    /**
+     * Остановить опрос ленты изменений
+     */
+    public void shutdown() {
+        if (pollTask != null) {
+            pollTask.cancel();
+            pollTask = null;
+        }
+    }
+    
+    /**
+     * Прочитать и применить новые изменения балансов
+     * Одновременно выполняется не больше одного опроса
+     */
+    public void poll() {
+        if (!polling.compareAndSet(false, true)) {
+            return;
+        }
+        
+        try {
+            int batchSize = plugin.getConfigManager().getSyncBatchSize();
+            
+            for (int batch = 0; batch < MAX_BATCHES_PER_POLL; batch++) {
+                List<BalanceChange> changes = plugin.getStorage().getChangesSince(lastChangeSeq, batchSize);
+                if (changes.isEmpty()) {
+                    return;
+                }
+                
+                List<BalanceRecord> records = new ArrayList<>(changes.size());
+                for (BalanceChange change : changes) {
+                    records.add(change.getRecord());
+                }
+                
+                plugin.getCurrencyManager().applyRemoteChanges(records);
+                lastChangeSeq = changes.get(changes.size() - 1).getChangeSeq();
+                
+                if (changes.size() < batchSize) {
+                    return;
+                }
+            }
+        } finally {
+            polling.set(false);
+        }
+    }
+    
+    /**
+     * Получить номер последнего применённого изменения
+     */
+    public long getLastChangeSeq() {
+        return lastChangeSeq;
+    }
+}
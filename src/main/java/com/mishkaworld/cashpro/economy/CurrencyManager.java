@@ -1,51 +1,228 @@
 package com.mishkaworld.cashpro.economy;
 
 import com.mishkaworld.cashpro.CashProReloaded;
-import com.mishkaworld.cashpro.database.DatabaseManager;
+import com.mishkaworld.cashpro.database.BalanceRecord;
+import com.mishkaworld.cashpro.database.BulkChunk;
+import com.mishkaworld.cashpro.database.BulkProgress;
+import com.mishkaworld.cashpro.database.LedgerMutation;
+import com.mishkaworld.cashpro.database.StorageBackend;
+import com.mishkaworld.cashpro.database.TransactionQuery;
 import com.mishkaworld.cashpro.utils.MessageUtils;
 import com.mishkaworld.cashpro.utils.ValidationUtils;
-import org.bukkit.Bukkit;
-import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
  * Менеджер валют и экономических операций
+ * Все методы потокобезопасны: изменения одного счёта сериализуются
+ * полосатыми блокировками {@link AccountLocks}, чтение блокировки не захватывает
  * 
  * @author Misha Ermakov
  */
 public class CurrencyManager {
     
     private final CashProReloaded plugin;
-    private final DatabaseManager databaseManager;
+    private final StorageBackend storage;
+    private final PlayerNameIndex nameIndex = new PlayerNameIndex();
+    private final AccountLocks accountLocks = new AccountLocks();
+    private final RankIndex rankIndex = new RankIndex();
+    private final BalanceCache balanceCache;
+    private final boolean memoryStorage;
+    private long loadedChangeSeq;
+    private BukkitTask checkpointTask;
     
     public CurrencyManager(CashProReloaded plugin) {
+        this(plugin, plugin.getStorage());
+    }
+    
+    public CurrencyManager(CashProReloaded plugin, StorageBackend storage) {
         this.plugin = plugin;
-        this.databaseManager = plugin.getDatabaseManager();
+        this.storage = storage;
+        this.memoryStorage = plugin.getConfigManager().isMemoryStorage();
+        this.balanceCache = new BalanceCache(memoryStorage);
     }
     
     /**
      * Инициализировать менеджер валют
      */
     public void initialize() {
+        nameIndex.load(storage.loadPlayerNames());
+        plugin.getLogger().info("Индекс имён игроков загружен: " + nameIndex.size());
+        
+        // Рейтинг строится по всем игрокам в обоих режимах хранения
+        // Номер изменения читается до загрузки, чтобы лента изменений не пропустила
+        // изменения, сделанные другими серверами во время загрузки
+        loadedChangeSeq = storage.getMaxChangeSeq();
+        List<BalanceRecord> records = storage.loadAllBalances();
+        rankIndex.load(records);
+        
+        if (memoryStorage) {
+            balanceCache.load(records);
+            
+            long interval = plugin.getConfigManager().getCheckpointInterval() * 20L;
+            checkpointTask = plugin.getServer().getScheduler()
+                .runTaskTimerAsynchronously(plugin, () -> plugin.getStorageExecutor().execute(this::checkpoint), interval, interval);
+            
+            plugin.getLogger().info("Балансы загружены в память: " + balanceCache.size());
+        }
+        
         plugin.getLogger().info("Менеджер валют инициализирован");
     }
     
+    /**
+     * Остановить менеджер валют и сохранить все несохранённые балансы
+     */
+    public void shutdown() {
+        if (checkpointTask != null) {
+            checkpointTask.cancel();
+            checkpointTask = null;
+        }
+        checkpoint();
+    }
+    
+    /**
+     * Сохранить изменённые балансы в БД (только в режиме memory)
+     */
+    public synchronized void checkpoint() {
+        if (memoryStorage) {
+            persist(balanceCache.drainDirty(), null);
+        }
+    }
+    
+    /**
+     * Сохранить снятые изменённые балансы в БД вместе с продвижением массового задания
+     * При ошибке счета снова помечаются изменёнными до следующей контрольной точки
+     * 
+     * @param records балансы, снятые из кэша
+     * @param progress продвижение задания или null
+     * @return true если сохранение выполнено
+     */
+    private boolean persist(List<BalanceRecord> records, BulkProgress progress) {
+        if (records.isEmpty() && progress == null) {
+            return true;
+        }
+        
+        if (!storage.saveBalances(records, progress)) {
+            balanceCache.markDirty(records);
+            plugin.getLogger().warning("Не удалось сохранить балансы, повтор при следующей контрольной точке: " + records.size());
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Применить массовое задание к счетам валюты с id в диапазоне (afterId, upToId]
+     * Блокируются только полосы счетов порции, поэтому ни одно изменение
+     * счёта порции не выполняется наполовину, а остальные счета изменяются
+     * параллельно. В режиме sql порция записывается журналом операций (одним
+     * запросом в БД в общем пакете), а новые балансы переносятся в индекс мест
+     * и кэш. В режиме memory изменяются балансы в памяти и сразу сохраняются
+     * вместе с продвижением задания: после сбоя задание продолжится ровно
+     * с того места, до которого сохранены балансы
+     * 
+     * @return количество изменённых счетов и сумма изменений
+     */
+    public BulkChunk applyBulkJob(BulkJob job, long afterId, long upToId) throws SQLException {
+        String currency = job.getCurrency();
+        
+        // Список счетов читается из БД: все счета на момент запуска в ней уже есть
+        List<BalanceRecord> accounts = storage.readBalancesRange(currency, afterId, upToId);
+        List<UUID> playerUuids = accounts.stream().map(BalanceRecord::getPlayerUuid).toList();
+        
+        if (memoryStorage) {
+            return applyBulkJobInMemory(job, accounts, playerUuids, upToId);
+        }
+        
+        BulkChunk result = accountLocks.withAccountLocks(playerUuids, currency, () -> {
+            LedgerMutation.Result written = plugin.getLedger().apply(LedgerMutation.bulkJob(job, afterId, upToId));
+            if (!written.isApplied()) {
+                return null;
+            }
+            for (BalanceRecord record : written.getChunk().getRecords()) {
+                applyCommitted(record);
+            }
+            return written.getChunk();
+        });
+        
+        if (result == null) {
+            throw new SQLException("Журнал операций не записал порцию задания " + job.getName());
+        }
+        return result;
+    }
+    
+    /**
+     * Применить порцию массового задания к балансам в памяти и сохранить её
+     * Под блокировками счетов порции меняются балансы и снимается набор
+     * изменённых счетов, запись в БД идёт уже без них. Монитор менеджера
+     * не даёт контрольной точке по расписанию сохранить изменения порции
+     * отдельно от продвижения задания
+     */
+    private synchronized BulkChunk applyBulkJobInMemory(BulkJob job, List<BalanceRecord> accounts,
+                                                        List<UUID> playerUuids, long upToId) throws SQLException {
+        String currency = job.getCurrency();
+        List<BalanceRecord> changed = new ArrayList<>();
+        List<Long> deltas = new ArrayList<>();
+        
+        List<BalanceRecord> dirty = accountLocks.withAccountLocks(playerUuids, currency, () -> {
+            for (BalanceRecord account : accounts) {
+                UUID playerUuid = account.getPlayerUuid();
+                if (!balanceCache.contains(playerUuid, currency)) {
+                    continue;
+                }
+                long delta = job.computeDelta(balanceCache.getBalance(playerUuid, currency));
+                if (delta == 0) {
+                    continue;
+                }
+                
+                balanceCache.addBalance(playerUuid, account.getPlayerName(), currency, delta);
+                rankIndex.add(playerUuid, currency, delta);
+                changed.add(new BalanceRecord(playerUuid, account.getPlayerName(), currency,
+                    balanceCache.getBalance(playerUuid, currency)));
+                deltas.add(delta);
+            }
+            return balanceCache.drainDirty();
+        });
+        long amount = deltas.stream().mapToLong(Long::longValue).sum();
+        
+        if (!persist(dirty, new BulkProgress(job.getName(), upToId, changed.size(), amount))) {
+            // Продвижение не сохранено: изменения отменяются, порция будет применена повторно
+            accountLocks.withAccountLocks(playerUuids, currency, () -> {
+                for (int i = 0; i < changed.size(); i++) {
+                    BalanceRecord account = changed.get(i);
+                    balanceCache.addBalance(account.getPlayerUuid(), account.getPlayerName(), currency, -deltas.get(i));
+                    rankIndex.add(account.getPlayerUuid(), currency, -deltas.get(i));
+                }
+                return null;
+            });
+            throw new SQLException("Не удалось сохранить порцию задания " + job.getName());
+        }
+        
+        return new BulkChunk(changed, changed.size(), amount);
+    }
+    
     /**
      * Получить баланс игрока
      */
     public long getBalance(UUID playerUuid, String currency) {
-        return databaseManager.getBalance(playerUuid, currency);
+        if (memoryStorage || balanceCache.contains(playerUuid, currency)) {
+            return balanceCache.getBalance(playerUuid, currency);
+        }
+        return storage.getBalance(playerUuid, currency);
     }
     
     /**
      * Получить баланс игрока по имени
      */
     public long getBalance(String playerName, String currency) {
-        Player player = Bukkit.getPlayer(playerName);
-        if (player != null) {
-            return getBalance(player.getUniqueId(), currency);
+        UUID playerUuid = nameIndex.getUuid(playerName);
+        if (playerUuid != null) {
+            return getBalance(playerUuid, currency);
         }
         return 0;
     }
@@ -58,56 +235,62 @@ public class CurrencyManager {
             return false;
         }
         
-        boolean success = databaseManager.setBalance(playerUuid, playerName, currency, amount);
-        
-        if (success && plugin.getConfigManager().isTransactionLoggingEnabled()) {
-            Transaction transaction = new Transaction(
-                "ADMIN", playerName, currency, amount, Transaction.TransactionType.SET
-            );
-            databaseManager.saveTransaction(transaction);
-        }
+        Transaction transaction = plugin.getConfigManager().isTransactionLoggingEnabled()
+            ? new Transaction("ADMIN", playerName, null, playerUuid, currency, amount, Transaction.TransactionType.SET)
+            : null;
         
-        return success;
+        return accountLocks.withLock(playerUuid, currency,
+            () -> storeBalance(playerUuid, playerName, currency, amount, transaction));
     }
     
     /**
      * Добавить к балансу игрока
      */
     public boolean addBalance(UUID playerUuid, String playerName, String currency, long amount) {
+        return addBalance(playerUuid, playerName, currency, amount, "ADMIN");
+    }
+    
+    /**
+     * Добавить к балансу игрока от имени источника
+     * 
+     * @param source источник начисления в истории транзакций (ADMIN, VAULT)
+     */
+    public boolean addBalance(UUID playerUuid, String playerName, String currency, long amount, String source) {
         if (!ValidationUtils.isValidNumber(String.valueOf(amount))) {
             return false;
         }
         
-        boolean success = databaseManager.addBalance(playerUuid, playerName, currency, amount);
+        Transaction transaction = plugin.getConfigManager().isTransactionLoggingEnabled()
+            ? new Transaction(source, playerName, null, playerUuid, currency, amount, Transaction.TransactionType.GIVE)
+            : null;
         
-        if (success && plugin.getConfigManager().isTransactionLoggingEnabled()) {
-            Transaction transaction = new Transaction(
-                "ADMIN", playerName, currency, amount, Transaction.TransactionType.GIVE
-            );
-            databaseManager.saveTransaction(transaction);
-        }
-        
-        return success;
+        return accountLocks.withLock(playerUuid, currency,
+            () -> depositBalance(playerUuid, playerName, currency, amount, transaction));
     }
     
     /**
      * Вычесть из баланса игрока
      */
     public boolean subtractBalance(UUID playerUuid, String playerName, String currency, long amount) {
+        return subtractBalance(playerUuid, playerName, currency, amount, "ADMIN");
+    }
+    
+    /**
+     * Вычесть из баланса игрока от имени источника
+     * 
+     * @param source источник списания в истории транзакций (ADMIN, VAULT)
+     */
+    public boolean subtractBalance(UUID playerUuid, String playerName, String currency, long amount, String source) {
         if (!ValidationUtils.isValidNumber(String.valueOf(amount))) {
             return false;
         }
         
-        boolean success = databaseManager.subtractBalance(playerUuid, playerName, currency, amount);
+        Transaction transaction = plugin.getConfigManager().isTransactionLoggingEnabled()
+            ? new Transaction(source, playerName, null, playerUuid, currency, amount, Transaction.TransactionType.TAKE)
+            : null;
         
-        if (success && plugin.getConfigManager().isTransactionLoggingEnabled()) {
-            Transaction transaction = new Transaction(
-                "ADMIN", playerName, currency, amount, Transaction.TransactionType.TAKE
-            );
-            databaseManager.saveTransaction(transaction);
-        }
-        
-        return success;
+        return accountLocks.withLock(playerUuid, currency,
+            () -> withdrawBalance(playerUuid, playerName, currency, amount, transaction));
     }
     
     /**
@@ -118,48 +301,102 @@ public class CurrencyManager {
             return false;
         }
         
-        // Проверка баланса
-        long fromBalance = getBalance(fromUuid, currency);
-        if (fromBalance < amount) {
-            return false;
-        }
-        
         // Проверка, что игроки не одинаковые
         if (fromUuid.equals(toUuid)) {
             return false;
         }
         
-        // Выполнение перевода
-        boolean success = databaseManager.subtractBalance(fromUuid, fromName, currency, amount) &&
-                         databaseManager.addBalance(toUuid, toName, currency, amount);
+        Transaction transaction = plugin.getConfigManager().isTransactionLoggingEnabled()
+            ? new Transaction(fromName, toName, fromUuid, toUuid, currency, amount, Transaction.TransactionType.PAY)
+            : null;
         
-        if (success && plugin.getConfigManager().isTransactionLoggingEnabled()) {
-            Transaction transaction = new Transaction(fromName, toName, currency, amount, Transaction.TransactionType.PAY);
-            databaseManager.saveTransaction(transaction);
-        }
-        
-        return success;
+        // Выполнение перевода под блокировкой обоих счетов
+        return accountLocks.withLocks(fromUuid, toUuid, currency, () -> {
+            if (memoryStorage) {
+                if (!withdrawBalance(fromUuid, fromName, currency, amount, null)) {
+                    return false;
+                }
+                return depositBalance(toUuid, toName, currency, amount, transaction);
+            }
+            
+            // Списание и зачисление фиксируются журналом одной транзакцией
+            LedgerMutation.Result result = plugin.getLedger().apply(
+                LedgerMutation.transfer(fromUuid, fromName, toUuid, toName, currency, amount, transaction));
+            if (!result.isApplied()) {
+                return false;
+            }
+            
+            applyWritten(fromUuid, fromName, currency, result.getBalance(), result.getChangeSeq());
+            applyWritten(toUuid, toName, currency, result.getTargetBalance(), result.getTargetChangeSeq());
+            return true;
+        });
     }
     
     /**
      * Получить топ игроков по валюте
      */
-    public List<DatabaseManager.PlayerBalance> getTopPlayers(String currency, int limit) {
-        return databaseManager.getTopPlayers(currency, limit);
+    public List<PlayerBalance> getTopPlayers(String currency, int limit) {
+        if (memoryStorage) {
+            return balanceCache.getTopPlayers(currency, limit);
+        }
+        return storage.getTopPlayers(currency, limit);
+    }
+    
+    /**
+     * Получить место игрока в рейтинге валюты (1 - самый богатый)
+     * 
+     * @return место или 0 если у игрока нет счёта в этой валюте
+     */
+    public int getRank(UUID playerUuid, String currency) {
+        return rankIndex.getRank(playerUuid, currency);
+    }
+    
+    /**
+     * Получить игрока на заданной позиции рейтинга валюты
+     * 
+     * @param position позиция, начиная с 1
+     * @return игрок или null если позиция вне рейтинга
+     */
+    public RankIndex.RankedPlayer getPlayerAtRank(String currency, int position) {
+        return rankIndex.getPlayerAt(currency, position);
+    }
+    
+    /**
+     * Получить количество игроков в рейтинге валюты
+     */
+    public int getRankedPlayersCount(String currency) {
+        return rankIndex.size(currency);
     }
     
     /**
-     * Получить транзакции игрока
+     * Получить страницу истории транзакций игрока (новые первыми)
+     * Страница читается по ключу (время, номер) после курсора предыдущей,
+     * поэтому её стоимость не зависит от того, насколько она далека от начала
+     * 
+     * @param cursor курсор конца предыдущей страницы или null для первой
      */
-    public List<Transaction> getPlayerTransactions(String playerName, String currency, int page) {
-        return databaseManager.getPlayerTransactions(playerName, currency, page, 10);
+    public TransactionQuery.Page getPlayerTransactions(UUID playerUuid, String currency, String cursor,
+                                                      int pageSize) throws SQLException {
+        TransactionQuery query = new TransactionQuery(currency);
+        query.setParticipant(playerUuid);
+        if (cursor != null) {
+            query.setCursor(cursor);
+        }
+        return storage.searchTransactions(query, pageSize);
+    }
+    
+    /**
+     * Найти страницу транзакций по фильтру
+     */
+    public TransactionQuery.Page searchTransactions(TransactionQuery query, int pageSize) throws SQLException {
+        return storage.searchTransactions(query, pageSize);
     }
     
     /**
      * Получить общее количество транзакций игрока
      */
-    public int getPlayerTransactionsCount(String playerName, String currency) {
-        return databaseManager.getPlayerTransactionsCount(playerName, currency);
+    public int getPlayerTransactionsCount(UUID playerUuid, String currency) {
+        return storage.getPlayerTransactionsCount(playerUuid, currency);
     }
     
     /**
@@ -174,10 +411,209 @@ public class CurrencyManager {
      */
     public void createInitialBalance(UUID playerUuid, String playerName) {
         for (String currency : plugin.getConfigManager().getCurrencies()) {
-            if (!databaseManager.playerExists(playerUuid, currency)) {
-                long startValue = plugin.getConfigManager().getCurrencyConfig(currency).getStartValue();
-                databaseManager.setBalance(playerUuid, playerName, currency, startValue);
+            accountLocks.withLock(playerUuid, currency, () -> {
+                boolean exists = memoryStorage
+                    ? balanceCache.contains(playerUuid, currency)
+                    : storage.playerExists(playerUuid, currency);
+                if (!exists) {
+                    long startValue = plugin.getConfigManager().getCurrencyConfig(currency).getStartValue();
+                    storeBalance(playerUuid, playerName, currency, startValue, null);
+                }
+                return null;
+            });
+        }
+    }
+    
+    /**
+     * Загрузить балансы игрока в кэш (режим sql, до входа игрока)
+     * Значения читаются из БД под блокировкой счёта, поэтому после
+     * возврата кэш содержит актуальные балансы, в том числе изменённые
+     * на других серверах
+     */
+    public void cachePlayer(UUID playerUuid) {
+        if (memoryStorage) {
+            return;
+        }
+        
+        // Все валюты читаются одним запросом под блокировками счетов игрока,
+        // чтобы не затереть кэш устаревшим значением
+        Set<String> currencies = plugin.getConfigManager().getCurrencies();
+        accountLocks.withPlayerLocks(playerUuid, currencies, () -> {
+            Map<String, BalanceRecord> records = storage.getBalanceRecords(playerUuid, currencies);
+            balanceCache.load(new ArrayList<>(records.values()));
+            for (BalanceRecord record : records.values()) {
+                rankIndex.set(playerUuid, record.getCurrency(), record.getBalance());
+            }
+            return null;
+        });
+    }
+    
+    /**
+     * Подготовить новые валюты для игроков в сети (после перезагрузки конфига)
+     * Создаёт начальные балансы и загружает их в кэш
+     */
+    public void prepareOnlinePlayers() {
+        for (org.bukkit.entity.Player player : plugin.getServer().getOnlinePlayers()) {
+            createInitialBalance(player.getUniqueId(), player.getName());
+            cachePlayer(player.getUniqueId());
+        }
+    }
+    
+    /**
+     * Применить изменения балансов, сделанные другими серверами
+     * Обновляет индекс мест и записи кэша игроков в сети. Изменение
+     * применяется, только если его номер больше номера значения в кэше:
+     * собственные изменения сервера и изменения, прочитанные до более
+     * поздней записи этого сервера, пропускаются
+     * 
+     * @param records балансы с номерами изменений из ленты
+     * @return количество обновлённых записей кэша
+     */
+    public int applyRemoteChanges(List<BalanceRecord> records) {
+        int patched = 0;
+        
+        for (BalanceRecord record : records) {
+            boolean cached = accountLocks.withLock(record.getPlayerUuid(), record.getCurrency(),
+                () -> applyCommitted(record));
+            
+            if (cached) {
+                patched++;
+            }
+            nameIndex.update(record.getPlayerUuid(), record.getPlayerName());
+        }
+        
+        return patched;
+    }
+    
+    /**
+     * Применить импортированные балансы к памяти
+     * В режиме memory балансы загружаются в память как уже сохранённые,
+     * в режиме sql применяются к индексу мест и кэшу игроков в сети по номеру
+     * изменения импорта, как и остальные записанные в БД балансы
+     * 
+     * @param records записанные балансы с номерами изменений
+     */
+    public void applyImportedBalances(List<BalanceRecord> records) {
+        for (BalanceRecord record : records) {
+            accountLocks.withLock(record.getPlayerUuid(), record.getCurrency(), () -> {
+                if (memoryStorage) {
+                    balanceCache.load(List.of(record));
+                    rankIndex.set(record.getPlayerUuid(), record.getCurrency(), record.getBalance());
+                } else {
+                    applyCommitted(record);
+                }
+                return null;
+            });
+            nameIndex.update(record.getPlayerUuid(), record.getPlayerName());
+        }
+    }
+    
+    /**
+     * Удалить балансы игрока из кэша (режим sql, при выходе игрока)
+     */
+    public void evictPlayer(UUID playerUuid) {
+        if (!memoryStorage) {
+            balanceCache.evict(playerUuid);
+        }
+    }
+    
+    /**
+     * Записать баланс в память или в БД в зависимости от режима хранения
+     * В режиме sql изменение записывает журнал операций, кэш игрока в сети
+     * и индекс мест обновляются значением, зафиксированным в БД
+     * 
+     * @param transaction транзакция для истории или null
+     */
+    private boolean storeBalance(UUID playerUuid, String playerName, String currency, long amount, Transaction transaction) {
+        if (memoryStorage) {
+            nameIndex.update(playerUuid, playerName);
+            balanceCache.setBalance(playerUuid, playerName, currency, amount);
+            rankIndex.set(playerUuid, currency, amount);
+            record(transaction);
+            return true;
+        }
+        
+        return applyMutation(LedgerMutation.set(playerUuid, playerName, currency, amount, transaction));
+    }
+    
+    /**
+     * Зачислить сумму в память или в БД в зависимости от режима хранения
+     */
+    private boolean depositBalance(UUID playerUuid, String playerName, String currency, long amount, Transaction transaction) {
+        if (memoryStorage) {
+            nameIndex.update(playerUuid, playerName);
+            balanceCache.addBalance(playerUuid, playerName, currency, amount);
+            rankIndex.add(playerUuid, currency, amount);
+            record(transaction);
+            return true;
+        }
+        
+        return applyMutation(LedgerMutation.deposit(playerUuid, playerName, currency, amount, transaction));
+    }
+    
+    /**
+     * Списать сумму в памяти или в БД в зависимости от режима хранения
+     */
+    private boolean withdrawBalance(UUID playerUuid, String playerName, String currency, long amount, Transaction transaction) {
+        if (memoryStorage) {
+            if (!balanceCache.subtractBalance(playerUuid, playerName, currency, amount)) {
+                return false;
             }
+            rankIndex.add(playerUuid, currency, -amount);
+            record(transaction);
+            return true;
+        }
+        
+        return applyMutation(LedgerMutation.withdraw(playerUuid, playerName, currency, amount, transaction));
+    }
+    
+    /**
+     * Записать изменение через журнал операций и применить результат к памяти
+     */
+    private boolean applyMutation(LedgerMutation mutation) {
+        LedgerMutation.Result result = plugin.getLedger().apply(mutation);
+        if (result.isApplied()) {
+            applyWritten(mutation.getPlayerUuid(), mutation.getPlayerName(), mutation.getCurrency(),
+                result.getBalance(), result.getChangeSeq());
+        }
+        return result.isApplied();
+    }
+    
+    /**
+     * Обновить индексы и кэш игрока в сети балансом, записанным в БД
+     */
+    private void applyWritten(UUID playerUuid, String playerName, String currency, long balance, long changeSeq) {
+        nameIndex.update(playerUuid, playerName);
+        applyCommitted(new BalanceRecord(playerUuid, playerName, currency, balance, changeSeq));
+    }
+    
+    /**
+     * Перенести баланс, зафиксированный в БД, в индекс мест и кэш игрока в сети
+     * Для игрока в сети значение не новее записанного в кэше пропускается
+     * целиком, чтобы индекс мест не разошёлся с кэшем
+     * 
+     * @return true если обновлена запись кэша
+     */
+    private boolean applyCommitted(BalanceRecord record) {
+        if (!balanceCache.contains(record.getPlayerUuid(), record.getCurrency())) {
+            rankIndex.set(record.getPlayerUuid(), record.getCurrency(), record.getBalance());
+            return false;
+        }
+        if (!balanceCache.applyChange(record)) {
+            return false;
+        }
+        rankIndex.set(record.getPlayerUuid(), record.getCurrency(), record.getBalance());
+        return true;
+    }
+    
+    /**
+     * Записать транзакцию в историю (режим memory)
+     * Журнал записывает её в фоне: балансы режима memory и так сохраняются
+     * в БД контрольными точками, а порядок транзакций сохраняется очередью
+     */
+    private void record(Transaction transaction) {
+        if (transaction != null) {
+            plugin.getLedger().submit(LedgerMutation.record(transaction));
         }
     }
     
@@ -194,13 +630,52 @@ public class CurrencyManager {
      * Получить отформатированный баланс игрока по имени
      */
     public String getFormattedBalance(String playerName, String currency) {
-        Player player = Bukkit.getPlayer(playerName);
-        if (player != null) {
-            return getFormattedBalance(player.getUniqueId(), currency);
+        UUID playerUuid = nameIndex.getUuid(playerName);
+        if (playerUuid != null) {
+            return getFormattedBalance(playerUuid, currency);
         }
         return "0";
     }
     
+    /**
+     * Обновить имя игрока в индексе и в сохранённых балансах
+     */
+    public void updatePlayerName(UUID playerUuid, String playerName) {
+        if (nameIndex.update(playerUuid, playerName)) {
+            balanceCache.renamePlayer(playerUuid, playerName);
+            storage.updatePlayerName(playerUuid, playerName);
+        }
+    }
+    
+    /**
+     * Получить номер последнего изменения балансов на момент загрузки
+     */
+    public long getLoadedChangeSeq() {
+        return loadedChangeSeq;
+    }
+    
+    /**
+     * Получить показатели экономики валюты (денежная масса, среднее, Джини)
+     * Показатели поддерживаются при каждом изменении баланса, запросов к БД нет
+     */
+    public EconomyAggregate.Snapshot getEconomySnapshot(String currency) {
+        return rankIndex.getAggregate(currency);
+    }
+    
+    /**
+     * Получить индекс мест игроков в рейтинге
+     */
+    public RankIndex getRankIndex() {
+        return rankIndex;
+    }
+    
+    /**
+     * Получить индекс имён игроков
+     */
+    public PlayerNameIndex getNameIndex() {
+        return nameIndex;
+    }
+    
     /**
      * Проверить, существует ли валюта
      */
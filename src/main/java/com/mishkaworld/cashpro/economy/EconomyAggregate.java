@@ -0,0 +1,188 @@
+package com.mishkaworld.cashpro.economy;
+
+/**
+ * Накопительные показатели экономики одной валюты
+ * Количество счетов, денежная масса, сумма квадратов балансов и гистограмма
+ * по степеням двойки обновляются за O(1) при каждом изменении баланса,
+ * поэтому среднее, разброс, процентили и коэффициент Джини считаются
+ * без обхода таблицы балансов
+ * 
+ * @author Misha Ermakov
+ */
+public class EconomyAggregate {
+    
+    // Корзина 0 - нулевые балансы, корзина i - балансы от 2^(i-1) до 2^i - 1
+    static final int BUCKETS = 64;
+    
+    private long accounts;
+    private long supply;
+    private double sumOfSquares;
+    private final long[] bucketCounts = new long[BUCKETS];
+    private final long[] bucketSums = new long[BUCKETS];
+    
+    /**
+     * Учесть изменение баланса счёта
+     * Вызывается под блокировкой дерева рейтинга валюты
+     * 
+     * @param previous прежний баланс или null если счёта не было
+     * @param current новый баланс или null если счёт удалён
+     */
+    void update(Long previous, Long current) {
+        if (previous != null) {
+            accounts--;
+            supply -= previous;
+            sumOfSquares -= (double) previous * previous;
+            int bucket = bucketOf(previous);
+            bucketCounts[bucket]--;
+            bucketSums[bucket] -= previous;
+        }
+        
+        if (current != null) {
+            accounts++;
+            supply += current;
+            sumOfSquares += (double) current * current;
+            int bucket = bucketOf(current);
+            bucketCounts[bucket]++;
+            bucketSums[bucket] += current;
+        }
+    }
+    
+    /**
+     * Получить неизменяемую копию показателей
+     */
+    Snapshot snapshot() {
+        return new Snapshot(accounts, supply, Math.max(0, sumOfSquares), bucketCounts.clone(), bucketSums.clone());
+    }
+    
+    static int bucketOf(long balance) {
+        return balance <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(balance);
+    }
+    
+    /**
+     * Показатели экономики валюты на момент запроса
+     */
+    public static class Snapshot {
+        private final long accounts;
+        private final long supply;
+        private final double sumOfSquares;
+        private final long[] bucketCounts;
+        private final long[] bucketSums;
+        
+        Snapshot(long accounts, long supply, double sumOfSquares, long[] bucketCounts, long[] bucketSums) {
+            this.accounts = accounts;
+            this.supply = supply;
+            this.sumOfSquares = sumOfSquares;
+            this.bucketCounts = bucketCounts;
+            this.bucketSums = bucketSums;
+        }
+        
+        /**
+         * Получить пустые показатели (валюта без счетов)
+         */
+        public static Snapshot empty() {
+            return new Snapshot(0, 0, 0, new long[BUCKETS], new long[BUCKETS]);
+        }
+        
+        /**
+         * Получить количество счетов
+         */
+        public long getAccounts() {
+            return accounts;
+        }
+        
+        /**
+         * Получить денежную массу (сумму всех балансов)
+         */
+        public long getSupply() {
+            return supply;
+        }
+        
+        /**
+         * Получить средний баланс
+         */
+        public double getAverage() {
+            return accounts > 0 ? (double) supply / accounts : 0;
+        }
+        
+        /**
+         * Получить стандартное отклонение балансов
+         */
+        public double getStandardDeviation() {
+            if (accounts == 0) {
+                return 0;
+            }
+            double average = getAverage();
+            return Math.sqrt(Math.max(0, sumOfSquares / accounts - average * average));
+        }
+        
+        /**
+         * Получить приблизительный процентиль баланса
+         * Внутри корзины гистограммы значение интерполируется линейно
+         * 
+         * @param percentile процентиль от 0 до 100
+         */
+        public long getPercentile(double percentile) {
+            if (accounts == 0) {
+                return 0;
+            }
+            
+            double target = Math.min(1, Math.max(0, percentile / 100)) * accounts;
+            long cumulative = 0;
+            
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                long count = bucketCounts[bucket];
+                if (count == 0) {
+                    continue;
+                }
+                
+                if (cumulative + count >= target) {
+                    if (bucket == 0) {
+                        return 0;
+                    }
+                    long low = 1L << (bucket - 1);
+                    long high = bucket == 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+                    double fraction = (target - cumulative) / count;
+                    return low + (long) ((high - low) * fraction);
+                }
+                cumulative += count;
+            }
+            
+            return 0;
+        }
+        
+        /**
+         * Получить приблизительную медиану баланса
+         */
+        public long getMedian() {
+            return getPercentile(50);
+        }
+        
+        /**
+         * Получить приблизительный коэффициент Джини (0 - равенство, 1 - всё у одного)
+         * Кривая Лоренца строится по корзинам гистограммы, счета внутри
+         * корзины считаются равными, поэтому значение немного занижено
+         */
+        public double getGini() {
+            if (accounts == 0 || supply <= 0) {
+                return 0;
+            }
+            
+            double area = 0;
+            double previousWealthShare = 0;
+            long cumulativeSum = 0;
+            
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                if (bucketCounts[bucket] == 0) {
+                    continue;
+                }
+                cumulativeSum += bucketSums[bucket];
+                double populationShare = (double) bucketCounts[bucket] / accounts;
+                double wealthShare = (double) cumulativeSum / supply;
+                area += populationShare * (previousWealthShare + wealthShare);
+                previousWealthShare = wealthShare;
+            }
+            
+            return Math.max(0, Math.min(1, 1 - area));
+        }
+    }
+}
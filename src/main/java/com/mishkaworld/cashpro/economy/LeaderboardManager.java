@@ -0,0 +1,128 @@
+package com.mishkaworld.cashpro.economy;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Менеджер рейтингов валют
+ * Периодически строит неизменяемые снимки рейтинга из индекса мест,
+ * команда top и плейсхолдеры читают только готовые снимки
+ * 
+ * @author Misha Ermakov
+ */
+public class LeaderboardManager {
+    
+    private final CashProReloaded plugin;
+    private final Map<String, LeaderboardSnapshot> snapshots = new ConcurrentHashMap<>();
+    private BukkitTask rebuildTask;
+    
+    public LeaderboardManager(CashProReloaded plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Построить снимки и запустить периодическое перестроение
+     */
+    public void initialize() {
+        rebuild();
+        
+        long interval = plugin.getConfigManager().getLeaderboardRebuildInterval() * 20L;
+        rebuildTask = plugin.getServer().getScheduler()
+            .runTaskTimerAsynchronously(plugin, () -> plugin.getStorageExecutor().execute(this::rebuild), interval, interval);
+    }
+    
+    /**
+     * Остановить перестроение снимков
+     */
+    public void shutdown() {
+        if (rebuildTask != null) {
+            rebuildTask.cancel();
+            rebuildTask = null;
+        }
+    }
+    
+    /**
+     * Перестроить снимки всех валют
+     */
+    public void rebuild() {
+        for (String currency : plugin.getConfigManager().getCurrencies()) {
+            snapshots.put(currency, build(currency));
+        }
+    }
+    
+    /**
+     * Перестроить снимок рейтинга одной валюты
+     */
+    public void rebuild(String currency) {
+        snapshots.put(currency, build(currency));
+    }
+    
+    /**
+     * Удалить снимок рейтинга валюты (после удаления валюты из конфига)
+     */
+    public void remove(String currency) {
+        snapshots.remove(currency);
+    }
+    
+    /**
+     * Получить текущий снимок рейтинга валюты
+     */
+    public LeaderboardSnapshot getSnapshot(String currency) {
+        LeaderboardSnapshot snapshot = snapshots.get(currency);
+        return snapshot != null ? snapshot : LeaderboardSnapshot.empty(currency);
+    }
+    
+    /**
+     * Построить снимок рейтинга одной валюты
+     */
+    private LeaderboardSnapshot build(String currency) {
+        long start = System.nanoTime();
+        
+        CurrencyManager currencyManager = plugin.getCurrencyManager();
+        int size = plugin.getConfigManager().getLeaderboardSize();
+        
+        // Исключения действуют и на места игроков (плейсхолдеры, API), а не только на снимок
+        currencyManager.getRankIndex().setExcluded(currency, resolveExcluded(currency));
+        List<RankIndex.RankedPlayer> ranked = currencyManager.getRankIndex().getTop(currency, size);
+        List<PlayerBalance> entries = new ArrayList<>(ranked.size());
+        for (RankIndex.RankedPlayer player : ranked) {
+            String playerName = currencyManager.getNameIndex().getName(player.getPlayerUuid());
+            entries.add(new PlayerBalance(
+                playerName != null ? playerName : player.getPlayerUuid().toString(),
+                player.getBalance()
+            ));
+        }
+        
+        return new LeaderboardSnapshot(currency, entries, System.currentTimeMillis(), System.nanoTime() - start);
+    }
+    
+    /**
+     * Получить UUID игроков, исключённых из рейтинга валюты
+     * В списке исключений можно указывать имена или UUID
+     */
+    private Set<UUID> resolveExcluded(String currency) {
+        Set<UUID> excluded = new HashSet<>();
+        
+        for (String entry : plugin.getConfigManager().getLeaderboardExclusions(currency)) {
+            UUID playerUuid = plugin.getCurrencyManager().getNameIndex().getUuid(entry);
+            if (playerUuid == null) {
+                try {
+                    playerUuid = UUID.fromString(entry);
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+            }
+            excluded.add(playerUuid);
+        }
+        
+        return excluded;
+    }
+}
@@ -0,0 +1,102 @@
+package com.mishkaworld.cashpro.economy;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Неизменяемый снимок рейтинга одной валюты
+ * Строится фоновой задачей и целиком заменяется при следующем построении,
+ * поэтому читается из любого потока без блокировок
+ * 
+ * @author Misha Ermakov
+ */
+public class LeaderboardSnapshot {
+    
+    private final String currency;
+    private final List<PlayerBalance> entries;
+    private final long builtAt;
+    private final long buildTimeNanos;
+    
+    public LeaderboardSnapshot(String currency, List<PlayerBalance> entries, long builtAt, long buildTimeNanos) {
+        this.currency = currency;
+        this.entries = Collections.unmodifiableList(entries);
+        this.builtAt = builtAt;
+        this.buildTimeNanos = buildTimeNanos;
+    }
+    
+    /**
+     * Создать пустой снимок
+     */
+    public static LeaderboardSnapshot empty(String currency) {
+        return new LeaderboardSnapshot(currency, Collections.emptyList(), System.currentTimeMillis(), 0);
+    }
+    
+    /**
+     * Получить игрока на позиции
+     * 
+     * @param position позиция, начиная с 1
+     * @return игрок или null если позиция вне снимка
+     */
+    public PlayerBalance getEntry(int position) {
+        if (position < 1 || position > entries.size()) {
+            return null;
+        }
+        return entries.get(position - 1);
+    }
+    
+    /**
+     * Получить страницу рейтинга
+     * 
+     * @param page номер страницы, начиная с 1
+     */
+    public List<PlayerBalance> getPage(int page, int pageSize) {
+        int from = (page - 1) * pageSize;
+        if (page < 1 || from >= entries.size()) {
+            return Collections.emptyList();
+        }
+        return entries.subList(from, Math.min(from + pageSize, entries.size()));
+    }
+    
+    /**
+     * Получить количество страниц
+     */
+    public int getTotalPages(int pageSize) {
+        return Math.max(1, (entries.size() + pageSize - 1) / pageSize);
+    }
+    
+    /**
+     * Получить все записи снимка
+     */
+    public List<PlayerBalance> getEntries() {
+        return entries;
+    }
+    
+    public String getCurrency() {
+        return currency;
+    }
+    
+    public int size() {
+        return entries.size();
+    }
+    
+    /**
+     * Получить время построения снимка (мс с начала эпохи)
+     */
+    public long getBuiltAt() {
+        return builtAt;
+    }
+    
+    /**
+     * Получить возраст снимка в миллисекундах
+     */
+    public long getAgeMillis() {
+        return System.currentTimeMillis() - builtAt;
+    }
+    
+    /**
+     * Получить длительность построения снимка в миллисекундах
+     */
+    public double getBuildTimeMillis() {
+        return buildTimeNanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,224 @@
+package com.mishkaworld.cashpro.economy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Сжатое префиксное дерево имён игроков для автодополнения
+ * Ключи хранятся в нижнем регистре, рёбра подписаны целыми отрезками
+ * имён, поэтому на имя приходится не больше двух узлов. Поиск по префиксу
+ * проходит только узлы префикса и первые limit найденных имён и не зависит
+ * от общего количества игроков
+ * 
+ * @author Misha Ermakov
+ */
+class NameTrie {
+    
+    private static final Node[] NO_CHILDREN = new Node[0];
+    
+    private final Node root = new Node("", null);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    /**
+     * Добавить имя
+     * 
+     * @param key имя в нижнем регистре
+     * @param name имя для отображения
+     */
+    void put(String key, String name) {
+        lock.writeLock().lock();
+        try {
+            Node node = root;
+            int offset = 0;
+            
+            while (offset < key.length()) {
+                int index = node.find(key.charAt(offset));
+                if (index < 0) {
+                    node.insertChild(-index - 1, new Node(key.substring(offset), name));
+                    return;
+                }
+                
+                Node child = node.children[index];
+                int common = commonPrefix(child.label, key, offset);
+                if (common < child.label.length()) {
+                    // Разделение ребра: общая часть становится промежуточным узлом
+                    Node middle = new Node(child.label.substring(0, common), null);
+                    child.label = child.label.substring(common);
+                    middle.children = new Node[]{child};
+                    node.children[index] = middle;
+                    child = middle;
+                }
+                
+                node = child;
+                offset += common;
+            }
+            
+            node.name = name;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Удалить имя
+     * 
+     * @param key имя в нижнем регистре
+     */
+    void remove(String key) {
+        lock.writeLock().lock();
+        try {
+            remove(root, key, 0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Найти имена, начинающиеся с префикса, в алфавитном порядке
+     * 
+     * @param prefix префикс в нижнем регистре
+     * @param limit максимум имён
+     */
+    List<String> findByPrefix(String prefix, int limit) {
+        List<String> result = new ArrayList<>(Math.min(limit, 16));
+        
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            int offset = 0;
+            
+            while (offset < prefix.length()) {
+                int index = node.find(prefix.charAt(offset));
+                if (index < 0) {
+                    return result;
+                }
+                
+                Node child = node.children[index];
+                int remaining = prefix.length() - offset;
+                int length = Math.min(remaining, child.label.length());
+                if (!child.label.regionMatches(0, prefix, offset, length)) {
+                    return result;
+                }
+                
+                node = child;
+                offset += length;
+            }
+            
+            collect(node, result, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Удалить имя из поддерева узла
+     * 
+     * @return true если узел стал пустым и его нужно убрать из родителя
+     */
+    private static boolean remove(Node node, String key, int offset) {
+        if (offset == key.length()) {
+            node.name = null;
+        } else {
+            int index = node.find(key.charAt(offset));
+            if (index < 0) {
+                return false;
+            }
+            
+            Node child = node.children[index];
+            if (!key.startsWith(child.label, offset)) {
+                return false;
+            }
+            
+            if (remove(child, key, offset + child.label.length())) {
+                node.removeChild(index);
+            } else if (child.name == null && child.children.length == 1) {
+                // Узел без имени с одним потомком сливается с ним
+                Node grandchild = child.children[0];
+                grandchild.label = child.label + grandchild.label;
+                node.children[index] = grandchild;
+            }
+        }
+        
+        return node.name == null && node.children.length == 0 && !node.label.isEmpty();
+    }
+    
+    private static void collect(Node node, List<String> result, int limit) {
+        if (result.size() >= limit) {
+            return;
+        }
+        if (node.name != null) {
+            result.add(node.name);
+        }
+        for (Node child : node.children) {
+            if (result.size() >= limit) {
+                return;
+            }
+            collect(child, result, limit);
+        }
+    }
+    
+    private static int commonPrefix(String label, String key, int offset) {
+        int length = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+        while (i < length && label.charAt(i) == key.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+    
+    /**
+     * Узел дерева: отрезок имени на входящем ребре и потомки,
+     * упорядоченные по первому символу отрезка
+     */
+    private static final class Node {
+        private String label;
+        private String name;
+        private Node[] children = NO_CHILDREN;
+        
+        Node(String label, String name) {
+            this.label = label;
+            this.name = name;
+        }
+        
+        /**
+         * Найти потомка по первому символу отрезка двоичным поиском
+         * 
+         * @return индекс потомка или (-(точка вставки) - 1)
+         */
+        int find(char first) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char value = children[mid].label.charAt(0);
+                if (value < first) {
+                    low = mid + 1;
+                } else if (value > first) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+        
+        void insertChild(int index, Node child) {
+            Node[] updated = Arrays.copyOf(children, children.length + 1);
+            System.arraycopy(updated, index, updated, index + 1, children.length - index);
+            updated[index] = child;
+            children = updated;
+        }
+        
+        void removeChild(int index) {
+            Node[] updated = new Node[children.length - 1];
+            System.arraycopy(children, 0, updated, 0, index);
+            System.arraycopy(children, index + 1, updated, index, children.length - index - 1);
+            children = updated;
+        }
+    }
+}
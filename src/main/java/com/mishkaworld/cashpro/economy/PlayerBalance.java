@@ -0,0 +1,25 @@
+package com.mishkaworld.cashpro.economy;
+
+/**
+ * Баланс игрока для рейтинга: имя и сумма
+ * 
+ * @author Misha Ermakov
+ */
+public class PlayerBalance {
+    
+    private final String playerName;
+    private final long balance;
+    
+    public PlayerBalance(String playerName, long balance) {
+        this.playerName = playerName;
+        this.balance = balance;
+    }
+    
+    public String getPlayerName() {
+        return playerName;
+    }
+    
+    public long getBalance() {
+        return balance;
+    }
+}
@@ -0,0 +1,105 @@
+package com.mishkaworld.cashpro.economy;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Локальный индекс имён игроков без учёта регистра
+ * Позволяет находить UUID оффлайн игроков без обращения к Mojang API
+ * 
+ * @author Misha Ermakov
+ */
+public class PlayerNameIndex {
+    
+    private final Map<String, UUID> uuidsByName = new ConcurrentHashMap<>();
+    private final Map<UUID, String> namesByUuid = new ConcurrentHashMap<>();
+    private final NameTrie namesByPrefix = new NameTrie();
+    
+    /**
+     * Загрузить имена игроков из БД
+     */
+    public void load(Map<UUID, String> players) {
+        for (Map.Entry<UUID, String> entry : players.entrySet()) {
+            update(entry.getKey(), entry.getValue());
+        }
+    }
+    
+    /**
+     * Обновить имя игрока
+     * 
+     * @return true если имя игрока изменилось или игрок добавлен впервые
+     */
+    public synchronized boolean update(UUID playerUuid, String playerName) {
+        if (playerUuid == null || playerName == null || playerName.isEmpty()) {
+            return false;
+        }
+        
+        String previousName = namesByUuid.put(playerUuid, playerName);
+        if (playerName.equals(previousName)) {
+            return false;
+        }
+        
+        if (previousName != null && uuidsByName.remove(normalize(previousName), playerUuid)) {
+            namesByPrefix.remove(normalize(previousName));
+        }
+        uuidsByName.put(normalize(playerName), playerUuid);
+        namesByPrefix.put(normalize(playerName), playerName);
+        return true;
+    }
+    
+    /**
+     * Получить UUID игрока по имени
+     * 
+     * @return UUID или null если игрок неизвестен
+     */
+    public UUID getUuid(String playerName) {
+        if (playerName == null) {
+            return null;
+        }
+        return uuidsByName.get(normalize(playerName));
+    }
+    
+    /**
+     * Получить последнее известное имя игрока
+     * 
+     * @return имя или null если игрок неизвестен
+     */
+    public String getName(UUID playerUuid) {
+        if (playerUuid == null) {
+            return null;
+        }
+        return namesByUuid.get(playerUuid);
+    }
+    
+    /**
+     * Найти известные имена, начинающиеся с префикса (без учёта регистра)
+     * 
+     * @param prefix начало имени
+     * @param limit максимум имён
+     * @return имена в алфавитном порядке
+     */
+    public List<String> findByPrefix(String prefix, int limit) {
+        return namesByPrefix.findByPrefix(normalize(prefix), limit);
+    }
+    
+    /**
+     * Проверить, известен ли игрок
+     */
+    public boolean contains(String playerName) {
+        return getUuid(playerName) != null;
+    }
+    
+    /**
+     * Получить количество известных игроков
+     */
+    public int size() {
+        return namesByUuid.size();
+    }
+    
+    private static String normalize(String playerName) {
+        return playerName.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,412 @@
+package com.mishkaworld.cashpro.economy;
+
+import com.mishkaworld.cashpro.database.BalanceRecord;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Индекс мест игроков в рейтинге по каждой валюте
+ * Для каждой валюты хранится дерево порядковых статистик (декартово дерево
+ * с размерами поддеревьев), упорядоченное по убыванию баланса. Место игрока
+ * и игрок на заданном месте находятся за O(log n) без запросов к БД.
+ * Вместе с деревом обновляются показатели экономики валюты. Исключённые
+ * из рейтинга игроки остаются в дереве и в показателях, но мест не занимают
+ * 
+ * @author Misha Ermakov
+ */
+public class RankIndex {
+    
+    private final Map<String, RankTree> trees = new ConcurrentHashMap<>();
+    
+    /**
+     * Загрузить балансы из БД
+     */
+    public void load(List<BalanceRecord> records) {
+        for (BalanceRecord record : records) {
+            getTree(record.getCurrency()).set(record.getPlayerUuid(), record.getBalance());
+        }
+    }
+    
+    /**
+     * Установить баланс игрока
+     */
+    public void set(UUID playerUuid, String currency, long balance) {
+        getTree(currency).set(playerUuid, balance);
+    }
+    
+    /**
+     * Изменить баланс игрока на величину delta
+     */
+    public void add(UUID playerUuid, String currency, long delta) {
+        getTree(currency).add(playerUuid, delta);
+    }
+    
+    /**
+     * Удалить игрока из рейтинга валюты
+     */
+    public void remove(UUID playerUuid, String currency) {
+        RankTree tree = trees.get(currency);
+        if (tree != null) {
+            tree.remove(playerUuid);
+        }
+    }
+    
+    /**
+     * Задать игроков, исключённых из рейтинга валюты
+     */
+    public void setExcluded(String currency, Set<UUID> excluded) {
+        getTree(currency).setExcluded(excluded);
+    }
+    
+    /**
+     * Получить место игрока в рейтинге (1 - самый богатый)
+     * Игроки с одинаковым балансом делят одно место
+     * 
+     * @return место или 0 если у игрока нет счёта в этой валюте или он исключён из рейтинга
+     */
+    public int getRank(UUID playerUuid, String currency) {
+        RankTree tree = trees.get(currency);
+        return tree != null ? tree.rankOf(playerUuid) : 0;
+    }
+    
+    /**
+     * Получить игрока на заданной позиции рейтинга
+     * 
+     * @param position позиция, начиная с 1
+     * @return игрок или null если позиция вне рейтинга
+     */
+    public RankedPlayer getPlayerAt(String currency, int position) {
+        RankTree tree = trees.get(currency);
+        return tree != null ? tree.select(position - 1) : null;
+    }
+    
+    /**
+     * Получить первых игроков рейтинга по порядку
+     * Обходит дерево по возрастанию позиций и останавливается после limit игроков
+     */
+    public List<RankedPlayer> getTop(String currency, int limit) {
+        RankTree tree = trees.get(currency);
+        return tree != null ? tree.top(limit) : new ArrayList<>();
+    }
+    
+    /**
+     * Получить показатели экономики валюты
+     */
+    public EconomyAggregate.Snapshot getAggregate(String currency) {
+        RankTree tree = trees.get(currency);
+        return tree != null ? tree.aggregate() : EconomyAggregate.Snapshot.empty();
+    }
+    
+    /**
+     * Получить количество игроков в рейтинге валюты без исключённых
+     */
+    public int size(String currency) {
+        RankTree tree = trees.get(currency);
+        return tree != null ? tree.size() : 0;
+    }
+    
+    private RankTree getTree(String currency) {
+        return trees.computeIfAbsent(currency, key -> new RankTree());
+    }
+    
+    /**
+     * Дерево порядковых статистик одной валюты
+     * Ключ - пара (баланс по убыванию, UUID по возрастанию)
+     */
+    private static class RankTree {
+        private final Map<UUID, Long> balances = new HashMap<>();
+        private final EconomyAggregate aggregate = new EconomyAggregate();
+        private Set<UUID> excluded = Set.of();
+        private Node root;
+        
+        synchronized void setExcluded(Set<UUID> excluded) {
+            this.excluded = Set.copyOf(excluded);
+        }
+        
+        synchronized void set(UUID playerUuid, long balance) {
+            Long previous = balances.put(playerUuid, balance);
+            if (previous != null) {
+                if (previous == balance) {
+                    return;
+                }
+                root = delete(root, previous, playerUuid);
+            }
+            root = insert(root, new Node(balance, playerUuid));
+            aggregate.update(previous, balance);
+        }
+        
+        synchronized void add(UUID playerUuid, long delta) {
+            Long previous = balances.get(playerUuid);
+            set(playerUuid, (previous != null ? previous : 0) + delta);
+        }
+        
+        synchronized void remove(UUID playerUuid) {
+            Long previous = balances.remove(playerUuid);
+            if (previous != null) {
+                root = delete(root, previous, playerUuid);
+                aggregate.update(previous, null);
+            }
+        }
+        
+        synchronized EconomyAggregate.Snapshot aggregate() {
+            return aggregate.snapshot();
+        }
+        
+        synchronized int rankOf(UUID playerUuid) {
+            Long balance = balances.get(playerUuid);
+            if (balance == null || excluded.contains(playerUuid)) {
+                return 0;
+            }
+            
+            // Место = количество игроков с большим балансом + 1
+            int greater = 0;
+            Node node = root;
+            while (node != null) {
+                if (node.balance > balance) {
+                    greater += size(node.left) + 1;
+                    node = node.right;
+                } else {
+                    node = node.left;
+                }
+            }
+            
+            // Исключённые игроки с большим балансом мест не занимают
+            for (UUID other : excluded) {
+                Long otherBalance = balances.get(other);
+                if (otherBalance != null && otherBalance > balance) {
+                    greater--;
+                }
+            }
+            return greater + 1;
+        }
+        
+        synchronized RankedPlayer select(int index) {
+            if (index < 0) {
+                return null;
+            }
+            
+            // Позиция сдвигается на каждого исключённого игрока, стоящего в дереве не ниже неё
+            if (!excluded.isEmpty()) {
+                List<Integer> skipped = new ArrayList<>(excluded.size());
+                for (UUID other : excluded) {
+                    Long otherBalance = balances.get(other);
+                    if (otherBalance != null) {
+                        skipped.add(indexOf(otherBalance, other));
+                    }
+                }
+                skipped.sort(null);
+                for (int position : skipped) {
+                    if (position > index) {
+                        break;
+                    }
+                    index++;
+                }
+            }
+            
+            if (index >= size(root)) {
+                return null;
+            }
+            
+            Node node = root;
+            while (node != null) {
+                int leftSize = size(node.left);
+                if (index < leftSize) {
+                    node = node.left;
+                } else if (index == leftSize) {
+                    return new RankedPlayer(node.playerUuid, node.balance);
+                } else {
+                    index -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+            return null;
+        }
+        
+        synchronized List<RankedPlayer> top(int limit) {
+            List<RankedPlayer> result = new ArrayList<>(Math.max(0, Math.min(limit, size(root))));
+            Deque<Node> stack = new ArrayDeque<>();
+            Node node = root;
+            
+            while ((node != null || !stack.isEmpty()) && result.size() < limit) {
+                while (node != null) {
+                    stack.push(node);
+                    node = node.left;
+                }
+                node = stack.pop();
+                if (!excluded.contains(node.playerUuid)) {
+                    result.add(new RankedPlayer(node.playerUuid, node.balance));
+                }
+                node = node.right;
+            }
+            return result;
+        }
+        
+        synchronized int size() {
+            int size = size(root);
+            for (UUID other : excluded) {
+                if (balances.containsKey(other)) {
+                    size--;
+                }
+            }
+            return size;
+        }
+        
+        /**
+         * Получить позицию ключа в дереве, начиная с 0
+         */
+        private int indexOf(long balance, UUID playerUuid) {
+            int index = 0;
+            Node node = root;
+            while (node != null) {
+                int cmp = compare(balance, playerUuid, node);
+                if (cmp == 0) {
+                    return index + size(node.left);
+                }
+                if (cmp < 0) {
+                    node = node.left;
+                } else {
+                    index += size(node.left) + 1;
+                    node = node.right;
+                }
+            }
+            return index;
+        }
+        
+        private static Node insert(Node node, Node inserted) {
+            if (node == null) {
+                return inserted;
+            }
+            
+            if (inserted.priority > node.priority) {
+                Node[] parts = split(node, inserted.balance, inserted.playerUuid);
+                inserted.left = parts[0];
+                inserted.right = parts[1];
+                return update(inserted);
+            }
+            
+            if (compare(inserted.balance, inserted.playerUuid, node) < 0) {
+                node.left = insert(node.left, inserted);
+            } else {
+                node.right = insert(node.right, inserted);
+            }
+            return update(node);
+        }
+        
+        private static Node delete(Node node, long balance, UUID playerUuid) {
+            if (node == null) {
+                return null;
+            }
+            
+            int cmp = compare(balance, playerUuid, node);
+            if (cmp == 0) {
+                return merge(node.left, node.right);
+            }
+            
+            if (cmp < 0) {
+                node.left = delete(node.left, balance, playerUuid);
+            } else {
+                node.right = delete(node.right, balance, playerUuid);
+            }
+            return update(node);
+        }
+        
+        /**
+         * Разделить дерево на ключи меньше заданного и остальные
+         */
+        private static Node[] split(Node node, long balance, UUID playerUuid) {
+            if (node == null) {
+                return new Node[] {null, null};
+            }
+            
+            if (compare(balance, playerUuid, node) > 0) {
+                Node[] parts = split(node.right, balance, playerUuid);
+                node.right = parts[0];
+                return new Node[] {update(node), parts[1]};
+            }
+            
+            Node[] parts = split(node.left, balance, playerUuid);
+            node.left = parts[1];
+            return new Node[] {parts[0], update(node)};
+        }
+        
+        private static Node merge(Node left, Node right) {
+            if (left == null) {
+                return right;
+            }
+            if (right == null) {
+                return left;
+            }
+            
+            if (left.priority > right.priority) {
+                left.right = merge(left.right, right);
+                return update(left);
+            }
+            right.left = merge(left, right.left);
+            return update(right);
+        }
+        
+        /**
+         * Сравнить ключ с узлом: больший баланс идёт раньше
+         */
+        private static int compare(long balance, UUID playerUuid, Node node) {
+            int cmp = Long.compare(node.balance, balance);
+            return cmp != 0 ? cmp : playerUuid.compareTo(node.playerUuid);
+        }
+        
+        private static Node update(Node node) {
+            node.size = size(node.left) + size(node.right) + 1;
+            return node;
+        }
+        
+        private static int size(Node node) {
+            return node != null ? node.size : 0;
+        }
+    }
+    
+    /**
+     * Игрок на позиции рейтинга
+     */
+    public static class RankedPlayer {
+        private final UUID playerUuid;
+        private final long balance;
+        
+        public RankedPlayer(UUID playerUuid, long balance) {
+            this.playerUuid = playerUuid;
+            this.balance = balance;
+        }
+        
+        public UUID getPlayerUuid() {
+            return playerUuid;
+        }
+        
+        public long getBalance() {
+            return balance;
+        }
+    }
+    
+    /**
+     * Узел дерева
+     */
+    private static class Node {
+        private final long balance;
+        private final UUID playerUuid;
+        private final int priority = ThreadLocalRandom.current().nextInt();
+        private int size = 1;
+        private Node left;
+        private Node right;
+        
+        Node(long balance, UUID playerUuid) {
+            this.balance = balance;
+            this.playerUuid = playerUuid;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.mishkaworld.cashpro.economy;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.config.ConfigManager;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Ограничение частоты изменяющих операций по алгоритму маркерной корзины
+ * У каждого отправителя (игрока или плагина) своя корзина на каждую валюту.
+ * Корзина хранит одно число в AtomicLong и обновляется без блокировок,
+ * а отказ не пишет в память вообще, поэтому поток запросов от макроса
+ * отсекается до обращения к БД почти бесплатно
+ * 
+ * @author Misha Ermakov
+ */
+public class RateLimiter {
+    
+    // Переводы /<валюта> pay от одного игрока
+    public static final String PAY = "pay";
+    // Изменения балансов через CashProAPI от одного плагина
+    public static final String API = "api";
+    
+    private static final long CLEANUP_INTERVAL_TICKS = 20L * 60;
+    
+    private final CashProReloaded plugin;
+    private final LongSupplier clock;
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> rejections = new ConcurrentHashMap<>();
+    private BukkitTask cleanupTask;
+    
+    public RateLimiter(CashProReloaded plugin) {
+        this(plugin, System::nanoTime);
+    }
+    
+    /**
+     * Создать ограничитель с заданным источником времени
+     * 
+     * @param clock время в наносекундах, как System.nanoTime (в тестах подменяется)
+     */
+    RateLimiter(CashProReloaded plugin, LongSupplier clock) {
+        this.plugin = plugin;
+        this.clock = clock;
+    }
+    
+    /**
+     * Запустить периодическое удаление полных (неиспользуемых) корзин
+     */
+    public void initialize() {
+        cleanupTask = plugin.getServer().getScheduler()
+            .runTaskTimerAsynchronously(plugin, this::removeIdle, CLEANUP_INTERVAL_TICKS, CLEANUP_INTERVAL_TICKS);
+    }
+    
+    /**
+     * Остановить удаление неиспользуемых корзин
+     */
+    public void shutdown() {
+        if (cleanupTask != null) {
+            cleanupTask.cancel();
+            cleanupTask = null;
+        }
+    }
+    
+    /**
+     * Попробовать взять маркер для операции
+     * 
+     * @param scope вид операции ({@link #PAY} или {@link #API})
+     * @param subject отправитель (UUID игрока или название плагина)
+     * @param currency валюта
+     * @return true если операцию можно выполнять, false если лимит исчерпан
+     */
+    public boolean tryAcquire(String scope, String subject, String currency) {
+        ConfigManager config = plugin.getConfigManager();
+        if (!config.isRateLimitEnabled()) {
+            return true;
+        }
+        
+        String key = scope + ':' + currency + ':' + subject;
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            int burst = config.getRateLimitBurst(scope, currency);
+            if (burst <= 0) {
+                return true;
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(burst, config.getRateLimitRefill(scope, currency), clock.getAsLong()));
+        }
+        
+        if (bucket.tryAcquire(clock.getAsLong())) {
+            return true;
+        }
+        
+        rejections.computeIfAbsent(scope, k -> new LongAdder()).increment();
+        return false;
+    }
+    
+    /**
+     * Сбросить все корзины, например после изменения лимитов в конфиге
+     */
+    public void clear() {
+        buckets.clear();
+    }
+    
+    /**
+     * Получить количество отклонённых операций вида
+     */
+    public long getRejections(String scope) {
+        LongAdder counter = rejections.get(scope);
+        return counter != null ? counter.sum() : 0;
+    }
+    
+    /**
+     * Удалить корзины, которые успели заполниться полностью
+     * Новая корзина создаётся полной, поэтому удаление не меняет лимиты
+     */
+    private void removeIdle() {
+        long now = clock.getAsLong();
+        buckets.values().removeIf(bucket -> bucket.isFull(now));
+    }
+    
+    /**
+     * Маркерная корзина в форме GCRA: вместо количества маркеров хранится
+     * момент, когда корзина снова станет полной. Каждая операция сдвигает
+     * его на интервал пополнения, операция отклоняется, если момент ушёл
+     * вперёд больше чем на размер корзины
+     */
+    private static final class TokenBucket {
+        private final long interval;
+        private final long tolerance;
+        private final AtomicLong fullAt;
+        
+        TokenBucket(int burst, double refillPerSecond, long now) {
+            this.interval = Math.max(1, (long) (1_000_000_000L / refillPerSecond));
+            this.tolerance = interval * burst;
+            this.fullAt = new AtomicLong(now);
+        }
+        
+        boolean tryAcquire(long now) {
+            while (true) {
+                long current = fullAt.get();
+                long next = (current - now > 0 ? current : now) + interval;
+                if (next - now > tolerance) {
+                    return false;
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+        
+        boolean isFull(long now) {
+            return fullAt.get() - now <= 0;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.mishkaworld.cashpro.economy;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+
+/**
+ * Шаг сводной статистики транзакций
+ * Границы интервалов считаются по часовому поясу сервера, поэтому
+ * дневная сводка начинается в полночь по местному времени
+ * 
+ * @author Misha Ermakov
+ */
+public enum RollupGranularity {
+    
+    MINUTE(ChronoUnit.MINUTES),
+    HOUR(ChronoUnit.HOURS),
+    DAY(ChronoUnit.DAYS);
+    
+    private final ChronoUnit unit;
+    
+    RollupGranularity(ChronoUnit unit) {
+        this.unit = unit;
+    }
+    
+    /**
+     * Найти шаг по названию
+     * 
+     * @return шаг или null если такого нет
+     */
+    public static RollupGranularity fromName(String name) {
+        for (RollupGranularity granularity : values()) {
+            if (granularity.getKey().equals(name.toLowerCase(Locale.ROOT))) {
+                return granularity;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Получить название шага в БД и конфиге
+     */
+    public String getKey() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Получить начало интервала, в который попадает момент времени
+     */
+    public LocalDateTime truncate(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+    
+    /**
+     * Получить начало интервала в секундах Unix
+     */
+    public long bucketStart(LocalDateTime time) {
+        return truncate(time).atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+    
+    /**
+     * Получить начало интервала, отстоящего на заданное число шагов назад
+     */
+    public LocalDateTime minus(LocalDateTime time, long steps) {
+        return truncate(time).minus(steps, unit);
+    }
+}
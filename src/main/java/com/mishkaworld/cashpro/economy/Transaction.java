@@ -2,6 +2,7 @@ package com.mishkaworld.cashpro.economy;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.UUID;
 
 /**
  * Класс для представления транзакции в системе
@@ -13,25 +14,35 @@ public class Transaction {
     private final String id;
     private final String fromPlayer;
     private final String toPlayer;
+    private final UUID fromUuid;
+    private final UUID toUuid;
     private final String currency;
     private final long amount;
     private final TransactionType type;
     private final LocalDateTime timestamp;
     
     public Transaction(String fromPlayer, String toPlayer, String currency, long amount, TransactionType type) {
+        this(fromPlayer, toPlayer, null, null, currency, amount, type);
+    }
+    
+    public Transaction(String fromPlayer, String toPlayer, UUID fromUuid, UUID toUuid, String currency, long amount, TransactionType type) {
         this.id = generateId();
         this.fromPlayer = fromPlayer;
         this.toPlayer = toPlayer;
+        this.fromUuid = fromUuid;
+        this.toUuid = toUuid;
         this.currency = currency;
         this.amount = amount;
         this.type = type;
         this.timestamp = LocalDateTime.now();
     }
     
-    public Transaction(String id, String fromPlayer, String toPlayer, String currency, long amount, TransactionType type, LocalDateTime timestamp) {
+    public Transaction(String id, String fromPlayer, String toPlayer, UUID fromUuid, UUID toUuid, String currency, long amount, TransactionType type, LocalDateTime timestamp) {
         this.id = id;
         this.fromPlayer = fromPlayer;
         this.toPlayer = toPlayer;
+        this.fromUuid = fromUuid;
+        this.toUuid = toUuid;
         this.currency = currency;
         this.amount = amount;
         this.type = type;
@@ -49,6 +60,16 @@ public class Transaction {
      * Получить отформатированную строку транзакции
      */
     public String getFormattedString() {
+        return getFormattedString(fromPlayer, toPlayer);
+    }
+    
+    /**
+     * Получить отформатированную строку транзакции с актуальными именами участников
+     * 
+     * @param fromPlayer имя отправителя
+     * @param toPlayer имя получателя
+     */
+    public String getFormattedString(String fromPlayer, String toPlayer) {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss");
         String time = timestamp.format(formatter);
         
@@ -56,11 +77,11 @@ public class Transaction {
             case PAY:
                 return String.format("[%s] %s -> %s PAY %d", time, fromPlayer, toPlayer, amount);
             case SET:
-                return String.format("[%s] ADMIN SET %s %d", time, toPlayer, amount);
+                return String.format("[%s] %s SET %s %d", time, fromPlayer, toPlayer, amount);
             case GIVE:
-                return String.format("[%s] ADMIN GIVE %s %d", time, toPlayer, amount);
+                return String.format("[%s] %s GIVE %s %d", time, fromPlayer, toPlayer, amount);
             case TAKE:
-                return String.format("[%s] ADMIN TAKE %s %d", time, toPlayer, amount);
+                return String.format("[%s] %s TAKE %s %d", time, fromPlayer, toPlayer, amount);
             default:
                 return String.format("[%s] %s %s %s %d", time, fromPlayer, toPlayer, type.name(), amount);
         }
@@ -79,6 +100,14 @@ public class Transaction {
         return toPlayer;
     }
     
+    public UUID getFromUuid() {
+        return fromUuid;
+    }
+    
+    public UUID getToUuid() {
+        return toUuid;
+    }
+    
     public String getCurrency() {
         return currency;
     }
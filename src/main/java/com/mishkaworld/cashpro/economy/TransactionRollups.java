@@ -0,0 +1,316 @@
+package com.mishkaworld.cashpro.economy;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.database.RollupBucket;
+import com.mishkaworld.cashpro.database.TransactionChunk;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+
+/**
+ * Сводная статистика транзакций по минутам, часам и дням
+ * Каждая сохранённая транзакция сразу учитывается во всех трёх шагах
+ * в памяти, накопленные сводки раз в rollups.flush-interval секунд
+ * прибавляются к таблице transaction_rollups одним пакетом. Старые
+ * минутные и часовые сводки удаляются по сроку хранения, а часовые
+ * и дневные за тот же период остаются
+ * 
+ * @author Misha Ermakov
+ */
+public class TransactionRollups {
+    
+    private static final int BACKFILL_CHUNK_SIZE = 5000;
+    private static final long RETENTION_INTERVAL_TICKS = 20L * 60 * 60;
+    
+    private final CashProReloaded plugin;
+    private final Map<RollupKey, Accumulator> pending = new ConcurrentHashMap<>();
+    private final Object flushLock = new Object();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private BukkitTask flushTask;
+    private BukkitTask retentionTask;
+    
+    public TransactionRollups(CashProReloaded plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Подключиться к записи транзакций и запустить периодическую запись сводок
+     * Если сводок в БД ещё нет, история транзакций обрабатывается в фоне
+     */
+    public void initialize() {
+        plugin.getStorage().setTransactionListener(this::record);
+        
+        long flushInterval = plugin.getConfigManager().getRollupFlushInterval() * 20;
+        flushTask = plugin.getServer().getScheduler()
+            .runTaskTimerAsynchronously(plugin, () -> plugin.getStorageExecutor().execute(this::flush), flushInterval, flushInterval);
+        retentionTask = plugin.getServer().getScheduler()
+            .runTaskTimerAsynchronously(plugin, () -> plugin.getStorageExecutor().execute(this::applyRetention), 20L * 60, RETENTION_INTERVAL_TICKS);
+        
+        try {
+            if (!plugin.getStorage().hasRollups()) {
+                plugin.getStorageExecutor().execute(() -> {
+                    try {
+                        rebuild(rows -> { });
+                    } catch (SQLException e) {
+                        plugin.getLogger().severe("Ошибка при построении сводки транзакций: " + e.getMessage());
+                    }
+                });
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Ошибка при проверке сводки транзакций: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Остановить периодические задачи и записать накопленные сводки
+     */
+    public void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        if (retentionTask != null) {
+            retentionTask.cancel();
+            retentionTask = null;
+        }
+        
+        plugin.getStorage().setTransactionListener(null);
+        flush();
+    }
+    
+    /**
+     * Учесть сохранённую транзакцию в сводках
+     * Вызывается из записи транзакции в БД, к самой БД не обращается
+     */
+    public void record(Transaction transaction) {
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            RollupKey key = new RollupKey(granularity, granularity.bucketStart(transaction.getTimestamp()),
+                transaction.getCurrency(), transaction.getType().name());
+            pending.compute(key, (k, accumulator) -> {
+                Accumulator result = accumulator != null ? accumulator : new Accumulator();
+                result.add(transaction.getAmount());
+                return result;
+            });
+        }
+    }
+    
+    /**
+     * Записать накопленные сводки в БД одной транзакцией
+     * При ошибке сводки возвращаются в память до следующей записи
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            
+            Map<RollupKey, Accumulator> drained = new HashMap<>();
+            for (RollupKey key : pending.keySet()) {
+                Accumulator accumulator = pending.remove(key);
+                if (accumulator != null) {
+                    drained.put(key, accumulator);
+                }
+            }
+            
+            try {
+                plugin.getStorage().mergeRollups(toBuckets(drained));
+            } catch (SQLException e) {
+                plugin.getLogger().severe("Ошибка при записи сводки транзакций: " + e.getMessage());
+                for (Map.Entry<RollupKey, Accumulator> entry : drained.entrySet()) {
+                    pending.merge(entry.getKey(), entry.getValue(), Accumulator::merge);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Перестроить сводки по всей истории транзакций одним проходом
+     * Транзакции читаются порциями по rowid, поэтому проход не держит
+     * блокировку БД и не мешает записи новых транзакций
+     * 
+     * @param progress получает количество обработанных транзакций после каждой порции
+     * @return false если перестроение уже выполняется
+     */
+    public boolean rebuild(LongConsumer progress) throws SQLException {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        
+        try {
+            long upToRowId;
+            synchronized (flushLock) {
+                // Несохранённые сводки относятся к транзакциям, которые попадут в проход
+                upToRowId = plugin.getStorage().resetRollups(pending::clear);
+            }
+            
+            // Минутные и часовые сводки старше срока хранения сразу пропускаются
+            LocalDateTime now = LocalDateTime.now();
+            Map<RollupGranularity, Long> cutoffs = new HashMap<>();
+            for (RollupGranularity granularity : RollupGranularity.values()) {
+                cutoffs.put(granularity, getRetentionCutoff(granularity, now));
+            }
+            
+            long start = System.currentTimeMillis();
+            long processed = 0;
+            long afterRowId = 0;
+            
+            while (true) {
+                TransactionChunk chunk = plugin.getStorage().readTransactions(afterRowId, upToRowId, BACKFILL_CHUNK_SIZE);
+                if (chunk.getTransactions().isEmpty()) {
+                    break;
+                }
+                
+                Map<RollupKey, Accumulator> buckets = new HashMap<>();
+                for (Transaction transaction : chunk.getTransactions()) {
+                    for (RollupGranularity granularity : RollupGranularity.values()) {
+                        long bucketStart = granularity.bucketStart(transaction.getTimestamp());
+                        if (bucketStart < cutoffs.get(granularity)) {
+                            continue;
+                        }
+                        RollupKey key = new RollupKey(granularity, bucketStart, transaction.getCurrency(), transaction.getType().name());
+                        buckets.computeIfAbsent(key, k -> new Accumulator()).add(transaction.getAmount());
+                    }
+                }
+                plugin.getStorage().mergeRollups(toBuckets(buckets));
+                
+                processed += chunk.getTransactions().size();
+                afterRowId = chunk.getLastRowId();
+                progress.accept(processed);
+            }
+            
+            plugin.getLogger().info("Сводка транзакций построена: " + processed + " транзакций за "
+                + (System.currentTimeMillis() - start) + " мс");
+            return true;
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+    
+    /**
+     * Удалить сводки старше срока хранения их шага
+     */
+    public void applyRetention() {
+        LocalDateTime now = LocalDateTime.now();
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            long cutoff = getRetentionCutoff(granularity, now);
+            if (cutoff == Long.MIN_VALUE) {
+                continue;
+            }
+            
+            try {
+                plugin.getStorage().deleteRollupsBefore(granularity.getKey(), cutoff);
+            } catch (SQLException e) {
+                plugin.getLogger().severe("Ошибка при очистке сводки транзакций: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Получить сводки валюты за последние интервалы, включая текущий
+     * Накопленные в памяти сводки сначала записываются в БД
+     * 
+     * @param currency валюта
+     * @param granularity шаг сводок
+     * @param transactionType тип транзакций или null для всех типов вместе
+     * @param buckets количество интервалов
+     * @return сводки по возрастанию времени, интервалы без транзакций пропущены
+     */
+    public List<RollupBucket> getVolume(String currency, RollupGranularity granularity,
+                                                        Transaction.TransactionType transactionType, int buckets) {
+        flush();
+        
+        LocalDateTime now = LocalDateTime.now();
+        long from = granularity.bucketStart(granularity.minus(now, Math.max(1, buckets) - 1));
+        long to = granularity.bucketStart(now);
+        
+        return plugin.getStorage().getRollups(granularity.getKey(), currency,
+            transactionType != null ? transactionType.name() : null, from, to);
+    }
+    
+    /**
+     * Получить начало самого старого хранимого интервала шага
+     * 
+     * @return секунды Unix или Long.MIN_VALUE если сводки шага хранятся бессрочно
+     */
+    private long getRetentionCutoff(RollupGranularity granularity, LocalDateTime now) {
+        int days = plugin.getConfigManager().getRollupRetentionDays(granularity.getKey());
+        return days > 0 ? granularity.bucketStart(now.minusDays(days)) : Long.MIN_VALUE;
+    }
+    
+    private static List<RollupBucket> toBuckets(Map<RollupKey, Accumulator> accumulators) {
+        List<RollupBucket> buckets = new ArrayList<>(accumulators.size());
+        for (Map.Entry<RollupKey, Accumulator> entry : accumulators.entrySet()) {
+            RollupKey key = entry.getKey();
+            Accumulator accumulator = entry.getValue();
+            buckets.add(new RollupBucket(key.granularity.getKey(), key.bucketStart, key.currency,
+                key.transactionType, accumulator.count, accumulator.sum, accumulator.max));
+        }
+        return buckets;
+    }
+    
+    /**
+     * Ключ сводки: шаг, начало интервала, валюта и тип транзакций
+     */
+    private static final class RollupKey {
+        private final RollupGranularity granularity;
+        private final long bucketStart;
+        private final String currency;
+        private final String transactionType;
+        
+        RollupKey(RollupGranularity granularity, long bucketStart, String currency, String transactionType) {
+            this.granularity = granularity;
+            this.bucketStart = bucketStart;
+            this.currency = currency;
+            this.transactionType = transactionType;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RollupKey other)) {
+                return false;
+            }
+            return granularity == other.granularity && bucketStart == other.bucketStart
+                && currency.equals(other.currency) && transactionType.equals(other.transactionType);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(granularity, bucketStart, currency, transactionType);
+        }
+    }
+    
+    /**
+     * Накопленные количество, сумма и максимум транзакций
+     * Изменяется только внутри compute карты или после извлечения из неё
+     */
+    private static final class Accumulator {
+        private long count;
+        private long sum;
+        private long max;
+        
+        void add(long amount) {
+            count++;
+            sum += amount;
+            max = Math.max(max, amount);
+        }
+        
+        Accumulator merge(Accumulator other) {
+            count += other.count;
+            sum += other.sum;
+            max = Math.max(max, other.max);
+            return this;
+        }
+    }
+}
@@ -1,9 +1,14 @@
 package com.mishkaworld.cashpro.listeners;
 
 import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.utils.MessageUtils;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
-import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.concurrent.TimeUnit;
 
 /**
  * Слушатель событий игроков
@@ -19,14 +24,56 @@ public class PlayerListener implements Listener {
     }
     
     /**
-     * Обработка события входа игрока на сервер
+     * Ожидание фоновой загрузки при подключении игрока (вне основного потока)
+     * Отказ во входе выставляется на раннем приоритете, чтобы плагины
+     * с более поздними приоритетами видели итоговый результат входа
      */
-    @EventHandler
-    public void onPlayerJoin(PlayerJoinEvent event) {
+    @EventHandler(priority = EventPriority.LOW)
+    public void onPlayerPreLoginWait(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+        
+        // Во время фоновой загрузки данных вход ожидает её завершения
+        if (!plugin.awaitReady(plugin.getConfigManager().getStartupLoginWait(), TimeUnit.SECONDS)) {
+            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER,
+                MessageUtils.format(plugin.getConfigManager().getMessage("errors.not_ready_kick")));
+        }
+    }
+    
+    /**
+     * Подготовка балансов игрока, вход которого разрешён (вне основного потока)
+     * Вход завершается только после загрузки актуальных балансов из БД,
+     * поэтому игрок, перешедший с другого сервера, не может потратить
+     * устаревший баланс. Результат входа здесь не меняется
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED || !plugin.isReady()) {
+            return;
+        }
+        
+        // Обновление индекса имён (игрок мог сменить ник)
+        plugin.getCurrencyManager().updatePlayerName(
+            event.getUniqueId(),
+            event.getName()
+        );
+        
         // Создание начального баланса для нового игрока
         plugin.getCurrencyManager().createInitialBalance(
-            event.getPlayer().getUniqueId(),
-            event.getPlayer().getName()
+            event.getUniqueId(),
+            event.getName()
         );
+        
+        // Загрузка балансов в память для быстрых запросов (Vault, плейсхолдеры)
+        plugin.getCurrencyManager().cachePlayer(event.getUniqueId());
+    }
+    
+    /**
+     * Обработка события выхода игрока с сервера
+     */
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        plugin.getCurrencyManager().evictPlayer(event.getPlayer().getUniqueId());
     }
 } 
\ No newline at end of file
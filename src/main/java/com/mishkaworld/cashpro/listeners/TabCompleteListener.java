@@ -0,0 +1,63 @@
+package com.mishkaworld.cashpro.listeners;
+
+import com.destroystokyo.paper.event.server.AsyncTabCompleteEvent;
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.commands.CurrencyCommand;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Асинхронное автодополнение имён игроков в командах валют
+ * Paper вызывает событие вне основного потока на каждое нажатие клавиши,
+ * поэтому подсказки имён из индекса не нагружают основной поток. Остальные
+ * аргументы дополняются обычным обработчиком команды
+ * 
+ * @author Misha Ermakov
+ */
+public class TabCompleteListener implements Listener {
+    
+    private final CashProReloaded plugin;
+    
+    public TabCompleteListener(CashProReloaded plugin) {
+        this.plugin = plugin;
+    }
+    
+    @EventHandler
+    public void onAsyncTabComplete(AsyncTabCompleteEvent event) {
+        if (event.isHandled() || !event.isCommand()) {
+            return;
+        }
+        
+        // Буфер вида "/rub give Pa" или "/cashpro:rub give Pa"
+        String buffer = event.getBuffer();
+        if (buffer.startsWith("/")) {
+            buffer = buffer.substring(1);
+        }
+        String[] parts = buffer.split(" ", -1);
+        if (parts.length != 3) {
+            return;
+        }
+        
+        String label = parts[0].toLowerCase(Locale.ROOT);
+        int namespace = label.indexOf(':');
+        if (namespace >= 0) {
+            label = label.substring(namespace + 1);
+        }
+        
+        CurrencyCommand command = plugin.getCurrencyCommands().getExecutor(label);
+        if (command == null) {
+            return;
+        }
+        
+        List<String> completions = command.completePlayerName(event.getSender(), parts[1].toLowerCase(Locale.ROOT), parts[2]);
+        if (completions == null) {
+            return;
+        }
+        
+        event.setCompletions(completions);
+        event.setHandled(true);
+    }
+}
@@ -1,7 +1,9 @@
 package com.mishkaworld.cashpro.placeholders;
 
 import com.mishkaworld.cashpro.CashProReloaded;
-import com.mishkaworld.cashpro.database.DatabaseManager;
+import com.mishkaworld.cashpro.economy.EconomyAggregate;
+import com.mishkaworld.cashpro.economy.LeaderboardSnapshot;
+import com.mishkaworld.cashpro.economy.PlayerBalance;
 import com.mishkaworld.cashpro.utils.MessageUtils;
 import org.bukkit.entity.Player;
 
@@ -42,7 +44,7 @@ public class CashProPlaceholderExpansion extends me.clip.placeholderapi.expansio
     
     @Override
     public String onPlaceholderRequest(Player player, String identifier) {
-        if (player == null) {
+        if (player == null || !plugin.isReady()) {
             return "";
         }
         
@@ -50,23 +52,44 @@ public class CashProPlaceholderExpansion extends me.clip.placeholderapi.expansio
         if (identifier.toLowerCase().startsWith("balance_")) {
             String currency = identifier.substring(8); // Убираем "balance_"
             return getFormattedBalance(player, currency);
+        } else if (identifier.toLowerCase().startsWith("rank_")) {
+            // Место игрока в рейтинге: rank_currency
+            String currency = identifier.substring(5); // Убираем "rank_"
+            int rank = plugin.getCurrencyManager().getRank(player.getUniqueId(), currency);
+            return rank > 0 ? String.valueOf(rank) : "-";
         } else if (identifier.toLowerCase().startsWith("top_")) {
-            // Обработка топ игроков: top_currency_position
-            String[] parts = identifier.toLowerCase().split("_");
-            if (parts.length >= 3) {
-                String currency = parts[1];
+            // Обработка топ игроков: top_currency_position (в названии валюты может быть "_")
+            String rest = identifier.substring(4).toLowerCase(); // Убираем "top_"
+            int separator = rest.lastIndexOf('_');
+            if (separator > 0) {
+                String currency = rest.substring(0, separator);
                 try {
-                    int position = Integer.parseInt(parts[2]);
-                    if (position >= 1 && position <= 10) {
+                    int position = Integer.parseInt(rest.substring(separator + 1));
+                    if (position >= 1 && position <= plugin.getConfigManager().getLeaderboardPlaceholderPositions()) {
                         return getTopPlayer(currency, position);
                     }
                 } catch (NumberFormatException e) {
                     // Игнорируем некорректные номера позиций
                 }
             }
+        } else if (identifier.toLowerCase().startsWith("leaderboard_age_")) {
+            // Возраст снимка рейтинга в секундах: leaderboard_age_currency
+            String currency = identifier.substring(16); // Убираем "leaderboard_age_"
+            return String.valueOf(plugin.getLeaderboardManager().getSnapshot(currency).getAgeMillis() / 1000);
+        } else if (identifier.toLowerCase().startsWith("leaderboard_build_")) {
+            // Длительность построения снимка в миллисекундах: leaderboard_build_currency
+            String currency = identifier.substring(18); // Убираем "leaderboard_build_"
+            return String.format(java.util.Locale.ROOT, "%.2f", plugin.getLeaderboardManager().getSnapshot(currency).getBuildTimeMillis());
+        } else if (identifier.toLowerCase().startsWith("economy_")) {
+            // Показатели экономики: economy_stat_currency
+            String rest = identifier.substring(8); // Убираем "economy_"
+            int separator = rest.indexOf('_');
+            if (separator > 0) {
+                return getEconomyStat(rest.substring(0, separator).toLowerCase(), rest.substring(separator + 1));
+            }
         } else if (identifier.toLowerCase().startsWith("toplist_")) {
             // Обработка списка топ игроков: toplist_currency
-            String currency = identifier.substring(9); // Убираем "toplist_"
+            String currency = identifier.substring(8); // Убираем "toplist_"
             return getTopList(currency);
         }
         
@@ -82,14 +105,35 @@ public class CashProPlaceholderExpansion extends me.clip.placeholderapi.expansio
         return MessageUtils.formatNumber(balance) + " " + symbol;
     }
     
+    /**
+     * Получить показатель экономики валюты
+     */
+    private String getEconomyStat(String stat, String currency) {
+        EconomyAggregate.Snapshot economy = plugin.getCurrencyManager().getEconomySnapshot(currency);
+        
+        switch (stat) {
+            case "supply":
+                return MessageUtils.formatNumber(economy.getSupply());
+            case "accounts":
+                return String.valueOf(economy.getAccounts());
+            case "average":
+                return MessageUtils.formatNumber(Math.round(economy.getAverage()));
+            case "median":
+                return MessageUtils.formatNumber(economy.getMedian());
+            case "gini":
+                return String.format(java.util.Locale.ROOT, "%.3f", economy.getGini());
+            default:
+                return null;
+        }
+    }
+    
     /**
      * Получить игрока из топ по позиции
      */
     private String getTopPlayer(String currency, int position) {
-        List<DatabaseManager.PlayerBalance> topPlayers = plugin.getCurrencyManager().getTopPlayers(currency, position);
+        PlayerBalance playerBalance = plugin.getLeaderboardManager().getSnapshot(currency).getEntry(position);
         
-        if (topPlayers.size() >= position) {
-            DatabaseManager.PlayerBalance playerBalance = topPlayers.get(position - 1);
+        if (playerBalance != null) {
             String symbol = plugin.getCurrencyManager().getCurrencySymbol(currency);
             return playerBalance.getPlayerName() + ": " + MessageUtils.formatNumber(playerBalance.getBalance()) + " " + symbol;
         }
@@ -101,7 +145,8 @@ public class CashProPlaceholderExpansion extends me.clip.placeholderapi.expansio
      * Получить список топ-10 игроков
      */
     private String getTopList(String currency) {
-        List<DatabaseManager.PlayerBalance> topPlayers = plugin.getCurrencyManager().getTopPlayers(currency, 10);
+        LeaderboardSnapshot snapshot = plugin.getLeaderboardManager().getSnapshot(currency);
+        List<PlayerBalance> topPlayers = snapshot.getEntries().subList(0, Math.min(10, snapshot.size()));
         String symbol = plugin.getCurrencyManager().getCurrencySymbol(currency);
         
         if (topPlayers.isEmpty()) {
@@ -110,7 +155,7 @@ public class CashProPlaceholderExpansion extends me.clip.placeholderapi.expansio
         
         StringBuilder result = new StringBuilder();
         for (int i = 0; i < topPlayers.size(); i++) {
-            DatabaseManager.PlayerBalance playerBalance = topPlayers.get(i);
+            PlayerBalance playerBalance = topPlayers.get(i);
             result.append(playerBalance.getPlayerName())
                   .append(" - ")
                   .append(MessageUtils.formatNumber(playerBalance.getBalance()))
@@ -1,5 +1,9 @@
 package com.mishkaworld.cashpro.utils;
 
+import com.mishkaworld.cashpro.CashProReloaded;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+
 /**
  * Утилитарный класс для форматирования сообщений
  * 
@@ -20,6 +24,22 @@ public class MessageUtils {
         return translateAlternateColorCodes('&', message);
     }
     
+    /**
+     * Отправить сообщение из любого потока
+     * Если вызвано вне основного потока, отправка переносится в основной поток
+     * (кроме момента выключения плагина, когда планировщик уже недоступен)
+     * 
+     * @param sender получатель сообщения
+     * @param message готовое сообщение
+     */
+    public static void send(CommandSender sender, String message) {
+        if (Bukkit.isPrimaryThread() || !CashProReloaded.getInstance().isEnabled()) {
+            sender.sendMessage(message);
+            return;
+        }
+        Bukkit.getScheduler().runTask(CashProReloaded.getInstance(), () -> sender.sendMessage(message));
+    }
+    
     /**
      * Заменяет альтернативные цветовые коды на стандартные
      * 
@@ -1,5 +1,6 @@
 package com.mishkaworld.cashpro.utils;
 
+import com.mishkaworld.cashpro.CashProReloaded;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
@@ -70,8 +71,8 @@ public class ValidationUtils {
             return false;
         }
         
-        return Bukkit.getPlayer(playerName) != null || 
-               Bukkit.getOfflinePlayer(playerName).hasPlayedBefore();
+        // Локальный индекс имён не обращается к сети, в отличие от Bukkit.getOfflinePlayer
+        return CashProReloaded.getInstance().getCurrencyManager().getNameIndex().contains(playerName);
     }
     
     /**
@@ -0,0 +1,377 @@
+package com.mishkaworld.cashpro.vault;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.economy.CurrencyManager;
+import com.mishkaworld.cashpro.utils.MessageUtils;
+import net.milkbowl.vault.economy.Economy;
+import net.milkbowl.vault.economy.EconomyResponse;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.plugin.ServicePriority;
+import org.bukkit.plugin.ServicesManager;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Провайдер экономики Vault поверх менеджера валют
+ * Работает с одной валютой (по умолчанию main_coins), так как Vault
+ * допускает только одного активного провайдера экономики.
+ * Балансы игроков в сети читаются из памяти, без обращения к БД
+ * 
+ * @author Misha Ermakov
+ */
+public class VaultEconomy implements Economy {
+    
+    private static final String NOT_READY = "CashPro ещё загружается";
+    
+    // Источник операций Vault в истории транзакций
+    private static final String SOURCE = "VAULT";
+    
+    private final CashProReloaded plugin;
+    private final String currency;
+    
+    public VaultEconomy(CashProReloaded plugin, String currency) {
+        this.plugin = plugin;
+        this.currency = currency;
+    }
+    
+    /**
+     * Зарегистрировать провайдер экономики в реестре сервисов
+     * 
+     * @param plugin экземпляр плагина
+     * @param servicesManager реестр сервисов
+     * @return зарегистрированный провайдер
+     */
+    public static VaultEconomy register(CashProReloaded plugin, ServicesManager servicesManager) {
+        VaultEconomy economy = new VaultEconomy(plugin, plugin.getConfigManager().getVaultCurrency());
+        servicesManager.register(Economy.class, economy, plugin, ServicePriority.Normal);
+        return economy;
+    }
+    
+    /**
+     * Получить валюту, с которой работает провайдер
+     */
+    public String getCurrency() {
+        return currency;
+    }
+    
+    @Override
+    public boolean isEnabled() {
+        return plugin.isEnabled() && plugin.isReady();
+    }
+    
+    @Override
+    public String getName() {
+        return "CashPro";
+    }
+    
+    @Override
+    public boolean hasBankSupport() {
+        return false;
+    }
+    
+    /**
+     * Балансы хранятся в целых единицах валюты. Дробные суммы от других
+     * плагинов не отклоняются, а округляются в пользу экономики:
+     * зачисление вниз, списание вверх, чтобы округление не создавало деньги
+     */
+    @Override
+    public int fractionalDigits() {
+        return 0;
+    }
+    
+    @Override
+    public String format(double amount) {
+        return MessageUtils.formatNumber((long) amount) + " " + getCurrencyManager().getCurrencySymbol(currency);
+    }
+    
+    @Override
+    public String currencyNamePlural() {
+        return getCurrencyManager().getCurrencyName(currency);
+    }
+    
+    @Override
+    public String currencyNameSingular() {
+        return getCurrencyManager().getCurrencyName(currency);
+    }
+    
+    @Override
+    public boolean hasAccount(String playerName) {
+        return getCurrencyManager().getNameIndex().contains(playerName);
+    }
+    
+    @Override
+    public boolean hasAccount(OfflinePlayer player) {
+        return getCurrencyManager().getNameIndex().getName(player.getUniqueId()) != null;
+    }
+    
+    @Override
+    public boolean hasAccount(String playerName, String worldName) {
+        return hasAccount(playerName);
+    }
+    
+    @Override
+    public boolean hasAccount(OfflinePlayer player, String worldName) {
+        return hasAccount(player);
+    }
+    
+    @Override
+    public double getBalance(String playerName) {
+        if (!plugin.isReady()) {
+            return 0;
+        }
+        UUID playerUuid = getCurrencyManager().getNameIndex().getUuid(playerName);
+        return playerUuid != null ? getCurrencyManager().getBalance(playerUuid, currency) : 0;
+    }
+    
+    @Override
+    public double getBalance(OfflinePlayer player) {
+        if (!plugin.isReady()) {
+            return 0;
+        }
+        return getCurrencyManager().getBalance(player.getUniqueId(), currency);
+    }
+    
+    @Override
+    public double getBalance(String playerName, String world) {
+        return getBalance(playerName);
+    }
+    
+    @Override
+    public double getBalance(OfflinePlayer player, String world) {
+        return getBalance(player);
+    }
+    
+    @Override
+    public boolean has(String playerName, double amount) {
+        return getBalance(playerName) >= amount;
+    }
+    
+    @Override
+    public boolean has(OfflinePlayer player, double amount) {
+        return getBalance(player) >= amount;
+    }
+    
+    @Override
+    public boolean has(String playerName, String worldName, double amount) {
+        return has(playerName, amount);
+    }
+    
+    @Override
+    public boolean has(OfflinePlayer player, String worldName, double amount) {
+        return has(player, amount);
+    }
+    
+    @Override
+    public EconomyResponse withdrawPlayer(String playerName, double amount) {
+        UUID playerUuid = getCurrencyManager().getNameIndex().getUuid(playerName);
+        if (playerUuid == null) {
+            return failure(amount, 0, "Игрок не найден");
+        }
+        return withdraw(playerUuid, playerName, amount);
+    }
+    
+    @Override
+    public EconomyResponse withdrawPlayer(OfflinePlayer player, double amount) {
+        return withdraw(player.getUniqueId(), getPlayerName(player), amount);
+    }
+    
+    @Override
+    public EconomyResponse withdrawPlayer(String playerName, String worldName, double amount) {
+        return withdrawPlayer(playerName, amount);
+    }
+    
+    @Override
+    public EconomyResponse withdrawPlayer(OfflinePlayer player, String worldName, double amount) {
+        return withdrawPlayer(player, amount);
+    }
+    
+    @Override
+    public EconomyResponse depositPlayer(String playerName, double amount) {
+        UUID playerUuid = getCurrencyManager().getNameIndex().getUuid(playerName);
+        if (playerUuid == null) {
+            return failure(amount, 0, "Игрок не найден");
+        }
+        return deposit(playerUuid, playerName, amount);
+    }
+    
+    @Override
+    public EconomyResponse depositPlayer(OfflinePlayer player, double amount) {
+        return deposit(player.getUniqueId(), getPlayerName(player), amount);
+    }
+    
+    @Override
+    public EconomyResponse depositPlayer(String playerName, String worldName, double amount) {
+        return depositPlayer(playerName, amount);
+    }
+    
+    @Override
+    public EconomyResponse depositPlayer(OfflinePlayer player, String worldName, double amount) {
+        return depositPlayer(player, amount);
+    }
+    
+    @Override
+    public EconomyResponse createBank(String name, String player) {
+        return notImplemented();
+    }
+    
+    @Override
+    public EconomyResponse createBank(String name, OfflinePlayer player) {
+        return notImplemented();
+    }
+    
+    @Override
+    public EconomyResponse deleteBank(String name) {
+        return notImplemented();
+    }
+    
+    @Override
+    public EconomyResponse bankBalance(String name) {
+        return notImplemented();
+    }
+    
+    @Override
+    public EconomyResponse bankHas(String name, double amount) {
+        return notImplemented();
+    }
+    
+    @Override
+    public EconomyResponse bankWithdraw(String name, double amount) {
+        return notImplemented();
+    }
+    
+    @Override
+    public EconomyResponse bankDeposit(String name, double amount) {
+        return notImplemented();
+    }
+    
+    @Override
+    public EconomyResponse isBankOwner(String name, String playerName) {
+        return notImplemented();
+    }
+    
+    @Override
+    public EconomyResponse isBankOwner(String name, OfflinePlayer player) {
+        return notImplemented();
+    }
+    
+    @Override
+    public EconomyResponse isBankMember(String name, String playerName) {
+        return notImplemented();
+    }
+    
+    @Override
+    public EconomyResponse isBankMember(String name, OfflinePlayer player) {
+        return notImplemented();
+    }
+    
+    @Override
+    public List<String> getBanks() {
+        return Collections.emptyList();
+    }
+    
+    @Override
+    public boolean createPlayerAccount(String playerName) {
+        if (!plugin.isReady()) {
+            return false;
+        }
+        UUID playerUuid = getCurrencyManager().getNameIndex().getUuid(playerName);
+        if (playerUuid == null) {
+            return false;
+        }
+        getCurrencyManager().createInitialBalance(playerUuid, playerName);
+        return true;
+    }
+    
+    @Override
+    public boolean createPlayerAccount(OfflinePlayer player) {
+        if (!plugin.isReady()) {
+            return false;
+        }
+        getCurrencyManager().createInitialBalance(player.getUniqueId(), getPlayerName(player));
+        return true;
+    }
+    
+    @Override
+    public boolean createPlayerAccount(String playerName, String worldName) {
+        return createPlayerAccount(playerName);
+    }
+    
+    @Override
+    public boolean createPlayerAccount(OfflinePlayer player, String worldName) {
+        return createPlayerAccount(player);
+    }
+    
+    /**
+     * Списать сумму со счёта игрока
+     */
+    private EconomyResponse withdraw(UUID playerUuid, String playerName, double amount) {
+        if (!plugin.isReady()) {
+            return failure(amount, 0, NOT_READY);
+        }
+        
+        if (!isValidAmount(amount)) {
+            return failure(amount, getCurrencyManager().getBalance(playerUuid, currency), "Некорректная сумма");
+        }
+        
+        long value = (long) Math.ceil(amount);
+        if (value > 0 && !getCurrencyManager().subtractBalance(playerUuid, playerName, currency, value, SOURCE)) {
+            return failure(value, getCurrencyManager().getBalance(playerUuid, currency), "Недостаточно средств");
+        }
+        
+        return new EconomyResponse(value, getCurrencyManager().getBalance(playerUuid, currency), EconomyResponse.ResponseType.SUCCESS, null);
+    }
+    
+    /**
+     * Зачислить сумму на счёт игрока
+     */
+    private EconomyResponse deposit(UUID playerUuid, String playerName, double amount) {
+        if (!plugin.isReady()) {
+            return failure(amount, 0, NOT_READY);
+        }
+        
+        if (!isValidAmount(amount)) {
+            return failure(amount, getCurrencyManager().getBalance(playerUuid, currency), "Некорректная сумма");
+        }
+        
+        long value = (long) Math.floor(amount);
+        if (value > 0 && !getCurrencyManager().addBalance(playerUuid, playerName, currency, value, SOURCE)) {
+            return failure(value, getCurrencyManager().getBalance(playerUuid, currency), "Не удалось зачислить средства");
+        }
+        
+        return new EconomyResponse(value, getCurrencyManager().getBalance(playerUuid, currency), EconomyResponse.ResponseType.SUCCESS, null);
+    }
+    
+    /**
+     * Проверить сумму Vault перед округлением до целых единиц валюты
+     * 
+     * @return false если сумма отрицательная, NaN или бесконечная
+     */
+    private static boolean isValidAmount(double amount) {
+        return amount >= 0 && !Double.isInfinite(amount);
+    }
+    
+    /**
+     * Получить имя игрока для записи в БД
+     */
+    private String getPlayerName(OfflinePlayer player) {
+        if (player.getName() != null) {
+            return player.getName();
+        }
+        String knownName = getCurrencyManager().getNameIndex().getName(player.getUniqueId());
+        return knownName != null ? knownName : player.getUniqueId().toString();
+    }
+    
+    private EconomyResponse failure(double amount, double balance, String message) {
+        return new EconomyResponse(amount, balance, EconomyResponse.ResponseType.FAILURE, message);
+    }
+    
+    private EconomyResponse notImplemented() {
+        return new EconomyResponse(0, 0, EconomyResponse.ResponseType.NOT_IMPLEMENTED, "CashPro не поддерживает банки");
+    }
+    
+    private CurrencyManager getCurrencyManager() {
+        return plugin.getCurrencyManager();
+    }
+}
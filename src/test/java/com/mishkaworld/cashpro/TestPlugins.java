@@ -0,0 +1,80 @@
+package com.mishkaworld.cashpro;
+
+import com.mishkaworld.cashpro.config.ConfigManager;
+import com.mishkaworld.cashpro.database.DatabaseManager;
+import org.bukkit.Server;
+import org.bukkit.scheduler.BukkitScheduler;
+
+import java.io.File;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Заглушка плагина для тестов без сервера
+ * Плагин и менеджер конфигурации подменяются Mockito, настройки по умолчанию
+ * совпадают с config.yml, тест переопределяет нужные через when(...)
+ * 
+ * @author Misha Ermakov
+ */
+public final class TestPlugins {
+    
+    private TestPlugins() {
+    }
+    
+    /**
+     * Создать плагин с конфигурацией по умолчанию и валютой rub
+     */
+    public static CashProReloaded create() {
+        CashProReloaded plugin = mock(CashProReloaded.class);
+        ConfigManager config = mock(ConfigManager.class);
+        Server server = mock(Server.class);
+        
+        // Задачи по расписанию не запускаются: тест вызывает нужные действия сам
+        when(server.getScheduler()).thenReturn(mock(BukkitScheduler.class));
+        when(plugin.getServer()).thenReturn(server);
+        when(plugin.getConfigManager()).thenReturn(config);
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("CashPro-Test"));
+        when(plugin.isReady()).thenReturn(true);
+        
+        when(config.getCurrencies()).thenReturn(Set.of("rub"));
+        when(config.isTransactionLoggingEnabled()).thenReturn(true);
+        when(config.getLedgerBatchSize()).thenReturn(256);
+        when(config.getLedgerTimeout()).thenReturn(10);
+        when(config.isOptimisticEnabled()).thenReturn(true);
+        when(config.getOptimisticMaxRetries()).thenReturn(8);
+        when(config.getOptimisticBackoffBase()).thenReturn(2L);
+        when(config.getOptimisticBackoffMax()).thenReturn(100L);
+        when(config.getStorageThreads()).thenReturn(4);
+        when(config.getStorageMaxConcurrent()).thenReturn(4);
+        return plugin;
+    }
+    
+    /**
+     * Открыть БД SQLite в папке плагина (режим WAL, 4 соединения для чтения)
+     * Несколько плагинов с одной папкой работают с одним файлом, как серверы с общей БД
+     */
+    public static DatabaseManager openDatabase(CashProReloaded plugin, File dataFolder) {
+        return openDatabase(plugin, dataFolder, true);
+    }
+    
+    /**
+     * Открыть БД SQLite в папке плагина
+     * 
+     * @param wal режим WAL с пулом соединений для чтения или одно общее соединение
+     */
+    public static DatabaseManager openDatabase(CashProReloaded plugin, File dataFolder, boolean wal) {
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        when(plugin.getConfigManager().getDatabaseFile()).thenReturn("cashpro.db");
+        when(plugin.getConfigManager().isWalEnabled()).thenReturn(wal);
+        when(plugin.getConfigManager().getReadConnections()).thenReturn(4);
+        
+        DatabaseManager databaseManager = new DatabaseManager(plugin);
+        databaseManager.initialize();
+        when(plugin.getDatabaseManager()).thenReturn(databaseManager);
+        when(plugin.getStorage()).thenReturn(databaseManager);
+        return databaseManager;
+    }
+}
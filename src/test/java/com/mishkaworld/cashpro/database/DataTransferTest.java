@@ -0,0 +1,178 @@
+package com.mishkaworld.cashpro.database;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.TestPlugins;
+import com.mishkaworld.cashpro.economy.CurrencyManager;
+import com.mishkaworld.cashpro.economy.Transaction;
+import com.mishkaworld.cashpro.economy.TransactionRollups;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Экспорт и импорт: выгруженные балансы и транзакции загружаются в другую
+ * БД без изменений, повреждённые строки пропускаются, а строки без времени
+ * получают текущее время в миллисекундах
+ * 
+ * @author Misha Ermakov
+ */
+class DataTransferTest {
+    
+    private static final String CURRENCY = "rub";
+    private static final UUID STEVE = UUID.randomUUID();
+    private static final UUID ALEX = UUID.randomUUID();
+    
+    @TempDir
+    File dataFolder;
+    
+    private DatabaseManager source;
+    private DatabaseManager target;
+    private CashProReloaded sourcePlugin;
+    private CashProReloaded targetPlugin;
+    private CurrencyManager currencyManager;
+    private Ledger ledger;
+    
+    @BeforeEach
+    void openDatabases() throws Exception {
+        sourcePlugin = TestPlugins.create();
+        source = TestPlugins.openDatabase(sourcePlugin, folder("source"));
+        source.applyMutations(List.of(
+            LedgerMutation.set(STEVE, "Steve", CURRENCY, 100, null),
+            LedgerMutation.transfer(STEVE, "Steve", ALEX, "Alex", CURRENCY, 30,
+                new Transaction("Steve", "Alex", STEVE, ALEX, CURRENCY, 30, Transaction.TransactionType.PAY)),
+            LedgerMutation.record(new Transaction(null, "Alex \"Admin\", Jr", null, ALEX, CURRENCY, 5, Transaction.TransactionType.GIVE))
+        ));
+        
+        targetPlugin = TestPlugins.create();
+        target = TestPlugins.openDatabase(targetPlugin, folder("target"));
+        currencyManager = mock(CurrencyManager.class);
+        when(targetPlugin.getCurrencyManager()).thenReturn(currencyManager);
+        when(targetPlugin.getTransactionRollups()).thenReturn(mock(TransactionRollups.class));
+        ledger = new Ledger(targetPlugin, target);
+        when(targetPlugin.getLedger()).thenReturn(ledger);
+        ledger.initialize();
+    }
+    
+    @AfterEach
+    void closeDatabases() {
+        ledger.shutdown();
+        source.close();
+        target.close();
+    }
+    
+    @Test
+    void balancesRoundTripThroughCsv() throws Exception {
+        File file = new File(dataFolder, "balances.csv");
+        assertEquals(2, new DataTransfer(sourcePlugin).exportTable(DataTable.BALANCES, DataTransfer.Format.CSV, file, rows -> { }));
+        
+        // Повреждённая строка и строка без времени изменения
+        UUID added = UUID.randomUUID();
+        append(file,
+            "\"not-a-uuid\",\"Bad\",\"rub\",\"10\",",
+            "\"" + added + "\",\"Herobrine\",\"rub\",\"50\",");
+        
+        long before = System.currentTimeMillis();
+        DataTransfer.ImportResult result = new DataTransfer(targetPlugin).importTable(DataTable.BALANCES, file, rows -> { });
+        long after = System.currentTimeMillis();
+        
+        assertEquals(3, result.getImported());
+        assertEquals(1, result.getSkipped());
+        
+        List<String[]> exported = readAll(source, DataTable.BALANCES);
+        List<String[]> imported = readAll(target, DataTable.BALANCES);
+        assertEquals(3, imported.size());
+        for (int i = 0; i < exported.size(); i++) {
+            assertArrayEquals(exported.get(i), imported.get(i));
+        }
+        assertEquals(70, target.getBalance(STEVE, CURRENCY));
+        assertEquals(30, target.getBalance(ALEX, CURRENCY));
+        assertEquals(50, target.getBalance(added, CURRENCY));
+        assertTimestampBetween(imported.get(2)[4], before, after);
+        
+        // Загруженные балансы применяются в памяти с номерами изменений импорта
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<BalanceRecord>> records = ArgumentCaptor.forClass(List.class);
+        verify(currencyManager, atLeastOnce()).applyImportedBalances(records.capture());
+        assertEquals(3, records.getValue().size());
+        assertTrue(records.getValue().get(0).getChangeSeq() > 0);
+    }
+    
+    @Test
+    void transactionsRoundTripThroughJsonLines() throws Exception {
+        File file = new File(dataFolder, "transactions.jsonl");
+        assertEquals(2, new DataTransfer(sourcePlugin).exportTable(DataTable.TRANSACTIONS, DataTransfer.Format.JSONL, file, rows -> { }));
+        
+        // Повреждённая строка и транзакция без времени
+        append(file,
+            "{\"id\": \"broken\", ",
+            "{\"id\":\"no-time\",\"to_player\":\"Alex\",\"currency\":\"rub\",\"amount\":7,\"transaction_type\":\"GIVE\",\"timestamp\":null}");
+        
+        long before = System.currentTimeMillis();
+        DataTransfer.ImportResult result = new DataTransfer(targetPlugin).importTable(DataTable.TRANSACTIONS, file, rows -> { });
+        long after = System.currentTimeMillis();
+        
+        assertEquals(3, result.getImported());
+        assertEquals(1, result.getSkipped());
+        verify(targetPlugin.getTransactionRollups()).rebuild(any());
+        
+        List<String[]> exported = readAll(source, DataTable.TRANSACTIONS);
+        List<String[]> imported = readAll(target, DataTable.TRANSACTIONS);
+        assertEquals(3, imported.size());
+        for (int i = 0; i < exported.size(); i++) {
+            assertArrayEquals(exported.get(i), imported.get(i));
+        }
+        assertEquals("no-time", imported.get(2)[0]);
+        assertTimestampBetween(imported.get(2)[8], before, after);
+        
+        // Повторный импорт того же файла не дублирует транзакции
+        new DataTransfer(targetPlugin).importTable(DataTable.TRANSACTIONS, file, rows -> { });
+        assertEquals(3, readAll(target, DataTable.TRANSACTIONS).size());
+    }
+    
+    private File folder(String name) {
+        File folder = new File(dataFolder, name);
+        assertTrue(folder.mkdirs());
+        return folder;
+    }
+    
+    private static void append(File file, String... lines) throws Exception {
+        Files.write(file.toPath(), List.of(lines), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+    
+    private static List<String[]> readAll(DatabaseManager databaseManager, DataTable table) throws Exception {
+        List<String[]> rows = new ArrayList<>();
+        long lastRowId = 0;
+        while (true) {
+            RowChunk chunk = databaseManager.readRows(table, lastRowId, 100);
+            if (chunk.getRows().isEmpty()) {
+                return rows;
+            }
+            rows.addAll(chunk.getRows());
+            lastRowId = chunk.getLastRowId();
+        }
+    }
+    
+    private static void assertTimestampBetween(String value, long before, long after) {
+        long millis = Long.parseLong(value);
+        assertTrue(millis >= before && millis <= after, "время вне интервала импорта: " + value);
+    }
+}
@@ -0,0 +1,119 @@
+package com.mishkaworld.cashpro.database;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.TestPlugins;
+import com.mishkaworld.cashpro.economy.Transaction;
+import org.bukkit.scheduler.BukkitTask;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Обслуживание БД на временном файле SQLite: после удаления истории
+ * свободные страницы возвращаются системе и файл уменьшается, журнал WAL
+ * переносится и обрезается, статистика планировщика появляется, проверка
+ * целостности проходит, а время запуска сохраняется между перезапусками
+ * 
+ * @author Misha Ermakov
+ */
+class DatabaseMaintenanceTest {
+    
+    private static final String CURRENCY = "rub";
+    private static final int TRANSACTIONS = 20_000;
+    
+    @TempDir
+    File dataFolder;
+    
+    private CashProReloaded plugin;
+    private DatabaseManager databaseManager;
+    
+    @BeforeEach
+    void openDatabase() {
+        plugin = TestPlugins.create();
+        when(plugin.getConfigManager().getMaintenanceMaxDuration()).thenReturn(30_000L);
+        when(plugin.getConfigManager().getMaintenanceVacuumPages()).thenReturn(100);
+        when(plugin.getConfigManager().getMaintenanceAnalysisLimit()).thenReturn(1_000);
+        when(plugin.getServer().getScheduler().runTaskLaterAsynchronously(any(), any(Runnable.class), anyLong()))
+            .thenReturn(mock(BukkitTask.class));
+        databaseManager = TestPlugins.openDatabase(plugin, dataFolder);
+    }
+    
+    @AfterEach
+    void closeDatabase() {
+        databaseManager.close();
+    }
+    
+    @Test
+    void freePagesAreReturnedAndWalIsTruncated() throws Exception {
+        UUID steve = UUID.randomUUID();
+        List<LedgerMutation> mutations = new ArrayList<>();
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            mutations.add(LedgerMutation.record(new Transaction("tx" + i, "Steve", "Alex", steve, UUID.randomUUID(), CURRENCY,
+                i + 1, Transaction.TransactionType.PAY, LocalDateTime.now())));
+        }
+        databaseManager.applyMutations(mutations);
+        
+        // Удалённая история оставляет свободные страницы в файле и страницы в журнале
+        File databaseFile = new File(dataFolder, "cashpro.db");
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("DELETE FROM transactions");
+        }
+        assertTrue(databaseManager.getStorageStats().getFreePages() > 0);
+        assertTrue(new File(dataFolder, "cashpro.db-wal").length() > 0);
+        
+        DatabaseMaintenance maintenance = new DatabaseMaintenance(plugin);
+        maintenance.initialize();
+        DatabaseMaintenance.Result result = maintenance.run(false);
+        
+        assertTrue(result.getFreePagesBefore() > 0);
+        assertEquals(0, result.getFreePagesAfter());
+        assertEquals(0, databaseManager.getStorageStats().getFreePages());
+        assertTrue(result.getSizeAfter() < result.getSizeBefore(), result.getSizeBefore() + " -> " + result.getSizeAfter());
+        assertEquals(0, result.getWalSizeAfter());
+        assertEquals("ok", result.getIntegrity());
+        assertTrue(hasPlannerStatistics(databaseFile));
+        
+        // Время запуска переживает перезапуск, следующая проверка целостности ждёт своего интервала
+        DatabaseMaintenance restarted = new DatabaseMaintenance(plugin);
+        restarted.initialize();
+        assertEquals(maintenance.getLastRun(), restarted.getLastRun());
+        when(plugin.getConfigManager().getMaintenanceQuickCheckInterval()).thenReturn(3_600_000L);
+        assertNull(restarted.run(false).getIntegrity());
+    }
+    
+    @Test
+    void maintenanceNeedsSqliteStorage() {
+        when(plugin.getStorage()).thenReturn(new MemoryStorageBackend());
+        assertThrows(SQLException.class, () -> new DatabaseMaintenance(plugin).run(false));
+    }
+    
+    private static boolean hasPlannerStatistics(File databaseFile) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master WHERE name = 'sqlite_stat1'")) {
+            return rs.next() && rs.getLong(1) > 0;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.mishkaworld.cashpro.database;
+
+import com.mishkaworld.cashpro.TestPlugins;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+
+/**
+ * Контракт хранилища для {@link DatabaseManager} на временном файле SQLite
+ * 
+ * @author Misha Ermakov
+ */
+class DatabaseManagerContractTest extends StorageBackendContractTest {
+    
+    @TempDir
+    File dataFolder;
+    
+    private DatabaseManager databaseManager;
+    
+    @Override
+    protected StorageBackend open() {
+        databaseManager = TestPlugins.openDatabase(TestPlugins.create(), dataFolder);
+        return databaseManager;
+    }
+    
+    @Override
+    protected void close() {
+        databaseManager.close();
+    }
+}
@@ -0,0 +1,193 @@
+package com.mishkaworld.cashpro.database;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.TestPlugins;
+import com.mishkaworld.cashpro.economy.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Перенос данных между БД (два файла SQLite): прерванный посреди диапазона
+ * перенос продолжается с сохранённого места, а балансы, транзакции и имена,
+ * изменённые во время копирования, переносятся догоняющим проходом
+ * 
+ * @author Misha Ermakov
+ */
+class DatabaseMigratorTest {
+    
+    private static final String CURRENCY = "rub";
+    private static final int ACCOUNTS = 500;
+    private static final int TRANSACTIONS = 300;
+    private static final int BATCH_SIZE = 100;
+    
+    @TempDir
+    File dataFolder;
+    
+    private DatabaseManager source;
+    private File sourceFile;
+    private File targetFile;
+    private DatabaseMigrator migrator;
+    private final List<UUID> accounts = new ArrayList<>();
+    
+    @BeforeEach
+    void openDatabases() throws Exception {
+        File sourceFolder = folder("source");
+        source = TestPlugins.openDatabase(TestPlugins.create(), sourceFolder);
+        sourceFile = new File(sourceFolder, "cashpro.db");
+        targetFile = new File(folder("target"), "cashpro.db");
+        
+        List<LedgerMutation> mutations = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            UUID uuid = UUID.randomUUID();
+            accounts.add(uuid);
+            mutations.add(LedgerMutation.set(uuid, "player" + i, CURRENCY, 1_000 + i, null));
+        }
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            mutations.add(LedgerMutation.record(new Transaction("tx" + i, null, "player" + i, null, accounts.get(i), CURRENCY, i + 1,
+                Transaction.TransactionType.GIVE, LocalDateTime.now())));
+        }
+        source.applyMutations(mutations);
+        
+        // Один поток и один диапазон на таблицу: порядок копирования предсказуем
+        CashProReloaded plugin = TestPlugins.create();
+        when(plugin.getDataFolder()).thenReturn(folder("migration"));
+        when(plugin.getConfigManager().getMigrationThreads()).thenReturn(1);
+        when(plugin.getConfigManager().getMigrationBatchSize()).thenReturn(BATCH_SIZE);
+        migrator = new DatabaseMigrator(plugin);
+    }
+    
+    @AfterEach
+    void closeDatabase() {
+        source.close();
+    }
+    
+    @Test
+    void resumesFromCheckpointAfterStopInsidePartition() throws Exception {
+        // Запись в целевую БД считается триггером и обрывается на третьей порции балансов
+        try (Connection target = connect(targetFile); Statement stmt = target.createStatement()) {
+            DatabaseDialect.SQLITE.createTables(target);
+            stmt.execute("CREATE TABLE writes (n INTEGER)");
+            stmt.execute("CREATE TRIGGER count_writes BEFORE INSERT ON balances BEGIN INSERT INTO writes VALUES (1); END");
+            stmt.execute("CREATE TRIGGER stop_copy BEFORE INSERT ON balances WHEN (SELECT COUNT(*) FROM writes) >= "
+                + (2 * BATCH_SIZE + BATCH_SIZE / 2) + " BEGIN SELECT RAISE(ABORT, 'остановка переноса'); END");
+        }
+        
+        assertThrows(SQLException.class, () -> migrate(endpoint(sourceFile)));
+        
+        File checkpointFile = new File(dataFolder, "migration/migration.properties");
+        Properties checkpoint = new Properties();
+        try (InputStream in = Files.newInputStream(checkpointFile.toPath())) {
+            checkpoint.load(in);
+        }
+        assertEquals(String.valueOf(2 * BATCH_SIZE), checkpoint.getProperty("balances.0.last"));
+        assertEquals(2 * BATCH_SIZE, count(targetFile, "SELECT COUNT(*) FROM writes"));
+        
+        try (Connection target = connect(targetFile); Statement stmt = target.createStatement()) {
+            stmt.execute("DROP TRIGGER stop_copy");
+        }
+        
+        // Повторный запуск копирует только оставшиеся балансы
+        Map<DataTable, DatabaseMigrator.TableReport> reports = migrate(endpoint(sourceFile));
+        assertMatching(reports);
+        assertEquals(ACCOUNTS, count(targetFile, "SELECT COUNT(*) FROM writes"));
+        assertEquals(TRANSACTIONS, count(targetFile, "SELECT COUNT(*) FROM transactions"));
+        assertFalse(checkpointFile.exists());
+    }
+    
+    @Test
+    void catchesUpRowsWrittenDuringCopy() throws Exception {
+        UUID newcomer = UUID.randomUUID();
+        Transaction late = new Transaction(null, "Newcomer", null, newcomer, CURRENCY, 77, Transaction.TransactionType.GIVE);
+        AtomicInteger opened = new AtomicInteger();
+        
+        // Третье соединение с исходной БД открывается после копирования балансов,
+        // перед копированием транзакций: в это время игроки продолжают играть
+        DatabaseMigrator.Endpoint sourceEndpoint = new DatabaseMigrator.Endpoint(DatabaseDialect.SQLITE, () -> {
+            if (opened.incrementAndGet() == 3) {
+                try {
+                    source.applyMutations(List.of(
+                        LedgerMutation.deposit(accounts.get(0), "player0", CURRENCY, 500, null),
+                        LedgerMutation.set(newcomer, "Newcomer", CURRENCY, 42, late)
+                    ));
+                } catch (Exception e) {
+                    throw new SQLException(e);
+                }
+                source.updatePlayerName(accounts.get(1), "Renamed");
+            }
+            return connect(sourceFile);
+        });
+        
+        Map<DataTable, DatabaseMigrator.TableReport> reports = migrate(sourceEndpoint);
+        assertTrue(opened.get() > 3);
+        assertMatching(reports);
+        
+        assertEquals(ACCOUNTS + 1, reports.get(DataTable.BALANCES).getTarget().getRows());
+        assertEquals(TRANSACTIONS + 1, reports.get(DataTable.TRANSACTIONS).getTarget().getRows());
+        assertEquals(1_500, count(targetFile, "SELECT balance FROM balances WHERE player_uuid = '" + accounts.get(0) + "'"));
+        assertEquals(42, count(targetFile, "SELECT balance FROM balances WHERE player_uuid = '" + newcomer + "'"));
+        assertEquals(1, count(targetFile, "SELECT COUNT(*) FROM balances WHERE player_name = 'Renamed'"));
+        assertEquals(1, count(targetFile, "SELECT COUNT(*) FROM transactions WHERE id = '" + late.getId() + "'"));
+    }
+    
+    private Map<DataTable, DatabaseMigrator.TableReport> migrate(DatabaseMigrator.Endpoint sourceEndpoint) throws Exception {
+        return migrator.migrate(sourceEndpoint, endpoint(targetFile), false, rows -> { });
+    }
+    
+    private static DatabaseMigrator.Endpoint endpoint(File file) {
+        return new DatabaseMigrator.Endpoint(DatabaseDialect.SQLITE, () -> connect(file));
+    }
+    
+    private static Connection connect(File file) throws SQLException {
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = 5000");
+        }
+        return connection;
+    }
+    
+    private static long count(File file, String sql) throws SQLException {
+        try (Connection connection = connect(file);
+             PreparedStatement stmt = connection.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            assertTrue(rs.next());
+            return rs.getLong(1);
+        }
+    }
+    
+    private static void assertMatching(Map<DataTable, DatabaseMigrator.TableReport> reports) {
+        for (Map.Entry<DataTable, DatabaseMigrator.TableReport> entry : reports.entrySet()) {
+            assertTrue(entry.getValue().isMatching(), "расхождение в таблице " + entry.getKey().getTableName());
+        }
+    }
+    
+    private File folder(String name) {
+        File folder = new File(dataFolder, name);
+        assertTrue(folder.mkdirs());
+        return folder;
+    }
+}
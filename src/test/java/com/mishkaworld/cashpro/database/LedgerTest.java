@@ -0,0 +1,169 @@
+package com.mishkaworld.cashpro.database;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.TestPlugins;
+import com.mishkaworld.cashpro.economy.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Ожидание результата журнала операций: отказ по истечении времени
+ * ожидания без записи отменённого изменения, ограниченное ожидание уже
+ * записываемого изменения, отказ после остановки и ошибка слушателя
+ * транзакций после фиксации пакета
+ * 
+ * @author Misha Ermakov
+ */
+class LedgerTest {
+    
+    private static final String CURRENCY = "rub";
+    private static final UUID PLAYER = UUID.randomUUID();
+    
+    private final CountDownLatch entered = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private Ledger ledger;
+    
+    @TempDir
+    File dataFolder;
+    
+    @AfterEach
+    void stopLedger() {
+        release.countDown();
+        ledger.shutdown();
+    }
+    
+    @Test
+    void timedOutMutationIsCancelledAndNeverApplied() throws Exception {
+        MemoryStorageBackend storage = new MemoryStorageBackend() {
+            @Override
+            public List<LedgerMutation.Result> applyMutations(List<LedgerMutation> mutations) {
+                // Первый пакет зависает, пока тест его не отпустит
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.applyMutations(mutations);
+            }
+        };
+        start(storage, 1);
+        
+        CompletableFuture<LedgerMutation.Result> first = CompletableFuture.supplyAsync(
+            () -> ledger.apply(LedgerMutation.deposit(PLAYER, "Steve", CURRENCY, 10, null)));
+        entered.await();
+        
+        // Журнал занят первым пакетом: второе изменение не дождётся записи
+        LedgerMutation.Result second = ledger.apply(LedgerMutation.deposit(PLAYER, "Steve", CURRENCY, 5, null));
+        assertEquals(LedgerMutation.Status.FAILED, second.getStatus());
+        
+        // Первое изменение уже записывалось, поэтому дожидается фиксации
+        release.countDown();
+        LedgerMutation.Result applied = first.get();
+        assertTrue(applied.isApplied());
+        assertEquals(10, applied.getBalance());
+        
+        ledger.shutdown();
+        assertEquals(10, storage.getBalance(PLAYER, CURRENCY));
+        assertEquals(1, ledger.getFailed());
+    }
+    
+    @Test
+    void takenMutationWaitsForCommitOnlyUntilTimeout() throws Exception {
+        MemoryStorageBackend storage = new MemoryStorageBackend() {
+            @Override
+            public List<LedgerMutation.Result> applyMutations(List<LedgerMutation> mutations) {
+                // Запись зависает дольше двух сроков ожидания
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.applyMutations(mutations);
+            }
+        };
+        start(storage, 1);
+        
+        long start = System.nanoTime();
+        LedgerMutation.Result result = ledger.apply(LedgerMutation.deposit(PLAYER, "Steve", CURRENCY, 10, null));
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        
+        assertTrue(entered.await(0, TimeUnit.SECONDS));
+        assertEquals(LedgerMutation.Status.FAILED, result.getStatus());
+        assertTrue(millis < 5_000, "ожидание не ограничено: " + millis + " мс");
+    }
+    
+    @Test
+    void throwingListenerDoesNotReapplyCommittedBatch() {
+        CashProReloaded plugin = TestPlugins.create();
+        DatabaseManager databaseManager = TestPlugins.openDatabase(plugin, dataFolder);
+        databaseManager.setTransactionListener(transaction -> {
+            throw new IllegalStateException("сбой слушателя");
+        });
+        ledger = new Ledger(plugin, databaseManager);
+        when(plugin.getLedger()).thenReturn(ledger);
+        ledger.initialize();
+        
+        try {
+            UUID alex = UUID.randomUUID();
+            LedgerMutation first = LedgerMutation.deposit(PLAYER, "Steve", CURRENCY, 10,
+                new Transaction("SYSTEM", "Steve", null, PLAYER, CURRENCY, 10, Transaction.TransactionType.GIVE));
+            LedgerMutation second = LedgerMutation.deposit(alex, "Alex", CURRENCY, 20,
+                new Transaction("SYSTEM", "Alex", null, alex, CURRENCY, 20, Transaction.TransactionType.GIVE));
+            
+            // Слушатель падает после фиксации: изменения не повторяются и не получают отказ
+            ledger.submit(first);
+            ledger.submit(second);
+            
+            assertEquals(LedgerMutation.Status.APPLIED, first.getFuture().join().getStatus());
+            assertEquals(LedgerMutation.Status.APPLIED, second.getFuture().join().getStatus());
+            ledger.shutdown();
+            
+            assertEquals(10, databaseManager.getBalance(PLAYER, CURRENCY));
+            assertEquals(20, databaseManager.getBalance(alex, CURRENCY));
+            assertEquals(1, databaseManager.getPlayerTransactionsCount(PLAYER, CURRENCY));
+            assertEquals(1, databaseManager.getPlayerTransactionsCount(alex, CURRENCY));
+            assertEquals(0, ledger.getFailed());
+        } finally {
+            ledger.shutdown();
+            databaseManager.close();
+        }
+    }
+    
+    @Test
+    void mutationAfterShutdownIsRejected() {
+        MemoryStorageBackend storage = new MemoryStorageBackend();
+        start(storage, 10);
+        
+        assertTrue(ledger.apply(LedgerMutation.deposit(PLAYER, "Steve", CURRENCY, 10, null)).isApplied());
+        ledger.shutdown();
+        
+        LedgerMutation rejected = ledger.submit(LedgerMutation.deposit(PLAYER, "Steve", CURRENCY, 5, null));
+        assertEquals(LedgerMutation.Status.FAILED, rejected.getFuture().join().getStatus());
+        assertEquals(LedgerMutation.Status.FAILED,
+            ledger.apply(LedgerMutation.withdraw(PLAYER, "Steve", CURRENCY, 5, null)).getStatus());
+        assertEquals(10, storage.getBalance(PLAYER, CURRENCY));
+    }
+    
+    private void start(StorageBackend storage, int timeoutSeconds) {
+        CashProReloaded plugin = TestPlugins.create();
+        when(plugin.getConfigManager().getLedgerTimeout()).thenReturn(timeoutSeconds);
+        
+        ledger = new Ledger(plugin, storage);
+        when(plugin.getLedger()).thenReturn(ledger);
+        ledger.initialize();
+    }
+}
@@ -0,0 +1,14 @@
+package com.mishkaworld.cashpro.database;
+
+/**
+ * Контракт хранилища для {@link MemoryStorageBackend}
+ * 
+ * @author Misha Ermakov
+ */
+class MemoryStorageBackendContractTest extends StorageBackendContractTest {
+    
+    @Override
+    protected StorageBackend open() {
+        return new MemoryStorageBackend();
+    }
+}
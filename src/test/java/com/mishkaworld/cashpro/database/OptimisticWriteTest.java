@@ -0,0 +1,165 @@
+package com.mishkaworld.cashpro.database;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.TestPlugins;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Запись балансов двумя серверами в один файл SQLite: в оптимистичном
+ * режиме (сравнение версии и повтор пакета) и с BEGIN IMMEDIATE обновления
+ * не теряются, а конфликт с чужой записью приводит к повтору пакета
+ * 
+ * @author Misha Ermakov
+ */
+class OptimisticWriteTest {
+    
+    private static final String CURRENCY = "rub";
+    private static final int THREADS_PER_SERVER = 4;
+    private static final int DEPOSITS_PER_THREAD = 250;
+    
+    @TempDir
+    File dataFolder;
+    
+    private final List<DatabaseManager> databases = new ArrayList<>();
+    private final List<Ledger> ledgers = new ArrayList<>();
+    
+    @AfterEach
+    void closeServers() {
+        for (Ledger ledger : ledgers) {
+            ledger.shutdown();
+        }
+        for (DatabaseManager databaseManager : databases) {
+            databaseManager.close();
+        }
+    }
+    
+    @ParameterizedTest(name = "optimistic = {0}")
+    @ValueSource(booleans = {true, false})
+    void concurrentServersDoNotLoseUpdates(boolean optimistic) throws Exception {
+        UUID account = UUID.randomUUID();
+        List<Ledger> servers = List.of(startServer(optimistic), startServer(optimistic));
+        servers.get(0).apply(LedgerMutation.set(account, "Steve", CURRENCY, 1_000, null));
+        
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS_PER_SERVER * servers.size());
+        List<Future<Integer>> workers = new ArrayList<>();
+        for (Ledger ledger : servers) {
+            for (int t = 0; t < THREADS_PER_SERVER; t++) {
+                workers.add(pool.submit(() -> {
+                    start.await();
+                    int applied = 0;
+                    for (int i = 0; i < DEPOSITS_PER_THREAD; i++) {
+                        if (ledger.apply(LedgerMutation.deposit(account, "Steve", CURRENCY, 1, null)).isApplied()) {
+                            applied++;
+                        }
+                    }
+                    return applied;
+                }));
+            }
+        }
+        
+        int applied = assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            start.countDown();
+            int total = 0;
+            for (Future<Integer> worker : workers) {
+                total += worker.get();
+            }
+            return total;
+        });
+        pool.shutdown();
+        
+        assertEquals(THREADS_PER_SERVER * servers.size() * DEPOSITS_PER_THREAD, applied);
+        assertEquals(1_000 + applied, databases.get(1).getBalance(account, CURRENCY));
+        
+        for (int i = 0; i < databases.size(); i++) {
+            ContentionStats stats = databases.get(i).getContentionStats();
+            assertEquals(0, stats.getExhausted());
+            if (!optimistic) {
+                assertEquals(0, stats.getAttempts());
+                assertEquals(0, stats.getConflicts());
+                continue;
+            }
+            
+            // Каждая попытка либо зафиксировала пакет, либо ушла на повтор после конфликта
+            assertEquals(ledgers.get(i).getCommits() + stats.getConflicts(), stats.getAttempts());
+            assertTrue(stats.getMaxRetries() <= 50, "повторов больше лимита: " + stats.getMaxRetries());
+            assertEquals(stats.getConflicts() > 0, stats.getMaxRetries() > 0);
+        }
+    }
+    
+    @Test
+    void conflictingWriteRetriesBatch() throws Exception {
+        UUID account = UUID.randomUUID();
+        Ledger ledger = startServer(true);
+        ledger.apply(LedgerMutation.set(account, "Steve", CURRENCY, 100, null));
+        DatabaseManager databaseManager = databases.get(0);
+        
+        // Другой сервер занимает запись и меняет строку, пока пакет читает баланс
+        try (Connection other = DriverManager.getConnection("jdbc:sqlite:" + new File(dataFolder, "cashpro.db"))) {
+            try (Statement stmt = other.createStatement()) {
+                stmt.execute("PRAGMA busy_timeout = 5000");
+                stmt.execute("BEGIN IMMEDIATE");
+            }
+            try (PreparedStatement stmt = other.prepareStatement(
+                    "UPDATE balances SET balance = balance + 50, version = version + 1 WHERE player_uuid = ?")) {
+                stmt.setString(1, account.toString());
+                stmt.executeUpdate();
+            }
+            
+            CompletableFuture<LedgerMutation.Result> deposit = CompletableFuture.supplyAsync(
+                () -> ledger.apply(LedgerMutation.deposit(account, "Steve", CURRENCY, 10, null)));
+            Thread.sleep(500);
+            
+            try (Statement stmt = other.createStatement()) {
+                stmt.execute("COMMIT");
+            }
+            
+            LedgerMutation.Result result = deposit.get();
+            assertTrue(result.isApplied());
+            assertEquals(160, result.getBalance());
+        }
+        
+        assertEquals(160, databaseManager.getBalance(account, CURRENCY));
+        assertTrue(databaseManager.getContentionStats().getConflicts() >= 1, "конфликт не обнаружен");
+        assertEquals(0, databaseManager.getContentionStats().getExhausted());
+    }
+    
+    private Ledger startServer(boolean optimistic) {
+        CashProReloaded plugin = TestPlugins.create();
+        when(plugin.getConfigManager().isOptimisticEnabled()).thenReturn(optimistic);
+        when(plugin.getConfigManager().getOptimisticMaxRetries()).thenReturn(50);
+        
+        DatabaseManager databaseManager = TestPlugins.openDatabase(plugin, dataFolder);
+        databases.add(databaseManager);
+        
+        Ledger ledger = new Ledger(plugin, databaseManager);
+        when(plugin.getLedger()).thenReturn(ledger);
+        ledger.initialize();
+        ledgers.add(ledger);
+        return ledger;
+    }
+}
@@ -0,0 +1,213 @@
+package com.mishkaworld.cashpro.database;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.TestPlugins;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Пул соединений для чтения: возвращённое соединение не держит открытую
+ * транзакцию, чтение не ждёт записи через общее соединение. При смешанной
+ * нагрузке задержка чтения и ожидание соединения ограничены: с WAL чтение
+ * не стоит в очереди за пакетами записи, без WAL ждёт не дольше нескольких
+ * пакетов
+ * 
+ * @author Misha Ermakov
+ */
+class ReaderPoolTest {
+    
+    private static final String CURRENCY = "rub";
+    private static final int ACCOUNTS = 2_000;
+    private static final int READERS = 4;
+    private static final long LOAD_MILLIS = 1_500;
+    private static final long WRITE_HOLD_MILLIS = 500;
+    private static final long WAL_BOUND_MILLIS = 200;
+    private static final long SHARED_BOUND_MILLIS = 1_000;
+    
+    @TempDir
+    File dataFolder;
+    
+    private DatabaseManager databaseManager;
+    private ReaderPool pool;
+    
+    @AfterEach
+    void closeDatabase() {
+        if (pool != null) {
+            pool.close();
+        }
+        if (databaseManager != null) {
+            databaseManager.close();
+        }
+    }
+    
+    @Test
+    void releaseRollsBackOpenTransaction() throws Exception {
+        UUID account = UUID.randomUUID();
+        open(true);
+        databaseManager.applyMutations(List.of(LedgerMutation.set(account, "Steve", CURRENCY, 100, null)));
+        pool = new ReaderPool("jdbc:sqlite:" + new File(dataFolder, "cashpro.db").getAbsolutePath(), 1);
+        
+        // Запрос оставил транзакцию открытой: она держит снимок БД с балансом 100
+        Connection reader = pool.acquire();
+        reader.setAutoCommit(false);
+        assertEquals(100, readBalance(reader, account));
+        pool.release(reader);
+        
+        databaseManager.applyMutations(List.of(LedgerMutation.set(account, "Steve", CURRENCY, 200, null)));
+        
+        Connection next = pool.acquire();
+        assertSame(reader, next);
+        assertTrue(next.getAutoCommit());
+        assertEquals(200, readBalance(next, account));
+        pool.release(next);
+    }
+    
+    @ParameterizedTest(name = "wal = {0}")
+    @ValueSource(booleans = {true, false})
+    void readDoesNotWaitForWriterOnlyWithPool(boolean wal) throws Exception {
+        open(wal);
+        seed();
+        
+        // Запись держит общее соединение, как долгий пакет журнала
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            synchronized (databaseManager) {
+                locked.countDown();
+                try {
+                    Thread.sleep(WRITE_HOLD_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        writer.start();
+        locked.await();
+        
+        long start = System.nanoTime();
+        assertEquals(10, databaseManager.getTopPlayers(CURRENCY, 10).size());
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        writer.join();
+        
+        if (wal) {
+            assertTrue(millis < WRITE_HOLD_MILLIS / 2, "чтение ждало запись: " + millis + " мс");
+        } else {
+            assertTrue(millis >= WRITE_HOLD_MILLIS * 4 / 5, "чтение не ждало запись: " + millis + " мс");
+        }
+    }
+    
+    @ParameterizedTest(name = "wal = {0}")
+    @ValueSource(booleans = {true, false})
+    void mixedLoadLatency(boolean wal) throws Exception {
+        open(wal);
+        List<UUID> accounts = seed();
+        
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger batches = new AtomicInteger();
+        List<long[]> latencies = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        
+        threads.add(new Thread(() -> {
+            int next = 0;
+            while (running.get()) {
+                List<LedgerMutation> batch = new ArrayList<>();
+                for (int i = 0; i < 50; i++) {
+                    batch.add(LedgerMutation.deposit(accounts.get(next++ % accounts.size()), "player", CURRENCY, 1, null));
+                }
+                try {
+                    databaseManager.applyMutations(batch);
+                    batches.incrementAndGet();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }));
+        for (int r = 0; r < READERS; r++) {
+            long[] samples = new long[100_000];
+            latencies.add(samples);
+            threads.add(new Thread(() -> {
+                int count = 0;
+                while (running.get() && count < samples.length - 1) {
+                    long start = System.nanoTime();
+                    databaseManager.getTopPlayers(CURRENCY, 10);
+                    samples[++count] = System.nanoTime() - start;
+                }
+                samples[0] = count;
+            }));
+        }
+        
+        threads.forEach(Thread::start);
+        Thread.sleep(LOAD_MILLIS);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        long[] all = latencies.stream()
+            .flatMapToLong(samples -> Arrays.stream(samples, 1, (int) samples[0] + 1))
+            .sorted()
+            .toArray();
+        assertTrue(all.length > 0, "нет ни одного чтения");
+        assertTrue(batches.get() > 0, "нет ни одной записи");
+        
+        // Читателей не больше, чем соединений в пуле: с WAL чтение не ждёт ни соединения, ни записи
+        double p99 = percentile(all, 0.99);
+        double maxWait = databaseManager.getReadStats().getMaxWaitMillis();
+        long bound = wal ? WAL_BOUND_MILLIS : SHARED_BOUND_MILLIS;
+        assertTrue(p99 < bound, "p99 чтения " + p99 + " мс");
+        assertTrue(maxWait < bound, "ожидание соединения " + maxWait + " мс");
+    }
+    
+    private void open(boolean wal) {
+        CashProReloaded plugin = TestPlugins.create();
+        databaseManager = TestPlugins.openDatabase(plugin, dataFolder, wal);
+    }
+    
+    private List<UUID> seed() throws Exception {
+        List<UUID> accounts = new ArrayList<>();
+        List<LedgerMutation> mutations = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            UUID uuid = UUID.randomUUID();
+            accounts.add(uuid);
+            mutations.add(LedgerMutation.set(uuid, "player" + i, CURRENCY, 1_000 + i, null));
+        }
+        databaseManager.applyMutations(mutations);
+        return accounts;
+    }
+    
+    private static long readBalance(Connection connection, UUID account) throws Exception {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT balance FROM balances WHERE player_uuid = ? AND currency = ?")) {
+            stmt.setString(1, account.toString());
+            stmt.setString(2, CURRENCY);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+    
+    private static double percentile(long[] sorted, double quantile) {
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
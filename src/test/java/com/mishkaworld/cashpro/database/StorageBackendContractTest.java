@@ -0,0 +1,466 @@
+package com.mishkaworld.cashpro.database;
+
+import com.mishkaworld.cashpro.economy.BulkJob;
+import com.mishkaworld.cashpro.economy.PlayerBalance;
+import com.mishkaworld.cashpro.economy.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Контракт {@link StorageBackend}: одни и те же проверки выполняются для
+ * каждой реализации, подкласс только создаёт и закрывает хранилище.
+ * Новое хранилище проверяется добавлением ещё одного подкласса
+ * 
+ * @author Misha Ermakov
+ */
+abstract class StorageBackendContractTest {
+    
+    private static final String CURRENCY = "rub";
+    private static final String OTHER_CURRENCY = "usd";
+    private static final int PAYMENTS = 25;
+    private static final BulkJob INTEREST = new BulkJob("interest", BulkJob.Type.INTEREST, CURRENCY,
+        86_400_000L, 0.1, 0, 0);
+    
+    private final UUID steve = UUID.randomUUID();
+    private final UUID alex = UUID.randomUUID();
+    
+    protected StorageBackend storage;
+    
+    /**
+     * Создать пустое хранилище
+     */
+    protected abstract StorageBackend open() throws Exception;
+    
+    /**
+     * Освободить ресурсы хранилища
+     */
+    protected void close() {
+    }
+    
+    @BeforeEach
+    void openStorage() throws Exception {
+        storage = open();
+    }
+    
+    @AfterEach
+    void closeStorage() {
+        close();
+    }
+    
+    @Test
+    void mutationsApplyInOrderWithIncreasingChangeSeq() throws Exception {
+        List<LedgerMutation.Result> results = storage.applyMutations(List.of(
+            LedgerMutation.set(steve, "Steve", CURRENCY, 100, null),
+            LedgerMutation.withdraw(steve, "Steve", CURRENCY, 150, null),
+            LedgerMutation.deposit(steve, "Steve", CURRENCY, 5, null),
+            LedgerMutation.transfer(steve, "Steve", alex, "Alex", CURRENCY, 30, null)
+        ));
+        
+        assertEquals(100, results.get(0).getBalance());
+        assertEquals(LedgerMutation.Status.INSUFFICIENT_FUNDS, results.get(1).getStatus());
+        assertEquals(105, results.get(2).getBalance());
+        assertEquals(75, results.get(3).getBalance());
+        assertEquals(30, results.get(3).getTargetBalance());
+        
+        assertTrue(results.get(0).getChangeSeq() > 0);
+        assertTrue(results.get(2).getChangeSeq() > results.get(0).getChangeSeq());
+        assertTrue(results.get(3).getChangeSeq() > results.get(2).getChangeSeq());
+        assertTrue(results.get(3).getTargetChangeSeq() > results.get(2).getChangeSeq());
+        assertEquals(Math.max(results.get(3).getChangeSeq(), results.get(3).getTargetChangeSeq()), storage.getMaxChangeSeq());
+        
+        assertEquals(75, storage.getBalance(steve, CURRENCY));
+        assertEquals(30, storage.getBalance(alex, CURRENCY));
+        assertEquals(0, storage.getBalance(alex, OTHER_CURRENCY));
+    }
+    
+    @Test
+    void accountsAndNamesAreReadBack() throws Exception {
+        storage.applyMutations(List.of(
+            LedgerMutation.set(steve, "Steve", CURRENCY, 100, null),
+            LedgerMutation.set(steve, "Steve", OTHER_CURRENCY, 7, null),
+            LedgerMutation.set(alex, "Alex", CURRENCY, 50, null)
+        ));
+        
+        Map<String, BalanceRecord> records = storage.getBalanceRecords(steve, Set.of(CURRENCY, OTHER_CURRENCY, "eur"));
+        assertEquals(Set.of(CURRENCY, OTHER_CURRENCY), records.keySet());
+        assertEquals(7, records.get(OTHER_CURRENCY).getBalance());
+        assertTrue(records.get(CURRENCY).getChangeSeq() > 0);
+        
+        assertTrue(storage.playerExists(alex, CURRENCY));
+        assertFalse(storage.playerExists(alex, OTHER_CURRENCY));
+        assertEquals(3, storage.loadAllBalances().size());
+        
+        assertTrue(storage.updatePlayerName(steve, "Steve2"));
+        assertFalse(storage.updatePlayerName(steve, "Steve2"));
+        assertEquals("Steve2", storage.loadPlayerNames().get(steve));
+        assertEquals("Alex", storage.loadPlayerNames().get(alex));
+    }
+    
+    @Test
+    void topPlayersAreOrderedByBalance() throws Exception {
+        storage.applyMutations(List.of(
+            LedgerMutation.set(steve, "Steve", CURRENCY, 100, null),
+            LedgerMutation.set(alex, "Alex", CURRENCY, 300, null),
+            LedgerMutation.set(UUID.randomUUID(), "Herobrine", CURRENCY, 200, null),
+            LedgerMutation.set(UUID.randomUUID(), "Notch", OTHER_CURRENCY, 1_000, null)
+        ));
+        
+        List<PlayerBalance> top = storage.getTopPlayers(CURRENCY, 2);
+        assertEquals(2, top.size());
+        assertEquals("Alex", top.get(0).getPlayerName());
+        assertEquals("Herobrine", top.get(1).getPlayerName());
+    }
+    
+    @Test
+    void bulkJobPeriodIsClaimedOnceAndProgressAccumulates() throws Exception {
+        storage.applyMutations(List.of(
+            LedgerMutation.set(steve, "Steve", CURRENCY, 100, null),
+            LedgerMutation.set(alex, "Alex", OTHER_CURRENCY, 100, null),
+            LedgerMutation.set(alex, "Alex", CURRENCY, 200, null)
+        ));
+        assertNull(storage.getBulkJobState(INTEREST.getName()));
+        
+        BulkJobState claimed = storage.claimBulkJob(INTEREST.getName(), 1);
+        assertNotNull(claimed);
+        assertFalse(claimed.isFinished());
+        assertEquals(0, claimed.getLastId());
+        assertEquals(3, storage.readBalancesRange(CURRENCY, 0, claimed.getMaxId()).size()
+            + storage.readBalancesRange(OTHER_CURRENCY, 0, claimed.getMaxId()).size());
+        
+        // Незавершённый период второй раз не занимается
+        assertNull(storage.claimBulkJob(INTEREST.getName(), 2));
+        
+        // Две порции (первый созданный счёт и остальные): продвижение складывается, а не заменяется
+        BulkChunk first = storage.applyBulkJob(INTEREST, 0, 1);
+        BulkChunk second = storage.applyBulkJob(INTEREST, 1, claimed.getMaxId());
+        assertEquals(1, first.getAccounts());
+        assertEquals(10, first.getAmount());
+        assertEquals(1, second.getAccounts());
+        assertEquals(20, second.getAmount());
+        
+        BulkJobState progress = storage.getBulkJobState(INTEREST.getName());
+        assertEquals(claimed.getMaxId(), progress.getLastId());
+        assertEquals(2, progress.getAccounts());
+        assertEquals(30, progress.getAmount());
+        assertEquals(110, storage.getBalance(steve, CURRENCY));
+        assertEquals(220, storage.getBalance(alex, CURRENCY));
+        assertEquals(100, storage.getBalance(alex, OTHER_CURRENCY));
+        
+        // Пакет балансов из памяти тоже прибавляет своё продвижение
+        storage.saveBalances(List.of(new BalanceRecord(steve, "Steve", CURRENCY, 111)),
+            new BulkProgress(INTEREST.getName(), claimed.getMaxId(), 1, 1));
+        assertEquals(3, storage.getBulkJobState(INTEREST.getName()).getAccounts());
+        assertEquals(31, storage.getBulkJobState(INTEREST.getName()).getAmount());
+        assertEquals(111, storage.getBalance(steve, CURRENCY));
+        
+        Transaction summary = new Transaction("SYSTEM", INTEREST.getName(), null, null, CURRENCY, 31,
+            INTEREST.getTransactionType());
+        storage.finishBulkJob(INTEREST.getName(), summary);
+        assertTrue(storage.getBulkJobState(INTEREST.getName()).isFinished());
+        
+        TransactionQuery query = new TransactionQuery(CURRENCY);
+        query.setType(INTEREST.getTransactionType());
+        List<Transaction> history = storage.searchTransactions(query, 10).getTransactions();
+        assertEquals(1, history.size());
+        assertEquals(31, history.get(0).getAmount());
+        
+        // Завершённый период повторно не занимается, следующий - занимается заново
+        assertNull(storage.claimBulkJob(INTEREST.getName(), 1));
+        BulkJobState next = storage.claimBulkJob(INTEREST.getName(), 2);
+        assertNotNull(next);
+        assertEquals(2, next.getPeriod());
+        assertEquals(0, next.getAccounts());
+        assertEquals(0, next.getAmount());
+    }
+    
+    @Test
+    void progressWithoutClaimedPeriodIsIgnored() throws Exception {
+        storage.applyMutations(List.of(LedgerMutation.set(steve, "Steve", CURRENCY, 100, null)));
+        
+        storage.applyBulkJob(INTEREST, 0, Long.MAX_VALUE);
+        assertNull(storage.getBulkJobState(INTEREST.getName()));
+        assertEquals(110, storage.getBalance(steve, CURRENCY));
+    }
+    
+    @Test
+    void bulkChunkSharesBatchChangeSeqWithMutations() throws Exception {
+        storage.applyMutations(List.of(
+            LedgerMutation.set(steve, "Steve", CURRENCY, 100, null),
+            LedgerMutation.set(alex, "Alex", CURRENCY, 200, null)
+        ));
+        
+        // Порция задания в одном пакете с обычными изменениями получает номера между ними
+        List<LedgerMutation.Result> results = storage.applyMutations(List.of(
+            LedgerMutation.deposit(steve, "Steve", CURRENCY, 10, null),
+            LedgerMutation.bulkJob(INTEREST, 0, Long.MAX_VALUE),
+            LedgerMutation.deposit(alex, "Alex", CURRENCY, 5, null)
+        ));
+        
+        BulkChunk chunk = results.get(1).getChunk();
+        assertEquals(2, chunk.getAccounts());
+        assertEquals(31, chunk.getAmount());
+        long previous = results.get(0).getChangeSeq();
+        for (BalanceRecord record : chunk.getRecords()) {
+            assertTrue(record.getChangeSeq() > previous);
+            previous = record.getChangeSeq();
+        }
+        assertTrue(results.get(2).getChangeSeq() > previous);
+        assertEquals(results.get(2).getChangeSeq(), storage.getMaxChangeSeq());
+        
+        assertEquals(121, storage.getBalance(steve, CURRENCY));
+        assertEquals(225, storage.getBalance(alex, CURRENCY));
+    }
+    
+    @Test
+    void rollupsMergeAndAggregateTypes() throws Exception {
+        storage.mergeRollups(List.of(
+            new RollupBucket("hour", 3_600, CURRENCY, "PAY", 2, 30, 20),
+            new RollupBucket("hour", 3_600, CURRENCY, "GIVE", 1, 100, 100),
+            new RollupBucket("hour", 7_200, CURRENCY, "PAY", 1, 5, 5),
+            new RollupBucket("hour", 3_600, OTHER_CURRENCY, "PAY", 9, 90, 10),
+            new RollupBucket("day", 0, CURRENCY, "PAY", 3, 35, 20)
+        ));
+        storage.mergeRollups(List.of(new RollupBucket("hour", 3_600, CURRENCY, "PAY", 1, 50, 50)));
+        
+        List<RollupBucket> pay = storage.getRollups("hour", CURRENCY, "PAY", 0, 7_200);
+        assertEquals(2, pay.size());
+        assertEquals(3_600, pay.get(0).getBucketStart());
+        assertEquals(3, pay.get(0).getCount());
+        assertEquals(80, pay.get(0).getSum());
+        assertEquals(50, pay.get(0).getMax());
+        assertEquals(7_200, pay.get(1).getBucketStart());
+        
+        // Без типа сводки интервала складываются по всем типам
+        List<RollupBucket> all = storage.getRollups("hour", CURRENCY, null, 0, 3_600);
+        assertEquals(1, all.size());
+        assertNull(all.get(0).getTransactionType());
+        assertEquals(4, all.get(0).getCount());
+        assertEquals(180, all.get(0).getSum());
+        assertEquals(100, all.get(0).getMax());
+        
+        assertTrue(storage.getRollups("minute", CURRENCY, null, 0, 7_200).isEmpty());
+    }
+    
+    @Test
+    void searchFiltersSelectMatchingTransactions() throws Exception {
+        LocalDateTime start = LocalDateTime.of(2026, 1, 1, 12, 0);
+        seedHistory(start);
+        
+        TransactionQuery between = new TransactionQuery(CURRENCY);
+        between.setParticipant(steve);
+        between.setCounterparty(alex);
+        assertEquals(PAYMENTS, search(between).size());
+        
+        TransactionQuery incoming = new TransactionQuery(CURRENCY);
+        incoming.setParticipant(alex);
+        assertEquals(PAYMENTS + 3, search(incoming).size());
+        
+        TransactionQuery gifts = new TransactionQuery(CURRENCY);
+        gifts.setType(Transaction.TransactionType.GIVE);
+        assertEquals(5, search(gifts).size());
+        
+        // Границы суммы включаются
+        TransactionQuery amounts = new TransactionQuery(CURRENCY);
+        amounts.setParticipant(steve);
+        amounts.setMinAmount(10L);
+        amounts.setMaxAmount(12L);
+        List<Transaction> found = search(amounts);
+        assertEquals(3, found.size());
+        assertEquals(12, found.get(0).getAmount());
+        assertEquals(10, found.get(2).getAmount());
+        
+        // Начало периода включается, конец - нет
+        TransactionQuery period = new TransactionQuery(CURRENCY);
+        period.setParticipant(steve);
+        period.setCounterparty(alex);
+        period.setSince(start.plusMinutes(3));
+        period.setUntil(start.plusMinutes(5));
+        assertEquals(4, search(period).size());
+        
+        TransactionQuery other = new TransactionQuery(OTHER_CURRENCY);
+        other.setParticipant(steve);
+        assertTrue(search(other).isEmpty());
+    }
+    
+    @Test
+    void searchCursorVisitsEveryTransactionOnce() throws Exception {
+        seedHistory(LocalDateTime.of(2026, 1, 1, 12, 0));
+        
+        // Страницы по 7 строк режут пары транзакций с одинаковым временем
+        List<Transaction> visited = new ArrayList<>();
+        String cursor = null;
+        do {
+            TransactionQuery query = new TransactionQuery(CURRENCY);
+            query.setParticipant(steve);
+            if (cursor != null) {
+                assertTrue(query.setCursor(cursor));
+            }
+            TransactionQuery.Page page = storage.searchTransactions(query, 7);
+            assertTrue(page.getTransactions().size() <= 7);
+            visited.addAll(page.getTransactions());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        
+        assertEquals(PAYMENTS + 5, visited.size());
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < visited.size(); i++) {
+            assertTrue(ids.add(visited.get(i).getId()));
+            if (i > 0) {
+                assertFalse(visited.get(i).getTimestamp().isAfter(visited.get(i - 1).getTimestamp()));
+            }
+        }
+        
+        TransactionQuery query = new TransactionQuery(CURRENCY);
+        assertFalse(query.setCursor("abc"));
+        assertFalse(query.setCursor("-5"));
+        assertFalse(query.setCursor("100-x"));
+    }
+    
+    @Test
+    void transactionCountsIncludeBothSides() throws Exception {
+        seedHistory(LocalDateTime.of(2026, 1, 1, 12, 0));
+        
+        assertEquals(PAYMENTS + 5, storage.getPlayerTransactionsCount(steve, CURRENCY));
+        assertEquals(PAYMENTS + 3, storage.getPlayerTransactionsCount(alex, CURRENCY));
+        assertEquals(0, storage.getPlayerTransactionsCount(steve, OTHER_CURRENCY));
+        assertEquals(0, storage.getPlayerTransactionsCount(UUID.randomUUID(), CURRENCY));
+    }
+    
+    @Test
+    void changesSinceReturnLatestBalancePerAccount() throws Exception {
+        storage.applyMutations(List.of(
+            LedgerMutation.set(steve, "Steve", CURRENCY, 100, null),
+            LedgerMutation.set(alex, "Alex", CURRENCY, 50, null),
+            LedgerMutation.set(steve, "Steve", OTHER_CURRENCY, 7, null)
+        ));
+        long seen = storage.getMaxChangeSeq();
+        
+        List<BalanceChange> all = storage.getChangesSince(0, 100);
+        assertEquals(3, all.size());
+        assertEquals(2, storage.getChangesSince(0, 2).size());
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i).getChangeSeq() > all.get(i - 1).getChangeSeq());
+        }
+        assertTrue(storage.getChangesSince(seen, 100).isEmpty());
+        
+        // Несколько изменений счёта приходят одной записью с последним балансом
+        storage.applyMutations(List.of(
+            LedgerMutation.deposit(steve, "Steve", CURRENCY, 5, null),
+            LedgerMutation.withdraw(steve, "Steve", CURRENCY, 20, null)
+        ));
+        List<BalanceChange> changes = storage.getChangesSince(seen, 100);
+        assertEquals(1, changes.size());
+        assertEquals(storage.getMaxChangeSeq(), changes.get(0).getChangeSeq());
+        assertEquals(steve, changes.get(0).getRecord().getPlayerUuid());
+        assertEquals(CURRENCY, changes.get(0).getRecord().getCurrency());
+        assertEquals(85, changes.get(0).getRecord().getBalance());
+    }
+    
+    @Test
+    void listenerSeesSavedTransactionsAndChunksReadInOrder() throws Exception {
+        List<Transaction> heard = new ArrayList<>();
+        storage.setTransactionListener(heard::add);
+        seedHistory(LocalDateTime.of(2026, 1, 1, 12, 0));
+        storage.setTransactionListener(null);
+        storage.applyMutations(List.of(LedgerMutation.deposit(steve, "Steve", CURRENCY, 1,
+            new Transaction(null, "Steve", null, steve, CURRENCY, 1, Transaction.TransactionType.GIVE))));
+        
+        int total = PAYMENTS + 8;
+        assertEquals(total, heard.size());
+        
+        // Чтение порциями по номеру записи с верхней границей на момент начала
+        List<Transaction> read = new ArrayList<>();
+        long afterRowId = 0;
+        while (true) {
+            TransactionChunk chunk = storage.readTransactions(afterRowId, total, 6);
+            if (chunk.getTransactions().isEmpty()) {
+                break;
+            }
+            assertTrue(chunk.getLastRowId() > afterRowId);
+            read.addAll(chunk.getTransactions());
+            afterRowId = chunk.getLastRowId();
+        }
+        assertEquals(total, read.size());
+        for (int i = 0; i < total; i++) {
+            assertEquals(heard.get(i).getId(), read.get(i).getId());
+        }
+        
+        // Экспорт читает те же транзакции в столбцах таблицы
+        RowChunk rows = storage.readRows(DataTable.TRANSACTIONS, 0, 1_000);
+        assertEquals(total + 1, rows.getRows().size());
+        assertEquals("pay0", rows.getRows().get(0)[0]);
+        assertEquals(alex.toString(), rows.getRows().get(0)[4]);
+        assertEquals("1", rows.getRows().get(0)[6]);
+        assertTrue(storage.readRows(DataTable.TRANSACTIONS, rows.getLastRowId(), 1_000).getRows().isEmpty());
+        
+        RowChunk balances = storage.readRows(DataTable.BALANCES, 0, 1);
+        assertEquals(1, balances.getRows().size());
+        assertEquals(steve.toString(), balances.getRows().get(0)[0]);
+        assertEquals("1", balances.getRows().get(0)[3]);
+    }
+    
+    @Test
+    void rollupsAreDeletedByAgeAndReset() throws Exception {
+        seedHistory(LocalDateTime.of(2026, 1, 1, 12, 0));
+        assertFalse(storage.hasRollups());
+        
+        storage.mergeRollups(List.of(
+            new RollupBucket("hour", 3_600, CURRENCY, "PAY", 1, 5, 5),
+            new RollupBucket("hour", 7_200, CURRENCY, "PAY", 1, 5, 5),
+            new RollupBucket("day", 0, CURRENCY, "PAY", 2, 10, 5)
+        ));
+        assertTrue(storage.hasRollups());
+        
+        assertEquals(1, storage.deleteRollupsBefore("hour", 7_200));
+        assertEquals(1, storage.getRollups("hour", CURRENCY, null, 0, 7_200).size());
+        assertEquals(1, storage.getRollups("day", CURRENCY, null, 0, 0).size());
+        
+        // Очистка возвращает номер последней транзакции и выполняет действие под блокировкой
+        List<Boolean> reset = new ArrayList<>();
+        long upToRowId = storage.resetRollups(() -> reset.add(true));
+        assertEquals(List.of(true), reset);
+        assertFalse(storage.hasRollups());
+        assertEquals(PAYMENTS + 8, storage.readTransactions(0, upToRowId, 1_000).getTransactions().size());
+    }
+    
+    private List<Transaction> search(TransactionQuery query) throws Exception {
+        return storage.searchTransactions(query, 100).getTransactions();
+    }
+    
+    /**
+     * Платежи Steve -> Alex парами с одинаковым временем, начисления Steve
+     * и платежи Alex третьему игроку
+     */
+    private void seedHistory(LocalDateTime start) throws Exception {
+        UUID herobrine = UUID.randomUUID();
+        List<LedgerMutation> mutations = new ArrayList<>();
+        for (int i = 0; i < PAYMENTS; i++) {
+            mutations.add(LedgerMutation.record(new Transaction("pay" + i, "Steve", "Alex", steve, alex, CURRENCY, i + 1,
+                Transaction.TransactionType.PAY, start.plusMinutes(i / 2))));
+        }
+        for (int i = 0; i < 5; i++) {
+            mutations.add(LedgerMutation.record(new Transaction("give" + i, null, "Steve", null, steve, CURRENCY, 100,
+                Transaction.TransactionType.GIVE, start.plusMinutes(i))));
+        }
+        for (int i = 0; i < 3; i++) {
+            mutations.add(LedgerMutation.record(new Transaction("other" + i, "Alex", "Herobrine", alex, herobrine, CURRENCY, 1,
+                Transaction.TransactionType.PAY, start.plusMinutes(i))));
+        }
+        storage.applyMutations(mutations);
+    }
+}
@@ -0,0 +1,164 @@
+package com.mishkaworld.cashpro.database;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.TestPlugins;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Сравнение исполнителей БД на одной нагрузке: пул обычных потоков
+ * и виртуальные потоки (только на Java 21+). Нагрузка - смесь чтения
+ * топа через пул читателей и записи балансов через synchronized-метод
+ * DatabaseManager. Проверяется, что все задачи выполнены, ограничение
+ * max-concurrent соблюдается, виртуальные потоки не медленнее пула больше
+ * чем вдвое, а на Java 17 исполнитель возвращается к пулу потоков
+ * 
+ * @author Misha Ermakov
+ */
+class StorageExecutorBenchmarkTest {
+    
+    private static final int TASKS = 4_000;
+    private static final int ACCOUNTS = 500;
+    private static final int MAX_CONCURRENT = 4;
+    
+    @TempDir
+    File dataFolder;
+    
+    private DatabaseManager databaseManager;
+    
+    @AfterEach
+    void closeDatabase() {
+        if (databaseManager != null) {
+            databaseManager.close();
+        }
+    }
+    
+    @Test
+    void compareExecutorsUnderMixedLoad() throws Exception {
+        CashProReloaded plugin = TestPlugins.create();
+        when(plugin.getConfigManager().getStorageMaxConcurrent()).thenReturn(MAX_CONCURRENT);
+        databaseManager = TestPlugins.openDatabase(plugin, dataFolder);
+        
+        List<UUID> accounts = new ArrayList<>();
+        List<LedgerMutation> seed = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            UUID uuid = UUID.randomUUID();
+            accounts.add(uuid);
+            seed.add(LedgerMutation.set(uuid, "player" + i, "rub", 1_000 + i, null));
+        }
+        databaseManager.applyMutations(seed);
+        
+        // Прогрев JIT и соединений, результат не учитывается
+        run(plugin, false, accounts);
+        
+        Result platform = run(plugin, false, accounts);
+        assertFalse(platform.virtualThreads);
+        assertEquals(TASKS, platform.completed);
+        assertTrue(platform.maxConcurrent <= MAX_CONCURRENT, "превышен max-concurrent: " + platform);
+        
+        run(plugin, true, accounts);
+        Result virtual = run(plugin, true, accounts);
+        assertEquals(TASKS, virtual.completed);
+        assertTrue(virtual.maxConcurrent <= MAX_CONCURRENT, "превышен max-concurrent: " + virtual);
+        
+        if (Runtime.version().feature() >= 21) {
+            // При одном ограничении max-concurrent виртуальные потоки не должны заметно проигрывать пулу
+            assertTrue(virtual.virtualThreads);
+            assertTrue(virtual.elapsedNanos <= 2 * platform.elapsedNanos,
+                "виртуальные потоки: " + virtual + "; пул: " + platform);
+        } else {
+            // До Java 21 настройка виртуальных потоков оставляет пул потоков
+            assertFalse(virtual.virtualThreads);
+        }
+    }
+    
+    /**
+     * Выполнить нагрузку: 4 из 5 задач читают топ, пятая зачисляет сумму на счёт
+     */
+    private Result run(CashProReloaded plugin, boolean virtualThreads, List<UUID> accounts) throws InterruptedException {
+        when(plugin.getConfigManager().isVirtualThreadsEnabled()).thenReturn(virtualThreads);
+        StorageExecutor executor = new StorageExecutor(plugin);
+        boolean virtual = executor.isVirtualThreads();
+        
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        long[] latencies = new long[TASKS];
+        CountDownLatch done = new CountDownLatch(TASKS);
+        
+        long start = System.nanoTime();
+        for (int i = 0; i < TASKS; i++) {
+            int index = i;
+            long submitted = System.nanoTime();
+            executor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    if (index % 5 == 4) {
+                        UUID uuid = accounts.get(index % accounts.size());
+                        databaseManager.applyMutations(List.of(LedgerMutation.deposit(uuid, "player", "rub", 1, null)));
+                    } else {
+                        databaseManager.getTopPlayers("rub", 10);
+                    }
+                    completed.incrementAndGet();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    running.decrementAndGet();
+                    latencies[index] = System.nanoTime() - submitted;
+                    done.countDown();
+                }
+            });
+        }
+        
+        assertTrue(done.await(60, TimeUnit.SECONDS), "задачи не завершились за 60 секунд");
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        
+        Arrays.sort(latencies);
+        return new Result(virtual, completed.get(), maxRunning.get(), elapsed,
+            latencies[TASKS / 2], latencies[TASKS * 99 / 100]);
+    }
+    
+    /**
+     * Результат одного прогона
+     */
+    private static final class Result {
+        private final boolean virtualThreads;
+        private final int completed;
+        private final int maxConcurrent;
+        private final long elapsedNanos;
+        private final long p50Nanos;
+        private final long p99Nanos;
+        
+        Result(boolean virtualThreads, int completed, int maxConcurrent, long elapsedNanos, long p50Nanos, long p99Nanos) {
+            this.virtualThreads = virtualThreads;
+            this.completed = completed;
+            this.maxConcurrent = maxConcurrent;
+            this.elapsedNanos = elapsedNanos;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%d задач за %d мс (%.0f задач/с), ожидание+выполнение p50 %.2f мс, p99 %.2f мс, одновременно до %d",
+                completed, elapsedNanos / 1_000_000, completed * 1e9 / elapsedNanos,
+                p50Nanos / 1e6, p99Nanos / 1e6, maxConcurrent);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.mishkaworld.cashpro.economy;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.TestPlugins;
+import com.mishkaworld.cashpro.database.BalanceRecord;
+import com.mishkaworld.cashpro.database.BulkChunk;
+import com.mishkaworld.cashpro.database.BulkJobState;
+import com.mishkaworld.cashpro.database.BulkProgress;
+import com.mishkaworld.cashpro.database.DatabaseManager;
+import com.mishkaworld.cashpro.database.Ledger;
+import com.mishkaworld.cashpro.database.LedgerMutation;
+import com.mishkaworld.cashpro.database.MemoryStorageBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Массовые задания: сбой порции не оставляет расписание занятым,
+ * порция, запущенная во время чужой записи в общую БД, дожидается
+ * её фиксации и считает изменение по новым балансам, а в режиме memory
+ * сохранение порции не держит блокировки счетов
+ * 
+ * @author Misha Ermakov
+ */
+class BulkJobSchedulerTest {
+    
+    private static final String CURRENCY = "rub";
+    private static final UUID PLAYER = UUID.randomUUID();
+    private static final BulkJob INTEREST = new BulkJob("interest", BulkJob.Type.INTEREST, CURRENCY,
+        86_400_000L, 0.1, 0, 0);
+    
+    @TempDir
+    File dataFolder;
+    
+    private CashProReloaded plugin;
+    private DatabaseManager databaseManager;
+    
+    @BeforeEach
+    void openDatabase() throws Exception {
+        plugin = TestPlugins.create();
+        when(plugin.getConfigManager().getBulkJobs()).thenReturn(List.of(INTEREST));
+        when(plugin.getConfigManager().getBulkJobChunkSize()).thenReturn(1_000);
+        when(plugin.getConfigManager().getBulkJobChunkBudget()).thenReturn(50L);
+        
+        databaseManager = TestPlugins.openDatabase(plugin, dataFolder);
+        databaseManager.applyMutations(List.of(LedgerMutation.set(PLAYER, "Steve", CURRENCY, 100, null)));
+    }
+    
+    @AfterEach
+    void closeDatabase() {
+        databaseManager.close();
+    }
+    
+    @Test
+    void failedChunkReleasesScheduler() throws Exception {
+        CurrencyManager currencyManager = mock(CurrencyManager.class);
+        when(currencyManager.applyBulkJob(any(), anyLong(), anyLong()))
+            .thenThrow(new IllegalStateException("сбой порции"))
+            .thenAnswer(invocation -> databaseManager.applyBulkJob(
+                invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2)));
+        when(plugin.getCurrencyManager()).thenReturn(currencyManager);
+        
+        BulkJobScheduler scheduler = new BulkJobScheduler(plugin);
+        assertThrows(IllegalStateException.class, scheduler::check);
+        
+        // Следующая проверка продолжает период, а не пропускается
+        scheduler.check();
+        verify(currencyManager, times(2)).applyBulkJob(any(), anyLong(), anyLong());
+        
+        BulkJobState state = databaseManager.getBulkJobState(INTEREST.getName());
+        assertTrue(state.isFinished());
+        assertEquals(INTEREST.getPeriod(LocalDateTime.now()), state.getPeriod());
+        assertEquals(1, state.getAccounts());
+        assertEquals(10, state.getAmount());
+        assertEquals(110, databaseManager.getBalance(PLAYER, CURRENCY));
+    }
+    
+    @Test
+    void chunkWaitsForConcurrentWriter() throws Exception {
+        BulkJobState state = databaseManager.claimBulkJob(INTEREST.getName(), 1);
+        
+        // Другой сервер держит запись и меняет баланс, пока порция запускается
+        try (Connection other = DriverManager.getConnection("jdbc:sqlite:" + new File(dataFolder, "cashpro.db"))) {
+            try (Statement stmt = other.createStatement()) {
+                stmt.execute("PRAGMA busy_timeout = 5000");
+                stmt.execute("BEGIN IMMEDIATE");
+            }
+            try (PreparedStatement stmt = other.prepareStatement(
+                    "UPDATE balances SET balance = 200, version = version + 1 WHERE player_uuid = ?")) {
+                stmt.setString(1, PLAYER.toString());
+                stmt.executeUpdate();
+            }
+            
+            CompletableFuture<BulkChunk> chunk = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return databaseManager.applyBulkJob(INTEREST, 0, state.getMaxId());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            Thread.sleep(300);
+            
+            try (Statement stmt = other.createStatement()) {
+                stmt.execute("COMMIT");
+            }
+            
+            assertEquals(20, chunk.get().getAmount());
+        }
+        
+        assertEquals(220, databaseManager.getBalance(PLAYER, CURRENCY));
+        assertEquals(20, databaseManager.getBulkJobState(INTEREST.getName()).getAmount());
+    }
+    
+    @Test
+    void memoryChunkIsSavedWithoutAccountLocks() throws Exception {
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MemoryStorageBackend storage = new MemoryStorageBackend() {
+            @Override
+            public boolean saveBalances(Collection<BalanceRecord> records, BulkProgress progress) {
+                // Сохранение порции зависает, пока тест его не отпустит
+                if (progress != null) {
+                    saving.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.saveBalances(records, progress);
+            }
+        };
+        storage.applyMutations(List.of(LedgerMutation.set(PLAYER, "Steve", CURRENCY, 100, null)));
+        BulkJobState state = storage.claimBulkJob(INTEREST.getName(), 1);
+        
+        CashProReloaded memoryPlugin = TestPlugins.create();
+        when(memoryPlugin.getConfigManager().isMemoryStorage()).thenReturn(true);
+        Ledger ledger = new Ledger(memoryPlugin, storage);
+        when(memoryPlugin.getLedger()).thenReturn(ledger);
+        ledger.initialize();
+        CurrencyManager currencyManager = new CurrencyManager(memoryPlugin, storage);
+        currencyManager.initialize();
+        
+        try {
+            CompletableFuture<BulkChunk> chunk = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return currencyManager.applyBulkJob(INTEREST, 0, state.getMaxId());
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertTrue(saving.await(5, TimeUnit.SECONDS));
+            
+            // Порция сохраняется, а операции со счётом порции и чтения не ждут
+            CompletableFuture<Boolean> deposit = CompletableFuture.supplyAsync(
+                () -> currencyManager.addBalance(PLAYER, "Steve", CURRENCY, 5));
+            assertTrue(deposit.get(2, TimeUnit.SECONDS));
+            assertEquals(115, currencyManager.getBalance(PLAYER, CURRENCY));
+            assertEquals(1, currencyManager.getRank(PLAYER, CURRENCY));
+            assertFalse(chunk.isDone());
+            
+            release.countDown();
+            assertEquals(10, chunk.get(5, TimeUnit.SECONDS).getAmount());
+            currencyManager.checkpoint();
+            assertEquals(115, storage.getBalance(PLAYER, CURRENCY));
+            assertEquals(10, storage.getBulkJobState(INTEREST.getName()).getAmount());
+        } finally {
+            release.countDown();
+            ledger.shutdown();
+        }
+    }
+}
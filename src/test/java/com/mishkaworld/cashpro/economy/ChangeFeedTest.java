@@ -0,0 +1,139 @@
+package com.mishkaworld.cashpro.economy;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.TestPlugins;
+import com.mishkaworld.cashpro.database.BalanceChange;
+import com.mishkaworld.cashpro.database.BalanceRecord;
+import com.mishkaworld.cashpro.database.DatabaseManager;
+import com.mishkaworld.cashpro.database.Ledger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Синхронизация двух серверов с одной БД: два экземпляра плагина работают
+ * с одним файлом SQLite, изменения одного попадают в кэш другого через
+ * ленту изменений, а устаревшие изменения не затирают более поздние
+ * 
+ * @author Misha Ermakov
+ */
+class ChangeFeedTest {
+    
+    private static final String CURRENCY = "rub";
+    private static final UUID PLAYER = UUID.randomUUID();
+    
+    @TempDir
+    File dataFolder;
+    
+    private final List<Instance> instances = new ArrayList<>();
+    private Instance first;
+    private Instance second;
+    
+    @BeforeEach
+    void startInstances() {
+        first = start();
+        second = start();
+        
+        first.currencyManager.setBalance(PLAYER, "Steve", CURRENCY, 100);
+        second.poller.poll();
+        
+        // Игрок зашёл на второй сервер: его баланс в кэше
+        second.currencyManager.cachePlayer(PLAYER);
+    }
+    
+    @AfterEach
+    void stopInstances() {
+        for (Instance instance : instances) {
+            instance.ledger.shutdown();
+            instance.databaseManager.close();
+        }
+    }
+    
+    @Test
+    void changeOnOneServerReachesCacheOfAnother() {
+        assertEquals(100, second.currencyManager.getBalance(PLAYER, CURRENCY));
+        
+        assertTrue(first.currencyManager.addBalance(PLAYER, "Steve", CURRENCY, 50));
+        // Кэш второго сервера обновляется только лентой изменений
+        assertEquals(100, second.currencyManager.getBalance(PLAYER, CURRENCY));
+        
+        second.poller.poll();
+        assertEquals(150, second.currencyManager.getBalance(PLAYER, CURRENCY));
+        assertEquals(first.databaseManager.getMaxChangeSeq(), second.poller.getLastChangeSeq());
+    }
+    
+    @Test
+    void staleChangeDoesNotOverwriteNewerWrite() {
+        List<BalanceRecord> stale = changesAfter(0);
+        assertEquals(100, stale.get(0).getBalance());
+        
+        // Второй сервер записал баланс позже, чем было прочитано изменение
+        assertTrue(second.currencyManager.addBalance(PLAYER, "Steve", CURRENCY, 25));
+        assertEquals(0, second.currencyManager.applyRemoteChanges(stale));
+        assertEquals(125, second.currencyManager.getBalance(PLAYER, CURRENCY));
+        
+        // Собственное изменение из ленты тоже не применяется повторно
+        second.poller.poll();
+        assertEquals(125, second.currencyManager.getBalance(PLAYER, CURRENCY));
+    }
+    
+    @Test
+    void changesArriveInOrderAcrossServers() {
+        assertTrue(first.currencyManager.subtractBalance(PLAYER, "Steve", CURRENCY, 30));
+        assertTrue(second.currencyManager.addBalance(PLAYER, "Steve", CURRENCY, 5));
+        assertTrue(first.currencyManager.addBalance(PLAYER, "Steve", CURRENCY, 1));
+        
+        second.poller.poll();
+        assertEquals(76, second.currencyManager.getBalance(PLAYER, CURRENCY));
+        assertEquals(76, second.databaseManager.getBalance(PLAYER, CURRENCY));
+    }
+    
+    private List<BalanceRecord> changesAfter(long changeSeq) {
+        List<BalanceRecord> records = new ArrayList<>();
+        for (BalanceChange change : first.databaseManager.getChangesSince(changeSeq, 100)) {
+            records.add(change.getRecord());
+        }
+        return records;
+    }
+    
+    private Instance start() {
+        CashProReloaded plugin = TestPlugins.create();
+        when(plugin.getConfigManager().isSyncEnabled()).thenReturn(true);
+        when(plugin.getConfigManager().getSyncBatchSize()).thenReturn(100);
+        when(plugin.getConfigManager().getSyncPollInterval()).thenReturn(20L);
+        
+        Instance instance = new Instance();
+        instance.databaseManager = TestPlugins.openDatabase(plugin, dataFolder);
+        
+        instance.ledger = new Ledger(plugin, instance.databaseManager);
+        when(plugin.getLedger()).thenReturn(instance.ledger);
+        instance.ledger.initialize();
+        
+        instance.currencyManager = new CurrencyManager(plugin, instance.databaseManager);
+        instance.currencyManager.initialize();
+        when(plugin.getCurrencyManager()).thenReturn(instance.currencyManager);
+        
+        instance.poller = new ChangeFeedPoller(plugin);
+        instance.poller.initialize();
+        
+        instances.add(instance);
+        return instance;
+    }
+    
+    private static final class Instance {
+        private DatabaseManager databaseManager;
+        private Ledger ledger;
+        private CurrencyManager currencyManager;
+        private ChangeFeedPoller poller;
+    }
+}
@@ -0,0 +1,79 @@
+package com.mishkaworld.cashpro.economy;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.TestPlugins;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Исключения рейтинга: исключённые по имени и по UUID игроки не попадают
+ * в снимок и не занимают мест, а места и игроки на позициях совпадают
+ * со снимком
+ * 
+ * @author Misha Ermakov
+ */
+class LeaderboardManagerTest {
+    
+    private static final String CURRENCY = "rub";
+    
+    @Test
+    void exclusionsApplyToRanksAndTop() {
+        UUID bank = UUID.randomUUID();
+        UUID steve = UUID.randomUUID();
+        UUID alex = UUID.randomUUID();
+        UUID admin = UUID.randomUUID();
+        UUID notch = UUID.randomUUID();
+        
+        RankIndex rankIndex = new RankIndex();
+        rankIndex.set(bank, CURRENCY, 500);
+        rankIndex.set(steve, CURRENCY, 300);
+        rankIndex.set(alex, CURRENCY, 300);
+        rankIndex.set(admin, CURRENCY, 100);
+        rankIndex.set(notch, CURRENCY, 50);
+        
+        PlayerNameIndex nameIndex = new PlayerNameIndex();
+        nameIndex.load(Map.of(bank, "Bank", steve, "Steve", alex, "Alex", admin, "Admin", notch, "Notch"));
+        
+        CashProReloaded plugin = TestPlugins.create();
+        CurrencyManager currencyManager = mock(CurrencyManager.class);
+        when(currencyManager.getRankIndex()).thenReturn(rankIndex);
+        when(currencyManager.getNameIndex()).thenReturn(nameIndex);
+        when(plugin.getCurrencyManager()).thenReturn(currencyManager);
+        when(plugin.getConfigManager().getLeaderboardSize()).thenReturn(10);
+        when(plugin.getConfigManager().getLeaderboardExclusions(CURRENCY)).thenReturn(List.of("bank", admin.toString()));
+        
+        LeaderboardManager leaderboardManager = new LeaderboardManager(plugin);
+        leaderboardManager.rebuild(CURRENCY);
+        LeaderboardSnapshot snapshot = leaderboardManager.getSnapshot(CURRENCY);
+        
+        assertEquals(3, snapshot.size());
+        assertEquals(3, rankIndex.size(CURRENCY));
+        assertEquals("Notch", snapshot.getEntry(3).getPlayerName());
+        
+        // Игрок на каждой позиции совпадает со снимком
+        for (int position = 1; position <= snapshot.size(); position++) {
+            RankIndex.RankedPlayer ranked = rankIndex.getPlayerAt(CURRENCY, position);
+            assertEquals(snapshot.getEntry(position).getPlayerName(), nameIndex.getName(ranked.getPlayerUuid()));
+            assertEquals(snapshot.getEntry(position).getBalance(), ranked.getBalance());
+        }
+        assertNull(rankIndex.getPlayerAt(CURRENCY, 4));
+        
+        // Исключённые игроки мест не занимают, одинаковые балансы делят место
+        assertEquals(0, rankIndex.getRank(bank, CURRENCY));
+        assertEquals(0, rankIndex.getRank(admin, CURRENCY));
+        assertEquals(1, rankIndex.getRank(steve, CURRENCY));
+        assertEquals(1, rankIndex.getRank(alex, CURRENCY));
+        assertEquals(3, rankIndex.getRank(notch, CURRENCY));
+        
+        // Исключения не меняют показатели экономики
+        assertEquals(1_250, rankIndex.getAggregate(CURRENCY).getSupply());
+    }
+}
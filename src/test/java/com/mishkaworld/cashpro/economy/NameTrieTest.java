@@ -0,0 +1,100 @@
+package com.mishkaworld.cashpro.economy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Префиксное дерево имён: после случайных добавлений и удалений поиск
+ * по префиксу совпадает с отсортированным словарём, а индекс имён ищет
+ * без учёта регистра и забывает прежнее имя после переименования
+ * 
+ * @author Misha Ermakov
+ */
+class NameTrieTest {
+    
+    @Test
+    void prefixSearchMatchesSortedMap() {
+        Random random = new Random(42);
+        NameTrie trie = new NameTrie();
+        TreeMap<String, String> reference = new TreeMap<>();
+        
+        // Короткие имена из трёх букв часто делят и сливают рёбра
+        for (int step = 0; step < 20_000; step++) {
+            String key = randomKey(random, 1 + random.nextInt(6));
+            if (random.nextInt(3) == 0) {
+                trie.remove(key);
+                reference.remove(key);
+            } else {
+                String name = key.toUpperCase() + step;
+                trie.put(key, name);
+                reference.put(key, name);
+            }
+            
+            if (step % 10 == 0) {
+                String prefix = randomKey(random, random.nextInt(4));
+                int limit = 1 + random.nextInt(20);
+                assertEquals(expected(reference, prefix, limit), trie.findByPrefix(prefix, limit), "префикс " + prefix);
+            }
+        }
+        
+        // Полный обход с пустым префиксом возвращает все имена по порядку
+        assertEquals(new ArrayList<>(reference.values()), trie.findByPrefix("", Integer.MAX_VALUE));
+        
+        for (String key : new ArrayList<>(reference.keySet())) {
+            trie.remove(key);
+        }
+        assertTrue(trie.findByPrefix("", Integer.MAX_VALUE).isEmpty());
+    }
+    
+    @Test
+    void nameIndexFoldsCaseAndForgetsRenamedNames() {
+        UUID steve = UUID.randomUUID();
+        UUID stella = UUID.randomUUID();
+        PlayerNameIndex index = new PlayerNameIndex();
+        index.load(Map.of(steve, "Steve", stella, "STELLA"));
+        
+        assertEquals(List.of("STELLA", "Steve"), index.findByPrefix("stE", 10));
+        assertEquals(List.of("STELLA"), index.findByPrefix("ST", 1));
+        assertEquals(steve, index.getUuid("STEVE"));
+        
+        assertTrue(index.update(steve, "Alex"));
+        assertFalse(index.update(steve, "Alex"));
+        assertEquals(List.of("STELLA"), index.findByPrefix("st", 10));
+        assertEquals(List.of("Alex"), index.findByPrefix("A", 10));
+        assertEquals(steve, index.getUuid("alex"));
+        assertFalse(index.contains("Steve"));
+        
+        // Смена только регистра заменяет отображаемое имя
+        assertTrue(index.update(stella, "Stella"));
+        assertEquals(List.of("Stella"), index.findByPrefix("s", 10));
+    }
+    
+    private static String randomKey(Random random, int length) {
+        StringBuilder key = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            key.append((char) ('a' + random.nextInt(3)));
+        }
+        return key.toString();
+    }
+    
+    private static List<String> expected(TreeMap<String, String> reference, String prefix, int limit) {
+        List<String> names = new ArrayList<>();
+        for (Map.Entry<String, String> entry : reference.tailMap(prefix, true).entrySet()) {
+            if (!entry.getKey().startsWith(prefix) || names.size() >= limit) {
+                break;
+            }
+            names.add(entry.getValue());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,120 @@
+package com.mishkaworld.cashpro.economy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Индекс мест: после случайных установок, изменений и удалений балансов
+ * места, игроки на позициях, топ и показатели совпадают с отсортированным
+ * списком, в том числе при одинаковых балансах и исключённых игроках
+ * 
+ * @author Misha Ermakov
+ */
+class RankIndexTest {
+    
+    private static final String CURRENCY = "rub";
+    private static final int PLAYERS = 60;
+    
+    @Test
+    void ranksMatchSortedReference() {
+        Random random = new Random(7);
+        List<UUID> players = new ArrayList<>();
+        for (int i = 0; i < PLAYERS; i++) {
+            players.add(UUID.randomUUID());
+        }
+        
+        RankIndex index = new RankIndex();
+        Map<UUID, Long> reference = new HashMap<>();
+        Set<UUID> excluded = new HashSet<>();
+        
+        // Узкий диапазон балансов даёт много одинаковых значений
+        for (int step = 0; step < 10_000; step++) {
+            UUID player = players.get(random.nextInt(PLAYERS));
+            int operation = random.nextInt(10);
+            if (operation < 5) {
+                long balance = random.nextInt(20);
+                index.set(player, CURRENCY, balance);
+                reference.put(player, balance);
+            } else if (operation < 8) {
+                long delta = random.nextInt(11) - 5;
+                index.add(player, CURRENCY, delta);
+                reference.merge(player, delta, Long::sum);
+            } else if (operation < 9) {
+                index.remove(player, CURRENCY);
+                reference.remove(player);
+            } else {
+                excluded.clear();
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    excluded.add(players.get(random.nextInt(PLAYERS)));
+                }
+                index.setExcluded(CURRENCY, excluded);
+            }
+            
+            if (step % 25 == 0) {
+                assertMatches(index, reference, excluded, players);
+            }
+        }
+        assertMatches(index, reference, excluded, players);
+    }
+    
+    private static void assertMatches(RankIndex index, Map<UUID, Long> reference, Set<UUID> excluded, List<UUID> players) {
+        List<Map.Entry<UUID, Long>> ranked = new ArrayList<>();
+        for (Map.Entry<UUID, Long> entry : reference.entrySet()) {
+            if (!excluded.contains(entry.getKey())) {
+                ranked.add(entry);
+            }
+        }
+        ranked.sort(Map.Entry.<UUID, Long>comparingByValue(Comparator.reverseOrder())
+            .thenComparing(Map.Entry.comparingByKey()));
+        
+        assertEquals(ranked.size(), index.size(CURRENCY));
+        
+        for (int position = 1; position <= ranked.size(); position++) {
+            RankIndex.RankedPlayer player = index.getPlayerAt(CURRENCY, position);
+            assertEquals(ranked.get(position - 1).getKey(), player.getPlayerUuid(), "позиция " + position);
+            assertEquals(ranked.get(position - 1).getValue(), player.getBalance());
+        }
+        assertNull(index.getPlayerAt(CURRENCY, ranked.size() + 1));
+        
+        // Одинаковые балансы делят место: место - 1 + число игроков с большим балансом
+        for (UUID player : players) {
+            Long balance = reference.get(player);
+            int expected = 0;
+            if (balance != null && !excluded.contains(player)) {
+                expected = 1;
+                for (Map.Entry<UUID, Long> entry : ranked) {
+                    if (entry.getValue() > balance) {
+                        expected++;
+                    }
+                }
+            }
+            assertEquals(expected, index.getRank(player, CURRENCY));
+        }
+        
+        List<RankIndex.RankedPlayer> top = index.getTop(CURRENCY, 10);
+        assertEquals(Math.min(10, ranked.size()), top.size());
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals(ranked.get(i).getKey(), top.get(i).getPlayerUuid());
+        }
+        
+        // Показатели экономики считаются по всем счетам, включая исключённых
+        long supply = 0;
+        for (long balance : reference.values()) {
+            supply += balance;
+        }
+        assertEquals(reference.size(), index.getAggregate(CURRENCY).getAccounts());
+        assertEquals(supply, index.getAggregate(CURRENCY).getSupply());
+    }
+}
@@ -0,0 +1,107 @@
+package com.mishkaworld.cashpro.economy;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.TestPlugins;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Ограничение частоты с подменённым временем: корзина пропускает burst
+ * операций подряд, пополняется со скоростью refill и не копит маркеров
+ * больше burst, а корзины разных отправителей, валют и видов операций
+ * не зависят друг от друга
+ * 
+ * @author Misha Ermakov
+ */
+class RateLimiterTest {
+    
+    private static final String PLAYER = "steve";
+    private static final int BURST = 3;
+    
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+    private CashProReloaded plugin;
+    private RateLimiter limiter;
+    
+    @BeforeEach
+    void createLimiter() {
+        plugin = TestPlugins.create();
+        when(plugin.getConfigManager().isRateLimitEnabled()).thenReturn(true);
+        when(plugin.getConfigManager().getRateLimitBurst(RateLimiter.PAY, "rub")).thenReturn(BURST);
+        when(plugin.getConfigManager().getRateLimitRefill(RateLimiter.PAY, "rub")).thenReturn(2.0);
+        when(plugin.getConfigManager().getRateLimitBurst(RateLimiter.PAY, "usd")).thenReturn(1);
+        when(plugin.getConfigManager().getRateLimitRefill(RateLimiter.PAY, "usd")).thenReturn(1.0);
+        when(plugin.getConfigManager().getRateLimitBurst(RateLimiter.API, "rub")).thenReturn(1);
+        when(plugin.getConfigManager().getRateLimitRefill(RateLimiter.API, "rub")).thenReturn(1.0);
+        limiter = new RateLimiter(plugin, now::get);
+    }
+    
+    @Test
+    void burstThenRefill() {
+        for (int i = 0; i < BURST; i++) {
+            assertTrue(limiter.tryAcquire(RateLimiter.PAY, PLAYER, "rub"));
+        }
+        assertFalse(limiter.tryAcquire(RateLimiter.PAY, PLAYER, "rub"));
+        assertEquals(1, limiter.getRejections(RateLimiter.PAY));
+        
+        // Отказ не тратит маркер: через интервал пополнения проходит ровно одна операция
+        advance(499);
+        assertFalse(limiter.tryAcquire(RateLimiter.PAY, PLAYER, "rub"));
+        advance(1);
+        assertTrue(limiter.tryAcquire(RateLimiter.PAY, PLAYER, "rub"));
+        assertFalse(limiter.tryAcquire(RateLimiter.PAY, PLAYER, "rub"));
+        
+        // После долгого простоя корзина полна, но не больше burst
+        advance(60_000);
+        for (int i = 0; i < BURST; i++) {
+            assertTrue(limiter.tryAcquire(RateLimiter.PAY, PLAYER, "rub"));
+        }
+        assertFalse(limiter.tryAcquire(RateLimiter.PAY, PLAYER, "rub"));
+        assertEquals(4, limiter.getRejections(RateLimiter.PAY));
+    }
+    
+    @Test
+    void bucketsAreIsolatedPerKey() {
+        for (int i = 0; i < BURST; i++) {
+            assertTrue(limiter.tryAcquire(RateLimiter.PAY, PLAYER, "rub"));
+        }
+        assertFalse(limiter.tryAcquire(RateLimiter.PAY, PLAYER, "rub"));
+        
+        // Другой игрок, другая валюта и другой вид операций считаются отдельно
+        assertTrue(limiter.tryAcquire(RateLimiter.PAY, "alex", "rub"));
+        assertTrue(limiter.tryAcquire(RateLimiter.PAY, PLAYER, "usd"));
+        assertFalse(limiter.tryAcquire(RateLimiter.PAY, PLAYER, "usd"));
+        assertTrue(limiter.tryAcquire(RateLimiter.API, PLAYER, "rub"));
+        assertEquals(2, limiter.getRejections(RateLimiter.PAY));
+        assertEquals(0, limiter.getRejections(RateLimiter.API));
+        
+        // Сброс корзин возвращает полный лимит
+        limiter.clear();
+        assertTrue(limiter.tryAcquire(RateLimiter.PAY, PLAYER, "rub"));
+    }
+    
+    @Test
+    void noLimitWithoutBurstOrWhenDisabled() {
+        when(plugin.getConfigManager().getRateLimitBurst(RateLimiter.PAY, "eur")).thenReturn(0);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire(RateLimiter.PAY, PLAYER, "eur"));
+        }
+        
+        when(plugin.getConfigManager().isRateLimitEnabled()).thenReturn(false);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire(RateLimiter.PAY, PLAYER, "rub"));
+        }
+        assertEquals(0, limiter.getRejections(RateLimiter.PAY));
+    }
+    
+    private void advance(long millis) {
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
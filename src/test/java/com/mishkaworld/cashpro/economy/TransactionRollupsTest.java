@@ -0,0 +1,179 @@
+package com.mishkaworld.cashpro.economy;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.TestPlugins;
+import com.mishkaworld.cashpro.database.DatabaseManager;
+import com.mishkaworld.cashpro.database.LedgerMutation;
+import com.mishkaworld.cashpro.database.RollupBucket;
+import com.mishkaworld.cashpro.database.StorageExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Сводки транзакций на временном файле SQLite: после перестроения по истории,
+ * после записи новых транзакций и после повторного перестроения с ещё не
+ * записанными сводками количество, сумма и максимум каждого интервала
+ * совпадают с пересчётом по самим транзакциям, а оборот за последние
+ * интервалы складывает типы и не захватывает более старые интервалы
+ * 
+ * @author Misha Ermakov
+ */
+class TransactionRollupsTest {
+    
+    private static final List<String> CURRENCIES = List.of("rub", "usd");
+    private static final List<Transaction.TransactionType> TYPES =
+        List.of(Transaction.TransactionType.PAY, Transaction.TransactionType.GIVE);
+    
+    @TempDir
+    File dataFolder;
+    
+    private final Random random = new Random(11);
+    private final List<Transaction> history = new ArrayList<>();
+    private CashProReloaded plugin;
+    private DatabaseManager databaseManager;
+    private TransactionRollups rollups;
+    private int nextId;
+    
+    @BeforeEach
+    void openDatabase() {
+        plugin = TestPlugins.create();
+        when(plugin.getStorageExecutor()).thenReturn(mock(StorageExecutor.class));
+        databaseManager = TestPlugins.openDatabase(plugin, dataFolder);
+        rollups = new TransactionRollups(plugin);
+    }
+    
+    @AfterEach
+    void closeDatabase() {
+        rollups.shutdown();
+        databaseManager.close();
+    }
+    
+    @Test
+    void rollupsMatchSumsOfRawTransactions() throws Exception {
+        // История за последние трое суток до подключения сводок
+        write(400, LocalDateTime.now().minusDays(3));
+        rollups.initialize();
+        assertTrue(rollups.rebuild(rows -> { }));
+        assertMatches();
+        
+        // Новые транзакции учитываются слушателем и записываются пакетом
+        write(200, LocalDateTime.now().minusHours(2));
+        rollups.flush();
+        assertMatches();
+        
+        // Незаписанные сводки сбрасываются перестроением и не учитываются дважды
+        write(100, LocalDateTime.now().minusMinutes(30));
+        assertTrue(rollups.rebuild(rows -> { }));
+        rollups.flush();
+        assertMatches();
+    }
+    
+    @Test
+    void volumeSumsRecentBucketsAcrossTypes() throws Exception {
+        rollups.initialize();
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime current = RollupGranularity.HOUR.truncate(now);
+        
+        // Сводки ещё в памяти: оборот сначала записывает их
+        databaseManager.applyMutations(List.of(
+            record("rub", 10, Transaction.TransactionType.PAY, current),
+            record("rub", 5, Transaction.TransactionType.GIVE, current),
+            record("rub", 20, Transaction.TransactionType.PAY, current.minusHours(1).plusMinutes(30)),
+            record("rub", 30, Transaction.TransactionType.PAY, current.minusHours(1).plusMinutes(45)),
+            record("rub", 7, Transaction.TransactionType.GIVE, current.minusHours(2)),
+            record("rub", 1_000, Transaction.TransactionType.PAY, current.minusHours(5)),
+            record("usd", 99, Transaction.TransactionType.PAY, current)
+        ));
+        
+        List<RollupBucket> all = rollups.getVolume("rub", RollupGranularity.HOUR, null, 3);
+        assertEquals(3, all.size());
+        assertBucket(all.get(0), current.minusHours(2), 1, 7, 7);
+        assertBucket(all.get(1), current.minusHours(1), 2, 50, 30);
+        assertBucket(all.get(2), current, 2, 15, 10);
+        
+        List<RollupBucket> payments = rollups.getVolume("rub", RollupGranularity.HOUR, Transaction.TransactionType.PAY, 3);
+        assertEquals(2, payments.size());
+        assertBucket(payments.get(0), current.minusHours(1), 2, 50, 30);
+        assertBucket(payments.get(1), current, 1, 10, 10);
+        
+        // Окно считается от текущего интервала назад, другие валюты не смешиваются
+        assertEquals(1, rollups.getVolume("rub", RollupGranularity.HOUR, null, 1).size());
+        assertEquals(1, rollups.getVolume("usd", RollupGranularity.HOUR, null, 3).size());
+    }
+    
+    /**
+     * Записать транзакции со случайными суммами, типами и временем после start
+     */
+    private void write(int count, LocalDateTime start) throws Exception {
+        long seconds = ChronoUnit.SECONDS.between(start, LocalDateTime.now());
+        List<LedgerMutation> mutations = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            LocalDateTime time = start.plusSeconds(random.nextLong(seconds)).truncatedTo(ChronoUnit.SECONDS);
+            Transaction transaction = new Transaction("tx" + nextId++, "Steve", "Alex", UUID.randomUUID(), UUID.randomUUID(),
+                CURRENCIES.get(random.nextInt(CURRENCIES.size())), 1 + random.nextInt(1_000),
+                TYPES.get(random.nextInt(TYPES.size())), time);
+            mutations.add(LedgerMutation.record(transaction));
+            history.add(transaction);
+        }
+        databaseManager.applyMutations(mutations);
+    }
+    
+    private LedgerMutation record(String currency, long amount, Transaction.TransactionType type, LocalDateTime time) {
+        return LedgerMutation.record(new Transaction("tx" + nextId++, "Steve", "Alex", UUID.randomUUID(), UUID.randomUUID(),
+            currency, amount, type, time));
+    }
+    
+    private static void assertBucket(RollupBucket bucket, LocalDateTime start, long count, long sum, long max) {
+        assertEquals(RollupGranularity.HOUR.bucketStart(start), bucket.getBucketStart());
+        assertEquals(count, bucket.getCount());
+        assertEquals(sum, bucket.getSum());
+        assertEquals(max, bucket.getMax());
+    }
+    
+    private void assertMatches() {
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            for (String currency : CURRENCIES) {
+                for (Transaction.TransactionType type : TYPES) {
+                    Map<Long, long[]> expected = new TreeMap<>();
+                    for (Transaction transaction : history) {
+                        if (transaction.getCurrency().equals(currency) && transaction.getType() == type) {
+                            long[] bucket = expected.computeIfAbsent(granularity.bucketStart(transaction.getTimestamp()),
+                                key -> new long[3]);
+                            bucket[0]++;
+                            bucket[1] += transaction.getAmount();
+                            bucket[2] = Math.max(bucket[2], transaction.getAmount());
+                        }
+                    }
+                    
+                    List<RollupBucket> actual = databaseManager.getRollups(granularity.getKey(), currency, type.name(),
+                        0, Long.MAX_VALUE);
+                    String context = granularity.getKey() + " " + currency + " " + type;
+                    assertEquals(expected.size(), actual.size(), context);
+                    for (RollupBucket bucket : actual) {
+                        long[] sums = expected.get(bucket.getBucketStart());
+                        assertEquals(sums[0], bucket.getCount(), context);
+                        assertEquals(sums[1], bucket.getSum(), context);
+                        assertEquals(sums[2], bucket.getMax(), context);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.mishkaworld.cashpro.economy;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.TestPlugins;
+import com.mishkaworld.cashpro.database.BalanceRecord;
+import com.mishkaworld.cashpro.database.Ledger;
+import com.mishkaworld.cashpro.database.LedgerMutation;
+import com.mishkaworld.cashpro.database.MemoryStorageBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Нагрузочная проверка переводов: 64 потока переводят деньги между
+ * небольшим набором счетов во всех направлениях, в том числе встречными
+ * переводами. Денежная масса не должна измениться, балансы не должны
+ * уйти в минус, а захват блокировок двух счетов не должен зависать
+ * 
+ * @author Misha Ermakov
+ */
+class TransferStressTest {
+    
+    private static final String CURRENCY = "rub";
+    private static final int THREADS = 64;
+    private static final int TRANSFERS_PER_THREAD = 1_000;
+    private static final int ACCOUNTS = 16;
+    private static final long START_BALANCE = 10_000;
+    
+    private Ledger ledger;
+    
+    @AfterEach
+    void stopLedger() {
+        if (ledger != null) {
+            ledger.shutdown();
+        }
+    }
+    
+    @ParameterizedTest(name = "memory mode = {0}")
+    @ValueSource(booleans = {false, true})
+    void concurrentTransfersConserveMoney(boolean memoryMode) throws Exception {
+        CashProReloaded plugin = TestPlugins.create();
+        when(plugin.getConfigManager().isMemoryStorage()).thenReturn(memoryMode);
+        
+        MemoryStorageBackend storage = new MemoryStorageBackend();
+        List<UUID> accounts = new ArrayList<>();
+        List<LedgerMutation> seed = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            UUID uuid = UUID.randomUUID();
+            accounts.add(uuid);
+            seed.add(LedgerMutation.set(uuid, "player" + i, CURRENCY, START_BALANCE, null));
+        }
+        storage.applyMutations(seed);
+        
+        ledger = new Ledger(plugin, storage);
+        when(plugin.getLedger()).thenReturn(ledger);
+        ledger.initialize();
+        
+        CurrencyManager currencyManager = new CurrencyManager(plugin, storage);
+        currencyManager.initialize();
+        
+        AtomicLong succeeded = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> workers = new ArrayList<>();
+        
+        for (int t = 0; t < THREADS; t++) {
+            workers.add(pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    int from = random.nextInt(ACCOUNTS);
+                    int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                    long amount = 1 + random.nextInt(3_000);
+                    if (currencyManager.transferMoney(accounts.get(from), "player" + from,
+                            accounts.get(to), "player" + to, CURRENCY, amount)) {
+                        succeeded.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            start.countDown();
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        }, "переводы зависли: возможна взаимная блокировка");
+        pool.shutdown();
+        ledger.shutdown();
+        currencyManager.checkpoint();
+        
+        long expected = ACCOUNTS * START_BALANCE;
+        
+        long inManager = 0;
+        for (UUID uuid : accounts) {
+            long balance = currencyManager.getBalance(uuid, CURRENCY);
+            assertTrue(balance >= 0, "отрицательный баланс " + balance);
+            inManager += balance;
+        }
+        assertEquals(expected, inManager, "денежная масса в менеджере изменилась");
+        
+        long inStorage = 0;
+        for (BalanceRecord record : storage.loadAllBalances()) {
+            inStorage += record.getBalance();
+        }
+        assertEquals(expected, inStorage, "денежная масса в хранилище изменилась");
+        assertEquals(expected, currencyManager.getEconomySnapshot(CURRENCY).getSupply(),
+            "показатели экономики разошлись с балансами");
+        
+        // Каждый успешный перевод записан в историю ровно один раз
+        long history = 0;
+        for (UUID uuid : accounts) {
+            history += storage.getPlayerTransactionsCount(uuid, CURRENCY);
+        }
+        assertEquals(succeeded.get() * 2, history);
+        assertTrue(succeeded.get() > 0);
+    }
+}
@@ -0,0 +1,140 @@
+package com.mishkaworld.cashpro.vault;
+
+import com.mishkaworld.cashpro.CashProReloaded;
+import com.mishkaworld.cashpro.TestPlugins;
+import com.mishkaworld.cashpro.database.Ledger;
+import com.mishkaworld.cashpro.database.LedgerMutation;
+import com.mishkaworld.cashpro.database.MemoryStorageBackend;
+import com.mishkaworld.cashpro.economy.CurrencyManager;
+import com.mishkaworld.cashpro.economy.Transaction;
+import net.milkbowl.vault.economy.Economy;
+import net.milkbowl.vault.economy.EconomyResponse;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.plugin.ServicesManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Проверка провайдера Vault так, как его видят другие плагины:
+ * провайдер берётся из реестра сервисов, суммы передаются в double
+ * 
+ * @author Misha Ermakov
+ */
+class VaultEconomyTest {
+    
+    private static final String CURRENCY = "rub";
+    private static final UUID PLAYER = UUID.randomUUID();
+    
+    private Ledger ledger;
+    private CurrencyManager currencyManager;
+    private Economy economy;
+    
+    @BeforeEach
+    void registerProvider() {
+        CashProReloaded plugin = TestPlugins.create();
+        when(plugin.isEnabled()).thenReturn(true);
+        when(plugin.getConfigManager().getVaultCurrency()).thenReturn(CURRENCY);
+        
+        MemoryStorageBackend storage = new MemoryStorageBackend();
+        storage.applyMutations(List.of(LedgerMutation.set(PLAYER, "Steve", CURRENCY, 100, null)));
+        
+        ledger = new Ledger(plugin, storage);
+        when(plugin.getLedger()).thenReturn(ledger);
+        ledger.initialize();
+        
+        currencyManager = new CurrencyManager(plugin, storage);
+        currencyManager.initialize();
+        when(plugin.getCurrencyManager()).thenReturn(currencyManager);
+        
+        // Реестр сервисов сервера: хранит провайдеров по типу сервиса
+        Map<Class<?>, Object> providers = new HashMap<>();
+        ServicesManager servicesManager = mock(ServicesManager.class);
+        doAnswer(invocation -> providers.put(invocation.getArgument(0), invocation.getArgument(1)))
+            .when(servicesManager).register(any(), any(), any(), any());
+        when(servicesManager.load(any())).thenAnswer(invocation -> providers.get(invocation.<Class<?>>getArgument(0)));
+        
+        VaultEconomy.register(plugin, servicesManager);
+        economy = servicesManager.load(Economy.class);
+    }
+    
+    @AfterEach
+    void stopLedger() {
+        ledger.shutdown();
+    }
+    
+    @Test
+    void providerIsResolvedFromRegistry() {
+        assertNotNull(economy);
+        assertTrue(economy.isEnabled());
+        assertEquals("CashPro", economy.getName());
+        assertEquals(0, economy.fractionalDigits());
+        assertTrue(economy.hasAccount("Steve"));
+        assertEquals(100, economy.getBalance("Steve"));
+    }
+    
+    @Test
+    void fractionalDepositIsRoundedDown() {
+        EconomyResponse response = economy.depositPlayer(player(), 10.7);
+        
+        assertTrue(response.transactionSuccess());
+        assertEquals(10, response.amount);
+        assertEquals(110, response.balance);
+        assertEquals(110, currencyManager.getBalance(PLAYER, CURRENCY));
+    }
+    
+    @Test
+    void fractionalWithdrawalIsRoundedUp() {
+        EconomyResponse response = economy.withdrawPlayer(player(), 2.2);
+        
+        assertTrue(response.transactionSuccess());
+        assertEquals(3, response.amount);
+        assertEquals(97, currencyManager.getBalance(PLAYER, CURRENCY));
+        
+        // Списание сверх баланса после округления не проходит
+        assertFalse(economy.withdrawPlayer(player(), 97.1).transactionSuccess());
+        assertEquals(97, currencyManager.getBalance(PLAYER, CURRENCY));
+    }
+    
+    @Test
+    void invalidAmountsAreRejected() {
+        assertFalse(economy.depositPlayer(player(), -1).transactionSuccess());
+        assertFalse(economy.depositPlayer(player(), Double.NaN).transactionSuccess());
+        assertFalse(economy.withdrawPlayer(player(), Double.POSITIVE_INFINITY).transactionSuccess());
+        assertEquals(100, currencyManager.getBalance(PLAYER, CURRENCY));
+    }
+    
+    @Test
+    void operationsAreLoggedAsVault() throws Exception {
+        economy.depositPlayer("Steve", 5);
+        economy.withdrawPlayer("Steve", 3);
+        ledger.shutdown();
+        
+        List<Transaction> history = currencyManager.getPlayerTransactions(PLAYER, CURRENCY, null, 10).getTransactions();
+        assertEquals(2, history.size());
+        for (Transaction transaction : history) {
+            assertEquals("VAULT", transaction.getFromPlayer());
+        }
+    }
+    
+    private OfflinePlayer player() {
+        OfflinePlayer player = mock(OfflinePlayer.class);
+        when(player.getUniqueId()).thenReturn(PLAYER);
+        when(player.getName()).thenReturn("Steve");
+        return player;
+    }
+}